@@ -0,0 +1,109 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore.api;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/** State of a chunked upload, listing all chunks received so far */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class BlobUpload
+{
+	@XmlElement(name = "id", required = true)
+	private String id;
+
+	@XmlElement(name = "chunks")
+	private List<Chunk> chunks;
+
+	public BlobUpload()
+	{
+		this.id = "";
+		this.chunks = new ArrayList<>();
+	}
+
+	public BlobUpload(String id)
+	{
+		this.setId(id);
+		this.chunks = new ArrayList<>();
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public BlobUpload setId(String id)
+	{
+		Blob.checkId(id);
+		this.id = id;
+		return this;
+	}
+
+	public List<Chunk> getChunks()
+	{
+		return chunks;
+	}
+
+	public BlobUpload addChunk(int index, long size)
+	{
+		chunks.add(new Chunk(index, size));
+		return this;
+	}
+
+
+	@XmlRootElement
+	@XmlAccessorType(XmlAccessType.NONE)
+	public static class Chunk
+	{
+		@XmlElement(name = "index", required = true)
+		private int index;
+
+		@XmlElement(name = "size", required = true)
+		private long size;
+
+		public Chunk()
+		{
+			this.index = -1;
+			this.size = -1L;
+		}
+
+		public Chunk(int index, long size)
+		{
+			this.index = index;
+			this.size = size;
+		}
+
+		public int getIndex()
+		{
+			return index;
+		}
+
+		public long getSize()
+		{
+			return size;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+import de.bwl.bwfla.blobstore.api.Blob;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/** Size-bounded LRU cache for blob's metadata, split into independently locked segments */
+// package-private
+class BlobCache
+{
+	private static final int NUM_SEGMENTS = 16;
+
+	private final Segment[] segments;
+	private final int capacity;
+
+	private final LongAdder numHits;
+	private final LongAdder numMisses;
+	private final LongAdder numEvictions;
+
+
+	public BlobCache(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+
+		final int numSegments = Math.min(NUM_SEGMENTS, Integer.highestOneBit(capacity));
+		final int segmentCapacity = (capacity + numSegments - 1) / numSegments;
+
+		this.segments = new Segment[numSegments];
+		for (int i = 0; i < numSegments; ++i)
+			segments[i] = new Segment(segmentCapacity);
+
+		this.capacity = capacity;
+		this.numHits = new LongAdder();
+		this.numMisses = new LongAdder();
+		this.numEvictions = new LongAdder();
+	}
+
+	public Blob get(String id)
+	{
+		final Segment segment = this.segment(id);
+		final Blob blob;
+		synchronized (segment) {
+			blob = segment.get(id);
+		}
+
+		if (blob != null)
+			numHits.increment();
+		else numMisses.increment();
+
+		return blob;
+	}
+
+	public void put(String id, Blob blob)
+	{
+		final Segment segment = this.segment(id);
+		synchronized (segment) {
+			segment.put(id, blob);
+		}
+	}
+
+	public void remove(String id)
+	{
+		final Segment segment = this.segment(id);
+		synchronized (segment) {
+			segment.remove(id);
+		}
+	}
+
+	public int size()
+	{
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	public long getNumHits()
+	{
+		return numHits.sum();
+	}
+
+	public long getNumMisses()
+	{
+		return numMisses.sum();
+	}
+
+	public long getNumEvictions()
+	{
+		return numEvictions.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "size: " + this.size() + "/" + capacity + ", hits: " + this.getNumHits()
+				+ ", misses: " + this.getNumMisses() + ", evictions: " + this.getNumEvictions();
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private Segment segment(String id)
+	{
+		return segments[StripedLock.hash(id) & (segments.length - 1)];
+	}
+
+	private class Segment extends LinkedHashMap<String, Blob>
+	{
+		private final int capacity;
+
+		public Segment(int capacity)
+		{
+			super(16, 0.75F, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Blob> eldest)
+		{
+			if (this.size() <= capacity)
+				return false;
+
+			numEvictions.increment();
+			return true;
+		}
+	}
+}
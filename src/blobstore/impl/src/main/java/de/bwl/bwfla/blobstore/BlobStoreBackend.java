@@ -22,6 +22,7 @@ package de.bwl.bwfla.blobstore;
 import de.bwl.bwfla.blobstore.api.Blob;
 import de.bwl.bwfla.blobstore.api.BlobDescription;
 import de.bwl.bwfla.blobstore.api.BlobHandle;
+import de.bwl.bwfla.blobstore.api.BlobUpload;
 import de.bwl.bwfla.blobstore.api.IBlobStore;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
 import de.bwl.bwfla.common.utils.ByteRange;
@@ -36,6 +37,7 @@ import org.jboss.ejb3.annotation.TransactionTimeout;
 
 import javax.inject.Singleton;
 import javax.naming.InitialContext;
+import java.io.InputStream;
 import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -106,6 +108,32 @@ public class BlobStoreBackend implements IBlobStore
 		backend.delete(handle);
 	}
 
+	public String createUpload(BlobDescription description) throws BWFLAException
+	{
+		return backend.createUpload(description);
+	}
+
+	public void putUploadChunk(BlobHandle upload, int index, InputStream data) throws BWFLAException
+	{
+		backend.writeUploadChunk(upload, index, data);
+	}
+
+	public BlobUpload getUpload(BlobHandle upload) throws BWFLAException
+	{
+		return backend.getUpload(upload);
+	}
+
+	@TransactionTimeout(value = 1, unit = TimeUnit.DAYS)
+	public BlobHandle commitUpload(BlobHandle upload, int numChunks, String digest) throws BWFLAException
+	{
+		return backend.commitUpload(upload, numChunks, digest);
+	}
+
+	public void abortUpload(BlobHandle upload) throws BWFLAException
+	{
+		backend.abortUpload(upload);
+	}
+
 
 	/* =============== Internal Helpers =============== */
 
@@ -0,0 +1,227 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+import javax.activation.DataHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+
+/**
+ * Content-addressed store for blob data. Every distinct content is stored once
+ * as an object named by its SHA-256 digest, while blob entries reference
+ * objects through hard links. Hence, the link count of an object file is its
+ * reference count and storing duplicate content requires only a new link.
+ * <p>
+ * Expected directory layout:
+ * <pre>
+ * &lt;BASE-DIR&gt;/
+ *     tmp/
+ *     &lt;digest[0:2]&gt;/
+ *         &lt;digest&gt;
+ * </pre>
+ */
+// package-private
+class ContentStore
+{
+	/** Name of the store's directory, must not be a valid namespace */
+	public static final String DIRNAME = ".objects";
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private final Logger log = Logger.getLogger(ContentStore.class.getName());
+
+	private final Path basedir;
+	private final Path tmpdir;
+
+	/** Guards for linking and collecting objects */
+	private final StripedLock locks;
+
+	private final AtomicLong numObjectsStored;
+	private final AtomicLong numObjectsReused;
+
+
+	public ContentStore(Path basedir, StripedLock locks) throws IOException
+	{
+		this.basedir = basedir;
+		this.tmpdir = basedir.resolve("tmp");
+		this.locks = locks;
+		this.numObjectsStored = new AtomicLong(0L);
+		this.numObjectsReused = new AtomicLong(0L);
+
+		Files.createDirectories(tmpdir);
+	}
+
+	/** Returns true, if the file system supports link counting, else false */
+	public static boolean isSupported(Path path)
+	{
+		return path.getFileSystem()
+				.supportedFileAttributeViews()
+				.contains("unix");
+	}
+
+	/** Stores data and links the resulting object to the target path */
+	public void write(DataHandler data, Path target) throws IOException
+	{
+		final Path tmpfile = tmpdir.resolve(UUID.randomUUID().toString());
+		try {
+			final MessageDigest digest = ContentStore.newMessageDigest();
+			try (OutputStream stream = new DigestOutputStream(Files.newOutputStream(tmpfile), digest)) {
+				data.writeTo(stream);
+			}
+
+			this.insert(tmpfile, ContentStore.toHexString(digest.digest()), target);
+		}
+		finally {
+			Files.deleteIfExists(tmpfile);
+		}
+	}
+
+	/**
+	 * Moves a file with known SHA-256 digest into the store and links the resulting
+	 * object to the target path. The file must reside on the store's file system.
+	 */
+	public void insert(Path file, String digest, Path target) throws IOException
+	{
+		final Path object = this.toObjectPath(digest);
+		synchronized (locks.get(digest)) {
+			if (Files.exists(object)) {
+				// Duplicate content, reuse stored object!
+				numObjectsReused.incrementAndGet();
+			}
+			else {
+				Files.createDirectories(object.getParent());
+				Files.move(file, object, StandardCopyOption.ATOMIC_MOVE);
+				numObjectsStored.incrementAndGet();
+			}
+
+			this.link(object, target);
+		}
+	}
+
+	/** Removes all objects, that are not referenced anymore */
+	public int collect()
+	{
+		final int[] numObjectsDeleted = { 0 };
+		try (Stream<Path> subdirs = Files.list(basedir)) {
+			subdirs.filter((subdir) -> !subdir.equals(tmpdir))
+					.forEach((subdir) -> {
+						try (Stream<Path> objects = Files.list(subdir)) {
+							objects.forEach((object) -> {
+								synchronized (locks.get(object.getFileName().toString())) {
+									if (this.delete(object))
+										++numObjectsDeleted[0];
+								}
+							});
+						}
+						catch (IOException error) {
+							// Ignore it!
+						}
+					});
+		}
+		catch (IOException error) {
+			log.log(Level.WARNING, "Collecting unreferenced objects failed!\n", error);
+		}
+
+		return numObjectsDeleted[0];
+	}
+
+	public long getNumObjectsStored()
+	{
+		return numObjectsStored.get();
+	}
+
+	public long getNumObjectsReused()
+	{
+		return numObjectsReused.get();
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private Path toObjectPath(String digest)
+	{
+		return basedir.resolve(digest.substring(0, 2))
+				.resolve(digest);
+	}
+
+	private void link(Path object, Path target) throws IOException
+	{
+		try {
+			Files.createLink(target, object);
+		}
+		catch (UnsupportedOperationException | FileSystemException error) {
+			// Linking is not possible, e.g. because the
+			// maximum link count was reached, use a copy!
+			log.log(Level.WARNING, "Linking object '" + object + "' failed, copying it!\n", error);
+			Files.copy(object, target);
+		}
+	}
+
+	/** Deletes the object, if it is not referenced by any entry */
+	private boolean delete(Path object)
+	{
+		try {
+			final int refcount = (Integer) Files.getAttribute(object, "unix:nlink") - 1;
+			if (refcount > 0)
+				return false;
+
+			return Files.deleteIfExists(object);
+		}
+		catch (IOException error) {
+			// The object could be deleted concurrently!
+			return false;
+		}
+	}
+
+	static MessageDigest newMessageDigest()
+	{
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException error) {
+			throw new IllegalStateException(error);
+		}
+	}
+
+	static String toHexString(byte[] bytes)
+	{
+		final char[] digits = "0123456789abcdef".toCharArray();
+		final StringBuilder builder = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			builder.append(digits[(b >> 4) & 0x0F]);
+			builder.append(digits[b & 0x0F]);
+		}
+
+		return builder.toString();
+	}
+}
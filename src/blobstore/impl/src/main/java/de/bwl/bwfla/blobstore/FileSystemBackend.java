@@ -22,6 +22,7 @@ package de.bwl.bwfla.blobstore;
 import de.bwl.bwfla.blobstore.api.Blob;
 import de.bwl.bwfla.blobstore.api.BlobDescription;
 import de.bwl.bwfla.blobstore.api.BlobHandle;
+import de.bwl.bwfla.blobstore.api.BlobUpload;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
 import de.bwl.bwfla.common.utils.ByteRange;
 import de.bwl.bwfla.common.utils.ByteRangeIterator;
@@ -33,13 +34,19 @@ import org.apache.tamaya.inject.api.Config;
 
 import javax.activation.FileDataSource;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
@@ -61,11 +68,38 @@ public class FileSystemBackend implements IBlobStoreBackend
 	@Config("blobstore.backend.base_dir")
 	private String dbBaseDir = null;
 
-	/** Backend's concurrency guard */
-	private final Object guard = new Object();
+	@Config("blobstore.backend.deduplicate")
+	private boolean deduplicate = false;
 
-	/** Simple cache for blob's metadata */
-	private final ConcurrentMap<String, Blob> cache;
+	@Config("blobstore.backend.cache.max_entries")
+	private int cacheMaxEntries = -1;
+
+	@Config("blobstore.backend.uploads.max_chunk_size")
+	private long uploadMaxChunkSize = -1L;
+
+	@Config("blobstore.backend.uploads.max_num_chunks")
+	private int uploadMaxNumChunks = -1;
+
+	@Config("blobstore.backend.uploads.max_size")
+	private long uploadMaxSize = -1L;
+
+	/** Number of lock stripes guarding entries, namespaces and objects */
+	private static final int NUM_LOCK_STRIPES = 64;
+
+	/** Backend's concurrency guards */
+	private final StripedLock locks;
+
+	/** Bounded cache for blob's metadata */
+	private final BlobCache cache;
+
+	/** Store for deduplicated blob data, if enabled */
+	private final ContentStore store;
+
+	/** Store for partial chunked uploads */
+	private final UploadStore uploads;
+
+	/** Number of chunk writes in progress per upload, or -1 while an upload is committed or aborted */
+	private final ConcurrentMap<String, Integer> activeUploads;
 
 
 	public FileSystemBackend()
@@ -73,7 +107,35 @@ public class FileSystemBackend implements IBlobStoreBackend
 		final Configuration config = ConfigurationProvider.getConfiguration();
 		ConfigurationInjection.getConfigurationInjector().configure(this, config);
 
-		this.cache = new ConcurrentHashMap<String, Blob>();
+		this.locks = new StripedLock(NUM_LOCK_STRIPES);
+		this.cache = new BlobCache(cacheMaxEntries);
+		this.store = (deduplicate) ? this.createContentStore() : null;
+		this.uploads = this.createUploadStore();
+		this.activeUploads = new ConcurrentHashMap<>();
+	}
+
+	/** Constructor for use without injected configuration */
+	FileSystemBackend(String basedir, boolean deduplicate, int cacheMaxEntries)
+	{
+		this(basedir, deduplicate, cacheMaxEntries, Long.MAX_VALUE, 10000, Long.MAX_VALUE);
+	}
+
+	/** Constructor for use without injected configuration */
+	FileSystemBackend(String basedir, boolean deduplicate, int cacheMaxEntries,
+			long uploadMaxChunkSize, int uploadMaxNumChunks, long uploadMaxSize)
+	{
+		this.dbBaseDir = basedir;
+		this.deduplicate = deduplicate;
+		this.cacheMaxEntries = cacheMaxEntries;
+		this.uploadMaxChunkSize = uploadMaxChunkSize;
+		this.uploadMaxNumChunks = uploadMaxNumChunks;
+		this.uploadMaxSize = uploadMaxSize;
+
+		this.locks = new StripedLock(NUM_LOCK_STRIPES);
+		this.cache = new BlobCache(cacheMaxEntries);
+		this.store = (deduplicate) ? this.createContentStore() : null;
+		this.uploads = this.createUploadStore();
+		this.activeUploads = new ConcurrentHashMap<>();
 	}
 
 	/* =============== IBlobStoreBackend Implementation =============== */
@@ -83,6 +145,21 @@ public class FileSystemBackend implements IBlobStoreBackend
 	{
 		final String id = UUID.randomUUID().toString();
 		final BlobStoreEntry entry = new BlobStoreEntry(id, blob);
+		return this.save(entry, (path) -> {
+			if (store != null)
+				store.write(blob.getData(), path);
+			else {
+				try (OutputStream stream = Files.newOutputStream(path)) {
+					blob.getData().writeTo(stream);
+				}
+			}
+		});
+	}
+
+	/** Saves a new entry, whose data is written by the given writer */
+	private BlobHandle save(BlobStoreEntry entry, DataWriter datawriter) throws BWFLAException
+	{
+		final String id = entry.getId();
 		final String namespace = entry.getNamespace();
 		final String blobRefName = this.toBlobRefName(namespace, id);
 
@@ -92,7 +169,8 @@ public class FileSystemBackend implements IBlobStoreBackend
 
 		log.info("Saving new blob '" + blobRefName + "'...");
 
-		synchronized (guard) {
+		// Namespace's directory could be removed concurrently by cleanup!
+		synchronized (locks.get(namespace)) {
 			// Create base directories...
 			try {
 				Files.createDirectories(dbEntryDir);
@@ -104,7 +182,8 @@ public class FileSystemBackend implements IBlobStoreBackend
 			// Create entry's files...
 			try {
 				Files.createFile(blobDescPath);
-				Files.createFile(blobDataPath);
+				if (store == null)
+					Files.createFile(blobDataPath);
 			}
 			catch (Exception error) {
 				this.delete(blobDescPath);
@@ -123,8 +202,11 @@ public class FileSystemBackend implements IBlobStoreBackend
 			}
 
 			// Write blob's data
-			try (OutputStream stream = Files.newOutputStream(blobDataPath)) {
-				blob.getData().writeTo(stream);
+			try {
+				datawriter.write(blobDataPath);
+			}
+			catch (BWFLAException error) {
+				throw error;
 			}
 			catch (Exception error) {
 				this.abort("Writing blob's data failed!", error);
@@ -132,7 +214,7 @@ public class FileSystemBackend implements IBlobStoreBackend
 		}
 		catch (BWFLAException error) {
 			// Clean up created files!
-			synchronized (guard) {
+			synchronized (locks.get(id)) {
 				this.delete(blobDescPath);
 				this.delete(blobDataPath);
 			}
@@ -142,7 +224,7 @@ public class FileSystemBackend implements IBlobStoreBackend
 
 		log.info("Blob '" + blobRefName + "' saved successfully");
 
-		return new BlobHandle(namespace, id, blob.getAccessToken());
+		return new BlobHandle(namespace, id, entry.getAccessToken());
 	}
 
 	@Override
@@ -170,7 +252,7 @@ public class FileSystemBackend implements IBlobStoreBackend
 
 		log.info("Loading blob '" + blobRefName + "'...");
 
-		synchronized (guard) {
+		synchronized (locks.get(id)) {
 			if (!Files.exists(blobDescPath) || !Files.exists(blobDataPath))
 				this.abort("Entry for ID " + id + " not found!");
 		}
@@ -228,7 +310,7 @@ public class FileSystemBackend implements IBlobStoreBackend
 
 		log.info("Deleting blob '" + blobRefName + "'...");
 
-		synchronized (guard) {
+		synchronized (locks.get(id)) {
 			if (!Files.exists(blobDescPath) || !Files.exists(blobDataPath))
 				this.abort("Entry for ID " + id + " not found!");
 		}
@@ -241,7 +323,7 @@ public class FileSystemBackend implements IBlobStoreBackend
 
 			cache.remove(id);
 
-			synchronized (guard) {
+			synchronized (locks.get(id)) {
 				this.delete(blobDescPath);
 				this.delete(blobDataPath);
 				this.delete(dbEntryDir);
@@ -254,6 +336,145 @@ public class FileSystemBackend implements IBlobStoreBackend
 		log.info("Blob '" + blobRefName + "' deleted successfully");
 	}
 
+	@Override
+	public String createUpload(BlobDescription blob) throws BWFLAException
+	{
+		final String id = UUID.randomUUID().toString();
+		try {
+			uploads.create(new BlobStoreEntry(id, blob));
+		}
+		catch (Exception error) {
+			uploads.delete(id);
+			this.abort("Creating upload failed!", error);
+		}
+
+		log.info("Upload '" + id + "' created");
+		return id;
+	}
+
+	@Override
+	public void writeUploadChunk(BlobHandle upload, int index, InputStream data) throws BWFLAException
+	{
+		final String id = upload.getId();
+		this.checkUpload(upload);
+
+		// Chunks can be written in parallel, but not while committing
+		if (!this.acquireUpload(id, false))
+			this.abort(UploadException.Reason.CONFLICT, "Upload '" + id + "' is being committed!");
+
+		try {
+			uploads.write(id, index, data);
+		}
+		catch (UploadStore.LimitExceededException error) {
+			this.abort(UploadException.Reason.TOO_LARGE, error.getMessage());
+		}
+		catch (IllegalArgumentException error) {
+			this.abort(UploadException.Reason.INVALID, error.getMessage());
+		}
+		catch (NoSuchFileException error) {
+			this.abort(UploadException.Reason.NOT_FOUND, "Upload '" + id + "' not found!");
+		}
+		catch (Exception error) {
+			this.abort("Writing chunk " + index + " of upload '" + id + "' failed!", error);
+		}
+		finally {
+			this.releaseUpload(id);
+		}
+	}
+
+	@Override
+	public BlobUpload getUpload(BlobHandle upload) throws BWFLAException
+	{
+		final String id = upload.getId();
+		this.checkUpload(upload);
+
+		try {
+			return uploads.list(id);
+		}
+		catch (NoSuchFileException error) {
+			this.abort(UploadException.Reason.NOT_FOUND, "Upload '" + id + "' not found!");
+		}
+		catch (Exception error) {
+			this.abort("Listing upload '" + id + "' failed!", error);
+		}
+
+		return null;
+	}
+
+	@Override
+	public BlobHandle commitUpload(BlobHandle upload, int numChunks, String digest) throws BWFLAException
+	{
+		final String id = upload.getId();
+		final BlobStoreEntry entry = this.checkUpload(upload);
+
+		if (!this.acquireUpload(id, true))
+			this.abort(UploadException.Reason.CONFLICT, "Upload '" + id + "' is being written, committed or aborted!");
+
+		try {
+			if (!uploads.exists(id))
+				this.abort(UploadException.Reason.NOT_FOUND, "Upload '" + id + "' not found!");
+
+			List<Path> chunks = null;
+			try {
+				chunks = uploads.getChunks(id, numChunks);
+			}
+			catch (UploadStore.LimitExceededException error) {
+				this.abort(UploadException.Reason.TOO_LARGE, "Committing upload '" + id + "' failed!", error);
+			}
+			catch (IllegalArgumentException | NoSuchFileException error) {
+				this.abort(UploadException.Reason.INVALID, "Committing upload '" + id + "' failed!", error);
+			}
+			catch (Exception error) {
+				this.abort("Committing upload '" + id + "' failed!", error);
+			}
+
+			final List<Path> parts = chunks;
+			final BlobHandle handle = this.save(entry, (path) -> {
+				if (store == null) {
+					this.concat(parts, path, digest);
+					return;
+				}
+
+				final Path tmpfile = uploads.newTempFile(id);
+				try {
+					final String checksum = this.concat(parts, tmpfile, digest);
+					store.insert(tmpfile, checksum, path);
+				}
+				finally {
+					Files.deleteIfExists(tmpfile);
+				}
+			});
+
+			uploads.delete(id);
+			return handle;
+		}
+		finally {
+			this.releaseUpload(id);
+		}
+	}
+
+	@Override
+	public void abortUpload(BlobHandle upload) throws BWFLAException
+	{
+		final String id = upload.getId();
+		this.checkUpload(upload);
+
+		if (!this.acquireUpload(id, true))
+			this.abort(UploadException.Reason.CONFLICT, "Upload '" + id + "' is being written or committed!");
+
+		try {
+			if (!uploads.exists(id))
+				this.abort(UploadException.Reason.NOT_FOUND, "Upload '" + id + "' not found!");
+
+			uploads.delete(id);
+		}
+		finally {
+			this.releaseUpload(id);
+		}
+
+		log.info("Upload '" + id + "' aborted");
+	}
+
 	@Override
 	public void cleanup(long maxEntryAge, TimeUnit unit) throws BWFLAException
 	{
@@ -268,11 +489,18 @@ public class FileSystemBackend implements IBlobStoreBackend
 		//         <entry-m+1>
 		//         ...
 		//         <entry-k>
+		//     .objects/
+		//         <deduplicated data>
+		//     .uploads/
+		//         <chunked uploads>
 
 		final CleanupCounters counters = new CleanupCounters();
 
 		try (Stream<Path> namespaces = Files.list(Paths.get(dbBaseDir))) {
 			namespaces.forEach((namespace) -> {
+				if (namespace.getFileName().toString().startsWith("."))
+					return;  // Not a namespace!
+
 				counters.namespace();
 				try (Stream<Path> entries = Files.list(namespace)) {
 					entries.forEach((entry) -> {
@@ -281,8 +509,9 @@ public class FileSystemBackend implements IBlobStoreBackend
 							final FileTime creationTime = (FileTime) Files.getAttribute(entry, "creationTime");
 							final long age = System.currentTimeMillis() - creationTime.to(unit);
 							if (age > maxEntryAge) {
-								cache.remove(entry.getFileName().toString());
-								synchronized (guard) {
+								final String id = entry.getFileName().toString();
+								cache.remove(id);
+								synchronized (locks.get(id)) {
 									this.delete(entry, true);
 								}
 
@@ -301,7 +530,7 @@ public class FileSystemBackend implements IBlobStoreBackend
 
 				if (counters.getNumEntriesPerNamespace() == 0) {
 					// Try to delete an empty directory
-					synchronized (guard) {
+					synchronized (locks.get(namespace.getFileName().toString())) {
 						if (this.delete(namespace))
 							counters.deleted(CleanupCounterType.NAMESPACE);
 					}
@@ -319,12 +548,176 @@ public class FileSystemBackend implements IBlobStoreBackend
 					+ " namespace(s) removed, " + counters.getNumNamespacesLeft() + " left";
 
 			log.info(summary);
+			log.info("Metadata cache: " + cache);
+		}
+
+		int numUploadsDeleted = 0;
+		for (String id : uploads.findStale(maxEntryAge, unit)) {
+			// Uploads being written, committed or aborted are not stale
+			if (!this.acquireUpload(id, true))
+				continue;
+
+			try {
+				// A chunk could have been received meanwhile
+				if (uploads.isStale(id, maxEntryAge, unit)) {
+					uploads.delete(id);
+					++numUploadsDeleted;
+				}
+			}
+			finally {
+				this.releaseUpload(id);
+			}
+		}
+
+		if (numUploadsDeleted > 0)
+			log.info("Cleanup summary: " + numUploadsDeleted + " stale upload(s) removed");
+
+		if (store != null) {
+			// Expired entries only release their references,
+			// unreferenced data must be collected separately
+			final int numObjectsDeleted = store.collect();
+			if (numObjectsDeleted > 0 || counters.getNumEntriesDeleted() > 0) {
+				log.info("Cleanup summary: " + numObjectsDeleted + " unreferenced object(s) removed, "
+						+ store.getNumObjectsReused() + " out of " + (store.getNumObjectsStored() + store.getNumObjectsReused())
+						+ " stored blob(s) deduplicated so far");
+			}
 		}
 	}
 
 
 	/* =============== Internal Helpers =============== */
 
+	BlobCache getCache()
+	{
+		return cache;
+	}
+
+	ContentStore getContentStore()
+	{
+		return store;
+	}
+
+	/** Checks that the upload exists in handle's namespace and is accessible with handle's token */
+	private BlobStoreEntry checkUpload(BlobHandle upload) throws BWFLAException
+	{
+		final String id = upload.getId();
+		try {
+			UUID.fromString(id);
+		}
+		catch (Exception error) {
+			this.abort(UploadException.Reason.INVALID, "Invalid upload ID: " + id);
+		}
+
+		BlobStoreEntry entry = null;
+		try {
+			entry = uploads.getEntry(id);
+		}
+		catch (NoSuchFileException error) {
+			this.abort(UploadException.Reason.NOT_FOUND, "Upload '" + id + "' not found!");
+		}
+		catch (Exception error) {
+			this.abort("Reading upload '" + id + "' failed!", error);
+		}
+
+		// Do not reveal uploads of other namespaces
+		if (!upload.getNamespace().equals(entry.getNamespace()))
+			this.abort(UploadException.Reason.NOT_FOUND, "Upload '" + id + "' not found!");
+
+		if (!entry.accessTokenEquals(upload.getAccessToken()))
+			this.abort(UploadException.Reason.ACCESS_DENIED, "Invalid access token for upload '" + id + "'!");
+
+		return entry;
+	}
+
+	/**
+	 * Marks an upload as active, either shared (for writing chunks) or exclusive
+	 * (for committing or aborting). Returns false, if that conflicts with other operations.
+	 */
+	private boolean acquireUpload(String upload, boolean exclusive)
+	{
+		final boolean[] acquired = { false };
+		activeUploads.compute(upload, (key, count) -> {
+			if (count != null && (exclusive || count < 0))
+				return count;
+
+			acquired[0] = true;
+			if (exclusive)
+				return -1;
+
+			return (count != null) ? count + 1 : 1;
+		});
+
+		return acquired[0];
+	}
+
+	private void releaseUpload(String upload)
+	{
+		activeUploads.computeIfPresent(upload, (key, count) -> (count > 1) ? count - 1 : null);
+	}
+
+	@FunctionalInterface
+	private interface DataWriter
+	{
+		void write(Path path) throws Exception;
+	}
+
+	/** Concatenates chunks into the target file, returning the SHA-256 digest of the written data */
+	private String concat(List<Path> chunks, Path target, String expdigest) throws IOException, BWFLAException
+	{
+		final MessageDigest digest = ContentStore.newMessageDigest();
+		final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+		try (FileChannel output = FileChannel.open(target, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (Path chunk : chunks) {
+				try (FileChannel input = FileChannel.open(chunk, StandardOpenOption.READ)) {
+					while (input.read(buffer) > 0) {
+						buffer.flip();
+						digest.update(buffer.array(), buffer.arrayOffset(), buffer.limit());
+						while (buffer.hasRemaining())
+							output.write(buffer);
+
+						buffer.clear();
+					}
+				}
+			}
+		}
+
+		final String checksum = ContentStore.toHexString(digest.digest());
+		if (expdigest != null && !expdigest.equalsIgnoreCase(checksum))
+			this.abort(UploadException.Reason.INVALID, "Digest mismatch, expected " + expdigest + " but got " + checksum + "!");
+
+		return checksum;
+	}
+
+	private UploadStore createUploadStore()
+	{
+		try {
+			final Path basedir = Paths.get(dbBaseDir, UploadStore.DIRNAME);
+			return new UploadStore(basedir, uploadMaxChunkSize, uploadMaxNumChunks, uploadMaxSize);
+		}
+		catch (Exception error) {
+			throw new IllegalStateException("Initializing upload store failed!", error);
+		}
+	}
+
+	private ContentStore createContentStore()
+	{
+		final Path basedir = Paths.get(dbBaseDir, ContentStore.DIRNAME);
+		if (!ContentStore.isSupported(basedir)) {
+			log.warning("Deduplication is not supported by blobstore's file system, disabling it!");
+			return null;
+		}
+
+		try {
+			final ContentStore store = new ContentStore(basedir, locks);
+			log.info("Deduplication of blob data enabled");
+			return store;
+		}
+		catch (Exception error) {
+			throw new IllegalStateException("Initializing content store failed!", error);
+		}
+	}
+
 	private String toBlobRefName(String namespace, String id)
 	{
 		return (namespace + "/" + id);
@@ -357,6 +750,18 @@ public class FileSystemBackend implements IBlobStoreBackend
 		throw new BWFLAException(message);
 	}
 
+	private void abort(UploadException.Reason reason, String message) throws BWFLAException
+	{
+		log.log(Level.WARNING, message);
+		throw new UploadException(reason, message);
+	}
+
+	private void abort(UploadException.Reason reason, String message, Throwable error) throws BWFLAException
+	{
+		log.log(Level.WARNING, message + "\n", error);
+		throw new UploadException(reason, message, error);
+	}
+
 	private boolean delete(Path path)
 	{
 		return this.delete(path, false);
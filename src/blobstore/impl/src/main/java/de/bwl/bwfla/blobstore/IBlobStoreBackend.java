@@ -23,10 +23,12 @@ package de.bwl.bwfla.blobstore;
 import de.bwl.bwfla.blobstore.api.Blob;
 import de.bwl.bwfla.blobstore.api.BlobDescription;
 import de.bwl.bwfla.blobstore.api.BlobHandle;
+import de.bwl.bwfla.blobstore.api.BlobUpload;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
 import de.bwl.bwfla.common.utils.ByteRange;
 import de.bwl.bwfla.common.utils.ByteRangeIterator;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -38,6 +40,25 @@ public interface IBlobStoreBackend
 	ByteRangeIterator load(Blob blob, List<ByteRange> ranges) throws BWFLAException;
 	void delete(BlobHandle handle) throws BWFLAException;
 
+	/** Start a new chunked upload, returning upload's ID */
+	String createUpload(BlobDescription description) throws BWFLAException;
+
+	/*
+	 * Uploads are referenced by handles, containing the namespace and
+	 * the access token used when the upload was created.
+	 */
+
+	/** Write (or overwrite) one chunk of an upload */
+	void writeUploadChunk(BlobHandle upload, int index, InputStream data) throws BWFLAException;
+
+	/** List all chunks received so far */
+	BlobUpload getUpload(BlobHandle upload) throws BWFLAException;
+
+	/** Assemble chunks 0 to numChunks-1 into a new blob, verifying the optional SHA-256 digest */
+	BlobHandle commitUpload(BlobHandle upload, int numChunks, String digest) throws BWFLAException;
+
+	void abortUpload(BlobHandle upload) throws BWFLAException;
+
 	/** Perform GC of old entries */
 	void cleanup(long maxEntryAge, TimeUnit unit) throws BWFLAException;
 }
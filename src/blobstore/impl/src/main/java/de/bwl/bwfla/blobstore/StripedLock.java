@@ -0,0 +1,57 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+
+/** Fixed set of monitors, that are selected by key's hash */
+// package-private
+class StripedLock
+{
+	private final Object[] stripes;
+
+
+	public StripedLock(int size)
+	{
+		// Round up to the next power of two
+		final int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+
+		this.stripes = new Object[capacity];
+		for (int i = 0; i < capacity; ++i)
+			stripes[i] = new Object();
+	}
+
+	/** Returns the monitor for given key */
+	public Object get(String key)
+	{
+		return stripes[StripedLock.hash(key) & (stripes.length - 1)];
+	}
+
+	public int size()
+	{
+		return stripes.length;
+	}
+
+	static int hash(String key)
+	{
+		// Spread higher bits downwards, like HashMap does
+		final int hash = key.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+import de.bwl.bwfla.common.exceptions.BWFLAException;
+
+
+/** Failure of a chunked upload, caused by the client's request */
+public class UploadException extends BWFLAException
+{
+	private static final long serialVersionUID = 2387342908871263543L;
+
+	public enum Reason
+	{
+		/** Upload does not exist in the requested namespace */
+		NOT_FOUND,
+
+		/** Access token does not match the one of the upload */
+		ACCESS_DENIED,
+
+		/** Upload is concurrently being committed or aborted */
+		CONFLICT,
+
+		/** Request's parameters or uploaded data are invalid */
+		INVALID,
+
+		/** Uploaded data exceeds the configured limits */
+		TOO_LARGE
+	}
+
+	private final Reason reason;
+
+	public UploadException(Reason reason, String message)
+	{
+		super(message);
+		this.reason = reason;
+	}
+
+	public UploadException(Reason reason, String message, Throwable cause)
+	{
+		super(message, cause);
+		this.reason = reason;
+	}
+
+	public Reason getReason()
+	{
+		return reason;
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+import de.bwl.bwfla.blobstore.api.BlobUpload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+
+/**
+ * Persistent state of chunked uploads. Chunks are written to temporary files
+ * first and then renamed atomically, hence a chunk is either complete or absent
+ * and interrupted uploads can be resumed by re-sending missing chunks only.
+ * <p>
+ * Expected directory layout:
+ * <pre>
+ * &lt;BASE-DIR&gt;/
+ *     &lt;upload-id&gt;/
+ *         description.json
+ *         chunks/
+ *             &lt;index&gt;
+ * </pre>
+ */
+// package-private
+class UploadStore
+{
+	/** Name of the store's directory, must not be a valid namespace */
+	public static final String DIRNAME = ".uploads";
+
+	private final Logger log = Logger.getLogger(UploadStore.class.getName());
+
+	private final Path basedir;
+
+	/** Max. size of a single chunk in bytes */
+	private final long maxChunkSize;
+
+	/** Max. number of chunks per upload */
+	private final int maxNumChunks;
+
+	/** Max. total size of all chunks of an upload in bytes */
+	private final long maxUploadSize;
+
+
+	public UploadStore(Path basedir, long maxChunkSize, int maxNumChunks, long maxUploadSize) throws IOException
+	{
+		if (maxChunkSize < 1L || maxNumChunks < 1 || maxUploadSize < 1L)
+			throw new IllegalArgumentException("Invalid upload limits!");
+
+		this.basedir = basedir;
+		this.maxChunkSize = maxChunkSize;
+		this.maxNumChunks = maxNumChunks;
+		this.maxUploadSize = maxUploadSize;
+
+		Files.createDirectories(basedir);
+	}
+
+	/** Creates a new upload for given entry, returning upload's ID */
+	public String create(BlobStoreEntry entry) throws IOException
+	{
+		final Path dir = this.toUploadDir(entry.getId());
+		Files.createDirectories(dir.resolve("chunks"));
+		try (Writer writer = Files.newBufferedWriter(this.getDescriptionPath(dir), StandardCharsets.UTF_8)) {
+			BlobStoreEntry.write(entry, writer);
+		}
+
+		return entry.getId();
+	}
+
+	public boolean exists(String id)
+	{
+		return Files.exists(this.getDescriptionPath(this.toUploadDir(id)));
+	}
+
+	public BlobStoreEntry getEntry(String id) throws IOException
+	{
+		return BlobStoreEntry.read(this.getDescriptionPath(this.toUploadDir(id)));
+	}
+
+	public void write(String id, int index, InputStream data) throws IOException
+	{
+		this.checkChunkIndex(index);
+
+		final Path chunks = this.getChunksDir(id);
+		final Path tmpfile = chunks.resolve(index + "." + UUID.randomUUID().toString() + ".tmp");
+		try {
+			final long size = UploadStore.copy(data, tmpfile, maxChunkSize);
+
+			// Chunks written in parallel can still exceed the limit together,
+			// hence the total size is checked again when committing
+			this.checkUploadSize(this.getTotalSize(chunks, index) + size);
+
+			// Replace previous attempts to upload the same chunk
+			Files.move(tmpfile, chunks.resolve(Integer.toString(index)), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			Files.deleteIfExists(tmpfile);
+		}
+	}
+
+	/** Returns all completely received chunks of an upload */
+	public BlobUpload list(String id) throws IOException
+	{
+		final BlobUpload upload = new BlobUpload(id);
+		final List<Path> chunks = new ArrayList<>();
+		try (Stream<Path> paths = Files.list(this.getChunksDir(id))) {
+			paths.filter((path) -> !path.getFileName().toString().endsWith(".tmp"))
+					.forEach(chunks::add);
+		}
+
+		chunks.sort(Comparator.comparingInt(UploadStore::toChunkIndex));
+		for (Path chunk : chunks)
+			upload.addChunk(UploadStore.toChunkIndex(chunk), Files.size(chunk));
+
+		return upload;
+	}
+
+	/** Returns paths of the first numChunks chunks, which all must have been received */
+	public List<Path> getChunks(String id, int numChunks) throws IOException
+	{
+		if (numChunks < 1 || numChunks > maxNumChunks)
+			throw new IllegalArgumentException("Invalid number of chunks: " + numChunks);
+
+		final Path dir = this.getChunksDir(id);
+		final List<Path> chunks = new ArrayList<>(numChunks);
+		long size = 0L;
+		for (int i = 0; i < numChunks; ++i) {
+			final Path chunk = dir.resolve(Integer.toString(i));
+			if (!Files.exists(chunk))
+				throw new NoSuchFileException(chunk.toString(), null, "Chunk " + i + " is missing");
+
+			size += Files.size(chunk);
+			chunks.add(chunk);
+		}
+
+		this.checkUploadSize(size);
+		return chunks;
+	}
+
+	/** Returns a path for temporary data of an upload */
+	public Path newTempFile(String id)
+	{
+		return this.toUploadDir(id)
+				.resolve(UUID.randomUUID().toString() + ".tmp");
+	}
+
+	public void delete(String id)
+	{
+		UploadStore.delete(this.toUploadDir(id), log);
+	}
+
+	/** Returns IDs of all uploads without any activity during maxAge */
+	public List<String> findStale(long maxAge, TimeUnit unit)
+	{
+		final List<String> stale = new ArrayList<>();
+		try (Stream<Path> uploads = Files.list(basedir)) {
+			uploads.map((upload) -> upload.getFileName().toString())
+					.filter((id) -> this.isStale(id, maxAge, unit))
+					.forEach(stale::add);
+		}
+		catch (IOException error) {
+			log.log(Level.WARNING, "Listing uploads failed!\n", error);
+		}
+
+		return stale;
+	}
+
+	/** Returns true, if the upload had no activity during maxAge, else false */
+	public boolean isStale(String id, long maxAge, TimeUnit unit)
+	{
+		try {
+			// Chunks directory is modified whenever a chunk is received
+			final long mtime = Files.getLastModifiedTime(this.toUploadDir(id).resolve("chunks")).to(unit);
+			final long age = unit.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS) - mtime;
+			return age > maxAge;
+		}
+		catch (IllegalArgumentException | IOException error) {
+			// Not an upload, or committed or deleted concurrently!
+			return false;
+		}
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private Path toUploadDir(String id)
+	{
+		// Upload IDs are UUIDs, which also prevents path traversals
+		return basedir.resolve(UUID.fromString(id).toString());
+	}
+
+	private Path getChunksDir(String id) throws NoSuchFileException
+	{
+		final Path dir = this.toUploadDir(id);
+		if (!Files.exists(dir))
+			throw new NoSuchFileException(dir.toString(), null, "Upload not found");
+
+		return dir.resolve("chunks");
+	}
+
+	private Path getDescriptionPath(Path dir)
+	{
+		return dir.resolve("description.json");
+	}
+
+	private static int toChunkIndex(Path chunk)
+	{
+		return Integer.parseInt(chunk.getFileName().toString());
+	}
+
+	private void checkChunkIndex(int index)
+	{
+		if (index < 0 || index >= maxNumChunks)
+			throw new IllegalArgumentException("Invalid chunk index: " + index);
+	}
+
+	private void checkUploadSize(long size)
+	{
+		if (size > maxUploadSize)
+			throw new LimitExceededException("Upload exceeds max. size of " + maxUploadSize + " bytes");
+	}
+
+	/** Returns the total size of all received chunks, except the one with given index */
+	private long getTotalSize(Path chunks, int excluded) throws IOException
+	{
+		final String name = Integer.toString(excluded);
+		long size = 0L;
+		try (Stream<Path> paths = Files.list(chunks)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				final String filename = path.getFileName().toString();
+				if (filename.endsWith(".tmp") || filename.equals(name))
+					continue;
+
+				try {
+					size += Files.size(path);
+				}
+				catch (NoSuchFileException error) {
+					// Replaced concurrently!
+				}
+			}
+		}
+
+		return size;
+	}
+
+	/** Copies at most limit bytes into a new file, failing if more data is available */
+	private static long copy(InputStream input, Path path, long limit) throws IOException
+	{
+		final byte[] buffer = new byte[64 * 1024];
+		long size = 0L;
+		try (OutputStream output = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW)) {
+			for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
+				size += length;
+				if (size > limit)
+					throw new LimitExceededException("Chunk exceeds max. size of " + limit + " bytes");
+
+				output.write(buffer, 0, length);
+			}
+		}
+
+		return size;
+	}
+
+	private static void delete(Path dir, Logger log)
+	{
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> {
+						try {
+							Files.deleteIfExists(path);
+						}
+						catch (IOException error) {
+							log.log(Level.WARNING, "Deleting file '" + path.toString() + "' failed!\n", error);
+						}
+					});
+		}
+		catch (NoSuchFileException error) {
+			// Already deleted!
+		}
+		catch (IOException error) {
+			log.log(Level.WARNING, "Deleting upload '" + dir.toString() + "' failed!\n", error);
+		}
+	}
+
+
+	/** Thrown when an upload exceeds one of the configured limits */
+	public static class LimitExceededException extends IllegalArgumentException
+	{
+		private static final long serialVersionUID = 6163262451093824577L;
+
+		public LimitExceededException(String message)
+		{
+			super(message);
+		}
+	}
+}
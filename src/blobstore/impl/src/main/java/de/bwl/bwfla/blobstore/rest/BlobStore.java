@@ -20,8 +20,11 @@
 package de.bwl.bwfla.blobstore.rest;
 
 import de.bwl.bwfla.blobstore.BlobStoreBackend;
+import de.bwl.bwfla.blobstore.UploadException;
 import de.bwl.bwfla.blobstore.api.Blob;
+import de.bwl.bwfla.blobstore.api.BlobDescription;
 import de.bwl.bwfla.blobstore.api.BlobHandle;
+import de.bwl.bwfla.blobstore.api.BlobUpload;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
 import de.bwl.bwfla.common.services.net.HttpUtils;
 import de.bwl.bwfla.common.utils.ByteRange;
@@ -33,15 +36,26 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
@@ -81,6 +95,119 @@ public class BlobStore
 	}
 
 
+	/* ==================== Chunked Uploads ==================== */
+
+	@POST
+	@Path("/uploads/{namespace}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response createUpload(@PathParam("namespace") String namespace,
+						@QueryParam("type") String type,
+						@QueryParam("name") String name,
+						@QueryParam("description") String description,
+						@Context HttpServletRequest request)
+	{
+		final BlobDescription blob = new BlobDescription();
+		try {
+			blob.setNamespace(namespace)
+					.setType(type);
+
+			final String accessToken = request.getParameter("access_token");
+			if (accessToken != null)
+				blob.setAccessToken(accessToken);
+
+			if (name != null)
+				blob.setName(name);
+
+			if (description != null)
+				blob.setDescription(description);
+		}
+		catch (IllegalArgumentException error) {
+			throw new BadRequestException(error.getMessage(), error);
+		}
+
+		try {
+			final String id = backend.createUpload(blob);
+			return Response.status(Status.CREATED)
+					.entity(new BlobUpload(id))
+					.build();
+		}
+		catch (BWFLAException error) {
+			throw new InternalServerErrorException("Creating upload failed!", error);
+		}
+	}
+
+	@GET
+	@Path("/uploads/{namespace}/{upload}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public BlobUpload getUpload(@PathParam("namespace") String namespace,
+						@PathParam("upload") String upload,
+						@Context HttpServletRequest request)
+	{
+		try {
+			return backend.getUpload(BlobStore.toBlobHandle(request, namespace, upload));
+		}
+		catch (BWFLAException error) {
+			throw BlobStore.toUploadError("Listing upload failed!", error);
+		}
+	}
+
+	/** Chunks can be uploaded in any order and in parallel, re-uploading replaces a chunk */
+	@PUT
+	@Path("/uploads/{namespace}/{upload}/chunks/{index}")
+	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
+	public Response putUploadChunk(@PathParam("namespace") String namespace,
+						@PathParam("upload") String upload,
+						@PathParam("index") int index,
+						@Context HttpServletRequest request,
+						InputStream data)
+	{
+		try {
+			backend.putUploadChunk(BlobStore.toBlobHandle(request, namespace, upload), index, data);
+		}
+		catch (BWFLAException error) {
+			throw BlobStore.toUploadError("Uploading chunk " + index + " failed!", error);
+		}
+
+		return Response.status(Status.NO_CONTENT)
+				.build();
+	}
+
+	/** Assembles chunks 0 to count-1 into a new blob, verifying the optional SHA-256 digest */
+	@POST
+	@Path("/uploads/{namespace}/{upload}/commit")
+	@Produces(MediaType.APPLICATION_JSON)
+	public BlobHandle commitUpload(@PathParam("namespace") String namespace,
+						@PathParam("upload") String upload,
+						@QueryParam("count") int count,
+						@QueryParam("digest") String digest,
+						@Context HttpServletRequest request)
+	{
+		try {
+			return backend.commitUpload(BlobStore.toBlobHandle(request, namespace, upload), count, digest);
+		}
+		catch (BWFLAException error) {
+			throw BlobStore.toUploadError("Committing upload failed!", error);
+		}
+	}
+
+	@DELETE
+	@Path("/uploads/{namespace}/{upload}")
+	public Response abortUpload(@PathParam("namespace") String namespace,
+						@PathParam("upload") String upload,
+						@Context HttpServletRequest request)
+	{
+		try {
+			backend.abortUpload(BlobStore.toBlobHandle(request, namespace, upload));
+		}
+		catch (BWFLAException error) {
+			throw BlobStore.toUploadError("Aborting upload failed!", error);
+		}
+
+		return Response.status(Status.NO_CONTENT)
+				.build();
+	}
+
+
 	/* ==================== Internal Helpers ==================== */
 
 	private static BlobHandle toBlobHandle(HttpServletRequest request, String namespace, String id)
@@ -99,6 +226,26 @@ public class BlobStore
 		}
 	}
 
+	/** Client errors are reported as such, all other failures are server-side */
+	private static WebApplicationException toUploadError(String message, BWFLAException error)
+	{
+		if (!(error instanceof UploadException))
+			return new InternalServerErrorException(message, error);
+
+		switch (((UploadException) error).getReason()) {
+			case NOT_FOUND:
+				return new NotFoundException(message, error);
+			case ACCESS_DENIED:
+				return new ForbiddenException(message, error);
+			case CONFLICT:
+				return new ClientErrorException(message, Status.CONFLICT, error);
+			case TOO_LARGE:
+				return new ClientErrorException(message, Status.REQUEST_ENTITY_TOO_LARGE, error);
+			default:
+				return new BadRequestException(message, error);
+		}
+	}
+
 	private Response respond(String namespace, String id, HttpServletRequest request, HttpServletResponse response, boolean padded)
 	{
 		try {
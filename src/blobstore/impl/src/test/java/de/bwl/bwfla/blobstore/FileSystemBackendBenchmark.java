@@ -0,0 +1,191 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+
+import de.bwl.bwfla.blobstore.api.Blob;
+import de.bwl.bwfla.blobstore.api.BlobDescription;
+import de.bwl.bwfla.blobstore.api.BlobHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Measures the throughput of {@link FileSystemBackend} with increasing number of threads,
+ * for loads of existing blobs and for saving and deleting new ones. Loads touch more blobs
+ * than the metadata cache can hold, so that cache hits and misses are both exercised.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=de.bwl.bwfla.blobstore.FileSystemBackendBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileSystemBackendBenchmark
+{
+	private static final int[] NUM_THREADS = { 1, 2, 4, 8 };
+	private static final int NUM_NAMESPACES = 4;
+	private static final int NUM_BLOBS = 1024;
+	private static final int CACHE_CAPACITY = 256;
+	private static final int BLOB_SIZE = 4096;
+
+	@Param({ "false", "true" })
+	public boolean deduplicate;
+
+	private Path basedir;
+	private FileSystemBackend backend;
+	private List<BlobHandle> handles;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		// Per-operation logging would dominate the measurements
+		Logger.getLogger(FileSystemBackend.class.getName()).setLevel(Level.WARNING);
+
+		basedir = Files.createTempDirectory("blobstore-");
+		backend = new FileSystemBackend(basedir.toString(), deduplicate, CACHE_CAPACITY);
+		handles = new ArrayList<>(NUM_BLOBS);
+		for (int i = 0; i < NUM_BLOBS; ++i) {
+			final byte[] data = new byte[BLOB_SIZE];
+			new Random(i).nextBytes(data);
+			handles.add(this.save("ns" + (i % NUM_NAMESPACES), data));
+		}
+	}
+
+	@TearDown
+	public void teardown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(basedir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public Blob load() throws Exception
+	{
+		final BlobHandle handle = handles.get(ThreadLocalRandom.current().nextInt(handles.size()));
+		return backend.load(handle);
+	}
+
+	@Benchmark
+	public BlobHandle saveAndDelete() throws Exception
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		// Every 4th blob has shared content, to exercise deduplication
+		final byte[] data = new byte[BLOB_SIZE];
+		if (random.nextInt(4) == 0)
+			new Random(random.nextInt(16)).nextBytes(data);
+		else random.nextBytes(data);
+
+		final BlobHandle handle = this.save("ns" + random.nextInt(NUM_NAMESPACES), data);
+		backend.delete(handle);
+		return handle;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		for (int numThreads : NUM_THREADS) {
+			final OptionsBuilder options = new OptionsBuilder();
+			options.include(FileSystemBackendBenchmark.class.getSimpleName());
+			options.threads(numThreads);
+			new Runner(options.build()).run();
+		}
+	}
+
+
+	private BlobHandle save(String namespace, byte[] data) throws Exception
+	{
+		final DataHandler handler = new DataHandler(new ByteArrayDataSource(data));
+		final BlobDescription description = new BlobDescription(namespace, "token", ".raw", handler)
+				.setName("blob")
+				.setDescription("benchmark");
+
+		return backend.save(description);
+	}
+
+	private static class ByteArrayDataSource implements DataSource
+	{
+		private final byte[] data;
+
+		public ByteArrayDataSource(byte[] data)
+		{
+			this.data = data;
+		}
+
+		@Override
+		public InputStream getInputStream()
+		{
+			return new ByteArrayInputStream(data);
+		}
+
+		@Override
+		public OutputStream getOutputStream()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getContentType()
+		{
+			return "application/octet-stream";
+		}
+
+		@Override
+		public String getName()
+		{
+			return "data";
+		}
+	}
+}
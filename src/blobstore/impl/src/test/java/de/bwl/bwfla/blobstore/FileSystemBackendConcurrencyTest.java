@@ -0,0 +1,229 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bwl.bwfla.blobstore.api.Blob;
+import de.bwl.bwfla.blobstore.api.BlobDescription;
+import de.bwl.bwfla.blobstore.api.BlobHandle;
+import de.bwl.bwfla.common.exceptions.BWFLAException;
+
+
+/**
+ * Concurrency test for {@link FileSystemBackend}, running a mix of uploads, downloads
+ * and deletions on multiple threads and checking the data returned by the backend.
+ */
+public class FileSystemBackendConcurrencyTest
+{
+	private static final int NUM_THREADS = 4;
+	private static final int NUM_BLOBS_PER_THREAD = 100;
+	private static final int NUM_LOADS_PER_BLOB = 4;
+	private static final int CACHE_CAPACITY = 64;
+	private static final int BLOB_SIZE = 4096;
+
+	private Path basedir;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		basedir = Files.createTempDirectory("blobstore-");
+
+		// Per-operation logging is too verbose here
+		Logger.getLogger(FileSystemBackend.class.getName()).setLevel(Level.WARNING);
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(basedir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception
+	{
+		final FileSystemBackend backend = new FileSystemBackend(basedir.toString(), false, CACHE_CAPACITY);
+		this.run(backend);
+	}
+
+	@Test
+	public void testConcurrentAccessWithDeduplication() throws Exception
+	{
+		final FileSystemBackend backend = new FileSystemBackend(basedir.toString(), true, CACHE_CAPACITY);
+		this.run(backend);
+
+		// Shared content must have been stored only once
+		final ContentStore store = backend.getContentStore();
+		Assert.assertTrue("No content was deduplicated", store.getNumObjectsReused() > 0);
+		Assert.assertTrue(store.getNumObjectsStored() < NUM_THREADS * NUM_BLOBS_PER_THREAD);
+	}
+
+
+	private void run(FileSystemBackend backend) throws Exception
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			final List<Callable<Void>> workers = new ArrayList<>(NUM_THREADS);
+			for (int i = 0; i < NUM_THREADS; ++i) {
+				// Pairs of threads share a namespace
+				final String namespace = "ns" + (i % 2);
+				workers.add(() -> this.work(backend, namespace));
+			}
+
+			for (Future<Void> result : executor.invokeAll(workers))
+				result.get();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		// All blobs were deleted, hence nothing should be cached anymore
+		final BlobCache cache = backend.getCache();
+		Assert.assertTrue("Cache exceeds its capacity: " + cache, cache.size() <= cache.capacity());
+		Assert.assertEquals(0, cache.size());
+	}
+
+	private Void work(FileSystemBackend backend, String namespace) throws Exception
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final List<BlobHandle> handles = new ArrayList<>(NUM_BLOBS_PER_THREAD);
+		final List<byte[]> contents = new ArrayList<>(NUM_BLOBS_PER_THREAD);
+
+		for (int i = 0; i < NUM_BLOBS_PER_THREAD; ++i) {
+			// Every 4th blob has the same content in all threads, to exercise deduplication
+			final byte[] data = new byte[BLOB_SIZE];
+			if (i % 4 == 0)
+				new Random(i).nextBytes(data);
+			else random.nextBytes(data);
+
+			final DataHandler handler = new DataHandler(new ByteArrayDataSource(data));
+			final BlobDescription description = new BlobDescription(namespace, "token", ".raw", handler)
+					.setName("blob-" + i)
+					.setDescription("concurrency-test");
+
+			handles.add(backend.save(description));
+			contents.add(data);
+
+			// Interleave reads of previously saved blobs
+			for (int j = 0; j < NUM_LOADS_PER_BLOB; ++j) {
+				final int index = random.nextInt(handles.size());
+				FileSystemBackendConcurrencyTest.check(backend, handles.get(index), contents.get(index));
+			}
+		}
+
+		// Delete every other blob, the remaining ones must stay intact
+		for (int i = 0; i < handles.size(); i += 2)
+			backend.delete(handles.get(i));
+
+		for (int i = 0; i < handles.size(); ++i) {
+			if (i % 2 != 0) {
+				FileSystemBackendConcurrencyTest.check(backend, handles.get(i), contents.get(i));
+				continue;
+			}
+
+			try {
+				backend.load(handles.get(i));
+				Assert.fail("Deleted blob " + handles.get(i).getId() + " is still loadable");
+			}
+			catch (BWFLAException error) {
+				// Expected!
+			}
+		}
+
+		for (int i = 1; i < handles.size(); i += 2)
+			backend.delete(handles.get(i));
+
+		return null;
+	}
+
+	private static void check(FileSystemBackend backend, BlobHandle handle, byte[] expected) throws Exception
+	{
+		final Blob blob = backend.load(handle);
+		Assert.assertEquals(expected.length, blob.getSize());
+
+		final ByteArrayOutputStream actual = new ByteArrayOutputStream(expected.length);
+		blob.getData().writeTo(actual);
+		Assert.assertArrayEquals("Content of blob " + handle.getId() + " differs", expected, actual.toByteArray());
+	}
+
+	private static class ByteArrayDataSource implements DataSource
+	{
+		private final byte[] data;
+
+		public ByteArrayDataSource(byte[] data)
+		{
+			this.data = data;
+		}
+
+		@Override
+		public InputStream getInputStream()
+		{
+			return new ByteArrayInputStream(data);
+		}
+
+		@Override
+		public OutputStream getOutputStream()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getContentType()
+		{
+			return "application/octet-stream";
+		}
+
+		@Override
+		public String getName()
+		{
+			return "data";
+		}
+	}
+}
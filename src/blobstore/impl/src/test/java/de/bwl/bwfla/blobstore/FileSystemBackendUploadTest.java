@@ -0,0 +1,295 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.blobstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bwl.bwfla.blobstore.api.Blob;
+import de.bwl.bwfla.blobstore.api.BlobDescription;
+import de.bwl.bwfla.blobstore.api.BlobHandle;
+import de.bwl.bwfla.common.exceptions.BWFLAException;
+
+
+public class FileSystemBackendUploadTest
+{
+	private static final String NAMESPACE = "uploads";
+	private static final String TOKEN = "secret";
+
+	private Path basedir;
+	private FileSystemBackend backend;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		basedir = Files.createTempDirectory("blobstore-");
+		backend = new FileSystemBackend(basedir.toString(), false, 16);
+
+		// Expected failures are logged as warnings
+		Logger.getLogger(FileSystemBackend.class.getName()).setLevel(Level.SEVERE);
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(basedir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testCommitChunks() throws Exception
+	{
+		final BlobHandle upload = this.create();
+		backend.writeUploadChunk(upload, 1, FileSystemBackendUploadTest.toStream("world"));
+		backend.writeUploadChunk(upload, 0, FileSystemBackendUploadTest.toStream("hello "));
+		Assert.assertEquals(2, backend.getUpload(upload).getChunks().size());
+
+		final BlobHandle handle = backend.commitUpload(upload, 2, null);
+		final Blob blob = backend.load(handle);
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		blob.getData().writeTo(data);
+		Assert.assertEquals("hello world", new String(data.toByteArray(), StandardCharsets.UTF_8));
+
+		// Committed uploads are gone
+		this.expect(UploadException.Reason.NOT_FOUND, () -> backend.getUpload(upload));
+	}
+
+	@Test
+	public void testRejectForeignNamespace() throws Exception
+	{
+		final BlobHandle upload = this.create();
+		final BlobHandle foreign = new BlobHandle("other", upload.getId(), TOKEN);
+		this.expect(UploadException.Reason.NOT_FOUND, () -> backend.getUpload(foreign));
+		this.expect(UploadException.Reason.NOT_FOUND, () -> backend.writeUploadChunk(foreign, 0, FileSystemBackendUploadTest.toStream("x")));
+		this.expect(UploadException.Reason.NOT_FOUND, () -> backend.commitUpload(foreign, 1, null));
+		this.expect(UploadException.Reason.NOT_FOUND, () -> backend.abortUpload(foreign));
+	}
+
+	@Test
+	public void testRejectInvalidToken() throws Exception
+	{
+		final BlobHandle upload = this.create();
+		final BlobHandle stolen = new BlobHandle(NAMESPACE, upload.getId(), "guessed");
+		this.expect(UploadException.Reason.ACCESS_DENIED, () -> backend.getUpload(stolen));
+		this.expect(UploadException.Reason.ACCESS_DENIED, () -> backend.writeUploadChunk(stolen, 0, FileSystemBackendUploadTest.toStream("x")));
+		this.expect(UploadException.Reason.ACCESS_DENIED, () -> backend.commitUpload(stolen, 1, null));
+		this.expect(UploadException.Reason.ACCESS_DENIED, () -> backend.abortUpload(stolen));
+
+		// Upload must still be usable by its owner
+		backend.abortUpload(upload);
+		this.expect(UploadException.Reason.NOT_FOUND, () -> backend.abortUpload(upload));
+	}
+
+	@Test
+	public void testRejectInvalidRequests() throws Exception
+	{
+		final BlobHandle upload = this.create();
+		this.expect(UploadException.Reason.INVALID, () -> backend.writeUploadChunk(upload, -1, FileSystemBackendUploadTest.toStream("x")));
+		this.expect(UploadException.Reason.INVALID, () -> backend.commitUpload(upload, 1, null));
+
+		backend.writeUploadChunk(upload, 0, FileSystemBackendUploadTest.toStream("x"));
+		this.expect(UploadException.Reason.INVALID, () -> backend.commitUpload(upload, 1, "0000"));
+	}
+
+	@Test
+	public void testRejectOversizedChunk() throws Exception
+	{
+		backend = new FileSystemBackend(basedir.toString(), false, 16, 8L, 4, 12L);
+
+		final BlobHandle upload = this.create();
+		this.expect(UploadException.Reason.TOO_LARGE, () -> backend.writeUploadChunk(upload, 0, FileSystemBackendUploadTest.toStream("123456789")));
+		Assert.assertTrue(backend.getUpload(upload).getChunks().isEmpty());
+
+		backend.writeUploadChunk(upload, 0, FileSystemBackendUploadTest.toStream("12345678"));
+		Assert.assertEquals(1, backend.getUpload(upload).getChunks().size());
+	}
+
+	@Test
+	public void testRejectOversizedUpload() throws Exception
+	{
+		backend = new FileSystemBackend(basedir.toString(), false, 16, 8L, 4, 12L);
+
+		final BlobHandle upload = this.create();
+		backend.writeUploadChunk(upload, 0, FileSystemBackendUploadTest.toStream("12345678"));
+		backend.writeUploadChunk(upload, 1, FileSystemBackendUploadTest.toStream("1234"));
+		this.expect(UploadException.Reason.TOO_LARGE, () -> backend.writeUploadChunk(upload, 2, FileSystemBackendUploadTest.toStream("1")));
+
+		// Replaced chunks do not count twice
+		backend.writeUploadChunk(upload, 1, FileSystemBackendUploadTest.toStream("abcd"));
+		final Blob blob = backend.load(backend.commitUpload(upload, 2, null));
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		blob.getData().writeTo(data);
+		Assert.assertEquals("12345678abcd", new String(data.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRejectTooManyChunks() throws Exception
+	{
+		backend = new FileSystemBackend(basedir.toString(), false, 16, 8L, 4, 12L);
+
+		final BlobHandle upload = this.create();
+		this.expect(UploadException.Reason.INVALID, () -> backend.writeUploadChunk(upload, 4, FileSystemBackendUploadTest.toStream("x")));
+		this.expect(UploadException.Reason.INVALID, () -> backend.commitUpload(upload, 5, null));
+	}
+
+	@Test
+	public void testCommitChecksTotalSize() throws Exception
+	{
+		final BlobHandle upload = this.create();
+		backend.writeUploadChunk(upload, 0, FileSystemBackendUploadTest.toStream("12345678"));
+		backend.writeUploadChunk(upload, 1, FileSystemBackendUploadTest.toStream("12345678"));
+
+		// Limits could have been lowered, or chunks written in parallel
+		backend = new FileSystemBackend(basedir.toString(), false, 16, 8L, 4, 12L);
+		this.expect(UploadException.Reason.TOO_LARGE, () -> backend.commitUpload(upload, 2, null));
+	}
+
+	@Test
+	public void testCleanupRemovesStaleUploads() throws Exception
+	{
+		final BlobHandle stale = this.create();
+		final BlobHandle fresh = this.create();
+		this.age(stale);
+
+		backend.cleanup(1L, TimeUnit.HOURS);
+		this.expect(UploadException.Reason.NOT_FOUND, () -> backend.getUpload(stale));
+		Assert.assertTrue(backend.getUpload(fresh).getChunks().isEmpty());
+	}
+
+	@Test
+	public void testCleanupSkipsActiveUploads() throws Exception
+	{
+		final BlobHandle upload = this.create();
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch resume = new CountDownLatch(1);
+		final InputStream data = new InputStream() {
+			private int remaining = 4;
+
+			@Override
+			public int read() throws IOException
+			{
+				if (remaining == 4) {
+					reading.countDown();
+					try {
+						resume.await();
+					}
+					catch (InterruptedException error) {
+						throw new IOException(error);
+					}
+				}
+
+				return (remaining-- > 0) ? 'x' : -1;
+			}
+		};
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<?> writer = executor.submit(() -> {
+				backend.writeUploadChunk(upload, 0, data);
+				return null;
+			});
+
+			// Upload looks stale, while its chunk is still being received
+			reading.await();
+			this.age(upload);
+			backend.cleanup(1L, TimeUnit.HOURS);
+
+			resume.countDown();
+			writer.get();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(1, backend.getUpload(upload).getChunks().size());
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	@FunctionalInterface
+	private interface Operation
+	{
+		void run() throws BWFLAException;
+	}
+
+	private BlobHandle create() throws BWFLAException
+	{
+		final BlobDescription description = new BlobDescription()
+				.setNamespace(NAMESPACE)
+				.setAccessToken(TOKEN)
+				.setType(".raw");
+
+		return new BlobHandle(NAMESPACE, backend.createUpload(description), TOKEN);
+	}
+
+	private void expect(UploadException.Reason reason, Operation operation)
+	{
+		try {
+			operation.run();
+			Assert.fail("Expected failure with reason " + reason);
+		}
+		catch (UploadException error) {
+			Assert.assertEquals(reason, error.getReason());
+		}
+		catch (BWFLAException error) {
+			Assert.fail("Unexpected failure: " + error.getMessage());
+		}
+	}
+
+	/** Makes the upload look like it had no activity for a day */
+	private void age(BlobHandle upload) throws IOException
+	{
+		final Path chunks = basedir.resolve(UploadStore.DIRNAME)
+				.resolve(upload.getId())
+				.resolve("chunks");
+
+		final long mtime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1L);
+		Files.setLastModifiedTime(chunks, FileTime.fromMillis(mtime));
+	}
+
+	private static ByteArrayInputStream toStream(String data)
+	{
+		return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+	}
+}
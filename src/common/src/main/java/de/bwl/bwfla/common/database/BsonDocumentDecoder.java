@@ -0,0 +1,170 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.common.database;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.RawBsonDocument;
+import org.bson.io.ByteBufferBsonInput;
+
+import java.io.IOException;
+
+
+/**
+ * Decodes raw BSON documents into Jackson tokens, without building an intermediate
+ * {@link org.bson.Document} and without serializing it to JSON text and parsing it again.
+ */
+final class BsonDocumentDecoder
+{
+	private final TokenBuffer tokens;
+	private final String classkey;
+	private String classname;
+
+	private BsonDocumentDecoder(String classkey)
+	{
+		this.tokens = new TokenBuffer(null, false);
+		this.classkey = classkey;
+		this.classname = null;
+	}
+
+	/**
+	 * Decode given document.
+	 *
+	 * @param document The raw document to decode
+	 * @param classkey The top-level key of the class name, or null
+	 * @return The decoded document or null, if it contains values not supported by this decoder
+	 */
+	public static BsonDocumentDecoder decode(RawBsonDocument document, String classkey)
+	{
+		final BsonDocumentDecoder decoder = new BsonDocumentDecoder(classkey);
+		try (BsonReader reader = new BsonBinaryReader(new ByteBufferBsonInput(document.getByteBuffer()))) {
+			if (!decoder.copyDocument(reader, true))
+				return null;
+		}
+		catch (IOException error) {
+			// Should never happen, since tokens are buffered in memory!
+			return null;
+		}
+
+		return decoder;
+	}
+
+	/** Returns the class name, found at the top-level class key */
+	public String getClassName()
+	{
+		return classname;
+	}
+
+	/** Returns a new parser over the decoded tokens */
+	public JsonParser parser()
+	{
+		return tokens.asParser();
+	}
+
+
+	/* ==================== Internal Helpers ==================== */
+
+	private boolean copyDocument(BsonReader reader, boolean toplevel) throws IOException
+	{
+		reader.readStartDocument();
+		tokens.writeStartObject();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			final String name = reader.readName();
+			if (toplevel && name.equals(classkey) && reader.getCurrentBsonType() == BsonType.STRING) {
+				classname = reader.readString();
+				tokens.writeStringField(name, classname);
+				continue;
+			}
+
+			tokens.writeFieldName(name);
+			if (!this.copyValue(reader))
+				return false;
+		}
+
+		reader.readEndDocument();
+		tokens.writeEndObject();
+		return true;
+	}
+
+	private boolean copyArray(BsonReader reader) throws IOException
+	{
+		reader.readStartArray();
+		tokens.writeStartArray();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			if (!this.copyValue(reader))
+				return false;
+		}
+
+		reader.readEndArray();
+		tokens.writeEndArray();
+		return true;
+	}
+
+	private boolean copyValue(BsonReader reader) throws IOException
+	{
+		final JsonGenerator output = tokens;
+		switch (reader.getCurrentBsonType())
+		{
+			case DOCUMENT:
+				return this.copyDocument(reader, false);
+
+			case ARRAY:
+				return this.copyArray(reader);
+
+			case STRING:
+				output.writeString(reader.readString());
+				return true;
+
+			case INT32:
+				output.writeNumber(reader.readInt32());
+				return true;
+
+			case INT64:
+				output.writeNumber(reader.readInt64());
+				return true;
+
+			case DOUBLE:
+				output.writeNumber(reader.readDouble());
+				return true;
+
+			case DECIMAL128:
+				output.writeNumber(reader.readDecimal128().bigDecimalValue());
+				return true;
+
+			case BOOLEAN:
+				output.writeBoolean(reader.readBoolean());
+				return true;
+
+			case NULL:
+				reader.readNull();
+				output.writeNull();
+				return true;
+
+			default:
+				// Dates, binaries, object-ids etc. are rendered specially
+				// as JSON text, leave them to the JSON-based fallback!
+				return false;
+		}
+	}
+}
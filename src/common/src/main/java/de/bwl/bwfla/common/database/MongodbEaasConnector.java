@@ -28,6 +28,7 @@ import com.mongodb.client.*;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
@@ -35,7 +36,10 @@ import de.bwl.bwfla.common.utils.jaxb.JaxbType;
 import org.apache.tamaya.Configuration;
 import org.apache.tamaya.ConfigurationProvider;
 import org.bson.BSON;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
 import org.bson.conversions.Bson;
 
 import javax.annotation.PostConstruct;
@@ -43,6 +47,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.xml.bind.JAXBException;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.UnknownHostException;
 import java.time.Instant;
 import java.util.*;
@@ -50,6 +55,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -57,6 +63,15 @@ import java.util.stream.StreamSupport;
 @ApplicationScoped
 public class MongodbEaasConnector {
 
+	private static final String DEFAULT_CLASS_PACKAGE = "de.bwl.bwfla.emil.datatypes.";
+	private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+	/** Number of documents fetched from the server per cursor round-trip */
+	private static final int CURSOR_BATCH_SIZE = 256;
+
+	/** Cache for resolved classes of stored objects, referenced weakly to not prevent their unloading */
+	private static final Map<String, WeakReference<Class<?>>> CLASSES = new ConcurrentHashMap<>();
+
 	private final Logger log = Logger.getLogger(this.getClass().getName());
 	private final Map<String, DatabaseInstance> instances = new ConcurrentHashMap<>();
 	private MongoClient mongoClient = null;
@@ -98,18 +113,19 @@ public class MongodbEaasConnector {
 		 */
 		public <T extends JaxbType> T getJaxbObject(String collectionName, String fvalue, String fkey, Class<T> klass) throws BWFLAException {
 
-			final MongoCollection<Document> collection = db.getCollection(collectionName);
+			final MongoCollection<RawBsonDocument> collection = db.getCollection(collectionName, RawBsonDocument.class);
 			final Bson filter = Filters.eq(fkey, fvalue);
 
 			// Remove internal _id field in json (internal unremovable key in database, next step might be to store envId as _id)
-			final Document result = collection.find(filter)
+			final RawBsonDocument result = collection.find(filter)
 					.projection(Projections.excludeId())
 					.first();
 
 			if (result == null)
 				throw new NoSuchElementException();
 
-			return T.fromJsonValueWithoutRoot(result.toJson(), klass);
+			final T object = this.decode(BsonDocumentDecoder.decode(result, null), klass);
+			return (object != null) ? object : T.fromJsonValueWithoutRoot(result.toJson(), klass);
 		}
 
 		/**
@@ -156,33 +172,22 @@ public class MongodbEaasConnector {
 		 */
 		public <T extends JaxbType> T getObjectWithClassFromDatabaseKey(String collectionName, String classNameKey, String fvalue, String fkey) throws BWFLAException {
 
-			final MongoCollection<Document> collection = db.getCollection(collectionName);
+			final MongoCollection<RawBsonDocument> collection = db.getCollection(collectionName, RawBsonDocument.class);
 			final Bson filter = Filters.eq(fkey, fvalue);
 
 			// Remove internal _id field in json (internal unremovable key in database, next step might be to store envId as _id)
-			final Document result = collection.find(filter)
+			final RawBsonDocument result = collection.find(filter)
 					.projection(Projections.excludeId())
 					.first();
 
 			if (result == null)
 				throw new NoSuchElementException();
 
-			String classname = (String) result.get(classNameKey);
-			Class<T> klass = null;
 			try {
-				klass = (Class<T>) Class.forName(classname);
-				return T.fromJsonValueWithoutRoot(result.toJson(), klass);
+				return this.decode(result, classNameKey);
 			}
 			catch (ClassNotFoundException e) {
-				classname = "de.bwl.bwfla.emil.datatypes." + classname;
-				try {
-					klass = (Class<T>) Class.forName(classname);
-					return T.fromJsonValueWithoutRoot(result.toJson(), klass);
-				} catch (ClassNotFoundException e1) {
-					throw new BWFLAException("failed to create object from JSON");
-				}
-			} catch (BWFLAException e) {
-				return checkForDeprecatedData(result, klass, e);
+				throw new BWFLAException("failed to create object from JSON");
 			}
 		}
 
@@ -199,38 +204,10 @@ public class MongodbEaasConnector {
 		 * @throws JAXBException
 		 */
 		public <T extends JaxbType> ArrayList<T> getObjectsWithClassFromDatabaseKey(String collectionName, String classNameDBKey) throws BWFLAException {
-
-			// TODO: the results can be pretty big, so here we should return a streaming result!
-
-			final MongoCollection<Document> collection = db.getCollection(collectionName);
-
-			// Remove internal _id field in json (internal unremovable key in database, next step might be to store envId as _id)
-			final FindIterable<Document> results = collection.find()
-					.projection(Projections.excludeId());
-
-			final ArrayList<T> objects = new ArrayList<>();
-			for (Document result : results) {
-				String classname = (String) result.get(classNameDBKey);
-				Class<T> klass = null;
-				try {
-					klass = (Class<T>) Class.forName(classname);
-					objects.add(T.fromJsonValueWithoutRoot(result.toJson(), klass));
-				}
-				catch (ClassNotFoundException e) {
-					classname = "de.bwl.bwfla.emil.datatypes." + classname;
-					try {
-						klass = (Class<T>) Class.forName(classname);
-						objects.add(T.fromJsonValueWithoutRoot(result.toJson(), klass));
-					} catch (ClassNotFoundException e1) {
-						e1.printStackTrace();
-						continue;
-					}
-				}
-				catch (BWFLAException e1){
-					objects.add(checkForDeprecatedData(result, klass, e1));
-				}
+			// NOTE: prefer streaming with findDecodable() directly, when results can be big!
+			try (Stream<T> objects = this.findDecodable(collectionName, new FilterBuilder(), classNameDBKey)) {
+				return objects.collect(Collectors.toCollection(ArrayList::new));
 			}
-			return objects;
 		}
 
 
@@ -278,20 +255,36 @@ public class MongodbEaasConnector {
 		 */
 		@Deprecated
 		public <T extends JaxbType> ArrayList<T> getJaxbObjects(String collectionName, String key, Class<T> klass) throws JAXBException {
+			try (Stream<T> objects = this.findJaxbObjects(collectionName, key, klass)) {
+				return objects.collect(Collectors.toCollection(ArrayList::new));
+			}
+			catch (MongoException error) {
+				if (error.getCause() instanceof JAXBException)
+					throw (JAXBException) error.getCause();
 
-			// TODO: the results can be pretty big, so here we should return a streaming result!
+				throw error;
+			}
+		}
 
+		/**
+		 * Deprecated method, which is only used for importing deprecated database elements.
+		 * Stream Jaxb objects, stored directly under the given key, from database.
+		 */
+		@Deprecated
+		public <T extends JaxbType> Stream<T> findJaxbObjects(String collectionName, String key, Class<T> klass) {
 			final MongoCollection<Document> collection = db.getCollection(collectionName);
-			final Bson filter = Filters.exists(key);
-
-			final FindIterable<Document> results = collection.find(filter)
-					.projection(Projections.excludeId());
-
-			final ArrayList<T> objects = new ArrayList<>();
-			for (Document result : results)
-				objects.add(T.fromJsonValue(result.toJson(), klass));
+			final FindIterable<Document> results = collection.find(Filters.exists(key))
+					.projection(Projections.excludeId())
+					.batchSize(CURSOR_BATCH_SIZE);
 
-			return objects;
+			return this.stream(results, (Document document) -> {
+				try {
+					return T.fromJsonValue(document.toJson(), klass);
+				}
+				catch (JAXBException e) {
+					throw new MongoException("Deserializing document failed!", e);
+				}
+			});
 		}
 
 
@@ -323,39 +316,13 @@ public class MongodbEaasConnector {
 		 * @throws JAXBException
 		 */
 		public <T extends JaxbType> ArrayList<T> getRootlessJaxbObjects(String collectionName, String fvalue, String fkey, String classNameDBKey) throws BWFLAException {
+			// NOTE: prefer streaming with findDecodable() directly, when results can be big!
+			final FilterBuilder filter = new FilterBuilder()
+					.eq(fkey, fvalue);
 
-			// TODO: the results can be pretty big, so here we should return a streaming result!
-
-			final MongoCollection<Document> collection = db.getCollection(collectionName);
-			final Bson filter = Filters.eq(fkey, fvalue);
-
-			final FindIterable<Document> results = collection.find(filter)
-					.projection(Projections.excludeId());
-
-			final ArrayList<T> objects = new ArrayList<>();
-			for (Document result : results) {
-				String classname = (String) result.get(classNameDBKey);
-				Class<T> klass = null;
-				try {
-					klass = (Class<T>) Class.forName(classname);
-					objects.add(T.fromJsonValueWithoutRoot(result.toJson(), klass));
-				} catch (ClassNotFoundException e) {
-					classname = "de.bwl.bwfla.emil.datatypes." + classname;
-					try {
-						klass = (Class<T>) Class.forName(classname);
-						objects.add(T.fromJsonValueWithoutRoot(result.toJson(), klass));
-					}
-					catch (ClassNotFoundException e1)
-					{
-						e1.printStackTrace();
-						continue;
-					}
-				}
-				catch (BWFLAException e1){
-					objects.add(checkForDeprecatedData(result, klass, e1));
-				}
+			try (Stream<T> objects = this.findDecodable(collectionName, filter, classNameDBKey)) {
+				return objects.collect(Collectors.toCollection(ArrayList::new));
 			}
-			return objects;
 		}
 
 		public void createIndex(String collectionName, String key) throws BWFLAException {
@@ -420,73 +387,82 @@ public class MongodbEaasConnector {
 
 		public <T extends JaxbType> Stream<T> find(String colname, FilterBuilder filter, String clazzkey)
 		{
-			final Function<Document, T> mapper = (document) -> {
-
-				Class<T> clazz = null;
-				try {
-					String className = document.getString(clazzkey);
-					if(className == null)
-						throw new ClassNotFoundException();
-					clazz = (Class<T>) Class.forName(className);
-				} catch (ClassNotFoundException e) {
-					try {
-						clazz = (Class<T>) Class.forName("de.bwl.bwfla.emil.datatypes." + document.getString(clazzkey));
-					} catch (ClassNotFoundException e1) {
-						e1.printStackTrace();
-						throw new MongoException("Deserializing document failed!", e1);
-					}
-				}
+			// NOTE: The mandatory field '_id' is removed from returned documents
+			final MongoCollection<RawBsonDocument> collection = db.getCollection(colname, RawBsonDocument.class);
+			final FindIterable<RawBsonDocument> results = collection.find(filter.build())
+					.projection(Projections.excludeId())
+					.batchSize(CURSOR_BATCH_SIZE);
 
-				try {
-					return T.fromJsonValueWithoutRoot(document.toJson(), clazz);
-				} catch (BWFLAException e1) {
-					return checkForDeprecatedData(document, clazz, e1);
-				}
-			};
+			return this.stream(results, clazzkey);
+		}
 
+		/**
+		 * Like {@link #find(String, FilterBuilder, String)}, but documents that cannot be
+		 * decoded are logged and skipped, instead of failing the whole stream.
+		 */
+		public <T extends JaxbType> Stream<T> findDecodable(String colname, FilterBuilder filter, String clazzkey)
+		{
 			// NOTE: The mandatory field '_id' is removed from returned documents
-			final MongoCollection<Document> collection = db.getCollection(colname);
-			final Spliterator<T> spliterator = collection.find(filter.build())
+			final MongoCollection<RawBsonDocument> collection = db.getCollection(colname, RawBsonDocument.class);
+			final FindIterable<RawBsonDocument> results = collection.find(filter.build())
 					.projection(Projections.excludeId())
-					.map(mapper)
-					.spliterator();
+					.batchSize(CURSOR_BATCH_SIZE);
 
-			return StreamSupport.stream(spliterator, false);
+			final Stream<T> objects = this.stream(results, this.<T>lenientDecoder(colname, clazzkey));
+			return objects.filter(Objects::nonNull);
 		}
 
 		public <T extends JaxbType> Stream<T> find(String colname, int offset, int maxcount, FilterBuilder filter, String clazzkey)
 		{
-			final Function<Document, T> mapper = (document) -> {
+			// NOTE: The mandatory field '_id' is removed from returned documents
+			final MongoCollection<RawBsonDocument> collection = db.getCollection(colname, RawBsonDocument.class);
+			final FindIterable<RawBsonDocument> results = collection.find(filter.build())
+					.projection(Projections.excludeId())
+					.batchSize(CURSOR_BATCH_SIZE)
+					.skip(offset)
+					.limit(maxcount);
 
-				Class<T> clazz = null;
-				try {
-					clazz = (Class<T>) Class.forName(document.getString(clazzkey));
-				} catch (ClassNotFoundException e) {
-					try {
-						clazz = (Class<T>) Class.forName("de.bwl.bwfla.emil.datatypes." + document.getString(clazzkey));
-					} catch (ClassNotFoundException e1) {
-						e1.printStackTrace();
-						throw new MongoException("Deserializing document failed!", e1);
-					}
-				}
+			return this.stream(results, clazzkey);
+		}
 
-				try {
-					return T.fromJsonValueWithoutRoot(document.toJson(), clazz);
-				} catch (BWFLAException e1) {
-					return checkForDeprecatedData(document, clazz, e1);
-				}
-			};
+		/**
+		 * Find at most maxcount documents, ordered by the given (indexed and unique) key.
+		 * Unlike offset-based paging, the cost of each page does not grow with its position,
+		 * since the next page is requested by passing the key of the last returned element.
+		 *
+		 * @param after The key of the last element of the previous page, or null for the first page.
+		 */
+		public <T extends JaxbType> Stream<T> find(String colname, String sortkey, String after, int maxcount, FilterBuilder filter, String clazzkey)
+		{
+			// NOTE: a limit of 0 means "no limit" for MongoDB!
+			if (maxcount <= 0)
+				return Stream.empty();
 
 			// NOTE: The mandatory field '_id' is removed from returned documents
-			final MongoCollection<Document> collection = db.getCollection(colname);
-			final Spliterator<T> spliterator = collection.find(filter.build())
+			final MongoCollection<RawBsonDocument> collection = db.getCollection(colname, RawBsonDocument.class);
+			final FindIterable<RawBsonDocument> results = collection.find(MongodbEaasConnector.page(filter, sortkey, after).build())
 					.projection(Projections.excludeId())
-					.skip(offset)
-					.limit(maxcount)
-					.map(mapper)
-					.spliterator();
+					.sort(Sorts.ascending(sortkey))
+					.batchSize(MongodbEaasConnector.getPageBatchSize(maxcount))
+					.limit(maxcount);
+
+			return this.stream(results, clazzkey);
+		}
+
+		/** Streams decoded documents from a live cursor, which is closed together with the returned stream. */
+		private <T extends JaxbType> Stream<T> stream(FindIterable<RawBsonDocument> results, String clazzkey)
+		{
+			return this.stream(results, this.<T>decoder(clazzkey));
+		}
+
+		private <D, T> Stream<T> stream(FindIterable<D> results, Function<D, T> decoder)
+		{
+			final MongoCursor<T> cursor = results.map(decoder)
+					.iterator();
 
-			return StreamSupport.stream(spliterator, false);
+			final Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED);
+			return StreamSupport.stream(spliterator, false)
+					.onClose(cursor::close);
 		}
 
 		public long count(String colname)
@@ -510,6 +486,71 @@ public class MongodbEaasConnector {
 			log.info("ensure timestamp: " + collectionName + " modified items: " + result.getModifiedCount());
 		}
 
+		private <T extends JaxbType> Function<RawBsonDocument, T> decoder(String clazzkey)
+		{
+			return (document) -> {
+				try {
+					return this.decode(document, clazzkey);
+				}
+				catch (ClassNotFoundException e) {
+					e.printStackTrace();
+					throw new MongoException("Deserializing document failed!", e);
+				}
+			};
+		}
+
+		/** Returns a decoder, that logs invalid documents and returns null for them */
+		private <T extends JaxbType> Function<RawBsonDocument, T> lenientDecoder(String colname, String clazzkey)
+		{
+			final Function<RawBsonDocument, T> decoder = this.decoder(clazzkey);
+			return (document) -> {
+				try {
+					return decoder.apply(document);
+				}
+				catch (RuntimeException error) {
+					log.log(Level.WARNING, "Skipping undecodable document in collection '" + colname + "'!", error);
+					return null;
+				}
+			};
+		}
+
+		/**
+		 * Decode a document into an object of the class, stored under the class key.
+		 * Documents are decoded directly from BSON, falling back to the JSON-based
+		 * decoding for special BSON types and deprecated data.
+		 */
+		private <T extends JaxbType> T decode(RawBsonDocument document, String clazzkey) throws ClassNotFoundException
+		{
+			final BsonDocumentDecoder decoded = BsonDocumentDecoder.decode(document, clazzkey);
+			final String classname = (decoded != null) ? decoded.getClassName() : MongodbEaasConnector.getString(document, clazzkey);
+			final Class<T> clazz = MongodbEaasConnector.lookup(classname);
+			final T object = this.decode(decoded, clazz);
+			if (object != null)
+				return object;
+
+			final Document fallback = document.decode(DOCUMENT_CODEC);
+			try {
+				return T.fromJsonValueWithoutRoot(fallback.toJson(), clazz);
+			}
+			catch (BWFLAException e1) {
+				return checkForDeprecatedData(fallback, clazz, e1);
+			}
+		}
+
+		/** Returns the object or null, if the direct decoding was not possible */
+		private <T extends JaxbType> T decode(BsonDocumentDecoder decoded, Class<T> clazz)
+		{
+			if (decoded == null)
+				return null;
+
+			try {
+				return T.fromJsonParser(decoded.parser(), clazz);
+			}
+			catch (BWFLAException error) {
+				return null;
+			}
+		}
+
 		/**
 		 * Helper method to ensure DB content compatibility. Ideally, all entries in oldStyleDB will be re-saved in new format
 		 * @param document
@@ -539,6 +580,47 @@ public class MongodbEaasConnector {
 	}
 
 
+	/** Returns a filter, selecting elements following the given key in sort order */
+	static FilterBuilder page(FilterBuilder filter, String sortkey, String after)
+	{
+		return (after != null) ? new FilterBuilder(filter).gt(sortkey, after) : filter;
+	}
+
+	static int getPageBatchSize(int maxcount)
+	{
+		return Math.min(maxcount, CURSOR_BATCH_SIZE);
+	}
+
+	private static String getString(RawBsonDocument document, String key)
+	{
+		final BsonValue value = document.get(key);
+		return (value != null && value.isString()) ? value.asString().getValue() : null;
+	}
+
+	/** Look up a class by its name, falling back to the default package */
+	@SuppressWarnings("unchecked")
+	private static <T> Class<T> lookup(String classname) throws ClassNotFoundException
+	{
+		if (classname == null)
+			throw new ClassNotFoundException("Class name is missing!");
+
+		final WeakReference<Class<?>> entry = CLASSES.get(classname);
+		Class<?> clazz = (entry != null) ? entry.get() : null;
+		if (clazz == null) {
+			try {
+				clazz = Class.forName(classname);
+			}
+			catch (ClassNotFoundException e) {
+				clazz = Class.forName(DEFAULT_CLASS_PACKAGE + classname);
+			}
+
+			CLASSES.put(classname, new WeakReference<>(clazz));
+		}
+
+		return (Class<T>) clazz;
+	}
+
+
 	public static class FilterBuilder
 	{
 		private final List<Bson> filters;
@@ -571,12 +653,23 @@ public class MongodbEaasConnector {
 			return this;
 		}
 
+		public FilterBuilder(FilterBuilder other)
+		{
+			this.filters = new ArrayList<>(other.filters);
+		}
+
 		public FilterBuilder eq(String key, String value)
 		{
 			filters.add(Filters.eq(key, value));
 			return this;
 		}
 
+		public FilterBuilder gt(String key, String value)
+		{
+			filters.add(Filters.gt(key, value));
+			return this;
+		}
+
 		public Bson build()
 		{
 			return (filters.isEmpty()) ? new Document() : Filters.and(filters);
@@ -34,9 +34,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.time.Duration;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -133,14 +131,7 @@ public abstract class HttpExportServlet extends HttpServlet
 
 				// Send complete file
 				final ServletOutputStream output = response.getOutputStream();
-				final long written = Files.copy(file.toPath(), output);
-
-				final int padSize = (int)(length - written);
-				if(padSize > 0) {
-					byte[] bytes = new byte[padSize];
-					Arrays.fill(bytes, (byte) 0);
-					output.write(bytes);
-				}
+				HttpUtils.write(output, file.toPath(), length);
 			}
 		}
 		catch (Exception error) {
@@ -23,16 +23,28 @@ package de.bwl.bwfla.common.services.net;
 import de.bwl.bwfla.common.utils.ByteRange;
 import de.bwl.bwfla.common.utils.ByteRangeChannel;
 import de.bwl.bwfla.common.utils.ByteRangeIterator;
+import io.undertow.servlet.spec.ServletOutputStreamImpl;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class HttpUtils
@@ -41,8 +53,22 @@ public class HttpUtils
 
 	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
 
+	/** Size of buffers used for copying range data, when Undertow's file transfer is not available */
+	public static final int DEFAULT_TRANSFER_BUFFER_SIZE = 256 * 1024;
+
 	private static final String MULTIPART_BOUNDARY = "MULTIPART-BYTE-RANGE";
 
+	private static final byte[] MULTIPART_TRAILER = ("\r\n--" + MULTIPART_BOUNDARY + "--\r\n")
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** Shared source of padding bytes, must never be modified! */
+	private static final byte[] ZEROS = new byte[64 * 1024];
+
+	private static final BufferPool BUFFER_POOL = new BufferPool(64, DEFAULT_TRANSFER_BUFFER_SIZE);
+
+	/** Undertow's classes are only visible when deployed, not in standalone usage */
+	private static final boolean UNDERTOW_AVAILABLE = HttpUtils.isClassAvailable("io.undertow.servlet.spec.ServletOutputStreamImpl");
+
 
 	/** Returns true if the request has a Range header, else false */
 	public static boolean hasRangeHeader(HttpServletRequest request)
@@ -129,8 +155,13 @@ public class HttpUtils
 			response.setHeader("Content-Length", Long.toString(range.getLength()));
 		}
 		else {
-			// Partial content with multiple parts
+			// Partial content with multiple parts, whose total length is known upfront
+			long numBytesTotal = MULTIPART_TRAILER.length;
+			for (ByteRange range : ranges)
+				numBytesTotal += HttpUtils.toMultipartHeader(range, length).length + range.getLength();
+
 			response.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+			response.setHeader("Content-Length", Long.toString(numBytesTotal));
 		}
 	}
 
@@ -140,33 +171,36 @@ public class HttpUtils
 		if (ranges == null)
 			throw new IllegalArgumentException("No ranges specified!");
 
-		final ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+		try (final Transfer transfer = new Transfer(output)) {
+			if (multipart) {
+				// Partial content with multiple parts
+				while (ranges.hasNext()) {
+					final ByteRangeChannel range = ranges.next();
+
+					// Write multipart boundary and headers first
+					output.write(HttpUtils.toMultipartHeader(range.getRange(), length));
 
-		if (multipart) {
-			// Partial content with multiple parts
-			while (ranges.hasNext()) {
+					// Write range's data
+					transfer.write(range);
+				}
+
+				// End multipart boundary
+				output.write(MULTIPART_TRAILER);
+			}
+			else {
+				// Partial content with single part
 				final ByteRangeChannel range = ranges.next();
-				final long start = range.getStartOffset();
-				final long end = range.getEndOffset();
-
-				// Write multipart boundary and headers first
-				output.println();
-				output.println("--" + MULTIPART_BOUNDARY);
-				output.println("Content-Type: application/octet-stream");
-				output.println("Content-Range: bytes " + start + "-" + end + "/" + length);
-				output.println();
-
-				// Write range's data buffer
-				HttpUtils.write(output, range, buffer);
+				transfer.write(range);
 			}
-
-			// End multipart boundary
-			output.println("--" + MULTIPART_BOUNDARY + "--");
 		}
-		else {
-			// Partial content with single part
-			final ByteRangeChannel range = ranges.next();
-			HttpUtils.write(output, range, buffer);
+	}
+
+	/** Writes the complete file, padded with zeros up to the specified length */
+	public static void write(ServletOutputStream output, Path file, long length) throws IOException
+	{
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+				final Transfer transfer = new Transfer(output)) {
+			transfer.write(channel, 0L, length);
 		}
 	}
 
@@ -180,33 +214,328 @@ public class HttpUtils
 		return (substring.length() > 0) ? Long.parseLong(substring) : -1;
 	}
 
-	private static void write(OutputStream output, ByteRangeChannel range, ByteBuffer buffer) throws IOException
+	private static byte[] toMultipartHeader(ByteRange range, long length)
 	{
-		while (range.hasBytesRemaining()) {
-			buffer.clear();
-			if (range.read(buffer) < 1)
-				break;
+		final String header = "\r\n--" + MULTIPART_BOUNDARY + "\r\n"
+				+ "Content-Type: application/octet-stream\r\n"
+				+ "Content-Range: bytes " + range.getStartOffset() + "-" + range.getEndOffset() + "/" + length + "\r\n"
+				+ "\r\n";
 
-			buffer.flip();
+		return header.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/** Returns true, if the class with the given name can be loaded, else false */
+	private static boolean isClassAvailable(String name)
+	{
+		try {
+			Class.forName(name, false, HttpUtils.class.getClassLoader());
+			return true;
+		}
+		catch (ClassNotFoundException | LinkageError error) {
+			return false;
+		}
+	}
 
-			// Write available data...
-			final int offset = buffer.arrayOffset() + buffer.position();
-			output.write(buffer.array(), offset, buffer.remaining());
+	/**
+	 * Helper for writing ranges to a servlet's output. When running in Undertow, file
+	 * data is handed to the container's native file transfer, which ends in sendfile()
+	 * for plain HTTP connections. Else it is copied through a pooled buffer. Zero padding
+	 * is written from a shared buffer, without allocating any per-request memory.
+	 */
+	private static class Transfer implements AutoCloseable
+	{
+		private final ServletOutputStream output;
+		private final boolean undertow;
+		private ByteBuffer buffer;
+
+		public Transfer(ServletOutputStream output)
+		{
+			this.output = output;
+			this.undertow = UNDERTOW_AVAILABLE && (output instanceof ServletOutputStreamImpl);
+			this.buffer = null;
 		}
 
-		// Padding needed?
-		for (int padding = (int) range.getNumBytesRemaining(); padding > 0;) {
-			buffer.clear();
+		public void write(ByteRangeChannel range) throws IOException
+		{
+			final ReadableByteChannel source = range.getDataChannel();
+			if (source instanceof FileChannel) {
+				this.write((FileChannel) source, range.getStartOffset(), range.getLength());
+				return;
+			}
+
+			final ByteBuffer buffer = this.buffer();
+			while (range.hasBytesRemaining()) {
+				buffer.clear();
+				if (range.read(buffer) < 1)
+					break;
+
+				buffer.flip();
+				output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			}
+
+			this.pad(range.getNumBytesRemaining());
+		}
+
+		public void write(FileChannel source, long offset, long length) throws IOException
+		{
+			// Data beyond file's end is sent as zeros
+			final long available = Math.max(0L, Math.min(length, source.size() - offset));
+
+			long position = offset;
+			long remaining = available;
+			if (undertow && remaining > 0L) {
+				// Undertow transfers a channel from its position up to its end,
+				// hence expose only the requested region of the file to it
+				try (final FileRegion region = new FileRegion(source, position, remaining)) {
+					((ServletOutputStreamImpl) output).transferFrom(region);
+				}
+
+				position += remaining;
+				remaining = 0L;
+			}
+
+			if (remaining > 0L) {
+				final ByteBuffer buffer = this.buffer();
+				while (remaining > 0L) {
+					buffer.clear();
+					if (remaining < buffer.capacity())
+						buffer.limit((int) remaining);
+
+					final int numBytesRead = source.read(buffer, position);
+					if (numBytesRead < 1)
+						break;
+
+					output.write(buffer.array(), buffer.arrayOffset(), numBytesRead);
+					position += numBytesRead;
+					remaining -= numBytesRead;
+				}
+			}
+
+			this.pad(length - available + remaining);
+		}
+
+		@Override
+		public void close()
+		{
+			if (buffer != null)
+				BUFFER_POOL.release(buffer);
+
+			buffer = null;
+		}
+
+		private void pad(long padding) throws IOException
+		{
+			while (padding > 0L) {
+				final int size = (int) Math.min(padding, ZEROS.length);
+				output.write(ZEROS, 0, size);
+				padding -= size;
+			}
+		}
+
+		private ByteBuffer buffer()
+		{
+			if (buffer == null)
+				buffer = BUFFER_POOL.acquire();
+
+			return buffer;
+		}
+	}
+
+	/**
+	 * Read-only view of a file's region, starting at position 0 of the view.
+	 * Closing the view does not close the underlying file channel.
+	 */
+	private static class FileRegion extends FileChannel
+	{
+		private final FileChannel file;
+		private final long offset;
+		private final long length;
+		private long position;
+
+		public FileRegion(FileChannel file, long offset, long length)
+		{
+			this.file = file;
+			this.offset = offset;
+			this.length = length;
+			this.position = 0L;
+		}
+
+		@Override
+		public int read(ByteBuffer buffer) throws IOException
+		{
+			final int numBytesRead = this.read(buffer, position);
+			if (numBytesRead > 0)
+				position += numBytesRead;
 
-			for (int i = Math.min(padding, buffer.remaining()); i > 0; --i)
-				buffer.put((byte) 0);
+			return numBytesRead;
+		}
+
+		@Override
+		public long read(ByteBuffer[] buffers, int offset, int length) throws IOException
+		{
+			long numBytesRead = 0L;
+			for (int i = offset; i < offset + length; ++i) {
+				final int result = this.read(buffers[i]);
+				if (result < 0)
+					return (numBytesRead > 0L) ? numBytesRead : -1L;
+
+				numBytesRead += result;
+				if (buffers[i].hasRemaining())
+					break;
+			}
+
+			return numBytesRead;
+		}
+
+		@Override
+		public int read(ByteBuffer buffer, long position) throws IOException
+		{
+			if (position >= length)
+				return -1;
+
+			final long available = length - position;
+			if (buffer.remaining() <= available)
+				return file.read(buffer, offset + position);
+
+			final ByteBuffer slice = buffer.duplicate();
+			slice.limit(slice.position() + (int) available);
+			final int numBytesRead = file.read(slice, offset + position);
+			if (numBytesRead > 0)
+				buffer.position(buffer.position() + numBytesRead);
+
+			return numBytesRead;
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException
+		{
+			if (position >= length)
+				return 0L;
+
+			return file.transferTo(offset + position, Math.min(count, length - position), target);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException
+		{
+			if (mode != MapMode.READ_ONLY)
+				throw new NonWritableChannelException();
+
+			if (position + size > length)
+				throw new IllegalArgumentException("Mapping exceeds region!");
+
+			return file.map(mode, offset + position, size);
+		}
+
+		@Override
+		public long position()
+		{
+			return position;
+		}
+
+		@Override
+		public FileChannel position(long position)
+		{
+			this.position = position;
+			return this;
+		}
+
+		@Override
+		public long size()
+		{
+			return length;
+		}
+
+		@Override
+		public void force(boolean metadata)
+		{
+			// Nothing to do!
+		}
 
-			buffer.flip();
+		@Override
+		public int write(ByteBuffer buffer)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public long write(ByteBuffer[] buffers, int offset, int length)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public int write(ByteBuffer buffer, long position)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public FileChannel truncate(long size)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel source, long position, long count)
+		{
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared)
+		{
+			throw new UnsupportedOperationException();
+		}
 
-			// Write padding bytes...
-			final int offset = buffer.arrayOffset() + buffer.position();
-			output.write(buffer.array(), offset, buffer.remaining());
-			padding -= buffer.remaining();
+		@Override
+		protected void implCloseChannel()
+		{
+			// The underlying file channel is owned by the caller!
+		}
+	}
+
+	/** Bounded pool of reusable heap buffers for copying range data */
+	private static class BufferPool
+	{
+		private final Queue<ByteBuffer> buffers;
+		private final AtomicInteger size;
+		private final int capacity;
+		private final int bufsize;
+
+		public BufferPool(int capacity, int bufsize)
+		{
+			this.buffers = new ConcurrentLinkedQueue<>();
+			this.size = new AtomicInteger(0);
+			this.capacity = capacity;
+			this.bufsize = bufsize;
+		}
+
+		public ByteBuffer acquire()
+		{
+			final ByteBuffer buffer = buffers.poll();
+			if (buffer == null)
+				return ByteBuffer.allocate(bufsize);
+
+			size.decrementAndGet();
+			return buffer;
+		}
+
+		public void release(ByteBuffer buffer)
+		{
+			if (size.incrementAndGet() > capacity) {
+				size.decrementAndGet();
+				return;
+			}
+
+			buffer.clear();
+			buffers.offer(buffer);
 		}
 	}
 }
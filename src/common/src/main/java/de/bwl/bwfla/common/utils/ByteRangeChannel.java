@@ -56,6 +56,11 @@ public class ByteRangeChannel implements ReadableByteChannel
 		return this;
 	}
 
+	public ReadableByteChannel getDataChannel()
+	{
+		return data;
+	}
+
 	public ByteRange getRange()
 	{
 		return range;
@@ -20,21 +20,21 @@
 package de.bwl.bwfla.common.utils;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 
 public class FileRangeIterator extends ByteRangeIterator
 {
-	private final SeekableByteChannel channel;
+	private final FileChannel channel;
 
 	public FileRangeIterator(Path file, List<ByteRange> ranges) throws IOException
 	{
 		super(ranges);
-		this.channel = Files.newByteChannel(file);
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
 	}
 
 	@Override
@@ -47,7 +47,8 @@ public class SystemMonitor
 		MEMORY_FREE,         /* Amount of free memory. */
 		MEMORY_BUFFERS,      /* Temporary storage for raw disk blocks. */
 		MEMORY_CACHED,       /* In-memory cache for files read from the disk. */
-		MEMORY_ACTIVE        /* Memory used more recently, usually not reclaimed unless necessary. */
+		MEMORY_ACTIVE,       /* Memory used more recently, usually not reclaimed unless necessary. */
+		MEMORY_AVAILABLE     /* Estimate of memory available for new applications, without swapping. */
 	}
 	
 	
@@ -73,12 +74,27 @@ public class SystemMonitor
 		// Update meminfo fields...
 		{
 			meminfo.seek(0);
-			
-			values.put(ValueID.MEMORY_TOTAL, this.nextMemInfoField(0));
-			values.put(ValueID.MEMORY_FREE, this.nextMemInfoField(0));
-			values.put(ValueID.MEMORY_BUFFERS, this.nextMemInfoField(0));
-			values.put(ValueID.MEMORY_CACHED, this.nextMemInfoField(0));
-			values.put(ValueID.MEMORY_ACTIVE, this.nextMemInfoField(1));
+			values.remove(ValueID.MEMORY_AVAILABLE);
+
+			// The set and order of fields depends on the kernel version, hence match by name
+			String line;
+			while ((line = meminfo.readLine()) != null) {
+				final ValueID id = SystemMonitor.toMemInfoValueID(line);
+				if (id != null)
+					values.put(id, this.parseMemInfoField(line));
+			}
+
+			// Older kernels don't provide an estimate, approximate it
+			if (!values.containsKey(ValueID.MEMORY_AVAILABLE)) {
+				long available = 0L;
+				for (ValueID id : new ValueID[] { ValueID.MEMORY_FREE, ValueID.MEMORY_BUFFERS, ValueID.MEMORY_CACHED }) {
+					final String value = values.get(id);
+					if (value != null)
+						available += SystemMonitor.parseMemoryValue(value);
+				}
+
+				values.put(ValueID.MEMORY_AVAILABLE, Long.toString(available));
+			}
 		}
 	}
 	
@@ -160,16 +176,33 @@ public class SystemMonitor
 		return field;
 	}
 	
-	private String nextMemInfoField(int skipnum) throws IOException
+	private static ValueID toMemInfoValueID(String line)
 	{
-		// Skip specified number of lines
-		while (skipnum > 0) {
-			meminfo.readLine();
-			--skipnum;
+		final int index = line.indexOf(':');
+		if (index < 0)
+			return null;
+
+		switch (line.substring(0, index))
+		{
+			case "MemTotal":
+				return ValueID.MEMORY_TOTAL;
+			case "MemFree":
+				return ValueID.MEMORY_FREE;
+			case "MemAvailable":
+				return ValueID.MEMORY_AVAILABLE;
+			case "Buffers":
+				return ValueID.MEMORY_BUFFERS;
+			case "Cached":
+				return ValueID.MEMORY_CACHED;
+			case "Active":
+				return ValueID.MEMORY_ACTIVE;
+			default:
+				return null;
 		}
-		
-		final String data = meminfo.readLine();
-		
+	}
+
+	private String parseMemInfoField(String data)
+	{
 		// Parse the value's unit
 		int index = data.lastIndexOf(' ');
 		final char unit = data.charAt(index + 1);
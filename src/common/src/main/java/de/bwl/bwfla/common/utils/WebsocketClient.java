@@ -95,6 +95,10 @@ public class WebsocketClient extends Endpoint {
         return session.getId();
     }
 
+    public void sendAsync(final ByteBuffer msg, SendHandler handler) {
+        this.session.getAsyncRemote().sendBinary(msg, handler);
+    }
+
     public void close(CloseReason reason) throws IOException {
         this.session.close(reason);
     }
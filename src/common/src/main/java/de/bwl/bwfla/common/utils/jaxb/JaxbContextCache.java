@@ -0,0 +1,181 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.common.utils.jaxb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.JAXBContextProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+
+/**
+ * Per-class cache of JAXB contexts and Jackson readers/writers. Contexts are expensive to
+ * create but thread-safe, while (un)marshallers are cheap but not thread-safe,
+ * hence the latter are pooled and must be released after use.
+ * <p>
+ * Nothing is cached outside of the per-class entries, since shared Jackson mappers
+ * would keep (de)serializers of all classes ever used and thus their class loaders.
+ */
+final class JaxbContextCache {
+    /** Max. number of idle (un)marshallers kept per class */
+    private static final int MAX_POOL_SIZE = 16;
+
+    /**
+     * Using ClassValue instead of a map allows classes to be unloaded on redeployment,
+     * since the entries are referenced from their classes only
+     */
+    private static final ClassValue<JaxbContextCache> CACHES = new ClassValue<JaxbContextCache>() {
+        @Override
+        protected JaxbContextCache computeValue(Class<?> klass) {
+            return new JaxbContextCache(klass);
+        }
+    };
+
+    private final Class<?> klass;
+    private final Pool<Marshaller> marshallers;
+    private final Pool<Unmarshaller> unmarshallers;
+    private final ObjectReader jsonReader;
+    private final ObjectReader yamlReader;
+    private final ObjectWriter jsonWriter;
+    private final ObjectWriter yamlWriter;
+    private volatile JAXBContext context;
+    private volatile JAXBContext moxyJsonContext;
+
+    private JaxbContextCache(Class<?> klass) {
+        this.klass = klass;
+        this.marshallers = new Pool<>();
+        this.unmarshallers = new Pool<>();
+
+        // Mappers cache (de)serializers, hence they must not be shared across classes
+        final ObjectMapper jsonMapper = new ObjectMapper();
+        final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+        this.jsonReader = jsonMapper.readerFor(klass);
+        this.yamlReader = yamlMapper.readerFor(klass);
+        this.jsonWriter = jsonMapper.writer();
+        this.yamlWriter = yamlMapper.writer();
+    }
+
+    static JaxbContextCache of(Class<?> klass) {
+        return CACHES.get(klass);
+    }
+
+    JAXBContext getContext() throws JAXBException {
+        JAXBContext result = context;
+        if (result == null) {
+            synchronized (this) {
+                result = context;
+                if (result == null)
+                    context = result = JAXBContext.newInstance(klass);
+            }
+        }
+
+        return result;
+    }
+
+    /** Context for the deprecated MOXy-based JSON binding, including the root element */
+    JAXBContext getMoxyJsonContext() throws JAXBException {
+        JAXBContext result = moxyJsonContext;
+        if (result == null) {
+            synchronized (this) {
+                result = moxyJsonContext;
+                if (result == null) {
+                    Map<String, Object> properties = new HashMap<>();
+                    properties.put(JAXBContextProperties.MEDIA_TYPE, "application/json");
+                    properties.put(JAXBContextProperties.JSON_INCLUDE_ROOT, true);
+                    moxyJsonContext = result = JAXBContextFactory.createContext(new Class[] {klass}, properties);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    ObjectReader getJsonReader() {
+        return jsonReader;
+    }
+
+    ObjectReader getYamlReader() {
+        return yamlReader;
+    }
+
+    ObjectWriter getJsonWriter() {
+        return jsonWriter;
+    }
+
+    ObjectWriter getYamlWriter() {
+        return yamlWriter;
+    }
+
+    Marshaller acquireMarshaller() throws JAXBException {
+        Marshaller marshaller = marshallers.poll();
+        return (marshaller != null) ? marshaller : this.getContext().createMarshaller();
+    }
+
+    /** Returns the marshaller to the pool, must not be called if marshalling failed */
+    void release(Marshaller marshaller) {
+        marshallers.offer(marshaller);
+    }
+
+    Unmarshaller acquireUnmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        return (unmarshaller != null) ? unmarshaller : this.getContext().createUnmarshaller();
+    }
+
+    /** Returns the unmarshaller to the pool, must not be called if unmarshalling failed */
+    void release(Unmarshaller unmarshaller) {
+        unmarshallers.offer(unmarshaller);
+    }
+
+
+    private static final class Pool<T> {
+        private final Queue<T> entries = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger(0);
+
+        T poll() {
+            T entry = entries.poll();
+            if (entry != null)
+                size.decrementAndGet();
+
+            return entry;
+        }
+
+        void offer(T entry) {
+            if (size.incrementAndGet() > MAX_POOL_SIZE) {
+                size.decrementAndGet();
+                return;  // Pool is full, drop it!
+            }
+
+            entries.offer(entry);
+        }
+    }
+}
@@ -19,21 +19,16 @@
 
 package de.bwl.bwfla.common.utils.jaxb;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
-import org.eclipse.persistence.jaxb.JAXBContextFactory;
-import org.eclipse.persistence.jaxb.JAXBContextProperties;
 
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.HashMap;
-import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
@@ -44,10 +39,11 @@ import javax.xml.transform.stream.StreamSource;
 public abstract class JaxbType {
     public static <T extends JaxbType> T fromValue(final String value,
                                                    final Class<T> klass) throws JAXBException {
-        JAXBContext jc = JAXBContext.newInstance(klass);
-        Unmarshaller unmarshaller = jc.createUnmarshaller();
+        final JaxbContextCache cache = JaxbContextCache.of(klass);
+        final Unmarshaller unmarshaller = cache.acquireUnmarshaller();
         T result = klass.cast(unmarshaller
                 .unmarshal(new StreamSource(new StringReader(value))));
+        cache.release(unmarshaller);
         JaxbValidator.validate(result);
         return result;
     }
@@ -64,17 +60,9 @@ public abstract class JaxbType {
     public static <T extends JaxbType> T fromJsonValue(final String value,
                                                        final Class<T> klass) throws JAXBException {
 
-        //Set the various properties you want
-        Map<String, Object> properties = new HashMap<>();
-        properties.put(JAXBContextProperties.MEDIA_TYPE, "application/json");
-        properties.put(JAXBContextProperties.JSON_INCLUDE_ROOT, true);
-
-        //Create a Context using the properties
-        JAXBContext jaxbContext =
-                JAXBContextFactory.createContext(new Class[]  {
-                        klass}, properties);
-
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+        Unmarshaller unmarshaller = JaxbContextCache.of(klass)
+                .getMoxyJsonContext()
+                .createUnmarshaller();
 
         //Unmarshall the object
         T result = klass.cast(unmarshaller.unmarshal(new StreamSource(new StringReader(value))));
@@ -87,10 +75,10 @@ public abstract class JaxbType {
     //Jaxb object from Json without root element
     private static <T extends JaxbType> T fromValueJackson(final String value,
                                                            final Class<T> klass,
-                                                           ObjectMapper objectMapper) throws BWFLAException {
+                                                           ObjectReader reader) throws BWFLAException {
         JaxbType result = null;
         try {
-            result = objectMapper.readValue(value, klass);
+            result = reader.readValue(value);
         } catch (IOException e) {
             throw new BWFLAException(e);
         }
@@ -105,13 +93,29 @@ public abstract class JaxbType {
     //Jaxb object from Json without root element using Jackson as backend
     public static <T extends JaxbType> T fromJsonValueWithoutRoot(final String value,
                                                                   final Class<T> klass) throws BWFLAException {
-        return fromValueJackson(value, klass, new ObjectMapper());
+        return fromValueJackson(value, klass, JaxbContextCache.of(klass).getJsonReader());
+    }
+
+    //Jaxb object from already tokenized Json (e.g. decoded from BSON) using Jackson as backend
+    public static <T extends JaxbType> T fromJsonParser(final JsonParser parser,
+                                                        final Class<T> klass) throws BWFLAException {
+        JaxbType result = null;
+        try {
+            result = JaxbContextCache.of(klass).getJsonReader().readValue(parser);
+        } catch (IOException e) {
+            throw new BWFLAException(e);
+        }
+
+        if(result == null)
+            throw new BWFLAException("jackson failed to parse json!");
+
+        return klass.cast(result);
     }
 
     //Jaxb object from Yaml using Jackson as backend
     public static <T extends JaxbType> T fromYamlValue(final String value,
                                                        final Class<T> klass) throws BWFLAException {
-        return fromValueJackson(value, klass, new ObjectMapper(new YAMLFactory()));
+        return fromValueJackson(value, klass, JaxbContextCache.of(klass).getYamlReader());
     }
 
 
@@ -144,11 +148,12 @@ public abstract class JaxbType {
      *             string representation
      */
     public String value(final boolean prettyPrint) throws JAXBException {
-        JAXBContext jc = JAXBContext.newInstance(this.getClass());
-        Marshaller marshaller = jc.createMarshaller();
+        final JaxbContextCache cache = JaxbContextCache.of(this.getClass());
+        final Marshaller marshaller = cache.acquireMarshaller();
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, prettyPrint);
         StringWriter w = new StringWriter();
         marshaller.marshal(this, w);
+        cache.release(marshaller);
         return w.toString();
     }
 
@@ -162,16 +167,11 @@ public abstract class JaxbType {
     @Deprecated
     public String JSONvalue(final boolean prettyPrint) throws JAXBException {
 
-        Map<String, Object> properties = new HashMap<>();
-        properties.put(JAXBContextProperties.MEDIA_TYPE, "application/json");
-        properties.put(JAXBContextProperties.JSON_INCLUDE_ROOT, true);
-        properties.put(Marshaller.JAXB_FORMATTED_OUTPUT, prettyPrint);
-
-        //Create a Context using the properties
-        JAXBContext jc =
-                JAXBContextFactory.createContext(new Class[]  {this.getClass()}, properties);
+        Marshaller marshaller = JaxbContextCache.of(this.getClass())
+                .getMoxyJsonContext()
+                .createMarshaller();
 
-        Marshaller marshaller = jc.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, prettyPrint);
 
         StringWriter w = new StringWriter();
         marshaller.marshal(this, w);
@@ -179,12 +179,10 @@ public abstract class JaxbType {
     }
 
     public String jsonValueWithoutRoot(final boolean prettyPrint) {
-        return jacksonValue(prettyPrint, new ObjectMapper());
+        return jacksonValue(prettyPrint, JaxbContextCache.of(this.getClass()).getJsonWriter());
     }
     public String yamlValue(final boolean prettyPrint) {
-        ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-
-        return jacksonValue(prettyPrint, new ObjectMapper(new YAMLFactory()));
+        return jacksonValue(prettyPrint, JaxbContextCache.of(this.getClass()).getYamlWriter());
     }
 
 
@@ -194,10 +192,10 @@ public abstract class JaxbType {
      * @return
      * @throws JAXBException
      */
-    private String jacksonValue(final boolean prettyPrint, ObjectMapper objectMapper) {
+    private String jacksonValue(final boolean prettyPrint, ObjectWriter objectWriter) {
         StringWriter writer = new StringWriter();
         try {
-            objectMapper.writeValue(writer, this);
+            objectWriter.writeValue(writer, this);
         } catch (IOException e) {
             e.printStackTrace();
         }
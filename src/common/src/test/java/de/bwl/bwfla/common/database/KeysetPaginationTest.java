@@ -0,0 +1,93 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.common.database;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Filters;
+import de.bwl.bwfla.common.database.MongodbEaasConnector.FilterBuilder;
+import org.bson.BsonDocument;
+import org.bson.conversions.Bson;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class KeysetPaginationTest
+{
+	@Test
+	public void testFirstPageUsesFilterAsIs()
+	{
+		final FilterBuilder filter = new FilterBuilder()
+				.eq("type", "machine");
+
+		Assert.assertSame(filter, MongodbEaasConnector.page(filter, "id", null));
+	}
+
+	@Test
+	public void testNextPageStartsAfterKey()
+	{
+		final FilterBuilder filter = new FilterBuilder()
+				.eq("type", "machine");
+
+		final Bson expected = Filters.and(Filters.eq("type", "machine"), Filters.gt("id", "env-42"));
+		Assert.assertEquals(render(expected), render(MongodbEaasConnector.page(filter, "id", "env-42")));
+	}
+
+	@Test
+	public void testNextPageWithoutFilter()
+	{
+		final Bson expected = Filters.and(Filters.gt("id", "env-42"));
+		Assert.assertEquals(render(expected), render(MongodbEaasConnector.page(new FilterBuilder(), "id", "env-42")));
+	}
+
+	@Test
+	public void testNextPageKeepsCallerFilter()
+	{
+		final FilterBuilder filter = new FilterBuilder()
+				.eq("type", "machine");
+
+		final BsonDocument before = render(filter);
+		MongodbEaasConnector.page(filter, "id", "env-1");
+		MongodbEaasConnector.page(filter, "id", "env-2");
+		Assert.assertEquals(before, render(filter));
+	}
+
+	@Test
+	public void testPageBatchSize()
+	{
+		Assert.assertEquals(1, MongodbEaasConnector.getPageBatchSize(1));
+		Assert.assertEquals(100, MongodbEaasConnector.getPageBatchSize(100));
+		Assert.assertEquals(256, MongodbEaasConnector.getPageBatchSize(256));
+		Assert.assertEquals(256, MongodbEaasConnector.getPageBatchSize(257));
+		Assert.assertEquals(256, MongodbEaasConnector.getPageBatchSize(Integer.MAX_VALUE));
+	}
+
+
+	// ========== Internal Helpers ====================
+
+	private static BsonDocument render(FilterBuilder filter)
+	{
+		return render(filter.build());
+	}
+
+	private static BsonDocument render(Bson filter)
+	{
+		return filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+	}
+}
@@ -0,0 +1,418 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.common.services.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import de.bwl.bwfla.common.utils.ByteRange;
+import de.bwl.bwfla.common.utils.ByteRangeChannel;
+import de.bwl.bwfla.common.utils.FileRangeIterator;
+import io.undertow.Undertow;
+import io.undertow.servlet.Servlets;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.util.ImmediateInstanceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Load test for serving block-device images, simulating the small random range
+ * requests issued by qemu's HTTP block driver against a local sample image.
+ * Compares the pooled copy in {@link HttpUtils} with the previous approach of
+ * allocating a 1 MB buffer per request, and Undertow's native file transfer with
+ * the pooled copy, both served over HTTP by an embedded Undertow container.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=de.bwl.bwfla.common.services.net.HttpExportBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx512m" })
+@Threads(8)
+public class HttpExportBenchmark
+{
+	/** Image size is not block-aligned, so that requests near the end are padded */
+	private static final long IMAGE_SIZE = 256L * 1024L * 1024L + 123L;
+
+	@Param({ "4096", "65536", "262144" })
+	public int rangeSize;
+
+	private Path image;
+	private long length;
+
+	private DeploymentManager deployment;
+	private Undertow server;
+	private String url;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		image = Files.createTempFile("http-export-", ".img");
+		try (FileChannel channel = FileChannel.open(image, StandardOpenOption.WRITE)) {
+			final Random random = new Random(42);
+			final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+			for (long written = 0L; written < IMAGE_SIZE;) {
+				random.nextBytes(buffer.array());
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), IMAGE_SIZE - written));
+				written += channel.write(buffer);
+			}
+		}
+
+		length = HttpUtils.computeBlockDeviceLength(IMAGE_SIZE);
+
+		this.startServer();
+	}
+
+	@TearDown
+	public void teardown() throws Exception
+	{
+		server.stop();
+		deployment.stop();
+		deployment.undeploy();
+		Files.deleteIfExists(image);
+	}
+
+	@State(Scope.Thread)
+	public static class Output
+	{
+		public NullOutputStream stream;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			stream = new NullOutputStream();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Client
+	{
+		public byte[] buffer;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			buffer = new byte[64 * 1024];
+		}
+	}
+
+	@Benchmark
+	public long singleRangeAllocating(Output output) throws Exception
+	{
+		final List<ByteRange> ranges = this.ranges(1);
+		try (FileRangeIterator channels = new FileRangeIterator(image, ranges)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(HttpUtils.DEFAULT_BUFFER_SIZE);
+			final ByteRangeChannel range = channels.next();
+			while (range.hasBytesRemaining()) {
+				buffer.clear();
+				if (range.read(buffer) < 1)
+					break;
+
+				buffer.flip();
+				output.stream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			}
+
+			final byte[] padding = new byte[(int) range.getNumBytesRemaining()];
+			output.stream.write(padding);
+		}
+
+		return output.stream.count();
+	}
+
+	@Benchmark
+	public long singleRangePooled(Output output) throws Exception
+	{
+		return this.write(output.stream, 1);
+	}
+
+	@Benchmark
+	public long multiRangePooled(Output output) throws Exception
+	{
+		return this.write(output.stream, 8);
+	}
+
+	@Benchmark
+	public long containerSingleRangeCopy(Client client) throws Exception
+	{
+		return this.request(ExportServlet.PATH_COPY, 1, client);
+	}
+
+	@Benchmark
+	public long containerSingleRangeTransfer(Client client) throws Exception
+	{
+		return this.request(ExportServlet.PATH_TRANSFER, 1, client);
+	}
+
+	@Benchmark
+	public long containerMultiRangeCopy(Client client) throws Exception
+	{
+		return this.request(ExportServlet.PATH_COPY, 8, client);
+	}
+
+	@Benchmark
+	public long containerMultiRangeTransfer(Client client) throws Exception
+	{
+		return this.request(ExportServlet.PATH_TRANSFER, 8, client);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		final OptionsBuilder options = new OptionsBuilder();
+		options.include(HttpExportBenchmark.class.getSimpleName());
+		new Runner(options.build()).run();
+	}
+
+
+	private long write(CountingOutputStream output, int numRanges) throws Exception
+	{
+		final List<ByteRange> ranges = this.ranges(numRanges);
+		try (FileRangeIterator channels = new FileRangeIterator(image, ranges)) {
+			HttpUtils.write(output, channels, length, numRanges > 1);
+		}
+
+		return output.count();
+	}
+
+	private long request(String path, int numRanges, Client client) throws IOException
+	{
+		final StringBuilder header = new StringBuilder("bytes=");
+		for (ByteRange range : this.ranges(numRanges)) {
+			if (header.length() > 6)
+				header.append(',');
+
+			header.append(range.getStartOffset())
+					.append('-')
+					.append(range.getEndOffset());
+		}
+
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+		connection.setRequestProperty("Range", header.toString());
+		if (connection.getResponseCode() != HttpServletResponse.SC_PARTIAL_CONTENT)
+			throw new IOException("Unexpected response code: " + connection.getResponseCode());
+
+		// Consume the whole body, so that the connection can be reused
+		long count = 0L;
+		try (InputStream input = connection.getInputStream()) {
+			for (int length = input.read(client.buffer); length > 0; length = input.read(client.buffer))
+				count += length;
+		}
+
+		return count;
+	}
+
+	private void startServer() throws Exception
+	{
+		final int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		final ExportServlet servlet = new ExportServlet(image, length);
+		final DeploymentInfo info = Servlets.deployment()
+				.setClassLoader(HttpExportBenchmark.class.getClassLoader())
+				.setContextPath("/")
+				.setDeploymentName("http-export-benchmark")
+				.addServlets(Servlets.servlet("export", ExportServlet.class, new ImmediateInstanceFactory<>(servlet))
+						.addMapping("/*"));
+
+		deployment = Servlets.defaultContainer()
+				.addDeployment(info);
+
+		deployment.deploy();
+		server = Undertow.builder()
+				.addHttpListener(port, "localhost")
+				.setHandler(deployment.start())
+				.build();
+
+		server.start();
+		url = "http://localhost:" + port;
+	}
+
+	private List<ByteRange> ranges(int count)
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (count == 1) {
+			final long offset = random.nextLong(length - rangeSize + 1);
+			return Collections.singletonList(new ByteRange(offset, rangeSize));
+		}
+
+		final List<ByteRange> ranges = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			final long offset = random.nextLong(length - rangeSize + 1);
+			ranges.add(new ByteRange(offset, rangeSize));
+		}
+
+		return ranges;
+	}
+
+	private static abstract class CountingOutputStream extends ServletOutputStream
+	{
+		protected long count = 0L;
+
+		public long count()
+		{
+			return count;
+		}
+
+		@Override
+		public void write(int b)
+		{
+			++count;
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length)
+		{
+			count += length;
+		}
+
+		@Override
+		public boolean isReady()
+		{
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener listener)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/** Output stream discarding all data */
+	private static class NullOutputStream extends CountingOutputStream
+	{
+		// Nothing to add!
+	}
+
+	/** Output stream hiding the container's own stream, forcing HttpUtils to copy the data */
+	private static class ForwardingOutputStream extends ServletOutputStream
+	{
+		private final ServletOutputStream output;
+
+		public ForwardingOutputStream(ServletOutputStream output)
+		{
+			this.output = output;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			output.write(b);
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException
+		{
+			output.write(buffer, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			output.flush();
+		}
+
+		@Override
+		public boolean isReady()
+		{
+			return output.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener listener)
+		{
+			output.setWriteListener(listener);
+		}
+	}
+
+	/** Serves the sample image's ranges, like {@link HttpExportServlet} does */
+	private static class ExportServlet extends HttpServlet
+	{
+		public static final String PATH_TRANSFER = "/transfer";
+		public static final String PATH_COPY = "/copy";
+
+		private final Path image;
+		private final long length;
+
+		public ExportServlet(Path image, long length)
+		{
+			this.image = image;
+			this.length = length;
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException
+		{
+			final List<ByteRange> ranges = HttpUtils.parseRangeHeader(request, length);
+			HttpUtils.prepare(response, ranges, length);
+
+			ServletOutputStream output = response.getOutputStream();
+			if (PATH_COPY.equals(request.getPathInfo()))
+				output = new ForwardingOutputStream(output);
+
+			try (FileRangeIterator channels = new FileRangeIterator(image, ranges)) {
+				HttpUtils.write(output, channels, length, ranges.size() > 1);
+			}
+		}
+	}
+}
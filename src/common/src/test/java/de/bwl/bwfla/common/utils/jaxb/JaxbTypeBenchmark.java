@@ -0,0 +1,163 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.common.utils.jaxb;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.transform.stream.StreamSource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Compares the cached (un)marshalling in {@link JaxbType} with the previous
+ * approach of creating a new JAXBContext/ObjectMapper for every call.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=de.bwl.bwfla.common.utils.jaxb.JaxbTypeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JaxbTypeBenchmark
+{
+	private Sample sample;
+	private String xml;
+	private String json;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		sample = new Sample();
+		sample.id = "8a2b0c4e-29f4-4b67-a4c3-0f3f2e6b1d7a";
+		sample.label = "Windows 98 SE";
+		sample.memory = 512;
+		sample.network = true;
+
+		xml = sample.value();
+		json = sample.jsonValueWithoutRoot(false);
+	}
+
+	@Benchmark
+	public String marshalUncached() throws Exception
+	{
+		final Marshaller marshaller = JAXBContext.newInstance(Sample.class).createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+		final StringWriter writer = new StringWriter();
+		marshaller.marshal(sample, writer);
+		return writer.toString();
+	}
+
+	@Benchmark
+	public String marshalCached() throws Exception
+	{
+		return sample.value();
+	}
+
+	@Benchmark
+	public Object unmarshalUncached() throws Exception
+	{
+		final Unmarshaller unmarshaller = JAXBContext.newInstance(Sample.class).createUnmarshaller();
+		final Object result = unmarshaller.unmarshal(new StreamSource(new StringReader(xml)));
+		JaxbValidator.validate(result);
+		return result;
+	}
+
+	@Benchmark
+	public Object unmarshalCached() throws Exception
+	{
+		return JaxbType.fromValue(xml, Sample.class);
+	}
+
+	@Benchmark
+	public Object jsonReadUncached() throws Exception
+	{
+		return new ObjectMapper().readValue(json, Sample.class);
+	}
+
+	@Benchmark
+	public Object jsonReadCached() throws Exception
+	{
+		return JaxbType.fromJsonValueWithoutRoot(json, Sample.class);
+	}
+
+	@Benchmark
+	public String jsonWriteUncached() throws Exception
+	{
+		return new ObjectMapper().writeValueAsString(sample);
+	}
+
+	@Benchmark
+	public String jsonWriteCached()
+	{
+		return sample.jsonValueWithoutRoot(false);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		final OptionsBuilder options = new OptionsBuilder();
+		options.include(JaxbTypeBenchmark.class.getSimpleName());
+		new Runner(options.build()).run();
+	}
+
+
+	@XmlRootElement(name = "sample")
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class Sample extends JaxbType
+	{
+		@XmlElement(required = true)
+		public String id;
+
+		@XmlElement
+		public String label;
+
+		@XmlElement
+		public int memory;
+
+		@XmlElement
+		public boolean network;
+	}
+}
@@ -31,6 +31,7 @@ import de.bwl.bwfla.eaas.cluster.dump.IDumpable;
 import de.bwl.bwfla.eaas.cluster.exception.AllocationFailureException;
 import de.bwl.bwfla.eaas.cluster.exception.OutOfResourcesException;
 import de.bwl.bwfla.eaas.cluster.metadata.LabelSelector;
+import de.bwl.bwfla.eaas.cluster.metrics.PrometheusWriter;
 import de.bwl.bwfla.eaas.cluster.provider.IResourceProvider;
 
 
@@ -56,7 +57,14 @@ public interface IClusterManager extends IDumpable
 	public ResourceHandle allocate(
 			String tenant, Collection<LabelSelector> selectors, UUID aid, ResourceSpec spec, long timeout, TimeUnit unit)
 			throws TimeoutException, AllocationFailureException, OutOfResourcesException;
-			
+
+	/**
+	 * Allocates resources without blocking the caller. The returned future completes exceptionally
+	 * with the same exceptions, that are thrown by the blocking variants.
+	 */
+	public CompletableFuture<ResourceHandle> allocateAsync(
+			String tenant, Collection<LabelSelector> selectors, UUID aid, ResourceSpec spec, long timeout, TimeUnit unit);
+
 	public void release(ResourceHandle handle);
 	
 	public CompletableFuture<Boolean> shutdown();
@@ -66,4 +74,7 @@ public interface IClusterManager extends IDumpable
 	public String getName();
 	public Collection<String> getProviderNames();
 	public boolean checkAccessToken(String token);
+
+	/** Adds the metrics of all providers to the specified writer. */
+	public void export(PrometheusWriter metrics);
 }
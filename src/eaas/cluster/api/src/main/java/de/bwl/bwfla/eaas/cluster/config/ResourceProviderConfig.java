@@ -72,6 +72,10 @@ public class ResourceProviderConfig extends BaseConfig
 		POOLSCALER_TYPES.put(TYPE_JCLOUDS, homoNodePoolScalerConfig);
 	}
 
+	/** Placement strategies for the resource allocator */
+	public static final String PLACEMENT_FIRST_FIT  = "first-fit";
+	public static final String PLACEMENT_BEST_FIT   = "best-fit";
+
 
 	// Config parameters
 	
@@ -91,6 +95,16 @@ public class ResourceProviderConfig extends BaseConfig
 	@WithPropertyConverter(DurationPropertyConverter.class)
 	private long deferredAllocationsGcInterval = -1L;
 
+	@Config("allocation_requests.batch_window")
+	@WithPropertyConverter(DurationPropertyConverter.class)
+	private long allocationBatchWindow = -1L;
+
+	@Config("allocation_requests.max_batch_size")
+	private int allocationBatchMaxSize = -1;
+
+	@Config("allocation_requests.max_queue_size")
+	private int allocationQueueMaxSize = -1;
+
 	@Config("request_history.update_interval")
 	@WithPropertyConverter(DurationPropertyConverter.class)
 	private long reqHistoryUpdateInterval = -1L;
@@ -105,6 +119,31 @@ public class ResourceProviderConfig extends BaseConfig
 	@Config("preallocation.request_history_multiplier")
 	private float preAllocationRequestHistoryMultiplier = -1.0F;
 
+	@Config("preallocation.forecast.enabled")
+	private boolean forecastEnabled = false;
+
+	@Config("preallocation.forecast.lead_time")
+	@WithPropertyConverter(DurationPropertyConverter.class)
+	private long forecastLeadTime = -1L;
+
+	@Config("preallocation.forecast.smoothing")
+	private float forecastSmoothing = -1.0F;
+
+	@Config("preallocation.forecast.trend_smoothing")
+	private float forecastTrendSmoothing = -1.0F;
+
+	@Config("preallocation.forecast.state_dir")
+	private String forecastStateDir = null;
+
+	@Config("resource_allocator.placement")
+	private String placement = null;
+
+	@Config("resource_allocator.cpu_weight")
+	private float placementCpuWeight = -1.0F;
+
+	@Config("resource_allocator.memory_weight")
+	private float placementMemoryWeight = -1.0F;
+
 	private ResourceSpec preAllocationMinBound = null;
 	private ResourceSpec preAllocationMaxBound = null;
 	private NodeAllocatorConfig nodeAllocator = null;
@@ -193,6 +232,47 @@ public class ResourceProviderConfig extends BaseConfig
 		this.setDeferredAllocationsGcInterval(unit.toMillis(interval));
 	}
 	
+	public long getAllocationBatchWindow()
+	{
+		return allocationBatchWindow;
+	}
+
+	public void setAllocationBatchWindow(long window)
+	{
+		ConfigHelpers.check(window, 0L, Long.MAX_VALUE, "Batch window for allocation requests is invalid!");
+
+		this.allocationBatchWindow = window;
+	}
+
+	public void setAllocationBatchWindow(long window, TimeUnit unit)
+	{
+		this.setAllocationBatchWindow(unit.toMillis(window));
+	}
+
+	public int getAllocationBatchMaxSize()
+	{
+		return allocationBatchMaxSize;
+	}
+
+	public void setAllocationBatchMaxSize(int size)
+	{
+		ConfigHelpers.check(size, 1, Integer.MAX_VALUE, "Max. batch size for allocation requests is invalid!");
+
+		this.allocationBatchMaxSize = size;
+	}
+
+	public int getAllocationQueueMaxSize()
+	{
+		return allocationQueueMaxSize;
+	}
+
+	public void setAllocationQueueMaxSize(int size)
+	{
+		ConfigHelpers.check(size, 1, Integer.MAX_VALUE, "Max. queue size for allocation requests is invalid!");
+
+		this.allocationQueueMaxSize = size;
+	}
+
 	public long getRequestHistoryUpdateInterval()
 	{
 		return reqHistoryUpdateInterval;
@@ -276,6 +356,106 @@ public class ResourceProviderConfig extends BaseConfig
 		this.preAllocationMaxBound = bound;
 	}
 
+	public boolean isForecastEnabled()
+	{
+		return forecastEnabled;
+	}
+
+	public void setForecastEnabled(boolean enabled)
+	{
+		this.forecastEnabled = enabled;
+	}
+
+	public long getForecastLeadTime()
+	{
+		return forecastLeadTime;
+	}
+
+	public void setForecastLeadTime(long time)
+	{
+		ConfigHelpers.check(time, 0L, Long.MAX_VALUE, "Lead time for demand forecasts is invalid!");
+
+		this.forecastLeadTime = time;
+	}
+
+	public void setForecastLeadTime(long time, TimeUnit unit)
+	{
+		this.setForecastLeadTime(unit.toMillis(time));
+	}
+
+	public float getForecastSmoothing()
+	{
+		return forecastSmoothing;
+	}
+
+	public void setForecastSmoothing(float factor)
+	{
+		ConfigHelpers.check(factor, 0.0F, 1.0F, "Smoothing factor for demand forecasts is invalid!");
+
+		this.forecastSmoothing = factor;
+	}
+
+	public float getForecastTrendSmoothing()
+	{
+		return forecastTrendSmoothing;
+	}
+
+	public void setForecastTrendSmoothing(float factor)
+	{
+		ConfigHelpers.check(factor, 0.0F, 1.0F, "Trend smoothing factor for demand forecasts is invalid!");
+
+		this.forecastTrendSmoothing = factor;
+	}
+
+	/** Returns the directory for persisting demand profiles, or null if they should not be persisted */
+	public String getForecastStateDir()
+	{
+		return forecastStateDir;
+	}
+
+	public void setForecastStateDir(String dir)
+	{
+		this.forecastStateDir = dir;
+	}
+
+	public String getPlacement()
+	{
+		return placement;
+	}
+
+	public void setPlacement(String placement)
+	{
+		ConfigHelpers.check(placement, "Placement strategy is invalid!");
+		if (!placement.equals(PLACEMENT_FIRST_FIT) && !placement.equals(PLACEMENT_BEST_FIT))
+			throw new ConfigException("Unknown placement strategy: " + placement);
+
+		this.placement = placement;
+	}
+
+	public float getPlacementCpuWeight()
+	{
+		return placementCpuWeight;
+	}
+
+	public void setPlacementCpuWeight(float weight)
+	{
+		ConfigHelpers.check(weight, 0.0F, Float.MAX_VALUE, "CPU weight for placement is invalid!");
+
+		this.placementCpuWeight = weight;
+	}
+
+	public float getPlacementMemoryWeight()
+	{
+		return placementMemoryWeight;
+	}
+
+	public void setPlacementMemoryWeight(float weight)
+	{
+		ConfigHelpers.check(weight, 0.0F, Float.MAX_VALUE, "Memory weight for placement is invalid!");
+
+		this.placementMemoryWeight = weight;
+	}
+
 	public Collection<Label> getLabels()
 	{
 		return labels;
@@ -355,12 +535,24 @@ public class ResourceProviderConfig extends BaseConfig
 		this.setName(name);
 		this.setType(type);
 		this.setDeferredAllocationsGcInterval(deferredAllocationsGcInterval);
+		this.setAllocationBatchWindow(allocationBatchWindow);
+		this.setAllocationBatchMaxSize(allocationBatchMaxSize);
+		this.setAllocationQueueMaxSize(allocationQueueMaxSize);
 		this.setRequestHistoryUpdateInterval(reqHistoryUpdateInterval);
 		this.setRequestHistoryMaxRequestAge(reqHistoryMaxRequestAge);
 		this.setRequestHistoryMaxNumRequests(reqHistoryMaxNumRequests);
 		this.setPreAllocationRequestHistoryMultiplier(preAllocationRequestHistoryMultiplier);
 		this.setPreAllocationMinBound(preAllocationMinBound);
 		this.setPreAllocationMaxBound(preAllocationMaxBound);
+		if (forecastEnabled) {
+			this.setForecastLeadTime(forecastLeadTime);
+			this.setForecastSmoothing(forecastSmoothing);
+			this.setForecastTrendSmoothing(forecastTrendSmoothing);
+		}
+
+		this.setPlacement(placement);
+		this.setPlacementCpuWeight(placementCpuWeight);
+		this.setPlacementMemoryWeight(placementMemoryWeight);
 		this.setNodeAllocatorConfig(nodeAllocator);
 		this.setPoolScalerConfig(poolscaler);
 		this.setLabels(labels);
@@ -390,6 +582,14 @@ public class ResourceProviderConfig extends BaseConfig
 				json.writeEnd();
 			});
 			
+			dumper.add(DumpFields.ALLOCATION_REQUESTS, () -> {
+				json.writeStartObject(DumpFields.ALLOCATION_REQUESTS);
+				json.write("batch_window", DumpHelpers.toDurationString(allocationBatchWindow));
+				json.write("max_batch_size", allocationBatchMaxSize);
+				json.write("max_queue_size", allocationQueueMaxSize);
+				json.writeEnd();
+			});
+
 			dumper.add(DumpFields.REQUEST_HISTORY, () -> {
 				json.writeStartObject(DumpFields.REQUEST_HISTORY);
 				json.write("update_interval", DumpHelpers.toDurationString(reqHistoryUpdateInterval));
@@ -403,6 +603,23 @@ public class ResourceProviderConfig extends BaseConfig
 				json.write("request_history_multiplier", preAllocationRequestHistoryMultiplier);
 				DumpHelpers.write(json, "min_bound", preAllocationMinBound);
 				DumpHelpers.write(json, "max_bound", preAllocationMaxBound);
+				json.writeStartObject("forecast");
+				json.write("enabled", forecastEnabled);
+				json.write("lead_time", DumpHelpers.toDurationString(forecastLeadTime));
+				json.write("smoothing", forecastSmoothing);
+				json.write("trend_smoothing", forecastTrendSmoothing);
+				if (forecastStateDir != null)
+					json.write("state_dir", forecastStateDir);
+
+				json.writeEnd();
+				json.writeEnd();
+			});
+
+			dumper.add(DumpFields.RESOURCE_ALLOCATOR, () -> {
+				json.writeStartObject(DumpFields.RESOURCE_ALLOCATOR);
+				json.write("placement", placement);
+				json.write("cpu_weight", placementCpuWeight);
+				json.write("memory_weight", placementMemoryWeight);
 				json.writeEnd();
 			});
 			
@@ -432,7 +649,9 @@ public class ResourceProviderConfig extends BaseConfig
 		private static final String TYPE             = "type";
 		private static final String LABELS           = "labels";
 		private static final String REQUEST_HISTORY  = "request_history";
+		private static final String ALLOCATION_REQUESTS = "allocation_requests";
 		private static final String PREALLOCATION    = "preallocation";
+		private static final String RESOURCE_ALLOCATOR = "resource_allocator";
 		private static final String NODE_ALLOCATOR   = "node_allocator";
 		private static final String POOLSCALER       = "poolscaler";
 		
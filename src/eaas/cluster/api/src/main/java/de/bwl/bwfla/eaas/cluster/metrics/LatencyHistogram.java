@@ -0,0 +1,227 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.json.stream.JsonGenerator;
+
+import de.bwl.bwfla.eaas.cluster.dump.DumpConfig;
+import de.bwl.bwfla.eaas.cluster.dump.DumpTrigger;
+import de.bwl.bwfla.eaas.cluster.dump.IDumpable;
+import de.bwl.bwfla.eaas.cluster.dump.ObjectDumper;
+
+
+/**
+ * A histogram of durations with log-linear buckets, similar to HdrHistogram. Every power of two
+ * is split into 32 linear sub-buckets, which bounds the relative error of reported values by ~3%
+ * over the whole range of nanoseconds to years, using a fixed amount of memory.
+ * <p/>
+ * Recording is lock-free and can be done concurrently from multiple threads.
+ */
+public class LatencyHistogram implements IDumpable
+{
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1L);
+
+	private final AtomicLongArray counts;
+	private final AtomicLong count;
+	private final AtomicLong sum;
+	private final AtomicLong max;
+
+
+	public LatencyHistogram()
+	{
+		this.counts = new AtomicLongArray(NUM_BUCKETS);
+		this.count = new AtomicLong(0L);
+		this.sum = new AtomicLong(0L);
+		this.max = new AtomicLong(0L);
+	}
+
+	public void record(long duration, TimeUnit unit)
+	{
+		this.record(unit.toNanos(duration));
+	}
+
+	/** Records a duration in nanoseconds */
+	public void record(long duration)
+	{
+		if (duration < 0L)
+			duration = 0L;
+
+		counts.incrementAndGet(LatencyHistogram.toBucket(duration));
+		count.incrementAndGet();
+		sum.accumulateAndGet(duration, LatencyHistogram::saturatedAdd);
+		max.accumulateAndGet(duration, Math::max);
+	}
+
+	/** Records the time elapsed since a timestamp taken with {@link System#nanoTime()} */
+	public void recordSince(long timestamp)
+	{
+		this.record(System.nanoTime() - timestamp);
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/** Returns the sum of all recorded durations in nanoseconds */
+	public long getSum()
+	{
+		return sum.get();
+	}
+
+	/** Returns the max. recorded duration in nanoseconds */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/** Returns the mean of all recorded durations in nanoseconds */
+	public double getMean()
+	{
+		final long num = count.get();
+		return (num > 0L) ? (double) sum.get() / num : 0.0;
+	}
+
+	/**
+	 * Returns the duration in nanoseconds, that the given percentage of all recorded durations
+	 * does not exceed. The result is the upper bound of the bucket containing the percentile.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long total = 0L;
+		for (int i = 0; i < NUM_BUCKETS; ++i)
+			total += counts.get(i);
+
+		if (total == 0L)
+			return 0L;
+
+		final long target = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+		long cumulative = 0L;
+		for (int i = 0; i < NUM_BUCKETS; ++i) {
+			cumulative += counts.get(i);
+			if (cumulative >= target)
+				return Math.min(LatencyHistogram.toHighestValue(i), max.get());
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Returns the cumulative numbers of recorded durations not exceeding the given bounds in
+	 * nanoseconds, followed by the total number of recorded durations. Bounds must be sorted
+	 * in ascending order. Since durations are counted per bucket, the count for a bound may
+	 * include durations exceeding it by up to the bucket's width.
+	 */
+	public long[] getCumulativeCounts(long... bounds)
+	{
+		final long[] result = new long[bounds.length + 1];
+		long cumulative = 0L;
+		int next = 0;
+		for (int i = 0; i < NUM_BUCKETS; ++i) {
+			while (next < bounds.length && LatencyHistogram.toBucket(bounds[next]) < i)
+				result[next++] = cumulative;
+
+			cumulative += counts.get(i);
+		}
+
+		while (next < bounds.length)
+			result[next++] = cumulative;
+
+		result[bounds.length] = cumulative;
+		return result;
+	}
+
+	@Override
+	public void dump(JsonGenerator json, DumpConfig dconf, int flags)
+	{
+		final DumpTrigger trigger = new DumpTrigger(dconf);
+		trigger.setResourceDumpHandler(() -> {
+			final ObjectDumper dumper = new ObjectDumper(json, dconf, flags, this.getClass());
+			dumper.add(DumpFields.COUNT, () -> json.write(DumpFields.COUNT, this.getCount()));
+			dumper.add(DumpFields.MEAN, () -> json.write(DumpFields.MEAN, LatencyHistogram.toMillis(this.getMean())));
+			dumper.add(DumpFields.P50, () -> json.write(DumpFields.P50, this.toMillisAtPercentile(50.0)));
+			dumper.add(DumpFields.P90, () -> json.write(DumpFields.P90, this.toMillisAtPercentile(90.0)));
+			dumper.add(DumpFields.P99, () -> json.write(DumpFields.P99, this.toMillisAtPercentile(99.0)));
+			dumper.add(DumpFields.P999, () -> json.write(DumpFields.P999, this.toMillisAtPercentile(99.9)));
+			dumper.add(DumpFields.MAX, () -> json.write(DumpFields.MAX, LatencyHistogram.toMillis(this.getMax())));
+			dumper.run();
+		});
+
+		trigger.run();
+	}
+
+	private static class DumpFields
+	{
+		private static final String COUNT  = "count";
+		private static final String MEAN   = "mean_ms";
+		private static final String P50    = "p50_ms";
+		private static final String P90    = "p90_ms";
+		private static final String P99    = "p99_ms";
+		private static final String P999   = "p999_ms";
+		private static final String MAX    = "max_ms";
+	}
+
+
+	/* ========== Internal Helpers ========== */
+
+	private double toMillisAtPercentile(double percentile)
+	{
+		return LatencyHistogram.toMillis(this.getValueAtPercentile(percentile));
+	}
+
+	private static double toMillis(double nanos)
+	{
+		// Round to microseconds
+		return Math.round(nanos / 1000.0) / (NANOS_PER_MILLI / 1000.0);
+	}
+
+	private static long saturatedAdd(long a, long b)
+	{
+		final long result = a + b;
+		return (result < a) ? Long.MAX_VALUE : result;
+	}
+
+	private static int toBucket(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+
+		final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+	}
+
+	private static long toHighestValue(int bucket)
+	{
+		if (bucket < SUB_BUCKET_COUNT)
+			return bucket;
+
+		final int shift = bucket / SUB_BUCKET_COUNT - 1;
+		final long lowest = (long) (bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+		return lowest + (1L << shift) - 1L;
+	}
+}
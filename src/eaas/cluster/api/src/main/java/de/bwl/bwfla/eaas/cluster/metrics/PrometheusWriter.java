@@ -0,0 +1,217 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.metrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Collects metrics and renders them in the Prometheus text exposition format. Samples of
+ * the same metric can be added by multiple sources, e.g. one per provider, and are grouped
+ * under a single metric description when rendered.
+ */
+public class PrometheusWriter
+{
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+	/** Upper bounds of histogram buckets in seconds, covering sub-millisecond calls to node boots */
+	private static final double[] DURATION_BUCKETS = {
+			0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+			1.0, 2.5, 5.0, 10.0, 25.0, 50.0, 100.0, 250.0, 500.0, 1000.0
+	};
+
+	private static final long[] DURATION_BUCKETS_NANOS = PrometheusWriter.toNanos(DURATION_BUCKETS);
+	private static final String[] DURATION_BUCKETS_LABELS = PrometheusWriter.toLabels(DURATION_BUCKETS);
+
+	private final Map<String, Family> families;
+
+
+	public PrometheusWriter()
+	{
+		this.families = new LinkedHashMap<String, Family>();
+	}
+
+	/**
+	 * Adds a sample of a counter
+	 * @param labels Pairs of label names and values
+	 */
+	public PrometheusWriter counter(String name, String help, double value, String... labels)
+	{
+		this.family(name, "counter", help)
+				.add(name, labels, null, value);
+
+		return this;
+	}
+
+	/**
+	 * Adds a sample of a gauge
+	 * @param labels Pairs of label names and values
+	 */
+	public PrometheusWriter gauge(String name, String help, double value, String... labels)
+	{
+		this.family(name, "gauge", help)
+				.add(name, labels, null, value);
+
+		return this;
+	}
+
+	/**
+	 * Adds a histogram of durations in seconds. Buckets are cumulative and grow monotonically,
+	 * hence quantiles over any time window can be computed on the server side.
+	 * @param labels Pairs of label names and values
+	 */
+	public PrometheusWriter histogram(String name, String help, LatencyHistogram histogram, String... labels)
+	{
+		final Family family = this.family(name, "histogram", help);
+		final long[] counts = histogram.getCumulativeCounts(DURATION_BUCKETS_NANOS);
+		for (int i = 0; i < DURATION_BUCKETS.length; ++i)
+			family.add(name + "_bucket", labels, DURATION_BUCKETS_LABELS[i], counts[i]);
+
+		// Use the same total for the last bucket and the count, even if updated concurrently
+		final long count = counts[DURATION_BUCKETS.length];
+		family.add(name + "_bucket", labels, "+Inf", count);
+		family.add(name + "_sum", labels, null, histogram.getSum() / NANOS_PER_SECOND);
+		family.add(name + "_count", labels, null, count);
+		return this;
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder output = new StringBuilder(4 * 1024);
+		families.forEach((name, family) -> {
+			output.append("# HELP ").append(name).append(' ')
+					.append(family.help.replace("\\", "\\\\").replace("\n", "\\n"))
+					.append('\n');
+
+			output.append("# TYPE ").append(name).append(' ')
+					.append(family.type)
+					.append('\n');
+
+			family.samples.forEach((sample) -> output.append(sample).append('\n'));
+		});
+
+		return output.toString();
+	}
+
+
+	/* ========== Internal Helpers ========== */
+
+	private Family family(String name, String type, String help)
+	{
+		final Family family = families.computeIfAbsent(name, (unused) -> new Family(type, help));
+		if (!family.type.equals(type))
+			throw new IllegalArgumentException("Metric '" + name + "' was already added as " + family.type);
+
+		return family;
+	}
+
+	private static long[] toNanos(double[] seconds)
+	{
+		final long[] nanos = new long[seconds.length];
+		for (int i = 0; i < seconds.length; ++i)
+			nanos[i] = Math.round(seconds[i] * NANOS_PER_SECOND);
+
+		return nanos;
+	}
+
+	private static String[] toLabels(double[] bounds)
+	{
+		final String[] labels = new String[bounds.length];
+		for (int i = 0; i < bounds.length; ++i)
+			labels[i] = BigDecimal.valueOf(bounds[i]).stripTrailingZeros().toPlainString();
+
+		return labels;
+	}
+
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\")
+				.replace("\"", "\\\"")
+				.replace("\n", "\\n");
+	}
+
+	private static String format(double value)
+	{
+		if (Double.isNaN(value))
+			return "NaN";
+
+		if (Double.isInfinite(value))
+			return (value > 0) ? "+Inf" : "-Inf";
+
+		if (value == Math.rint(value) && Math.abs(value) < 1E15)
+			return Long.toString((long) value);
+
+		return Double.toString(value);
+	}
+
+	private static class Family
+	{
+		private final String type;
+		private final String help;
+		private final List<String> samples;
+
+		public Family(String type, String help)
+		{
+			this.type = type;
+			this.help = help;
+			this.samples = new ArrayList<String>();
+		}
+
+		public void add(String name, String[] labels, String bucket, double value)
+		{
+			if (labels.length % 2 != 0)
+				throw new IllegalArgumentException("Labels must be passed as name-value pairs!");
+
+			final StringBuilder sample = new StringBuilder(name);
+			if (labels.length > 0 || bucket != null) {
+				sample.append('{');
+				for (int i = 0; i < labels.length; i += 2) {
+					if (i > 0)
+						sample.append(',');
+
+					sample.append(labels[i])
+							.append("=\"")
+							.append(PrometheusWriter.escape(labels[i + 1]))
+							.append('"');
+				}
+
+				if (bucket != null) {
+					if (labels.length > 0)
+						sample.append(',');
+
+					sample.append("le=\"").append(bucket).append('"');
+				}
+
+				sample.append('}');
+			}
+
+			sample.append(' ').append(PrometheusWriter.format(value));
+			samples.add(sample.toString());
+		}
+	}
+}
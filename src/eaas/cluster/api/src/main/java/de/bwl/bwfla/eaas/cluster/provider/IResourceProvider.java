@@ -29,11 +29,17 @@ import de.bwl.bwfla.eaas.cluster.ResourceSpec;
 import de.bwl.bwfla.eaas.cluster.dump.IDumpable;
 import de.bwl.bwfla.eaas.cluster.metadata.LabelSelector;
 import de.bwl.bwfla.eaas.cluster.metadata.LabelIndex;
+import de.bwl.bwfla.eaas.cluster.metrics.PrometheusWriter;
 
 
 public interface IResourceProvider extends IDumpable
 {
-	public CompletableFuture<ResourceHandle> allocate(UUID allocationId, ResourceSpec spec, boolean scaleup, long timeout, TimeUnit unit);
+	/**
+	 * Allocates resources for the specified tenant. When requests must wait for the pool to scale up,
+	 * they are served fairly across tenants.
+	 * @param tenant The tenant to allocate for, or null
+	 */
+	public CompletableFuture<ResourceHandle> allocate(String tenant, UUID allocationId, ResourceSpec spec, boolean scaleup, long timeout, TimeUnit unit);
 	public CompletableFuture<ResourceSpec> release(ResourceHandle handle);
 	
 	/** Initiates a proper shutdown of this provider. */
@@ -50,4 +56,7 @@ public interface IResourceProvider extends IDumpable
 	
 	public LabelIndex getLabelIndex();
 	public String getName();
+
+	/** Adds this provider's metrics to the specified writer. */
+	public void export(PrometheusWriter metrics);
 }
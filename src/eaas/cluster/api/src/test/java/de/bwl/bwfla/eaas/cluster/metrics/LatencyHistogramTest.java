@@ -0,0 +1,184 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class LatencyHistogramTest
+{
+	/** Max. relative error of reported values, given 32 sub-buckets */
+	private static final double MAX_ERROR = 1.0 / 32.0;
+
+
+	@Test
+	public void testEmpty()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0L, histogram.getCount());
+		Assert.assertEquals(0L, histogram.getSum());
+		Assert.assertEquals(0L, histogram.getMax());
+		Assert.assertEquals(0.0, histogram.getMean(), 0.0);
+		Assert.assertEquals(0L, histogram.getValueAtPercentile(50.0));
+		Assert.assertArrayEquals(new long[] { 0L, 0L, 0L }, histogram.getCumulativeCounts(1L, 1000L));
+	}
+
+	@Test
+	public void testRecordsStatistics()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(10L);
+		histogram.record(3L, TimeUnit.MICROSECONDS);
+		histogram.record(-5L);
+
+		Assert.assertEquals(3L, histogram.getCount());
+		Assert.assertEquals(3010L, histogram.getSum());
+		Assert.assertEquals(3000L, histogram.getMax());
+		Assert.assertEquals(3010.0 / 3.0, histogram.getMean(), 0.0001);
+
+		// Negative durations are recorded as zero
+		Assert.assertEquals(0L, histogram.getValueAtPercentile(1.0));
+	}
+
+	@Test
+	public void testSumSaturates()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(Long.MAX_VALUE);
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getSum());
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getMax());
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+	}
+
+	@Test
+	public void testSmallValuesAreExact()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 0L; value < 32L; ++value)
+			histogram.record(value);
+
+		Assert.assertEquals(0L, histogram.getValueAtPercentile(0.0));
+		Assert.assertEquals(15L, histogram.getValueAtPercentile(50.0));
+		Assert.assertEquals(28L, histogram.getValueAtPercentile(90.0));
+		Assert.assertEquals(31L, histogram.getValueAtPercentile(100.0));
+	}
+
+	@Test
+	public void testPercentilesWithinRelativeError()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final long scale = TimeUnit.MICROSECONDS.toNanos(7L);
+		for (long value = 1L; value <= 10000L; ++value)
+			histogram.record(value * scale);
+
+		final double[] percentiles = { 1.0, 25.0, 50.0, 90.0, 99.0, 99.9 };
+		for (double percentile : percentiles) {
+			final long expected = Math.round(percentile * 100.0) * scale;
+			final long actual = histogram.getValueAtPercentile(percentile);
+			Assert.assertTrue("p" + percentile + " = " + actual, actual >= expected);
+			Assert.assertTrue("p" + percentile + " = " + actual, actual <= expected * (1.0 + MAX_ERROR));
+		}
+
+		Assert.assertEquals(10000L * scale, histogram.getValueAtPercentile(100.0));
+	}
+
+	@Test
+	public void testPercentilesAreBoundedByMax()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000L);
+		Assert.assertEquals(1000L, histogram.getValueAtPercentile(50.0));
+		Assert.assertEquals(1000L, histogram.getValueAtPercentile(99.9));
+	}
+
+	@Test
+	public void testBucketBoundaries()
+	{
+		// 1000 falls into the bucket [992, 1007] with a width of 16
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000L);
+		Assert.assertArrayEquals(new long[] { 0L, 1L, 1L, 1L, 1L },
+				histogram.getCumulativeCounts(991L, 992L, 1007L, 1008L));
+
+		// Bucket widths grow with values, bounding the relative error over the whole range
+		for (int shift = 6; shift < 63; ++shift) {
+			final long value = (1L << shift) + (1L << shift) / 3L;
+			final LatencyHistogram other = new LatencyHistogram();
+			other.record(value);
+
+			final long[] counts = other.getCumulativeCounts(value - (value >> 4), value);
+			Assert.assertEquals("shift " + shift, 0L, counts[0]);
+			Assert.assertEquals("shift " + shift, 1L, counts[1]);
+		}
+	}
+
+	@Test
+	public void testCumulativeCounts()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final long[] values = { 5L, 50L, 500L, 5000L, 50000L, 500000L };
+		for (long value : values)
+			histogram.record(value);
+
+		final long[] bounds = { 1L, 10L, 100L, 1000L, 10000L, 100000L };
+		Assert.assertArrayEquals(new long[] { 0L, 1L, 2L, 3L, 4L, 5L, 6L }, histogram.getCumulativeCounts(bounds));
+
+		// Counts never decrease, when more durations are recorded
+		histogram.record(7L);
+		histogram.record(Long.MAX_VALUE);
+		Assert.assertArrayEquals(new long[] { 0L, 2L, 3L, 4L, 5L, 6L, 8L }, histogram.getCumulativeCounts(bounds));
+
+		// Without bounds only the total is returned
+		Assert.assertArrayEquals(new long[] { 8L }, histogram.getCumulativeCounts());
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception
+	{
+		final int numThreads = 4;
+		final int numValues = 25000;
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < numThreads; ++i) {
+			final Thread thread = new Thread(() -> {
+				for (int value = 1; value <= numValues; ++value)
+					histogram.record(value);
+			});
+
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		final long total = (long) numThreads * numValues;
+		Assert.assertEquals(total, histogram.getCount());
+		Assert.assertEquals(numThreads * (numValues * (numValues + 1L) / 2L), histogram.getSum());
+		Assert.assertEquals(numValues, histogram.getMax());
+		Assert.assertEquals(total, histogram.getCumulativeCounts()[0]);
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PrometheusWriterTest
+{
+	@Test
+	public void testCountersAndGauges()
+	{
+		final PrometheusWriter writer = new PrometheusWriter()
+				.counter("eaas_requests_total", "Processed requests", 42, "provider", "default")
+				.gauge("eaas_nodes", "Running nodes", 2.5)
+				.counter("eaas_requests_total", "Processed requests", 7, "provider", "cloud");
+
+		final String expected = String.join("\n",
+				"# HELP eaas_requests_total Processed requests",
+				"# TYPE eaas_requests_total counter",
+				"eaas_requests_total{provider=\"default\"} 42",
+				"eaas_requests_total{provider=\"cloud\"} 7",
+				"# HELP eaas_nodes Running nodes",
+				"# TYPE eaas_nodes gauge",
+				"eaas_nodes 2.5",
+				"");
+
+		Assert.assertEquals(expected, writer.toString());
+	}
+
+	@Test
+	public void testEscaping()
+	{
+		final PrometheusWriter writer = new PrometheusWriter()
+				.gauge("eaas_value", "Line\\one\nLine two", Double.NaN, "name", "a\"b\\c\nd", "other", "x");
+
+		final String expected = String.join("\n",
+				"# HELP eaas_value Line\\\\one\\nLine two",
+				"# TYPE eaas_value gauge",
+				"eaas_value{name=\"a\\\"b\\\\c\\nd\",other=\"x\"} NaN",
+				"");
+
+		Assert.assertEquals(expected, writer.toString());
+	}
+
+	@Test
+	public void testFormatsValues()
+	{
+		final PrometheusWriter writer = new PrometheusWriter()
+				.gauge("eaas_value", "Values", 1.0E20, "id", "1")
+				.gauge("eaas_value", "Values", Double.POSITIVE_INFINITY, "id", "2")
+				.gauge("eaas_value", "Values", Double.NEGATIVE_INFINITY, "id", "3")
+				.gauge("eaas_value", "Values", -3.0, "id", "4");
+
+		final List<String> lines = PrometheusWriterTest.samples(writer);
+		Assert.assertEquals(Arrays.asList(
+				"eaas_value{id=\"1\"} 1.0E20",
+				"eaas_value{id=\"2\"} +Inf",
+				"eaas_value{id=\"3\"} -Inf",
+				"eaas_value{id=\"4\"} -3"), lines);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsTypeMismatch()
+	{
+		new PrometheusWriter()
+				.counter("eaas_metric", "Metric", 1)
+				.gauge("eaas_metric", "Metric", 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsUnpairedLabels()
+	{
+		new PrometheusWriter()
+				.counter("eaas_metric", "Metric", 1, "provider");
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(3L, TimeUnit.MILLISECONDS);
+		histogram.record(20L, TimeUnit.MILLISECONDS);
+		histogram.record(2L, TimeUnit.SECONDS);
+		histogram.record(2000L, TimeUnit.SECONDS);
+
+		final PrometheusWriter writer = new PrometheusWriter()
+				.histogram("eaas_time_seconds", "Time", histogram, "provider", "default");
+
+		final String output = writer.toString();
+		Assert.assertTrue(output.startsWith("# HELP eaas_time_seconds Time\n# TYPE eaas_time_seconds histogram\n"));
+
+		final List<String> lines = PrometheusWriterTest.samples(writer);
+		Assert.assertEquals(Arrays.asList(
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.0001\"} 0",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.00025\"} 0",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.0005\"} 0",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.001\"} 0",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.0025\"} 0",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.005\"} 1",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.01\"} 1",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.025\"} 2",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.05\"} 2",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.1\"} 2",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.25\"} 2",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"0.5\"} 2",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"1\"} 2",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"2.5\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"5\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"10\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"25\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"50\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"100\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"250\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"500\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"1000\"} 3",
+				"eaas_time_seconds_bucket{provider=\"default\",le=\"+Inf\"} 4",
+				"eaas_time_seconds_sum{provider=\"default\"} 2002.023",
+				"eaas_time_seconds_count{provider=\"default\"} 4"), lines);
+	}
+
+	@Test
+	public void testHistogramWithoutLabels()
+	{
+		final PrometheusWriter writer = new PrometheusWriter()
+				.histogram("eaas_time_seconds", "Time", new LatencyHistogram());
+
+		final List<String> lines = PrometheusWriterTest.samples(writer);
+		Assert.assertEquals("eaas_time_seconds_bucket{le=\"0.0001\"} 0", lines.get(0));
+		Assert.assertEquals("eaas_time_seconds_bucket{le=\"+Inf\"} 0", lines.get(lines.size() - 3));
+		Assert.assertEquals("eaas_time_seconds_sum 0", lines.get(lines.size() - 2));
+		Assert.assertEquals("eaas_time_seconds_count 0", lines.get(lines.size() - 1));
+	}
+
+	@Test
+	public void testHistogramBucketsAreMonotonic()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		long[] previous = null;
+		for (int round = 0; round < 5; ++round) {
+			// Later rounds record faster durations only, which must not lower any bucket
+			final long duration = TimeUnit.SECONDS.toNanos(1L) >> (3 * round);
+			for (int i = 0; i < 100; ++i)
+				histogram.record(duration);
+
+			final long[] current = PrometheusWriterTest.buckets(new PrometheusWriter()
+					.histogram("eaas_time_seconds", "Time", histogram));
+
+			for (int i = 1; i < current.length; ++i)
+				Assert.assertTrue("bucket " + i, current[i - 1] <= current[i]);
+
+			if (previous != null) {
+				for (int i = 0; i < current.length; ++i)
+					Assert.assertTrue("bucket " + i, previous[i] <= current[i]);
+			}
+
+			Assert.assertEquals(100L * (round + 1), current[current.length - 1]);
+			previous = current;
+		}
+	}
+
+	@Test
+	public void testHistogramsOfMultipleSources()
+	{
+		final LatencyHistogram first = new LatencyHistogram();
+		first.record(1L, TimeUnit.SECONDS);
+
+		final PrometheusWriter writer = new PrometheusWriter()
+				.histogram("eaas_time_seconds", "Time", first, "provider", "a")
+				.histogram("eaas_time_seconds", "Time", new LatencyHistogram(), "provider", "b");
+
+		final String output = writer.toString();
+		Assert.assertEquals(output.indexOf("# TYPE"), output.lastIndexOf("# TYPE"));
+		Assert.assertTrue(output.contains("eaas_time_seconds_count{provider=\"a\"} 1\n"));
+		Assert.assertTrue(output.contains("eaas_time_seconds_count{provider=\"b\"} 0\n"));
+	}
+
+
+	/* ========== Internal Helpers ========== */
+
+	private static List<String> samples(PrometheusWriter writer)
+	{
+		final List<String> samples = new ArrayList<String>();
+		for (String line : writer.toString().split("\n")) {
+			if (!line.startsWith("#"))
+				samples.add(line);
+		}
+
+		return samples;
+	}
+
+	private static long[] buckets(PrometheusWriter writer)
+	{
+		return PrometheusWriterTest.samples(writer).stream()
+				.filter((line) -> line.contains("_bucket{"))
+				.mapToLong((line) -> Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)))
+				.toArray();
+	}
+}
@@ -52,6 +52,7 @@ import de.bwl.bwfla.common.logging.PrefixLoggerContext;
 import de.bwl.bwfla.eaas.cluster.dump.DumpConfig;
 import de.bwl.bwfla.eaas.cluster.dump.DumpFlags;
 import de.bwl.bwfla.eaas.cluster.dump.DumpHelpers;
+import de.bwl.bwfla.eaas.cluster.metrics.PrometheusWriter;
 
 
 @Path("api/v1/clusters")
@@ -108,6 +109,32 @@ public class ClusterAPI
 		return this.execute(name, token, JSON_RESPONSE_CAPACITY);
 	}
 	
+	/** Returns the metrics of all providers in Prometheus' text format */
+	@GET
+	@Path("/{cluster_name}/metrics")
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response getClusterMetrics(
+			@PathParam("cluster_name") String name,
+			@HeaderParam(Headers.ADMIN_ACCESS_TOKEN) String token)
+	{
+		try {
+			final IClusterManager cluster = this.findClusterManager(name);
+			ClusterAPI.authorize(clustermgr, token);
+
+			final PrometheusWriter metrics = new PrometheusWriter();
+			cluster.export(metrics);
+			return Response.ok(metrics.toString(), PrometheusWriter.CONTENT_TYPE)
+					.build();
+		}
+		catch (Throwable error) {
+			final String url = uri.getAbsolutePath().toString();
+			log.log(Level.WARNING, "Exporting metrics for URL '" + url + "' failed!\n", error);
+			if (error instanceof WebApplicationException)
+				return ((WebApplicationException) error).getResponse();
+			else return ClusterAPI.newErrorResponse(error);
+		}
+	}
+	
 	@GET
 	@Path("/{cluster_name}/{subres:.*}")
 	@Produces(MediaType.APPLICATION_JSON)
@@ -25,14 +25,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -62,6 +65,7 @@ import de.bwl.bwfla.eaas.cluster.exception.QuotaExceededException;
 import de.bwl.bwfla.eaas.cluster.metadata.Label;
 import de.bwl.bwfla.eaas.cluster.metadata.LabelSelector;
 import de.bwl.bwfla.eaas.cluster.metadata.Labels;
+import de.bwl.bwfla.eaas.cluster.metrics.PrometheusWriter;
 import de.bwl.bwfla.eaas.cluster.provider.IResourceProvider;
 import de.bwl.bwfla.eaas.cluster.provider.ResourceProvider;
 import de.bwl.bwfla.eaas.cluster.provider.ResourceProviderComparators;
@@ -139,7 +143,7 @@ public class ClusterManager implements IClusterManager
 			throw new QuotaExceededException("Quota exceeded for tenant " + tenant);
 
 		try {
-			return this.doAllocation(selectors, aid, spec, timeout, unit)
+			return this.doAllocation(tenant, selectors, aid, spec, timeout, unit)
 					.setTenantId(tenant);
 		}
 		catch (TimeoutException | AllocationFailureException error) {
@@ -151,6 +155,52 @@ public class ClusterManager implements IClusterManager
 		}
 	}
 
+	@Override
+	public CompletableFuture<ResourceHandle> allocateAsync(String tenant, Collection<LabelSelector> selectors,
+			UUID aid, ResourceSpec spec, long timeout, TimeUnit unit)
+	{
+		final CompletableFuture<ResourceHandle> result = new CompletableFuture<ResourceHandle>();
+
+		// Check tenant's quota...
+		try {
+			if (!this.allocateQuota(tenant, spec))
+				throw new QuotaExceededException("Quota exceeded for tenant " + tenant);
+		}
+		catch (AllocationFailureException error) {
+			result.completeExceptionally(error);
+			return result;
+		}
+
+		final List<AllocationAttempt> attempts;
+		try {
+			attempts = this.getAllocationAttempts(this.selectProviders(selectors, aid));
+		}
+		catch (AllocationFailureException error) {
+			this.freeQuota(tenant, spec);
+			result.completeExceptionally(error);
+			return result;
+		}
+
+		// Abort the allocation, when the deadline expires
+		final ScheduledFuture<?> timer = executors.scheduler().schedule(() -> {
+			if (result.completeExceptionally(new TimeoutException()))
+				log.warning("Allocation " + aid + " timed out! Aborting...");
+		}, timeout, unit);
+
+		final long deadline = ResourceProvider.getCurrentTime() + unit.toMillis(timeout);
+		this.doAllocation(tenant, attempts.iterator(), aid, spec, deadline, result);
+
+		return result.handle((handle, error) -> {
+			timer.cancel(false);
+			if (error == null)
+				return handle.setTenantId(tenant);
+
+			// Revert quota allocation!
+			this.freeQuota(tenant, spec);
+			throw (error instanceof CompletionException) ? (CompletionException) error : new CompletionException(error);
+		});
+	}
+
 	@Override
 	public void release(ResourceHandle handle)
 	{
@@ -226,6 +276,14 @@ public class ClusterManager implements IClusterManager
 	}
 	
 	
+	@Override
+	public void export(PrometheusWriter metrics)
+	{
+		for (IResourceProvider provider : providers.values())
+			provider.export(metrics);
+	}
+	
+	
 	/* ========== Admin REST-API ========== */
 	
 	@Override
@@ -325,7 +383,7 @@ public class ClusterManager implements IClusterManager
 			try {
 				final String name = rpc.getName();
 				log.info("Initializing '" + name + "' resource provider...");
-				final ResourceProvider provider = new ResourceProvider(rpc, executors);
+				final ResourceProvider provider = new ResourceProvider(rpc, executors, this::getTenantWeight);
 				final String rank = provider.getLabelIndex().get(Labels.RANK);
 				providers.put(name, provider);
 				log.info("Rank " + rank + " assigned to resource provider '" + name + "'");
@@ -340,14 +398,14 @@ public class ClusterManager implements IClusterManager
 		}
 	}
 	
-	private ResourceHandle doAllocation(IResourceProvider provider, UUID aid,
+	private ResourceHandle doAllocation(IResourceProvider provider, String tenant, UUID aid,
 			ResourceSpec spec, boolean scaleup, long timeout, TimeUnit unit)
 			throws TimeoutException, OutOfResourcesException, AllocationFailureException
 	{
 		final String aprefix = (scaleup) ? "scaleup-" : "";
 		log.info("Starting " + aprefix + "allocation " + aid + " using provider '" + provider.getName() + "'...");
 		
-		CompletableFuture<ResourceHandle> result = provider.allocate(aid, spec, scaleup, timeout, unit);
+		CompletableFuture<ResourceHandle> result = provider.allocate(tenant, aid, spec, scaleup, timeout, unit);
 		try {
 			final ResourceHandle handle = result.get(timeout, unit);
 			final String message = "Allocation " + aid + " assigned to node " + handle.getNodeID()
@@ -370,13 +428,13 @@ public class ClusterManager implements IClusterManager
 	}
 	
 	private ResourceHandle doAllocation(Collection<IResourceProvider> candidates, 
-			UUID aid, ResourceSpec spec, boolean scaleup, long deadline)
+			String tenant, UUID aid, ResourceSpec spec, boolean scaleup, long deadline)
 			throws TimeoutException, OutOfResourcesException
 	{
 		for (IResourceProvider provider : candidates) {
 			try {
 				final long timeout = deadline - ResourceProvider.getCurrentTime();
-				return this.doAllocation(provider, aid, spec, scaleup, timeout, TimeUnit.MILLISECONDS);
+				return this.doAllocation(provider, tenant, aid, spec, scaleup, timeout, TimeUnit.MILLISECONDS);
 			}
 			catch (TimeoutException error) {
 				// No time left to continue!
@@ -390,9 +448,35 @@ public class ClusterManager implements IClusterManager
 		throw new OutOfResourcesException();
 	}
 
-	private ResourceHandle doAllocation(Collection<LabelSelector> selectors,
+	private ResourceHandle doAllocation(String tenant, Collection<LabelSelector> selectors,
 			UUID aid, ResourceSpec spec, long timeout, TimeUnit unit)
 			throws TimeoutException, AllocationFailureException
+	{
+		final Set<IResourceProvider> candidates = this.selectProviders(selectors, aid);
+		final int numSelectedProviders = candidates.size();
+
+		final long deadline = ResourceProvider.getCurrentTime() + unit.toMillis(timeout);
+		if (numSelectedProviders > 1) {
+			try {
+				// Multiple providers are available!
+				// Don't scale up the resources, before trying each provider...
+				return this.doAllocation(candidates, tenant, aid, spec, false, deadline);
+			}
+			catch (TimeoutException error) {
+				// No time left to continue!
+				throw error;
+			}
+			catch (Throwable error) {
+				// Ignore it!
+			}
+		}
+
+		// Try to allocate and scale up the resources, when possible...
+		return this.doAllocation(candidates, tenant, aid, spec, true, deadline);
+	}
+
+	private Set<IResourceProvider> selectProviders(Collection<LabelSelector> selectors, UUID aid)
+			throws AllocationFailureException
 	{
 		final Set<IResourceProvider> candidates = new TreeSet<IResourceProvider>(comparator);
 		if (selectors == null || selectors.isEmpty()) {
@@ -425,24 +509,103 @@ public class ClusterManager implements IClusterManager
 			throw new AllocationFailureException(message + ".");
 		}
 
-		final long deadline = ResourceProvider.getCurrentTime() + unit.toMillis(timeout);
-		if (numSelectedProviders > 1) {
-			try {
-				// Multiple providers are available!
-				// Don't scale up the resources, before trying each provider...
-				return this.doAllocation(candidates, aid, spec, false, deadline);
-			}
-			catch (TimeoutException error) {
-				// No time left to continue!
-				throw error;
-			}
-			catch (Throwable error) {
-				// Ignore it!
-			}
+		return candidates;
+	}
+
+	/** Returns the providers to try in order, same as for blocking allocations */
+	private List<AllocationAttempt> getAllocationAttempts(Set<IResourceProvider> candidates)
+	{
+		final List<AllocationAttempt> attempts = new ArrayList<AllocationAttempt>(2 * candidates.size());
+		if (candidates.size() > 1) {
+			// Don't scale up the resources, before trying each provider...
+			for (IResourceProvider provider : candidates)
+				attempts.add(new AllocationAttempt(provider, false));
 		}
 
-		// Try to allocate and scale up the resources, when possible...
-		return this.doAllocation(candidates, aid, spec, true, deadline);
+		for (IResourceProvider provider : candidates)
+			attempts.add(new AllocationAttempt(provider, true));
+
+		return attempts;
+	}
+
+	private void doAllocation(String tenant, Iterator<AllocationAttempt> attempts, UUID aid, ResourceSpec spec,
+			long deadline, CompletableFuture<ResourceHandle> result)
+	{
+		if (result.isDone())
+			return;  // Allocation timed out
+
+		if (!attempts.hasNext()) {
+			result.completeExceptionally(new OutOfResourcesException());
+			return;
+		}
+
+		final AllocationAttempt attempt = attempts.next();
+		final IResourceProvider provider = attempt.provider;
+		final long timeout = deadline - ResourceProvider.getCurrentTime();
+		if (timeout <= 0L) {
+			result.completeExceptionally(new TimeoutException());
+			return;
+		}
+
+		final String aprefix = (attempt.scaleup) ? "scaleup-" : "";
+		log.info("Starting " + aprefix + "allocation " + aid + " using provider '" + provider.getName() + "'...");
+
+		provider.allocate(tenant, aid, spec, attempt.scaleup, timeout, TimeUnit.MILLISECONDS)
+				.whenComplete((handle, error) -> {
+					if (error != null) {
+						// Try next provider...
+						this.doAllocation(tenant, attempts, aid, spec, deadline, result);
+						return;
+					}
+
+					if (result.complete(handle)) {
+						log.info("Allocation " + aid + " assigned to node " + handle.getNodeID()
+								+ " from provider '" + provider.getName() + "'");
+					}
+					else {
+						// Allocation timed out, release the allocated resources!
+						provider.release(handle);
+					}
+				});
+	}
+
+	private int getTenantWeight(String tenant)
+	{
+		// Tenants are not injected, when constructed outside of CDI
+		return (tenants != null) ? tenants.weight(tenant) : 1;
+	}
+
+	/** Allocates the spec from the tenant's quota, returning false if it is exceeded */
+	private boolean allocateQuota(String tenant, ResourceSpec spec) throws AllocationFailureException
+	{
+		// Tenants are not injected, when constructed outside of CDI
+		return tenant == null || tenants == null || tenants.allocate(tenant, spec);
+	}
+
+	/** Frees the spec from the tenant's quota, failures are logged only */
+	private void freeQuota(String tenant, ResourceSpec spec)
+	{
+		if (tenant == null || tenants == null)
+			return;
+
+		try {
+			tenants.free(tenant, spec);
+		}
+		catch (Exception error) {
+			log.log(Level.WARNING, "Updating tenant's quota usage failed!", error);
+		}
+	}
+
+	private static class AllocationAttempt
+	{
+		private final IResourceProvider provider;
+		private final boolean scaleup;
+
+		public AllocationAttempt(IResourceProvider provider, boolean scaleup)
+		{
+			this.provider = provider;
+			this.scaleup = scaleup;
+		}
 	}
 
 	@PostConstruct
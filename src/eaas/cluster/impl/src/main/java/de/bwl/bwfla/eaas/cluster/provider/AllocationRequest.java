@@ -30,16 +30,35 @@ import de.bwl.bwfla.eaas.cluster.ResourceSpec;
 class AllocationRequest
 {
 	private final CompletableFuture<ResourceHandle> result;
+	private final String tenant;
 	private final UUID allocationId;
     private final ResourceSpec spec;
 	private final long deadline;
+	private final boolean scaleup;
+	private final long timestamp;
+	private long deferralTimestamp;
 	
 	public AllocationRequest(CompletableFuture<ResourceHandle> result, UUID allocationId, ResourceSpec spec, long deadline)
+	{
+		this(result, null, allocationId, spec, deadline, false);
+	}
+	
+	public AllocationRequest(CompletableFuture<ResourceHandle> result, String tenant, UUID allocationId, ResourceSpec spec, long deadline, boolean scaleup)
 	{
 		this.result = result;
+		this.tenant = tenant;
 		this.allocationId = allocationId;
 		this.spec = spec;
 		this.deadline = deadline;
+		this.scaleup = scaleup;
+		this.timestamp = System.nanoTime();
+		this.deferralTimestamp = timestamp;
+	}
+	
+	/** Returns the tenant, this request was submitted for, or null */
+	public String getTenant()
+	{
+		return tenant;
 	}
 	
     public UUID getAllocationId()
@@ -57,6 +76,35 @@ class AllocationRequest
 		return deadline;
 	}
 	
+	/** Returns true, if this request can be deferred until the pool is scaled up */
+	public boolean isScaleUpAllowed()
+	{
+		return scaleup;
+	}
+	
+	/** Returns the creation time, as returned by {@link System#nanoTime()} */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+	
+	/** Marks this request as deferred until the pool is scaled up */
+	public void defer()
+	{
+		this.deferralTimestamp = System.nanoTime();
+	}
+	
+	/** Returns the time, when this request was deferred or created, as returned by {@link System#nanoTime()} */
+	public long getDeferralTimestamp()
+	{
+		return deferralTimestamp;
+	}
+	
+	public boolean isDone()
+	{
+		return result.isDone();
+	}
+	
 	public void complete(ResourceHandle handle)
 	{
 		result.complete(handle);
@@ -20,35 +20,71 @@
 package de.bwl.bwfla.eaas.cluster.provider;
 
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.function.ToIntFunction;
 
 import javax.json.stream.JsonGenerator;
 
 import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
 import de.bwl.bwfla.eaas.cluster.ResourceSpec;
 import de.bwl.bwfla.eaas.cluster.dump.DumpConfig;
+import de.bwl.bwfla.eaas.cluster.dump.DumpFlags;
 import de.bwl.bwfla.eaas.cluster.dump.DumpHelpers;
 import de.bwl.bwfla.eaas.cluster.dump.DumpTrigger;
 import de.bwl.bwfla.eaas.cluster.dump.IDumpable;
 import de.bwl.bwfla.eaas.cluster.dump.ObjectDumper;
+import de.bwl.bwfla.eaas.cluster.metrics.LatencyHistogram;
+import de.bwl.bwfla.eaas.cluster.metrics.PrometheusWriter;
 
 // package-private
 
+/**
+ * A queue of deferred allocation requests. Requests are served fairly across tenants, using
+ * start-time fair queuing: each tenant accumulates a virtual time, advanced by the cost of its
+ * served requests divided by its weight. The tenant with the smallest virtual time is served
+ * next, its own requests ordered by deadline. The cost of a request is its dominant share of
+ * a node's capacity, so that tenants with larger requests get proportionally fewer of them.
+ */
 class AllocationRequestQueue implements IDumpable
 {
+	private static final String NO_TENANT = "";
+	
+	/** Lower bound for request costs, so that every served request advances the virtual time */
+	private static final double MIN_COST = 1.0E-3;
+	
 	private final PriorityQueue<AllocationRequest> requests;
 	private final TreeSet<AllocationRequest> resources;
+	private final Map<String, TenantQueue> tenants;
+	private final Map<String, LatencyHistogram> waitTimes;
 	private final MutableResourceSpec specsum;
+	private final ResourceSpec capacity;
+	private final ToIntFunction<String> weights;
 	
-	public AllocationRequestQueue()
+	/** Virtual time of the last served request */
+	private double vtime;
+	
+	/**
+	 * @param capacity The node capacity, used for computing request costs
+	 * @param weights Lookup function for tenants' weights
+	 */
+	public AllocationRequestQueue(ResourceSpec capacity, ToIntFunction<String> weights)
 	{
 		this.requests = new PriorityQueue<AllocationRequest>(DEADLINE_COMPARATOR);
 		this.resources = new TreeSet<AllocationRequest>(RESOURCE_COMPARATOR);
+		this.tenants = new TreeMap<String, TenantQueue>();
+		this.waitTimes = new TreeMap<String, LatencyHistogram>();
 		this.specsum = new MutableResourceSpec();
+		this.capacity = capacity;
+		this.weights = weights;
+		this.vtime = 0.0;
 	}
 	
 	public ResourceSpec getResourceSum()
@@ -61,6 +97,19 @@ class AllocationRequestQueue implements IDumpable
 		specsum.add(request.getResourceSpec());
 		requests.add(request);
 		resources.add(request);
+		
+		final String tid = request.getTenant();
+		final String key = AllocationRequestQueue.toTenantKey(tid);
+		TenantQueue tenant = tenants.get(key);
+		if (tenant == null) {
+			// Idle tenants should not accumulate credit
+			final LatencyHistogram waitTime = waitTimes.computeIfAbsent(key, (name) -> new LatencyHistogram());
+			tenant = new TenantQueue(key, waitTime, vtime);
+			tenants.put(key, tenant);
+		}
+		
+		tenant.weight = (tid != null) ? Math.max(1, weights.applyAsInt(tid)) : 1;
+		tenant.requests.add(request);
 	}
 	
 	/**
@@ -79,13 +128,14 @@ class AllocationRequestQueue implements IDumpable
 		return requests.peek();
 	}
 	
-	/** Retrieves and removes a request with the smallest deadline. */
+	/** Retrieves and removes a request with the smallest deadline, without charging its tenant. */
 	public AllocationRequest poll()
 	{
 		AllocationRequest request = requests.poll();
 		if (request != null) {
 			specsum.sub(request.getResourceSpec());
 			resources.remove(request);
+			this.remove(this.lookup(request), request);
 		}
 		
 		return request;
@@ -101,6 +151,20 @@ class AllocationRequestQueue implements IDumpable
 		return requests.size();
 	}
 	
+	/** Adds per-tenant queue depths and wait times to the specified writer. */
+	public void export(PrometheusWriter metrics, String provider)
+	{
+		// Series of drained tenants are still exported, since their queues are dropped
+		waitTimes.forEach((name, waitTime) -> {
+			final TenantQueue tenant = tenants.get(name);
+			metrics.gauge(METRICS_PREFIX + "deferred_allocations", "Deferred allocation requests per tenant",
+					(tenant != null) ? tenant.requests.size() : 0, "provider", provider, "tenant", name);
+			
+			metrics.histogram(METRICS_PREFIX + "wait_time_seconds", "Time deferred requests wait until being served, per tenant",
+					waitTime, "provider", provider, "tenant", name);
+		});
+	}
+	
 	@Override
 	public void dump(JsonGenerator json, DumpConfig dconf, int flags)
 	{
@@ -112,11 +176,31 @@ class AllocationRequestQueue implements IDumpable
 			});
 			
 			dumper.add("num_" + DumpFields.ENTRIES, () -> json.write("num_" + DumpFields.ENTRIES, this.size()));
+			dumper.add(DumpFields.TENANTS, () -> {
+				json.writeStartArray(DumpFields.TENANTS);
+				for (TenantQueue tenant : tenants.values()) {
+					json.writeStartObject();
+					json.write("name", tenant.name);
+					json.write("weight", tenant.weight);
+					json.write("vtime", tenant.vtime);
+					json.write("num_" + DumpFields.ENTRIES, tenant.requests.size());
+					json.writeStartObject("wait_time");
+					tenant.waitTime.dump(json, dconf, DumpFlags.set(flags, DumpFlags.INLINED));
+					json.writeEnd();
+					json.writeEnd();
+				}
+				
+				json.writeEnd();
+			});
+			
 			dumper.add(DumpFields.ENTRIES, () -> {
 				json.writeStartArray(DumpFields.ENTRIES);
 				for (AllocationRequest request : requests) {
 					json.writeStartObject();
 					json.write("allocation_id", request.getAllocationId().toString());
+					if (request.getTenant() != null)
+						json.write("tenant", request.getTenant());
+
 					final long deadline = request.getDeadline() - ResourceProvider.getCurrentTime();
 					json.write("deadline",  (deadline < 0) ? "expired" : DumpHelpers.toDurationString(deadline));
 					json.write("spec", DumpHelpers.toJsonObject(request.getResourceSpec()));
@@ -136,22 +220,40 @@ class AllocationRequestQueue implements IDumpable
 	{
 		private static final String ENTRIES        = "entries";
 		private static final String RESOURCES_SUM  = "resources_sum";
+		private static final String TENANTS        = "tenants";
 	}
 	
 	
-	/** A class representing a subset of requests of an {@link AllocationRequestQueue} */
+	/**
+	 * A class representing a subset of requests of an {@link AllocationRequestQueue}. The view keeps
+	 * one position per tenant, so that requests are visited in fair order only once per view.
+	 */
 	public final class View
 	{
 		private final TreeSet<AllocationRequest> deadlines;
+		private final PriorityQueue<Cursor> cursors;
+		private final Map<String, Cursor> groups;
 		private SortedSet<AllocationRequest> remaining;
 		
 		private View(ResourceSpec bound)
 		{
 			this.deadlines = new TreeSet<AllocationRequest>(DEADLINE_COMPARATOR);
+			this.cursors = new PriorityQueue<Cursor>(CURSOR_COMPARATOR);
+			this.groups = new HashMap<String, Cursor>();
 			this.remaining = resources.headSet(this.newBoundKey(bound));
 			
 			// Sort the bounded requests by deadline
 			deadlines.addAll(remaining);
+			
+			// Group them by tenant, keeping their deadline order
+			final AllocationRequestQueue outer = AllocationRequestQueue.this;
+			for (AllocationRequest request : deadlines) {
+				final TenantQueue tenant = outer.lookup(request);
+				groups.computeIfAbsent(tenant.name, (unused) -> new Cursor(tenant))
+						.requests.add(request);
+			}
+			
+			cursors.addAll(groups.values());
 		}
 		
 		/**
@@ -168,30 +270,40 @@ class AllocationRequestQueue implements IDumpable
 				return;  // Remaining requests are below the new bound!
 			
 			// There must be some requests above the bound!
-			// Remove them from the deadlines queue...
-			deadlines.removeAll(remaining.tailSet(curkey));
+			// Remove them from the deadlines queue and tenants' positions...
+			for (AllocationRequest request : remaining.tailSet(curkey)) {
+				if (deadlines.remove(request))
+					this.prune(request);
+			}
+			
+			remaining = remaining.headSet(curkey);
 		}
 		
-		/** Retrieves, but does not remove, a request with the smallest deadline. */
+		/** Retrieves, but does not remove, the request to be served next. */
 		public AllocationRequest peek()
 		{
-			return deadlines.first();
+			final Cursor cursor = cursors.peek();
+			return (cursor != null) ? cursor.requests.first() : null;
 		}
 		
-		/** Retrieves and removes a request with the smallest deadline. */
+		/** Retrieves and removes the request to be served next, charging its tenant. */
 		public AllocationRequest poll()
 		{
-			AllocationRequest request = deadlines.pollFirst();
+			final AllocationRequest request = this.next();
 			if (request != null)
 				this.remove(request);
 			
 			return request;
 		}
 		
-		/** Returns an iterator over view's requests sorted by deadline. */
+		/**
+		 * Returns an iterator over view's requests in fair order across tenants. All iterators
+		 * share view's positions, hence requests already returned by this view are skipped.
+		 * Requests removed through the iterator are considered served and charged to their tenants.
+		 */
 		public Iterator<AllocationRequest> iterator()
 		{
-			return new ViewIterator(this);
+			return new FairIterator(this);
 		}
 		
 		public boolean isEmpty()
@@ -204,6 +316,44 @@ class AllocationRequestQueue implements IDumpable
 			return deadlines.size();
 		}
 		
+		/** Returns the request to be served next and advances its tenant's position */
+		private AllocationRequest next()
+		{
+			final Cursor cursor = cursors.poll();
+			if (cursor == null)
+				return null;
+			
+			final AllocationRequest request = cursor.next();
+			this.requeue(cursor);
+			return request;
+		}
+		
+		/** Removes a request from its tenant's position, if not yet visited */
+		private void prune(AllocationRequest request)
+		{
+			final Cursor cursor = groups.get(AllocationRequestQueue.toTenantKey(request.getTenant()));
+			if (cursor == null || !cursor.requests.contains(request))
+				return;
+			
+			if (cursor.requests.first() != request) {
+				cursor.requests.remove(request);
+				return;
+			}
+			
+			// Cursors are ordered by their first request,
+			// hence it must be reinserted after the update!
+			cursors.remove(cursor);
+			cursor.requests.remove(request);
+			this.requeue(cursor);
+		}
+		
+		private void requeue(Cursor cursor)
+		{
+			if (cursor.requests.isEmpty())
+				groups.remove(cursor.tenant.name);
+			else cursors.add(cursor);
+		}
+		
 		private void remove(AllocationRequest request)
 		{
 			final AllocationRequestQueue outer = AllocationRequestQueue.this;
@@ -212,9 +362,11 @@ class AllocationRequestQueue implements IDumpable
 			outer.requests.remove(request);
 			outer.resources.remove(request);
 			outer.specsum.sub(request.getResourceSpec());
+			outer.serve(request);
 			
 			// Since remaining set is backed by the
-			// outer queue, nothing more to do!
+			// outer queue, only deadlines need an update!
+			deadlines.remove(request);
 		}
 		
 		private AllocationRequest newBoundKey(ResourceSpec bound)
@@ -228,6 +380,8 @@ class AllocationRequestQueue implements IDumpable
 	
 	/* =============== Internal Helpers =============== */
 	
+	private static final String METRICS_PREFIX = "eaas_cluster_provider_tenant_";
+	
 	private static final UUID DUMMY_UUID = new UUID(0xFFFFFFFFFFFFFFFFL, 0xFFFFFFFFFFFFFFFFL);
 	
 	/** Comparator for sorting by request's deadline */
@@ -249,38 +403,127 @@ class AllocationRequestQueue implements IDumpable
 		return DEADLINE_COMPARATOR.compare(r1, r2);
 	};
 	
-	private static final class ViewIterator implements Iterator<AllocationRequest>
+	/** Comparator for sorting cursors by virtual time, then by deadline of their next request */
+	private static final Comparator<Cursor> CURSOR_COMPARATOR = (c1, c2) -> {
+		final int result = Double.compare(c1.vtime, c2.vtime);
+		if (result != 0)
+			return result;
+		
+		return DEADLINE_COMPARATOR.compare(c1.requests.first(), c2.requests.first());
+	};
+	
+	private static String toTenantKey(String tenant)
+	{
+		return (tenant != null) ? tenant : NO_TENANT;
+	}
+	
+	private TenantQueue lookup(AllocationRequest request)
+	{
+		return tenants.get(AllocationRequestQueue.toTenantKey(request.getTenant()));
+	}
+	
+	/** Returns request's dominant share of a node's capacity */
+	private double cost(AllocationRequest request)
+	{
+		return Math.max(MIN_COST, ResourceProvider.getDominantShare(request.getResourceSpec(), capacity));
+	}
+	
+	/** Charges the request to its tenant, after it was served */
+	private void serve(AllocationRequest request)
+	{
+		final TenantQueue tenant = this.lookup(request);
+		this.remove(tenant, request);
+		tenant.waitTime.recordSince(request.getDeferralTimestamp());
+		
+		// The virtual time advances to the start of the served request
+		vtime = Math.max(vtime, tenant.vtime);
+		tenant.vtime += this.cost(request) / tenant.weight;
+	}
+	
+	/** Removes the request from its tenant's queue, dropping the tenant once drained */
+	private void remove(TenantQueue tenant, AllocationRequest request)
+	{
+		tenant.requests.remove(request);
+		if (tenant.requests.isEmpty())
+			tenants.remove(tenant.name);
+	}
+	
+	private static final class TenantQueue
+	{
+		private final String name;
+		private final TreeSet<AllocationRequest> requests;
+		private final LatencyHistogram waitTime;
+		private int weight;
+		private double vtime;
+		
+		public TenantQueue(String name, LatencyHistogram waitTime, double vtime)
+		{
+			this.name = name;
+			this.requests = new TreeSet<AllocationRequest>(DEADLINE_COMPARATOR);
+			this.waitTime = waitTime;
+			this.weight = 1;
+			this.vtime = vtime;
+		}
+	}
+	
+	/** Position within a tenant's requests of a view */
+	private final class Cursor
+	{
+		private final TenantQueue tenant;
+		private final TreeSet<AllocationRequest> requests;
+		private double vtime;
+		
+		public Cursor(TenantQueue tenant)
+		{
+			this.tenant = tenant;
+			this.requests = new TreeSet<AllocationRequest>(DEADLINE_COMPARATOR);
+			this.vtime = tenant.vtime;
+		}
+		
+		public AllocationRequest next()
+		{
+			final AllocationRequest request = requests.pollFirst();
+			vtime += AllocationRequestQueue.this.cost(request) / tenant.weight;
+			return request;
+		}
+	}
+	
+	/** Iterator, merging tenants' requests by their virtual times */
+	private final class FairIterator implements Iterator<AllocationRequest>
 	{
 		private final AllocationRequestQueue.View view;
-		private final Iterator<AllocationRequest> iterator;
 		private AllocationRequest request;
 		
-		public ViewIterator(AllocationRequestQueue.View view)
+		public FairIterator(AllocationRequestQueue.View view)
 		{
 			this.view = view;
-			this.iterator = view.deadlines.iterator();
 			this.request = null;
 		}
 		
 		@Override
 		public boolean hasNext()
 		{
-			return iterator.hasNext();
+			return !view.cursors.isEmpty();
 		}
 		
 		@Override
 		public AllocationRequest next()
 		{
-			request = iterator.next();
+			request = view.next();
+			if (request == null)
+				throw new NoSuchElementException();
+			
 			return request;
 		}
 		
 		@Override
 		public void remove()
 		{
-			iterator.remove();
-			if (request != null)
-				view.remove(request);
+			if (request == null)
+				throw new IllegalStateException();
+			
+			view.remove(request);
+			request = null;
 		}
 	}
 }
@@ -0,0 +1,272 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonWriter;
+
+import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+
+
+/**
+ * Forecasts resource demand from weekly profiles. Observed demand peaks are aggregated into
+ * one bucket per weekday and hour, smoothed exponentially over the weeks. A multiplicative
+ * trend tracks how observed peaks deviate from their profiled values, so that growing or
+ * shrinking demand is anticipated before the profiles catch up.
+ * <p/>
+ * Instances are not thread-safe and should be used from the provider's executor only.
+ */
+// package-private
+class DemandForecast
+{
+	private static final int NUM_BUCKETS = 7 * 24;
+	private static final long BUCKET_DURATION = TimeUnit.HOURS.toMillis(1L);
+
+	private static final float MIN_TREND = 0.5F;
+	private static final float MAX_TREND = 2.0F;
+
+	private static final int STATE_VERSION = 1;
+
+	private final float[] cpu;
+	private final float[] memory;
+	private final int[] samples;
+	private final float smoothing;
+	private final float trendSmoothing;
+	private final ZoneId zone;
+	private final MutableResourceSpec peak;
+
+	private float trend;
+	private int bucket;
+	private long bucketEnd;
+
+
+	/**
+	 * @param smoothing Weight of a new observation for its weekly profile
+	 * @param trendSmoothing Weight of a new observation for the trend
+	 * @param zone Time zone, in which the weekly pattern is observed
+	 */
+	DemandForecast(float smoothing, float trendSmoothing, ZoneId zone)
+	{
+		this.cpu = new float[NUM_BUCKETS];
+		this.memory = new float[NUM_BUCKETS];
+		this.samples = new int[NUM_BUCKETS];
+		this.smoothing = smoothing;
+		this.trendSmoothing = trendSmoothing;
+		this.zone = zone;
+		this.peak = new MutableResourceSpec();
+		this.trend = 1.0F;
+		this.bucket = -1;
+		this.bucketEnd = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Records the total demand observed at the given time.
+	 * @return true when an hourly bucket was completed and the profiles changed, else false
+	 */
+	boolean record(long timestamp, ResourceSpec demand)
+	{
+		boolean updated = false;
+		if (timestamp >= bucketEnd) {
+			if (bucket >= 0) {
+				this.update(bucket, peak);
+				updated = true;
+			}
+
+			// Start observing the next bucket, until the next full hour in local time.
+			// Zones can be offset by fractions of an hour, hence don't round in UTC.
+			final ZonedDateTime time = this.toZonedTime(timestamp);
+			peak.reset();
+			bucket = DemandForecast.toBucket(time);
+			bucketEnd = time.truncatedTo(ChronoUnit.HOURS)
+					.plusHours(1L)
+					.toInstant()
+					.toEpochMilli();
+		}
+
+		peak.max(demand);
+		return updated;
+	}
+
+	/** Returns the maximum demand expected between the given time and the lead-time after it */
+	ResourceSpec predict(long timestamp, long leadtime)
+	{
+		final MutableResourceSpec result = new MutableResourceSpec();
+		final long end = timestamp + leadtime;
+		for (long time = timestamp; ; time = Math.min(time + BUCKET_DURATION, end)) {
+			final int index = DemandForecast.toBucket(this.toZonedTime(time));
+			if (samples[index] > 0)
+				result.max(Math.round(cpu[index] * trend), Math.round(memory[index] * trend));
+
+			if (time >= end)
+				break;
+		}
+
+		return result;
+	}
+
+	float getTrend()
+	{
+		return trend;
+	}
+
+	/** Returns the number of buckets with at least one observation */
+	int getNumObservedBuckets()
+	{
+		int count = 0;
+		for (int num : samples) {
+			if (num > 0)
+				++count;
+		}
+
+		return count;
+	}
+
+	/** Returns a snapshot of the profiles, suitable for {@link #save(Path, JsonObject)} */
+	JsonObject snapshot()
+	{
+		final JsonArrayBuilder buckets = Json.createArrayBuilder();
+		for (int i = 0; i < NUM_BUCKETS; ++i) {
+			buckets.add(Json.createObjectBuilder()
+					.add("cpu", cpu[i])
+					.add("memory", memory[i])
+					.add("samples", samples[i]));
+		}
+
+		return Json.createObjectBuilder()
+				.add("version", STATE_VERSION)
+				.add("trend", trend)
+				.add("buckets", buckets)
+				.build();
+	}
+
+	/** Writes a snapshot atomically to the given file */
+	static void save(Path path, JsonObject snapshot) throws IOException
+	{
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		final Path tmpfile = path.resolveSibling(path.getFileName() + ".tmp");
+		try (Writer output = Files.newBufferedWriter(tmpfile, StandardCharsets.UTF_8);
+				JsonWriter writer = Json.createWriter(output)) {
+			writer.writeObject(snapshot);
+		}
+
+		Files.move(tmpfile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/** Restores the profiles from the given file, if it exists */
+	boolean load(Path path) throws IOException
+	{
+		if (!Files.exists(path))
+			return false;
+
+		final JsonObject json;
+		try (Reader input = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+				JsonReader reader = Json.createReader(input)) {
+			json = reader.readObject();
+		}
+
+		final int version = json.getInt("version", -1);
+		if (version != STATE_VERSION)
+			throw new IOException("Unsupported version of forecast state: " + version);
+
+		final JsonArray buckets = json.getJsonArray("buckets");
+		if (buckets == null || buckets.size() != NUM_BUCKETS)
+			throw new IOException("Invalid number of buckets in forecast state!");
+
+		for (int i = 0; i < NUM_BUCKETS; ++i) {
+			final JsonObject entry = buckets.getJsonObject(i);
+			cpu[i] = (float) entry.getJsonNumber("cpu").doubleValue();
+			memory[i] = (float) entry.getJsonNumber("memory").doubleValue();
+			samples[i] = entry.getInt("samples");
+		}
+
+		trend = DemandForecast.clamp((float) json.getJsonNumber("trend").doubleValue());
+		return true;
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private void update(int index, ResourceSpec observed)
+	{
+		if (samples[index] > 0) {
+			// Compare the observation with the profiled value
+			float ratio = 0.0F;
+			int numRatios = 0;
+			if (cpu[index] > 0.0F) {
+				ratio += observed.cpu() / cpu[index];
+				++numRatios;
+			}
+
+			if (memory[index] > 0.0F) {
+				ratio += observed.memory() / memory[index];
+				++numRatios;
+			}
+
+			if (numRatios > 0) {
+				ratio = DemandForecast.clamp(ratio / numRatios);
+				trend = trendSmoothing * ratio + (1.0F - trendSmoothing) * trend;
+			}
+
+			cpu[index] = smoothing * observed.cpu() + (1.0F - smoothing) * cpu[index];
+			memory[index] = smoothing * observed.memory() + (1.0F - smoothing) * memory[index];
+		}
+		else {
+			// First observation for this bucket
+			cpu[index] = observed.cpu();
+			memory[index] = observed.memory();
+		}
+
+		if (samples[index] < Integer.MAX_VALUE)
+			++samples[index];
+	}
+
+	private ZonedDateTime toZonedTime(long timestamp)
+	{
+		return Instant.ofEpochMilli(timestamp).atZone(zone);
+	}
+
+	private static int toBucket(ZonedDateTime time)
+	{
+		return (time.getDayOfWeek().getValue() - 1) * 24 + time.getHour();
+	}
+
+	private static float clamp(float trend)
+	{
+		return Math.max(MIN_TREND, Math.min(trend, MAX_TREND));
+	}
+}
@@ -39,6 +39,7 @@ public class Node implements Comparable<Node>, IDumpable
 	protected final NodeID id;
 	protected final ResourceSpec capacity;
 	private final AtomicBoolean healthy;
+	private final AtomicBoolean degraded;
 	private final AtomicBoolean used;
 	private final AtomicLong unusedTimestamp;
 	private final long bootTimestamp;
@@ -46,6 +47,9 @@ public class Node implements Comparable<Node>, IDumpable
 	/** Callback for receiving changes of node's used-state */
 	private BiConsumer<NodeID, Boolean> onUsedStateChangedCallback;
 	
+	/** Callback for receiving changes of node's health- or degraded-state */
+	private BiConsumer<NodeID, Boolean> onHealthStateChangedCallback;
+	
 	public Node(NodeID id, ResourceSpec capacity)
 	{
 		final long curtime = Node.nowms();
@@ -53,10 +57,12 @@ public class Node implements Comparable<Node>, IDumpable
 		this.id = id;
 		this.capacity = capacity;
 		this.healthy = new AtomicBoolean(true);
+		this.degraded = new AtomicBoolean(false);
 		this.used = new AtomicBoolean(false);
 		this.unusedTimestamp = new AtomicLong(curtime);
 		this.bootTimestamp = curtime;
 		this.onUsedStateChangedCallback = null;
+		this.onHealthStateChangedCallback = null;
 	}
 	
 	public NodeID getId()
@@ -95,7 +101,20 @@ public class Node implements Comparable<Node>, IDumpable
 	
 	public void setHealthy(boolean healthy)
 	{
-		this.healthy.set(healthy);
+		if (this.healthy.getAndSet(healthy) != healthy)
+			this.notifyHealthStateChanged();
+	}
+	
+	/** Returns true, if the node reported to be overloaded and should not receive new allocations */
+	public boolean isDegraded()
+	{
+		return degraded.get();
+	}
+	
+	public void setDegraded(boolean degraded)
+	{
+		if (this.degraded.getAndSet(degraded) != degraded)
+			this.notifyHealthStateChanged();
 	}
 	
 	public boolean isUsed()
@@ -119,6 +138,12 @@ public class Node implements Comparable<Node>, IDumpable
 	{
 		this.onUsedStateChangedCallback = callback;
 	}
+	
+	/** Sets the callback, called with node's usability for new allocations, whenever it may have changed */
+	public void setOnHealthStateChangedCallback(BiConsumer<NodeID, Boolean> callback)
+	{
+		this.onHealthStateChangedCallback = callback;
+	}
 
 	@Override
 	public int compareTo(Node other)
@@ -134,6 +159,7 @@ public class Node implements Comparable<Node>, IDumpable
 			final ObjectDumper dumper = new ObjectDumper(json, dconf, flags, this.getClass());
 			dumper.add(DumpFields.ID, () -> json.write(DumpFields.ID, id.toString()));
 			dumper.add(DumpFields.HEALTHY, () -> json.write(DumpFields.HEALTHY, healthy.get()));
+			dumper.add(DumpFields.DEGRADED, () -> json.write(DumpFields.DEGRADED, degraded.get()));
 			dumper.add(DumpFields.USED, () -> json.write(DumpFields.USED, used.get()));
 			dumper.add(DumpFields.UPTIME, () -> {
 				json.write(DumpFields.UPTIME, DumpHelpers.toDurationString(this.getUptime()));
@@ -157,12 +183,20 @@ public class Node implements Comparable<Node>, IDumpable
 	{
 		private static final String ID           = "id";
 		private static final String HEALTHY      = "healthy";
+		private static final String DEGRADED     = "degraded";
 		private static final String USED         = "used";
 		private static final String UPTIME       = "uptime";
 		private static final String UNUSED_TIME  = "unused_time";
 		private static final String CAPACITY     = "capacity";
 	}
 	
+	private void notifyHealthStateChanged()
+	{
+		final BiConsumer<NodeID, Boolean> callback = onHealthStateChangedCallback;
+		if (callback != null)
+			callback.accept(id, healthy.get() && !degraded.get());
+	}
+	
 	private static long nowms()
 	{
 		return System.currentTimeMillis();
@@ -0,0 +1,398 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
+import de.bwl.bwfla.eaas.cluster.NodeID;
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+import de.bwl.bwfla.eaas.cluster.config.HomogeneousNodePoolScalerConfig;
+import de.bwl.bwfla.eaas.cluster.config.ResourceProviderConfig;
+import de.bwl.bwfla.eaas.cluster.config.util.DurationPropertyConverter;
+
+
+/**
+ * Replays a recorded allocation trace against the {@link NodePoolScaler} in simulated time,
+ * comparing the reactive scaling policy with the forecasting one. Each line of the trace
+ * describes one allocation as comma-separated values:
+ * <pre>
+ * timestamp (ms since epoch), duration (ms), cpu (millicores), memory (MB)
+ * </pre>
+ * Allocations are placed first-fit on simulated nodes, which become available a configurable
+ * boot delay after being requested. Allocations, that do not fit, wait for new capacity.
+ */
+public final class PoolScalingSimulator
+{
+	private static final String USAGE = "Usage: PoolScalingSimulator <trace-file> [<option>=<value> ...]\n"
+			+ "    Options (with defaults):\n"
+			+ "        node_cpu=4000            Node's capacity in millicores\n"
+			+ "        node_memory=16384        Node's capacity in MB\n"
+			+ "        min_poolsize=1\n"
+			+ "        max_poolsize=2000\n"
+			+ "        max_adjustment=10        Max. number of nodes to start or stop at once\n"
+			+ "        boot_delay=5 mins        Time between requesting a node and its availability\n"
+			+ "        interval=1 min           Pool scaling interval\n"
+			+ "        warmup=10 mins           Node warm-up period\n"
+			+ "        cooldown=5 mins          Node cool-down period\n"
+			+ "        history_age=5 mins       Max. age of requests in the request history\n"
+			+ "        multiplier=0.5           Request history multiplier\n"
+			+ "        lead_time=15 mins        Lead time for demand forecasts\n"
+			+ "        smoothing=0.3            Smoothing factor for demand profiles\n"
+			+ "        trend_smoothing=0.1      Smoothing factor for the demand trend\n"
+			+ "        state=<file>             Initial demand profiles, as persisted by the provider\n";
+
+	private final Map<String, String> options;
+	private final List<Allocation> trace;
+	private final ResourceSpec nodeCapacity;
+	private final long bootDelay;
+	private final long interval;
+	private final long warmup;
+	private final long cooldown;
+	private final long historyAge;
+
+
+	/** CLI-Arguments: name of the trace-file, followed by options */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1) {
+			System.out.println(USAGE);
+			return;
+		}
+
+		final Map<String, String> options = new HashMap<String, String>();
+		for (int i = 1; i < args.length; ++i) {
+			final int sep = args[i].indexOf('=');
+			if (sep < 1) {
+				System.out.println("Invalid option: " + args[i]);
+				System.out.println(USAGE);
+				return;
+			}
+
+			options.put(args[i].substring(0, sep), args[i].substring(sep + 1));
+		}
+
+		final Path path = Paths.get(args[0]).toAbsolutePath();
+		System.out.println("Trace-File: " + path.toString());
+
+		final List<Allocation> trace = PoolScalingSimulator.read(path);
+		final PoolScalingSimulator simulator = new PoolScalingSimulator(trace, options);
+		System.out.println("Allocations: " + simulator.trace.size());
+		if (simulator.trace.size() < trace.size())
+			System.out.println("Ignored: " + (trace.size() - simulator.trace.size()) + " allocation(s) exceeding node's capacity");
+
+		System.out.println();
+		System.out.println(String.format("%-12s %10s %12s %12s %12s", "Policy", "Delayed", "Avg. delay", "Max. delay", "Node-hours"));
+		System.out.println(simulator.run(false));
+		System.out.println(simulator.run(true));
+		System.out.println();
+	}
+
+	private PoolScalingSimulator(List<Allocation> trace, Map<String, String> options)
+	{
+		this.options = options;
+		this.nodeCapacity = new MutableResourceSpec(this.getInt("node_cpu", "4000"), this.getInt("node_memory", "16384"));
+		this.trace = new ArrayList<Allocation>(trace);
+		this.trace.removeIf((allocation) -> allocation.spec.cpu() > nodeCapacity.cpu()
+				|| allocation.spec.memory() > nodeCapacity.memory());
+		this.bootDelay = this.getDuration("boot_delay", "5 mins");
+		this.interval = this.getDuration("interval", "1 min");
+		this.warmup = this.getDuration("warmup", "10 mins");
+		this.cooldown = this.getDuration("cooldown", "5 mins");
+		this.historyAge = this.getDuration("history_age", "5 mins");
+	}
+
+
+	/* ==================== Internal Methods ==================== */
+
+	private Result run(boolean predictive) throws IOException
+	{
+		final String name = (predictive) ? "forecasting" : "reactive";
+		final Result result = new Result(name);
+		if (trace.isEmpty())
+			return result;
+
+		final ResourceProviderConfig config = new ResourceProviderConfig();
+		config.setPreAllocationRequestHistoryMultiplier(this.getFloat("multiplier", "0.5"));
+		config.setPreAllocationMinBound(new MutableResourceSpec());
+		config.setPreAllocationMaxBound(new MutableResourceSpec(Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+		// Warm-up and cool-down periods are applied below, in simulated time
+		final HomogeneousNodePoolScalerConfig scalerConfig = new HomogeneousNodePoolScalerConfig();
+		scalerConfig.setPoolScalingInterval(interval);
+		scalerConfig.setNodeWarmUpPeriod(0L);
+		scalerConfig.setNodeCoolDownPeriod(0L);
+		scalerConfig.setMinPoolSize(this.getInt("min_poolsize", "1"));
+		scalerConfig.setMaxPoolSize(this.getInt("max_poolsize", "2000"));
+		scalerConfig.setMaxPoolSizeScaleUpAdjustment(this.getInt("max_adjustment", "10"));
+		scalerConfig.setMaxPoolSizeScaleDownAdjustment(this.getInt("max_adjustment", "10"));
+
+		final NodePoolScaler scaler = NodePoolScaler.create(scalerConfig, nodeCapacity);
+		final NodePool pool = new NodePool(true);
+		final Map<NodeID, SimNode> nodes = new HashMap<NodeID, SimNode>();
+		final Deque<SimNode> booting = new ArrayDeque<SimNode>();
+		final PriorityQueue<Allocation> running = new PriorityQueue<Allocation>((a1, a2) -> Long.compare(a1.end, a2.end));
+		final Deque<Allocation> waiting = new ArrayDeque<Allocation>();
+		final Deque<Allocation> history = new ArrayDeque<Allocation>();
+		final MutableResourceSpec historySum = new MutableResourceSpec();
+		final MutableResourceSpec used = new MutableResourceSpec();
+
+		DemandForecast forecast = null;
+		long leadtime = 0L;
+		if (predictive) {
+			forecast = new DemandForecast(this.getFloat("smoothing", "0.3"), this.getFloat("trend_smoothing", "0.1"), ZoneId.systemDefault());
+			leadtime = this.getDuration("lead_time", "15 mins");
+			if (options.containsKey("state"))
+				forecast.load(Paths.get(options.get("state")));
+		}
+
+		final Iterator<Allocation> arrivals = trace.iterator();
+		Allocation next = arrivals.next();
+		long curtime = (next.start / interval) * interval;
+		int numNodeIds = 0;
+
+		while (next != null || !running.isEmpty() || !waiting.isEmpty()) {
+			// Release finished allocations
+			while (!running.isEmpty() && running.peek().end <= curtime) {
+				final Allocation allocation = running.poll();
+				allocation.node.release(allocation.spec, allocation.end);
+				used.sub(allocation.spec, true);
+			}
+
+			// Register booted nodes
+			while (!booting.isEmpty() && booting.peek().bootTimestamp <= curtime) {
+				final SimNode node = booting.poll();
+				nodes.put(node.getId(), node);
+				node.setOnUsedStateChangedCallback(pool::onNodeUsedStateChanged);
+				pool.registerNode(node);
+			}
+
+			// Serve waiting allocations, then new arrivals
+			for (Iterator<Allocation> it = waiting.iterator(); it.hasNext(); ) {
+				final Allocation allocation = it.next();
+				if (!this.place(allocation, nodes.values(), curtime))
+					continue;
+
+				it.remove();
+				result.delayed(curtime - allocation.start);
+				running.add(allocation);
+				used.add(allocation.spec);
+			}
+
+			while (next != null && next.start <= curtime) {
+				history.add(next);
+				historySum.add(next.spec);
+				if (this.place(next, nodes.values(), curtime)) {
+					running.add(next);
+					used.add(next.spec);
+				}
+				else waiting.add(next);
+
+				next = (arrivals.hasNext()) ? arrivals.next() : null;
+			}
+
+			// Expire old requests from history
+			while (!history.isEmpty() && history.peek().start + historyAge <= curtime)
+				historySum.sub(history.poll().spec, true);
+
+			// Compute the scaling action
+			final MutableResourceSpec missing = new MutableResourceSpec();
+			waiting.forEach((allocation) -> missing.add(allocation.spec));
+
+			ResourceSpec expected = null;
+			if (forecast != null) {
+				forecast.record(curtime, MutableResourceSpec.add(used, missing));
+				expected = MutableResourceSpec.fromDiff(forecast.predict(curtime, leadtime), used);
+			}
+
+			final ResourceSpec requested = ResourceProvider.toPreAllocationSpec(historySum, expected, config);
+			final NodePoolScaler.Action action = scaler.execute(pool, missing, requested, used);
+			if (action.getClass() == NodePoolScaler.ScaleUpAction.class) {
+				final ResourceSpec spec = ((NodePoolScaler.ScaleUpAction) action).getResourceSpec();
+				final int count = Math.max(PoolScalingSimulator.divup(spec.cpu(), nodeCapacity.cpu()),
+						PoolScalingSimulator.divup(spec.memory(), nodeCapacity.memory()));
+
+				for (int i = 0; i < count; ++i) {
+					final SimNode node = new SimNode(new NodeID("sim-" + (++numNodeIds)), nodeCapacity, curtime + bootDelay);
+					pool.addPendingResources(nodeCapacity);
+					booting.add(node);
+				}
+			}
+			else if (action.getClass() == NodePoolScaler.ScaleDownAction.class) {
+				for (NodeID nid : ((NodePoolScaler.ScaleDownAction) action).getNodes()) {
+					final SimNode node = nodes.get(nid);
+					if (curtime - node.bootTimestamp < warmup || curtime - node.unusedTimestamp < cooldown)
+						continue;
+
+					nodes.remove(nid);
+					pool.unregisterNode(nid);
+				}
+			}
+
+			result.nodeTime += (long) pool.getNumNodes() * interval;
+			curtime += interval;
+		}
+
+		return result;
+	}
+
+	/** Places the allocation on the first node with enough free resources */
+	private boolean place(Allocation allocation, Iterable<SimNode> nodes, long curtime)
+	{
+		for (SimNode node : nodes) {
+			if (!node.free.reserve(allocation.spec))
+				continue;
+
+			node.setUsed(true);
+			allocation.node = node;
+			allocation.end = curtime + allocation.duration;
+			return true;
+		}
+
+		return false;
+	}
+
+	private int getInt(String name, String defvalue)
+	{
+		return Integer.parseInt(options.getOrDefault(name, defvalue));
+	}
+
+	private float getFloat(String name, String defvalue)
+	{
+		return Float.parseFloat(options.getOrDefault(name, defvalue));
+	}
+
+	private long getDuration(String name, String defvalue)
+	{
+		return new DurationPropertyConverter()
+				.convert(options.getOrDefault(name, defvalue), null);
+	}
+
+	private static int divup(int value, int divisor)
+	{
+		return (value + divisor - 1) / divisor;
+	}
+
+	private static List<Allocation> read(Path path) throws IOException
+	{
+		final List<Allocation> allocations = new ArrayList<Allocation>();
+		for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			final String[] fields = line.split(",");
+			if (fields.length != 4)
+				throw new IOException("Invalid trace entry: " + line);
+
+			final ResourceSpec spec = new MutableResourceSpec(Integer.parseInt(fields[2].trim()), Integer.parseInt(fields[3].trim()));
+			allocations.add(new Allocation(Long.parseLong(fields[0].trim()), Long.parseLong(fields[1].trim()), spec));
+		}
+
+		allocations.sort((a1, a2) -> Long.compare(a1.start, a2.start));
+		return allocations;
+	}
+
+
+	private static class Allocation
+	{
+		private final long start;
+		private final long duration;
+		private final ResourceSpec spec;
+		private SimNode node;
+		private long end;
+
+		public Allocation(long start, long duration, ResourceSpec spec)
+		{
+			this.start = start;
+			this.duration = duration;
+			this.spec = spec;
+		}
+	}
+
+	private static class SimNode extends Node
+	{
+		private final MutableResourceSpec free;
+		private final long bootTimestamp;
+		private long unusedTimestamp;
+
+		public SimNode(NodeID id, ResourceSpec capacity, long bootTimestamp)
+		{
+			super(id, capacity);
+
+			this.free = new MutableResourceSpec(capacity);
+			this.bootTimestamp = bootTimestamp;
+			this.unusedTimestamp = bootTimestamp;
+		}
+
+		public void release(ResourceSpec spec, long timestamp)
+		{
+			free.free(spec);
+			if (free.cpu() == capacity.cpu() && free.memory() == capacity.memory()) {
+				this.setUsed(false);
+				unusedTimestamp = timestamp;
+			}
+		}
+	}
+
+	private static class Result
+	{
+		private final String policy;
+		private int numDelayed;
+		private long maxDelay;
+		private long sumDelays;
+		private long nodeTime;
+
+		public Result(String policy)
+		{
+			this.policy = policy;
+		}
+
+		public void delayed(long delay)
+		{
+			++numDelayed;
+			sumDelays += delay;
+			maxDelay = Math.max(maxDelay, delay);
+		}
+
+		@Override
+		public String toString()
+		{
+			final long avgDelay = (numDelayed > 0) ? sumDelays / numDelayed : 0L;
+			final double nodeHours = (double) nodeTime / TimeUnit.HOURS.toMillis(1L);
+			return String.format("%-12s %10d %10d s %10d s %12.1f", policy, numDelayed,
+					TimeUnit.MILLISECONDS.toSeconds(avgDelay), TimeUnit.MILLISECONDS.toSeconds(maxDelay), nodeHours);
+		}
+	}
+}
@@ -20,19 +20,28 @@
 package de.bwl.bwfla.eaas.cluster.provider;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 
+import javax.json.JsonObject;
 import javax.json.stream.JsonGenerator;
 
 import de.bwl.bwfla.common.concurrent.SequentialExecutor;
@@ -61,6 +70,7 @@ import de.bwl.bwfla.eaas.cluster.dump.ObjectDumper;
 import de.bwl.bwfla.eaas.cluster.exception.OutOfResourcesException;
 import de.bwl.bwfla.eaas.cluster.metadata.LabelSelector;
 import de.bwl.bwfla.eaas.cluster.metadata.LabelIndex;
+import de.bwl.bwfla.eaas.cluster.metrics.PrometheusWriter;
 import de.bwl.bwfla.eaas.cluster.provider.allocation.IResourceAllocator;
 import de.bwl.bwfla.eaas.cluster.provider.allocation.ResourceAllocator;
 import de.bwl.bwfla.eaas.cluster.provider.iaas.INodeAllocator;
@@ -100,12 +110,25 @@ public class ResourceProvider implements IResourceProvider
 
 	private final AllocationRequestHistory history;
 	private final AllocationRequestQueue requests;
+	private final Comparator<AllocationRequest> batchOrder;
+
+	/** Weekly demand profiles, or null if forecasting is disabled */
+	private final DemandForecast forecast;
+	private final Path forecastStateFile;
+
+	/** Requests, waiting for the next allocation batch */
+	private final Queue<AllocationRequest> pendingAllocations;
+	private final AtomicInteger numPendingAllocations;
+	private final AtomicBoolean isAllocationBatchScheduled;
 
 	private boolean isOneShotPoolScalingScheduled;
 	private boolean isShutdownRequested;
 	
 	
-	public ResourceProvider(ResourceProviderConfig config, ClusterManagerExecutors executors) throws Exception
+	/**
+	 * @param weights Lookup function for tenants' weights, used for serving deferred requests fairly
+	 */
+	public ResourceProvider(ResourceProviderConfig config, ClusterManagerExecutors executors, ToIntFunction<String> weights) throws Exception
 	{
 		final PrefixLoggerContext logContext = new PrefixLoggerContext()
 				.add("RP", config.getName());
@@ -116,14 +139,28 @@ public class ResourceProvider implements IResourceProvider
 		this.config = config;
 		this.scheduler = executors.scheduler();
 		this.executor = new SequentialExecutor(log, executors.computation(), 128);
-		this.resources = new ResourceAllocator(config.getName());
+		this.resources = new ResourceAllocator(config);
 		this.pool = new NodePool(config.hasHomogeneousNodes());
 		this.labels = new LabelIndex();
 		this.history = new AllocationRequestHistory(config.getRequestHistoryMaxNumRequests(), config.getRequestHistoryMaxRequestAge());
-		this.requests = new AllocationRequestQueue();
+		this.pendingAllocations = new ConcurrentLinkedQueue<AllocationRequest>();
+		this.numPendingAllocations = new AtomicInteger(0);
+		this.isAllocationBatchScheduled = new AtomicBoolean(false);
 		this.isOneShotPoolScalingScheduled = false;
 		this.isShutdownRequested = false;
 		this.ioExecutor = executors.io();
+
+		if (config.isForecastEnabled()) {
+			this.forecast = new DemandForecast(config.getForecastSmoothing(), config.getForecastTrendSmoothing(), ZoneId.systemDefault());
+			this.forecastStateFile = (config.getForecastStateDir() != null) ?
+					Paths.get(config.getForecastStateDir(), config.getName() + ".json") : null;
+
+			this.loadDemandForecast();
+		}
+		else {
+			this.forecast = null;
+			this.forecastStateFile = null;
+		}
 		
 		Consumer<NodeID> onDownCallback = (NodeID nid) -> {
 			// Task for unregistering the node from this provider
@@ -154,9 +191,14 @@ public class ResourceProvider implements IResourceProvider
 			throw new IllegalArgumentException("Invalid or unsupported NodeAllocator configured: " + clazz);
 		}
 		
+		this.requests = new AllocationRequestQueue(nodes.getNodeCapacity(), weights);
+		this.batchOrder = ResourceProvider.largestFirst(nodes.getNodeCapacity());
+		
 		// Build the label index
 		config.getLabels().forEach((label) -> labels.add(label));
 		
+		this.registerMetricGauges();
+		
 		// Schedule background tasks
 		this.schedulePoolScaling(false, false);
 		this.scheduleRequestHistoryUpdate(true, false);
@@ -164,57 +206,14 @@ public class ResourceProvider implements IResourceProvider
 	}
 	
 	@Override
-	public CompletableFuture<ResourceHandle> allocate(UUID allocationId, ResourceSpec spec, boolean scaleup, long timeout, TimeUnit unit)
+	public CompletableFuture<ResourceHandle> allocate(String tenant, UUID allocationId, ResourceSpec spec, boolean scaleup, long timeout, TimeUnit unit)
 	{
 		if (allocationId == null || spec == null)
 			throw new IllegalArgumentException();
 
 		CompletableFuture<ResourceHandle> result = new CompletableFuture<ResourceHandle>();
 		final long deadline = ResourceProvider.getCurrentTime() + unit.toMillis(timeout);
-
-		Runnable task = () -> {
-			try {
-				// Update stats
-				metrics.requested();
-				history.add(spec);
-	
-				// Check request's deadline
-				if (ResourceProvider.isDeadlineExpired(deadline)) {
-					log.warning("Deadline expired for allocation " + allocationId + "! Aborting...");
-					result.cancel(false);
-					metrics.expired();
-					return;
-				}
-				
-				// Try to allocate requested resources
-				ResourceHandle handle = resources.allocate(allocationId, spec);
-				if (handle != null) {
-					log.info("Resources for " + allocationId + " allocated on node '" + handle.getNodeID() + "'");
-					result.complete(handle);
-					return;
-				}
-
-				// Can we defere this allocation request?
-				// Maybe yes, if the node pool has not reached its max. size!
-				if (scaleup && !this.isMaxPoolSizeReached()) {
-					log.info("Defere allocation " + allocationId + " until the pool is scaled up!");
-					requests.add(new AllocationRequest(result, allocationId, spec, deadline));
-					this.schedulePoolScaling(false, true);
-					metrics.deferred();
-					return;
-				}
-				
-				log.warning("Not enough free resources for allocation " + allocationId + " available! Aborting...");
-				result.completeExceptionally(new OutOfResourcesException());
-				metrics.failed();
-			}
-			catch (Throwable throwable) {
-				// Something unexpected happened during the allocation
-				log.log(Level.WARNING, "Allocation " + allocationId + " failed!\n", throwable);
-				result.completeExceptionally(throwable);
-				metrics.failed();
-			}
-		};
+		final AllocationRequest request = new AllocationRequest(result, tenant, allocationId, spec, deadline, scaleup);
 		
 		// Log the processing time...
 		{
@@ -234,8 +233,15 @@ public class ResourceProvider implements IResourceProvider
 		
 		// Check, whether the request can be serviced at all
 		if (ResourceSpec.compare(spec, nodes.getNodeCapacity()) <= 0) {
-			// Yes, submit the request
-			this.submit(PRIORITY_ALLOCATE, task);
+			// Yes, queue the request for the next allocation batch
+			if (!this.enqueue(request)) {
+				log.warning("Too many pending allocation requests! Rejecting allocation " + allocationId + "...");
+				result.completeExceptionally(new OutOfResourcesException());
+				this.submit(PRIORITY_ALLOCATE, () -> {
+					metrics.requested();
+					metrics.failed();
+				});
+			}
 		}
 		else {
 			final String message = "Requested resources can't be serviced by this provider!\n"
@@ -419,6 +425,23 @@ public class ResourceProvider implements IResourceProvider
 		}
 	}
 	
+	@Override
+	public void export(PrometheusWriter writer)
+	{
+		final Runnable task = () -> {
+			metrics.export(writer, config.getName(), config.getType());
+			requests.export(writer, config.getName());
+		};
+
+		try {
+			executor.submit(task).get();
+		}
+		catch (Exception exception) {
+			log.warning("Exporting metrics failed!");
+			log.log(Level.SEVERE, exception.getMessage(), exception);
+		}
+	}
+	
 	private static class DumpFields
 	{
 		private static final String NAME                = "name";
@@ -444,6 +467,126 @@ public class ResourceProvider implements IResourceProvider
 		executor.execute(priority, task);
 	}
 	
+	/** Add the request to the next allocation batch, returns false if too many requests are pending */
+	private boolean enqueue(AllocationRequest request)
+	{
+		if (numPendingAllocations.incrementAndGet() > config.getAllocationQueueMaxSize()) {
+			numPendingAllocations.decrementAndGet();
+			return false;
+		}
+		
+		pendingAllocations.add(request);
+		this.scheduleAllocationBatch(true);
+		return true;
+	}
+	
+	private void scheduleAllocationBatch(boolean delayed)
+	{
+		if (!isAllocationBatchScheduled.compareAndSet(false, true))
+			return;  // Already scheduled!
+		
+		// Action trigger...
+		Runnable trigger = () -> {
+			this.submit(PRIORITY_ALLOCATE, () -> this.processAllocationBatch());
+		};
+		
+		final long delay = config.getAllocationBatchWindow();
+		if (delayed && delay > 0L) {
+			// Collect more requests during the batch window
+			scheduler.schedule(trigger, delay, TimeUnit.MILLISECONDS);
+		}
+		else {
+			// Execute now!
+			trigger.run();
+		}
+	}
+	
+	private void processAllocationBatch()
+	{
+		// Requests arriving from now on go into the next batch
+		isAllocationBatchScheduled.set(false);
+		
+		final int maxBatchSize = config.getAllocationBatchMaxSize();
+		final List<AllocationRequest> batch = new ArrayList<AllocationRequest>();
+		AllocationRequest request = null;
+		while (batch.size() < maxBatchSize && (request = pendingAllocations.poll()) != null) {
+			numPendingAllocations.decrementAndGet();
+			batch.add(request);
+		}
+		
+		if (!pendingAllocations.isEmpty()) {
+			// Batch is full, process the rest without waiting
+			this.scheduleAllocationBatch(false);
+		}
+		
+		if (batch.isEmpty())
+			return;
+		
+		metrics.batched();
+		
+		// Place the largest requests first, since smaller ones
+		// can fill the gaps left on partially used nodes later
+		batch.sort(batchOrder);
+		for (AllocationRequest allocation : batch)
+			this.process(allocation);
+		
+		log.info("" + batch.size() + " allocation request(s) processed in batch");
+	}
+	
+	private void process(AllocationRequest request)
+	{
+		final UUID allocationId = request.getAllocationId();
+		final ResourceSpec spec = request.getResourceSpec();
+		try {
+			// Update stats
+			metrics.requested();
+			metrics.queueDelay().recordSince(request.getTimestamp());
+			history.add(spec);
+			
+			// Was the request cancelled by the caller?
+			if (request.isDone())
+				return;
+			
+			// Check request's deadline
+			if (ResourceProvider.isDeadlineExpired(request.getDeadline())) {
+				log.warning("Deadline expired for allocation " + allocationId + "! Aborting...");
+				request.cancel();
+				metrics.expired();
+				return;
+			}
+			
+			// Try to allocate requested resources
+			ResourceHandle handle = this.allocate(allocationId, spec);
+			if (handle != null) {
+				log.info("Resources for " + allocationId + " allocated on node '" + handle.getNodeID() + "'");
+				request.complete(handle);
+				metrics.allocationTime().recordSince(request.getTimestamp());
+				return;
+			}
+			
+			// Can we defere this allocation request?
+			// Maybe yes, if the node pool has not reached its max. size!
+			if (request.isScaleUpAllowed() && !this.isMaxPoolSizeReached()) {
+				log.info("Defere allocation " + allocationId + " until the pool is scaled up!");
+				request.defer();
+				requests.add(request);
+				this.schedulePoolScaling(false, true);
+				metrics.deferred();
+				return;
+			}
+			
+			log.warning("Not enough free resources for allocation " + allocationId + " available! Aborting...");
+			request.abort(new OutOfResourcesException());
+			metrics.failed();
+		}
+		catch (Throwable throwable) {
+			// Something unexpected happened during the allocation
+			log.log(Level.WARNING, "Allocation " + allocationId + " failed!\n", throwable);
+			request.abort(throwable);
+			metrics.failed();
+		}
+	}
+	
 	private void schedulePoolScaling(boolean delayed, boolean oneshot)
 	{
 		if (oneshot) {
@@ -535,10 +678,13 @@ public class ResourceProvider implements IResourceProvider
 	{
 		final ResourceSpec missingResources = requests.getResourceSum();
 		final ResourceSpec usedResources = resources.getUsedResources();
-		final ResourceSpec reqResources = ResourceProvider.toPreAllocationSpec(history.getResourceSum(), config);
+		final ResourceSpec reqResources = ResourceProvider.toPreAllocationSpec(history.getResourceSum(),
+				this.getExpectedResources(missingResources, usedResources), config);
 		
 		NodePoolScaler.Action action = poolscaler.execute(pool, missingResources, reqResources, usedResources);
 		if (action.getClass() == NodePoolScaler.ScaleUpAction.class) {
+			final ScaleUpTracker tracker = new ScaleUpTracker();
+
 			Consumer<NodeID> onAllocatedCallback = (NodeID nid) -> {
 				nid.setProtocol(config.getProtocol());
 				try {
@@ -553,6 +699,7 @@ public class ResourceProvider implements IResourceProvider
 				// Task for registering the node in this provider
 				final Runnable task = () -> {
 					this.registerNode(node);
+					tracker.booted(node.getCapacity());
 					this.processDeferredAllocations();
 				};
 
@@ -563,6 +710,7 @@ public class ResourceProvider implements IResourceProvider
 				// Task for updating the pending resources, on allocation failure
 				Runnable task = () -> {
 					pool.removePendingResources(spec);
+					tracker.failed(spec);
 				};
 				
 				this.submit(PRIORITY_NODEMGMNT, task);
@@ -601,6 +749,7 @@ public class ResourceProvider implements IResourceProvider
 
 			final ResourceSpec pending = nodes.allocate(request);
 			pool.addPendingResources(pending);
+			tracker.requested(pending);
 		}
 		else if (action.getClass() == NodePoolScaler.ScaleDownAction.class) {
 			final NodePoolScaler.ScaleDownAction sda = (NodePoolScaler.ScaleDownAction) action;
@@ -610,13 +759,66 @@ public class ResourceProvider implements IResourceProvider
 			log.info(message);
 			
 			// Shutdown nodes!
+			final long timestamp = System.nanoTime();
+			final List<CompletableFuture<Boolean>> releases = new ArrayList<CompletableFuture<Boolean>>();
 			for (NodeID nid : sda.getNodes()) {
 				this.unregisterNode(nid);
-				nodes.release(nid);
+				releases.add(nodes.release(nid));
 			}
+
+			CompletableFuture.allOf(releases.toArray(new CompletableFuture<?>[releases.size()]))
+					.whenComplete((result, error) -> metrics.scaleDownTime().recordSince(timestamp));
 		}
 	}
 	
+	/** Updates the demand profiles and returns the resources expected to be needed soon, or null */
+	private ResourceSpec getExpectedResources(ResourceSpec missing, ResourceSpec used)
+	{
+		if (forecast == null)
+			return null;
+
+		final long curtime = ResourceProvider.getCurrentTime();
+		if (forecast.record(curtime, MutableResourceSpec.add(used, missing)))
+			this.saveDemandForecast();
+
+		// Only resources exceeding the current usage need to be pre-allocated
+		final ResourceSpec expected = forecast.predict(curtime, config.getForecastLeadTime());
+		return MutableResourceSpec.fromDiff(expected, used);
+	}
+
+	private void loadDemandForecast()
+	{
+		if (forecastStateFile == null)
+			return;
+
+		try {
+			if (forecast.load(forecastStateFile)) {
+				log.info("Demand profiles loaded from '" + forecastStateFile + "' ("
+						+ forecast.getNumObservedBuckets() + " hourly bucket(s) observed, trend "
+						+ forecast.getTrend() + ")");
+			}
+		}
+		catch (Exception error) {
+			log.log(Level.WARNING, "Loading demand profiles from '" + forecastStateFile + "' failed!", error);
+		}
+	}
+
+	private void saveDemandForecast()
+	{
+		if (forecastStateFile == null)
+			return;
+
+		final JsonObject snapshot = forecast.snapshot();
+		ioExecutor.execute(() -> {
+			try {
+				DemandForecast.save(forecastStateFile, snapshot);
+			}
+			catch (Exception error) {
+				log.log(Level.WARNING, "Saving demand profiles to '" + forecastStateFile + "' failed!", error);
+			}
+		});
+	}
+
 	private String getNodePoolStateSummary()
 	{
 		final ResourceSpec usedResources = resources.getUsedResources();
@@ -691,6 +893,14 @@ public class ResourceProvider implements IResourceProvider
 		
 		node.setOnUsedStateChangedCallback(onUsedStateChangedCallback);
 
+		// Health checks run concurrently, hence re-index the node sequentially
+		final BiConsumer<NodeID, Boolean> onHealthStateChangedCallback = (nid, usable) -> {
+			log.info("Node '" + nid + "' is now " + ((usable) ? "usable" : "unusable") + " for allocations");
+			this.submit(PRIORITY_NODEMGMNT, () -> resources.updateNode(nid));
+		};
+
+		node.setOnHealthStateChangedCallback(onHealthStateChangedCallback);
+
 		pool.registerNode(node);
 		resources.registerNode(node);
 	}
@@ -747,6 +957,35 @@ public class ResourceProvider implements IResourceProvider
 			log.info("" + numCancelledAllocations + " deferred allocation request(s) cancelled!");
 	}
 	
+	/** Allocates resources, measuring the time spent in the resource allocator */
+	private ResourceHandle allocate(UUID allocationId, ResourceSpec spec)
+	{
+		final long timestamp = System.nanoTime();
+		try {
+			return resources.allocate(allocationId, spec);
+		}
+		finally {
+			metrics.allocatorTime().recordSince(timestamp);
+		}
+	}
+	
+	private void registerMetricGauges()
+	{
+		metrics.gauge("num_pending_allocations", "Allocation requests waiting for the next batch",
+				() -> numPendingAllocations.get());
+		metrics.gauge("num_deferred_allocations", "Allocation requests waiting for scale-up",
+				() -> requests.size());
+		metrics.gauge("num_nodes", "Nodes in the pool", () -> pool.getNumNodes());
+		metrics.gauge("num_unused_nodes", "Nodes without allocations", () -> pool.getNumUnusedNodes());
+		metrics.gauge("num_unhealthy_nodes", "Nodes failing health checks", () -> pool.getNumUnhealthyNodes());
+		metrics.gauge("capacity_cpu_millicores", "CPU capacity of the pool", () -> pool.getCapacity().cpu());
+		metrics.gauge("capacity_memory_megabytes", "Memory capacity of the pool", () -> pool.getCapacity().memory());
+		metrics.gauge("pending_cpu_millicores", "CPU capacity of nodes being started", () -> pool.getPendingResources().cpu());
+		metrics.gauge("pending_memory_megabytes", "Memory capacity of nodes being started", () -> pool.getPendingResources().memory());
+		metrics.gauge("used_cpu_millicores", "Allocated CPU resources", () -> resources.getUsedResources().cpu());
+		metrics.gauge("used_memory_megabytes", "Allocated memory resources", () -> resources.getUsedResources().memory());
+	}
+	
 	private void processDeferredAllocations()
 	{
 		log.info("Processing deferred allocations...");
@@ -757,17 +996,19 @@ public class ResourceProvider implements IResourceProvider
 
 		// Try to process all pending requests, servicable with the remaining free resources...
 		final AllocationRequestQueue.View remaining = requests.filter(resources.getFreeResources());
-		Iterator<AllocationRequest> iterator = remaining.iterator();
+		final Iterator<AllocationRequest> iterator = remaining.iterator();
 		while (iterator.hasNext()) {
 			final AllocationRequest allocation = iterator.next();
 			final UUID aid = allocation.getAllocationId();
 			try {
-				ResourceHandle handle = resources.allocate(aid, allocation.getResourceSpec());
+				ResourceHandle handle = this.allocate(aid, allocation.getResourceSpec());
 				if (handle == null)
 					continue;  // Allocation failed, try the next one!
 				
 				log.info("Resources for " + aid + " allocated on node '" + handle.getNodeID() + "'");
 				allocation.complete(handle);
+				metrics.deferralTime().recordSince(allocation.getDeferralTimestamp());
+				metrics.allocationTime().recordSince(allocation.getTimestamp());
 				++numProcessed;
 			}
 			catch (Throwable throwable) {
@@ -778,9 +1019,8 @@ public class ResourceProvider implements IResourceProvider
 			
 			iterator.remove();
 			
-			// Update the bound and try the remaining requests
+			// Update the bound, skipping requests that don't fit anymore
 			remaining.update(resources.getFreeResources());
-			iterator = remaining.iterator(); 
 		}
 		
 		log.info("" + numProcessed + " deferred allocation(s) processed, " + requests.size() + " left");
@@ -793,6 +1033,32 @@ public class ResourceProvider implements IResourceProvider
 		}
 	}
 	
+	/** Returns a comparator for sorting requests by their dominant share of a node's capacity, largest first */
+	static Comparator<AllocationRequest> largestFirst(ResourceSpec capacity)
+	{
+		return (r1, r2) -> {
+			final ResourceSpec spec1 = r1.getResourceSpec();
+			final ResourceSpec spec2 = r2.getResourceSpec();
+			int result = Double.compare(getDominantShare(spec2, capacity), getDominantShare(spec1, capacity));
+			if (result != 0)
+				return result;
+			
+			result = ResourceSpec.compare(spec2, spec1);
+			if (result != 0)
+				return result;
+			
+			return Long.compare(r1.getDeadline(), r2.getDeadline());
+		};
+	}
+	
+	/** Returns the largest fraction of a node's capacity, that is requested by the spec */
+	static double getDominantShare(ResourceSpec spec, ResourceSpec capacity)
+	{
+		final double cpu = (capacity.cpu() > 0) ? (double) spec.cpu() / capacity.cpu() : 0.0;
+		final double memory = (capacity.memory() > 0) ? (double) spec.memory() / capacity.memory() : 0.0;
+		return Math.max(cpu, memory);
+	}
+	
 	public static long getCurrentTime()
 	{
 		return System.currentTimeMillis();
@@ -803,10 +1069,17 @@ public class ResourceProvider implements IResourceProvider
 		return (ResourceProvider.getCurrentTime() >= deadline);
 	}
 	
-	private static ResourceSpec toPreAllocationSpec(ResourceSpec requested, ResourceProviderConfig config)
+	/**
+	 * Computes resources to pre-allocate from recently requested resources and
+	 * resources expected to be requested soon, which are optional.
+	 */
+	static ResourceSpec toPreAllocationSpec(ResourceSpec requested, ResourceSpec expected, ResourceProviderConfig config)
 	{
 		final MutableResourceSpec spec = new MutableResourceSpec(requested);
 		spec.scale(config.getPreAllocationRequestHistoryMultiplier());
+		if (expected != null)
+			spec.max(expected);
+
 		spec.max(config.getPreAllocationMinBound());
 		spec.min(config.getPreAllocationMaxBound());
 		return spec;
@@ -829,6 +1102,45 @@ public class ResourceProvider implements IResourceProvider
 	}
 
 	
+	/** Tracks the nodes requested by one scale-up action, until all of them are up or failed */
+	private class ScaleUpTracker
+	{
+		private final long timestamp;
+		private final MutableResourceSpec outstanding;
+		
+		public ScaleUpTracker()
+		{
+			this.timestamp = System.nanoTime();
+			this.outstanding = new MutableResourceSpec();
+		}
+		
+		public void requested(ResourceSpec spec)
+		{
+			outstanding.add(spec);
+		}
+		
+		public void booted(ResourceSpec capacity)
+		{
+			metrics.nodeBootTime().recordSince(timestamp);
+			this.finished(capacity);
+		}
+		
+		public void failed(ResourceSpec spec)
+		{
+			this.finished(spec);
+		}
+		
+		private void finished(ResourceSpec spec)
+		{
+			if (!outstanding.isDefined())
+				return;
+			
+			outstanding.sub(spec, true);
+			if (!outstanding.isDefined())
+				metrics.scaleUpTime().recordSince(timestamp);
+		}
+	}
+	
 	private class ShutdownTask implements Runnable
 	{
 		private final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
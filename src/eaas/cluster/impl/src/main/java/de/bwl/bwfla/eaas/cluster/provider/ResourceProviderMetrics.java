@@ -19,22 +19,56 @@
 
 package de.bwl.bwfla.eaas.cluster.provider;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
 import javax.json.stream.JsonGenerator;
 
 import de.bwl.bwfla.eaas.cluster.dump.DumpConfig;
+import de.bwl.bwfla.eaas.cluster.dump.DumpFlags;
+import de.bwl.bwfla.eaas.cluster.dump.DumpHelpers;
 import de.bwl.bwfla.eaas.cluster.dump.DumpTrigger;
 import de.bwl.bwfla.eaas.cluster.dump.IDumpable;
 import de.bwl.bwfla.eaas.cluster.dump.ObjectDumper;
+import de.bwl.bwfla.eaas.cluster.metrics.LatencyHistogram;
+import de.bwl.bwfla.eaas.cluster.metrics.PrometheusWriter;
 
 // package-private
 
 
 class ResourceProviderMetrics implements ResourceProvider.Metrics, IDumpable
 {
+	private static final String PREFIX = "eaas_cluster_provider_";
+
 	private int numRequestsTotal;
 	private int numRequestsDeferred;
 	private int numRequestsFailed;
 	private int numRequestsExpired;
+	private int numAllocationBatches;
+
+	/** Time from submitting a request until its batch is processed */
+	private final LatencyHistogram queueDelay;
+
+	/** Time deferred requests spend waiting for the pool to be scaled up */
+	private final LatencyHistogram deferralTime;
+
+	/** Time from submitting a request until resources are allocated */
+	private final LatencyHistogram allocationTime;
+
+	/** Time spent in the resource allocator, per call */
+	private final LatencyHistogram allocatorTime;
+
+	/** Time from requesting a node until it is up */
+	private final LatencyHistogram nodeBootTime;
+
+	/** Time from a scale-up decision until all requested nodes are up or failed */
+	private final LatencyHistogram scaleUpTime;
+
+	/** Time from a scale-down decision until all nodes are released */
+	private final LatencyHistogram scaleDownTime;
+
+	private final Map<String, Gauge> gauges;
 
 	public ResourceProviderMetrics()
 	{
@@ -42,6 +76,15 @@ class ResourceProviderMetrics implements ResourceProvider.Metrics, IDumpable
 		this.numRequestsDeferred = 0;
 		this.numRequestsFailed = 0;
 		this.numRequestsExpired = 0;
+		this.numAllocationBatches = 0;
+		this.queueDelay = new LatencyHistogram();
+		this.deferralTime = new LatencyHistogram();
+		this.allocationTime = new LatencyHistogram();
+		this.allocatorTime = new LatencyHistogram();
+		this.nodeBootTime = new LatencyHistogram();
+		this.scaleUpTime = new LatencyHistogram();
+		this.scaleDownTime = new LatencyHistogram();
+		this.gauges = new LinkedHashMap<String, Gauge>();
 	}
 
 	public void reset()
@@ -50,6 +93,7 @@ class ResourceProviderMetrics implements ResourceProvider.Metrics, IDumpable
 		numRequestsDeferred = 0;
 		numRequestsFailed = 0;
 		numRequestsExpired = 0;
+		numAllocationBatches = 0;
 	}
 
 	public void requested()
@@ -72,10 +116,94 @@ class ResourceProviderMetrics implements ResourceProvider.Metrics, IDumpable
 		++numRequestsExpired;
 	}
 
+	public void batched()
+	{
+		++numAllocationBatches;
+	}
+
+	public LatencyHistogram queueDelay()
+	{
+		return queueDelay;
+	}
+
+	public LatencyHistogram deferralTime()
+	{
+		return deferralTime;
+	}
+
+	public LatencyHistogram allocationTime()
+	{
+		return allocationTime;
+	}
+
+	public LatencyHistogram allocatorTime()
+	{
+		return allocatorTime;
+	}
+
+	public LatencyHistogram nodeBootTime()
+	{
+		return nodeBootTime;
+	}
+
+	public LatencyHistogram scaleUpTime()
+	{
+		return scaleUpTime;
+	}
+
+	public LatencyHistogram scaleDownTime()
+	{
+		return scaleDownTime;
+	}
+
+	/** Registers a gauge, which is evaluated on every dump */
+	public void gauge(String name, String help, LongSupplier value)
+	{
+		gauges.put(name, new Gauge(help, value));
+	}
+
+	/** Adds all metrics, labeled with provider's name and node allocator's type */
+	public void export(PrometheusWriter metrics, String provider, String allocator)
+	{
+		final String[] labels = { "provider", provider };
+
+		metrics.counter(PREFIX + "requests_total", "Allocation requests processed", numRequestsTotal, labels);
+		metrics.counter(PREFIX + "requests_deferred_total", "Allocation requests deferred until scale-up", numRequestsDeferred, labels);
+		metrics.counter(PREFIX + "requests_expired_total", "Allocation requests with expired deadlines", numRequestsExpired, labels);
+		metrics.counter(PREFIX + "requests_failed_total", "Failed allocation requests", numRequestsFailed, labels);
+		metrics.counter(PREFIX + "allocation_batches_total", "Processed allocation batches", numAllocationBatches, labels);
+
+		gauges.forEach((name, gauge) -> metrics.gauge(PREFIX + name, gauge.help, gauge.value.getAsLong(), labels));
+
+		metrics.histogram(PREFIX + DumpFields.QUEUE_DELAY + "_seconds",
+				"Time from submitting a request until its batch is processed", queueDelay, labels);
+		metrics.histogram(PREFIX + DumpFields.DEFERRAL_TIME + "_seconds",
+				"Time deferred requests wait for the pool to be scaled up", deferralTime, labels);
+		metrics.histogram(PREFIX + DumpFields.ALLOCATION_TIME + "_seconds",
+				"Time from submitting a request until resources are allocated", allocationTime, labels);
+		metrics.histogram(PREFIX + DumpFields.ALLOCATOR_TIME + "_seconds",
+				"Time spent in the resource allocator per call", allocatorTime, labels);
+		metrics.histogram(PREFIX + DumpFields.NODE_BOOT_TIME + "_seconds",
+				"Time from requesting a node until it is up", nodeBootTime, "provider", provider, "allocator", allocator);
+		metrics.histogram(PREFIX + DumpFields.SCALEUP_TIME + "_seconds",
+				"Time from a scale-up decision until all requested nodes are up", scaleUpTime, labels);
+		metrics.histogram(PREFIX + DumpFields.SCALEDOWN_TIME + "_seconds",
+				"Time from a scale-down decision until all nodes are released", scaleDownTime, labels);
+	}
+
 	@Override
 	public void dump(JsonGenerator json, DumpConfig dconf, int flags)
 	{
 		final DumpTrigger trigger = new DumpTrigger(dconf);
+		trigger.setSubResourceDumpHandler(() -> {
+			final String segment = dconf.nextUrlSegment();
+			final LatencyHistogram histogram = this.lookup(segment);
+			if (histogram == null)
+				DumpHelpers.notfound(segment);
+
+			histogram.dump(json, dconf, flags);
+		});
+
 		trigger.setResourceDumpHandler(() -> {
 			final ObjectDumper dumper = new ObjectDumper(json, dconf, flags, this.getClass());
 			dumper.add(DumpFields.NUM_REQUESTS, () -> {
@@ -94,6 +222,23 @@ class ResourceProviderMetrics implements ResourceProvider.Metrics, IDumpable
 				json.write(DumpFields.NUM_REQUESTS_FAILED, this.getNumRequestsFailed());
 			});
 
+			dumper.add(DumpFields.NUM_ALLOCATION_BATCHES, () -> {
+				json.write(DumpFields.NUM_ALLOCATION_BATCHES, numAllocationBatches);
+			});
+
+			gauges.forEach((name, gauge) -> {
+				dumper.add(name, () -> json.write(name, gauge.value.getAsLong()));
+			});
+
+			final int subflags = DumpFlags.set(flags, DumpFlags.INLINED);
+			for (String name : HISTOGRAMS) {
+				dumper.add(name, () -> {
+					json.writeStartObject(name);
+					this.lookup(name).dump(json, dconf, subflags);
+					json.writeEnd();
+				});
+			}
+
 			dumper.run();
 		});
 		
@@ -106,6 +251,59 @@ class ResourceProviderMetrics implements ResourceProvider.Metrics, IDumpable
 		private static final String NUM_REQUESTS_DEFERRED  = "num_requests_deferred";
 		private static final String NUM_REQUESTS_EXPIRED   = "num_requests_expired";
 		private static final String NUM_REQUESTS_FAILED    = "num_requests_failed";
+		private static final String NUM_ALLOCATION_BATCHES = "num_allocation_batches";
+		private static final String QUEUE_DELAY            = "queue_delay";
+		private static final String DEFERRAL_TIME          = "deferral_time";
+		private static final String ALLOCATION_TIME        = "allocation_time";
+		private static final String ALLOCATOR_TIME         = "resource_allocator_time";
+		private static final String NODE_BOOT_TIME         = "node_boot_time";
+		private static final String SCALEUP_TIME           = "scaleup_time";
+		private static final String SCALEDOWN_TIME         = "scaledown_time";
+	}
+
+	private static final String[] HISTOGRAMS = {
+			DumpFields.QUEUE_DELAY,
+			DumpFields.DEFERRAL_TIME,
+			DumpFields.ALLOCATION_TIME,
+			DumpFields.ALLOCATOR_TIME,
+			DumpFields.NODE_BOOT_TIME,
+			DumpFields.SCALEUP_TIME,
+			DumpFields.SCALEDOWN_TIME
+	};
+
+	private static class Gauge
+	{
+		private final String help;
+		private final LongSupplier value;
+
+		public Gauge(String help, LongSupplier value)
+		{
+			this.help = help;
+			this.value = value;
+		}
+	}
+
+	private LatencyHistogram lookup(String name)
+	{
+		switch (name)
+		{
+			case DumpFields.QUEUE_DELAY:
+				return queueDelay;
+			case DumpFields.DEFERRAL_TIME:
+				return deferralTime;
+			case DumpFields.ALLOCATION_TIME:
+				return allocationTime;
+			case DumpFields.ALLOCATOR_TIME:
+				return allocatorTime;
+			case DumpFields.NODE_BOOT_TIME:
+				return nodeBootTime;
+			case DumpFields.SCALEUP_TIME:
+				return scaleUpTime;
+			case DumpFields.SCALEDOWN_TIME:
+				return scaleDownTime;
+			default:
+				return null;
+		}
 	}
 
 
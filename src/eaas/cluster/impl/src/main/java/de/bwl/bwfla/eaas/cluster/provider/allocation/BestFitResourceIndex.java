@@ -0,0 +1,287 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider.allocation;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.json.stream.JsonGenerator;
+
+import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+import de.bwl.bwfla.eaas.cluster.dump.DumpConfig;
+import de.bwl.bwfla.eaas.cluster.dump.DumpHelpers;
+import de.bwl.bwfla.eaas.cluster.dump.DumpTrigger;
+import de.bwl.bwfla.eaas.cluster.dump.ObjectDumper;
+
+// package-private
+
+/**
+ * An index for nodes, selecting the node with the smallest weighted amount
+ * of free resources left after an allocation (best-fit). Healthy nodes are
+ * kept in a two-level tree (free CPU, then free memory), unhealthy nodes in
+ * a separate set, so that lookups never scan unusable nodes twice. Nodes are
+ * moved between both, when re-added after changing their health state.
+ */
+class BestFitResourceIndex implements IResourceIndex
+{
+	/** Healthy nodes: free cpu -> free memory -> nodes */
+	private final NavigableMap<Integer, NavigableMap<Integer, Set<NodeInfo>>> healthy;
+
+	/** Nodes, that were added or found during lookups while being unhealthy */
+	private final Set<NodeInfo> unhealthy;
+
+	/** Max. capacity of all added nodes, used for normalizing scores */
+	private final MutableResourceSpec scale;
+
+	private final float cpuWeight;
+	private final float memoryWeight;
+
+	private int numHealthyNodes;
+	private long numLookups;
+	private long numFailedLookups;
+	private long numVisitedEntries;
+
+	public BestFitResourceIndex(float cpuWeight, float memoryWeight)
+	{
+		if (cpuWeight < 0.0F || memoryWeight < 0.0F)
+			throw new IllegalArgumentException("Weights must be >= 0!");
+
+		this.healthy = new TreeMap<Integer, NavigableMap<Integer, Set<NodeInfo>>>();
+		this.unhealthy = new LinkedHashSet<NodeInfo>();
+		this.scale = new MutableResourceSpec(1, 1);
+		this.cpuWeight = cpuWeight;
+		this.memoryWeight = memoryWeight;
+		this.numHealthyNodes = 0;
+		this.numLookups = 0L;
+		this.numFailedLookups = 0L;
+		this.numVisitedEntries = 0L;
+	}
+
+	@Override
+	public void add(NodeInfo node)
+	{
+		scale.max(node.getCapacity());
+		if (node.isHealthy())
+			this.insert(node);
+		else unhealthy.add(node);
+	}
+
+	@Override
+	public boolean remove(NodeInfo node)
+	{
+		if (unhealthy.remove(node))
+			return true;
+
+		final ResourceSpec free = node.getFreeResources();
+		return this.remove(free.cpu(), free.memory(), node);
+	}
+
+	@Override
+	public NodeInfo find(ResourceSpec spec, boolean remove)
+	{
+		++numLookups;
+
+		NodeInfo best = null;
+		double bestScore = Double.MAX_VALUE;
+
+		Map.Entry<Integer, NavigableMap<Integer, Set<NodeInfo>>> cpuEntry = healthy.ceilingEntry(spec.cpu());
+		while (cpuEntry != null) {
+			// All following entries have at least this much CPU left over,
+			// hence no better candidate can be found there anymore!
+			final int cpu = cpuEntry.getKey();
+			if (this.score(spec, cpu, spec.memory()) >= bestScore)
+				break;
+
+			// For a fixed CPU value, the smallest sufficient memory value fits best
+			final NodeInfo node = this.findHealthyNode(cpu, cpuEntry.getValue(), spec.memory());
+			if (node != null) {
+				final double score = this.score(spec, cpu, node.getFreeResources().memory());
+				if (score < bestScore) {
+					bestScore = score;
+					best = node;
+				}
+			}
+
+			// Entry could have been cleaned up above!
+			cpuEntry = healthy.higherEntry(cpu);
+		}
+
+		if (best == null) {
+			++numFailedLookups;
+			return null;
+		}
+
+		if (remove)
+			this.remove(best);
+
+		return best;
+	}
+
+	@Override
+	public String getPlacementName()
+	{
+		return "best-fit";
+	}
+
+	@Override
+	public void dump(JsonGenerator json, DumpConfig dconf, int flags)
+	{
+		final DumpTrigger trigger = new DumpTrigger(dconf);
+		trigger.setResourceDumpHandler(() -> {
+			final ObjectDumper dumper = new ObjectDumper(json, dconf, flags, this.getClass());
+			dumper.add(DumpFields.WEIGHTS, () -> {
+				json.writeStartObject(DumpFields.WEIGHTS);
+				json.write("cpu", cpuWeight);
+				json.write("memory", memoryWeight);
+				json.writeEnd();
+			});
+
+			dumper.add(DumpFields.SCALE, () -> {
+				json.write(DumpFields.SCALE, DumpHelpers.toJsonObject(scale));
+			});
+
+			dumper.add(DumpFields.LOOKUPS, () -> {
+				json.writeStartObject(DumpFields.LOOKUPS);
+				json.write("total", numLookups);
+				json.write("failed", numFailedLookups);
+				json.write("visited_entries", numVisitedEntries);
+				json.writeEnd();
+			});
+
+			dumper.add(DumpFields.HEALTHY_NODES, () -> {
+				json.write("num_" + DumpFields.HEALTHY_NODES, numHealthyNodes);
+				json.writeStartArray(DumpFields.HEALTHY_NODES);
+				healthy.forEach((cpu, entries) -> {
+					entries.forEach((memory, nodes) -> {
+						json.writeStartObject();
+						json.write("free_cpu", cpu);
+						json.write("free_memory", memory);
+						json.writeStartArray("nodes");
+						nodes.forEach((node) -> json.write(node.getNodeID().toString()));
+						json.writeEnd();
+						json.writeEnd();
+					});
+				});
+
+				json.writeEnd();
+			});
+
+			dumper.add(DumpFields.UNHEALTHY_NODES, () -> {
+				json.write("num_" + DumpFields.UNHEALTHY_NODES, unhealthy.size());
+				json.writeStartArray(DumpFields.UNHEALTHY_NODES);
+				unhealthy.forEach((node) -> json.write(node.getNodeID().toString()));
+				json.writeEnd();
+			});
+
+			dumper.run();
+		});
+
+		trigger.run();
+	}
+
+	private static class DumpFields
+	{
+		private static final String WEIGHTS          = "weights";
+		private static final String SCALE            = "scale";
+		private static final String LOOKUPS          = "lookups";
+		private static final String HEALTHY_NODES    = "healthy_nodes";
+		private static final String UNHEALTHY_NODES  = "unhealthy_nodes";
+	}
+
+
+	/* ==================== Internal Helpers ==================== */
+
+	/** Weighted and normalized amount of resources left over after an allocation */
+	private double score(ResourceSpec spec, int cpu, int memory)
+	{
+		final double cpuLeft = (double) (cpu - spec.cpu()) / (double) scale.cpu();
+		final double memoryLeft = (double) (memory - spec.memory()) / (double) scale.memory();
+		return cpuWeight * cpuLeft + memoryWeight * memoryLeft;
+	}
+
+	private NodeInfo findHealthyNode(int cpu, NavigableMap<Integer, Set<NodeInfo>> entries, int memory)
+	{
+		Map.Entry<Integer, Set<NodeInfo>> entry = entries.ceilingEntry(memory);
+		while (entry != null) {
+			++numVisitedEntries;
+
+			final Iterator<NodeInfo> iter = entry.getValue().iterator();
+			while (iter.hasNext()) {
+				final NodeInfo node = iter.next();
+				if (node.isHealthy())
+					return node;
+
+				// Node became unhealthy, move it out of the way
+				iter.remove();
+				unhealthy.add(node);
+				--numHealthyNodes;
+			}
+
+			// All nodes of this entry were unhealthy!
+			final int key = entry.getKey();
+			entries.remove(key);
+			if (entries.isEmpty()) {
+				healthy.remove(cpu);
+				return null;
+			}
+
+			entry = entries.higherEntry(key);
+		}
+
+		return null;
+	}
+
+	private void insert(NodeInfo node)
+	{
+		final ResourceSpec free = node.getFreeResources();
+		final Set<NodeInfo> nodes = healthy.computeIfAbsent(free.cpu(), (cpu) -> new TreeMap<Integer, Set<NodeInfo>>())
+				.computeIfAbsent(free.memory(), (memory) -> new LinkedHashSet<NodeInfo>());
+
+		if (nodes.add(node))
+			++numHealthyNodes;
+	}
+
+	private boolean remove(int cpu, int memory, NodeInfo node)
+	{
+		final NavigableMap<Integer, Set<NodeInfo>> entries = healthy.get(cpu);
+		if (entries == null)
+			return false;
+
+		final Set<NodeInfo> nodes = entries.get(memory);
+		if (nodes == null || !nodes.remove(node))
+			return false;
+
+		--numHealthyNodes;
+
+		// Clean up empty entries
+		if (nodes.isEmpty()) {
+			entries.remove(memory);
+			if (entries.isEmpty())
+				healthy.remove(cpu);
+		}
+
+		return true;
+	}
+}
@@ -32,13 +32,12 @@ import javax.json.stream.JsonGenerator;
 import de.bwl.bwfla.eaas.cluster.ResourceSpec;
 import de.bwl.bwfla.eaas.cluster.dump.DumpConfig;
 import de.bwl.bwfla.eaas.cluster.dump.DumpTrigger;
-import de.bwl.bwfla.eaas.cluster.dump.IDumpable;
 import de.bwl.bwfla.eaas.cluster.dump.ObjectDumper;
 
 // package-private
 
 /** An index for nodes, sorted by node's free resources. */
-class ResourceIndex implements IDumpable
+class FirstFitResourceIndex implements IResourceIndex
 {
 	private final NavigableMap<Long, HashSet<NodeInfo>> entries;
 
@@ -53,14 +52,15 @@ class ResourceIndex implements IDumpable
 		return Long.compare(k1 & MEMORY_MASK, k2 & MEMORY_MASK);
 	};
 	
-	public ResourceIndex()
+	public FirstFitResourceIndex()
 	{
 		this.entries = new TreeMap<Long, HashSet<NodeInfo>>(ENTRIES_COMPARATOR);
 	}
 	
+	@Override
 	public void add(NodeInfo node)
 	{
-		final long key = ResourceIndex.toKey(node.getFreeResources());
+		final long key = FirstFitResourceIndex.toKey(node.getFreeResources());
 		HashSet<NodeInfo> nodes = entries.get(key);
 		if (nodes == null) {
 			nodes = new LinkedHashSet<NodeInfo>();
@@ -70,21 +70,22 @@ class ResourceIndex implements IDumpable
 		nodes.add(node);
 	}
 	
+	@Override
 	public boolean remove(NodeInfo node)
 	{
-		final long key = ResourceIndex.toKey(node.getFreeResources());
+		final long key = FirstFitResourceIndex.toKey(node.getFreeResources());
 		return this.remove(key, node);
 	}
 
-	/** Find a node with enough free resources */
+	@Override
 	public NodeInfo find(ResourceSpec spec, boolean remove)
 	{
 		Map.Entry<Long, HashSet<NodeInfo>> entry =
-				entries.ceilingEntry(ResourceIndex.toKey(spec));
+				entries.ceilingEntry(FirstFitResourceIndex.toKey(spec));
 		
 		while (entry != null) {
 			final HashSet<NodeInfo> nodes = entry.getValue();
-			final NodeInfo node = this.findHealthyNode(nodes);
+			final NodeInfo node = this.findHealthyNode(nodes, spec);
 			if (node != null) {
 				if (remove)
 					this.remove(entry.getKey(), node);
@@ -101,6 +102,12 @@ class ResourceIndex implements IDumpable
 		return null;
 	}
 	
+	@Override
+	public String getPlacementName()
+	{
+		return "first-fit";
+	}
+
 	@Override
 	public void dump(JsonGenerator json, DumpConfig dconf, int flags)
 	{
@@ -132,9 +139,13 @@ class ResourceIndex implements IDumpable
 		trigger.run();
 	}
 	
-	private NodeInfo findHealthyNode(HashSet<NodeInfo> nodes)
+	private NodeInfo findHealthyNode(HashSet<NodeInfo> nodes, ResourceSpec spec)
 	{
 		for (NodeInfo node : nodes) {
+			// Entries are ordered by CPU first, hence memory must be checked too!
+			if (node.getFreeResources().memory() < spec.memory())
+				return null;
+
 			if (node.isHealthy())
 				return node;
 		}
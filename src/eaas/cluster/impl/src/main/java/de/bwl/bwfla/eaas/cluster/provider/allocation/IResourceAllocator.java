@@ -33,6 +33,9 @@ public interface IResourceAllocator extends IDumpable
 	public boolean registerNode(Node node);
 	public void unregisterNode(NodeID id);
 	
+	/** Re-indexes the node, after its health- or degraded-state changed */
+	public void updateNode(NodeID id);
+	
 	public ResourceSpec getFreeResources();
 	public ResourceSpec getUsedResources();
 	public int getNumAllocations();
@@ -0,0 +1,41 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider.allocation;
+
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+import de.bwl.bwfla.eaas.cluster.dump.IDumpable;
+
+// package-private
+
+/** An index for nodes, used for finding a placement for allocations. */
+interface IResourceIndex extends IDumpable
+{
+	/** Add node, using its current free resources and health */
+	public void add(NodeInfo node);
+
+	/** Remove node, must be called before node's free resources are modified */
+	public boolean remove(NodeInfo node);
+
+	/** Find a healthy node with enough free resources */
+	public NodeInfo find(ResourceSpec spec, boolean remove);
+
+	/** Name of the placement strategy */
+	public String getPlacementName();
+}
@@ -76,9 +76,10 @@ class NodeInfo implements IDumpable
 		return allocations.size();
 	}
 	
+	/** Returns true, if the node is healthy and not degraded, hence can accept new allocations */
 	public boolean isHealthy()
 	{
-		return node.isHealthy();
+		return node.isHealthy() && !node.isDegraded();
 	}
 	
 	public void addAllocation(ResourceAllocation allocation)
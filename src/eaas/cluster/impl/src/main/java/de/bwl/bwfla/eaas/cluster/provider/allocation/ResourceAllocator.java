@@ -30,6 +30,7 @@ import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
 import de.bwl.bwfla.eaas.cluster.NodeID;
 import de.bwl.bwfla.eaas.cluster.ResourceHandle;
 import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+import de.bwl.bwfla.eaas.cluster.config.ResourceProviderConfig;
 import de.bwl.bwfla.eaas.cluster.dump.DumpConfig;
 import de.bwl.bwfla.eaas.cluster.dump.DumpFlags;
 import de.bwl.bwfla.eaas.cluster.dump.DumpHelpers;
@@ -42,19 +43,19 @@ import de.bwl.bwfla.eaas.cluster.provider.Node;
 public class ResourceAllocator implements IResourceAllocator, IDumpable
 {
 	private final Map<NodeID, NodeInfo> nodes;
-	private final ResourceIndex index;
+	private final IResourceIndex index;
 	private final MutableResourceSpec capacity;
 	private final MutableResourceSpec available;
 	private final String provider;
 	private int numAllocations;
 	
-	public ResourceAllocator(String providerName)
+	public ResourceAllocator(ResourceProviderConfig config)
 	{
 		this.nodes = new HashMap<NodeID, NodeInfo>();
-		this.index = new ResourceIndex();
+		this.index = ResourceAllocator.createIndex(config);
 		this.capacity = new MutableResourceSpec();
 		this.available = new MutableResourceSpec();
-		this.provider = providerName;
+		this.provider = config.getName();
 		this.numAllocations = 0;
 	}
 	
@@ -101,6 +102,18 @@ public class ResourceAllocator implements IResourceAllocator, IDumpable
 		numAllocations -= node.getNumAllocations();
 	}
 
+	@Override
+	public void updateNode(NodeID nodeid)
+	{
+		final NodeInfo node = nodes.get(nodeid);
+		if (node == null)
+			return;
+
+		// Index places the node according to its current state
+		index.remove(node);
+		index.add(node);
+	}
+
 	@Override
 	public ResourceSpec getFreeResources()
 	{
@@ -129,8 +142,10 @@ public class ResourceAllocator implements IResourceAllocator, IDumpable
 		// Find a node with enough free resources...
 		NodeInfo node = index.find(spec, true);
 		if (node == null) {
-			available.free(spec);  // No node found, release already reserved resources!
-			throw new IllegalStateException("ResourceAllocator's ResourceIndex seems to be broken!");
+			// Free resources are fragmented across nodes or
+			// located on unhealthy nodes only, release them!
+			available.free(spec);
+			return null;
 		}
 
 		// Perform the allocation
@@ -224,6 +239,16 @@ public class ResourceAllocator implements IResourceAllocator, IDumpable
 				json.write(DumpFields.USED_RESOURCES, DumpHelpers.toJsonObject(this.getUsedResources()));
 			});
 			
+			dumper.add(DumpFields.PLACEMENT, () -> {
+				json.write(DumpFields.PLACEMENT, index.getPlacementName());
+			});
+
+			dumper.add(DumpFields.EFFICIENCY, () -> {
+				json.writeStartObject(DumpFields.EFFICIENCY);
+				this.dumpAllocationEfficiency(json);
+				json.writeEnd();
+			});
+
 			dumper.add(DumpFields.NUM_ALLOCATIONS, () -> {
 				json.write(DumpFields.NUM_ALLOCATIONS, numAllocations);
 			});
@@ -258,5 +283,49 @@ public class ResourceAllocator implements IResourceAllocator, IDumpable
 		private static final String CAPACITY         = "capacity";
 		private static final String NODES            = "nodes";
 		private static final String INDEX            = "index";
+		private static final String PLACEMENT        = "placement";
+		private static final String EFFICIENCY       = "allocation_efficiency";
+	}
+
+	/**
+	 * Dump the share of capacity actually allocated on nodes in use.
+	 * Values close to 1.0 indicate tight packing, lower values
+	 * indicate resources stranded on partially used nodes.
+	 */
+	private void dumpAllocationEfficiency(JsonGenerator json)
+	{
+		final MutableResourceSpec used = new MutableResourceSpec();
+		final MutableResourceSpec reserved = new MutableResourceSpec();
+		int numUsedNodes = 0;
+		for (NodeInfo node : nodes.values()) {
+			if (node.getNumAllocations() == 0)
+				continue;
+
+			used.add(node.getUsedResources());
+			reserved.add(node.getCapacity());
+			++numUsedNodes;
+		}
+
+		json.write("num_used_nodes", numUsedNodes);
+		json.write("num_idle_nodes", nodes.size() - numUsedNodes);
+		json.write("cpu", ResourceAllocator.ratio(used.cpu(), reserved.cpu()));
+		json.write("memory", ResourceAllocator.ratio(used.memory(), reserved.memory()));
+	}
+
+	private static double ratio(long value, long total)
+	{
+		return (total > 0L) ? (double) value / (double) total : 0.0;
+	}
+
+	private static IResourceIndex createIndex(ResourceProviderConfig config)
+	{
+		final String placement = config.getPlacement();
+		if (ResourceProviderConfig.PLACEMENT_BEST_FIT.equals(placement))
+			return new BestFitResourceIndex(config.getPlacementCpuWeight(), config.getPlacementMemoryWeight());
+
+		if (ResourceProviderConfig.PLACEMENT_FIRST_FIT.equals(placement))
+			return new FirstFitResourceIndex();
+
+		throw new IllegalArgumentException("Unknown placement strategy: " + placement);
 	}
 }
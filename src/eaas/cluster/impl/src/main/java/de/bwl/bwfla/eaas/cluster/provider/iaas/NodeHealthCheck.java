@@ -19,11 +19,16 @@
 
 package de.bwl.bwfla.eaas.cluster.provider.iaas;
 
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
 import de.bwl.bwfla.eaas.cluster.config.NodeAllocatorConfig;
 import de.bwl.bwfla.eaas.cluster.provider.Node;
 
@@ -32,6 +37,9 @@ import de.bwl.bwfla.eaas.cluster.provider.Node;
 /** A helper class for performing health checks on nodes */
 class NodeHealthCheck
 {
+	/** Node status, as reported by emucomp's health endpoint */
+	private static final String STATUS_DEGRADED = "degraded";
+
 	public static NodeState run(NodeInfo info, NodeAllocatorConfig config)
 	{
 		return NodeHealthCheck.run(info, config, false);
@@ -52,6 +60,7 @@ class NodeHealthCheck
 		final Node node = info.getNode();
 		final URL url = info.getHealthCheckUrl();
 		HttpURLConnection connection = null;
+		String status = null;
 		int code = 0;
 		
 		try {
@@ -63,6 +72,8 @@ class NodeHealthCheck
 			connection.setUseCaches(false);
 			connection.connect();
 			code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_OK)
+				status = NodeHealthCheck.readStatus(connection);
 		}
 		catch (Exception exception) {
 			if (log != null) {
@@ -80,6 +91,14 @@ class NodeHealthCheck
 			info.setNodeState(NodeState.REACHABLE);
 			info.resetUnreachableTimestamp();
 			node.setHealthy(true);
+
+			// Nodes not reporting any status are never degraded
+			final boolean degraded = NodeHealthCheck.STATUS_DEGRADED.equals(status);
+			if (node.isDegraded() != degraded) {
+				node.setDegraded(degraded);
+				if (log != null)
+					log.info("Node '" + node.getId() + "' is " + ((degraded) ? "degraded" : "not degraded anymore"));
+			}
 		}
 		else {
 			// Healthcheck failed!
@@ -114,4 +133,21 @@ class NodeHealthCheck
 		
 		return info.getNodeState();
 	}
+
+	private static String readStatus(HttpURLConnection connection)
+	{
+		final String type = connection.getContentType();
+		if (type == null || !type.startsWith("application/json"))
+			return null;  // Older nodes respond without a body
+
+		try (InputStream input = connection.getInputStream();
+			 JsonReader reader = Json.createReader(input)) {
+			final JsonObject json = reader.readObject();
+			return json.getString("status", null);
+		}
+		catch (Exception error) {
+			// Invalid responses are ignored, the node is reachable anyway!
+			return null;
+		}
+	}
 }
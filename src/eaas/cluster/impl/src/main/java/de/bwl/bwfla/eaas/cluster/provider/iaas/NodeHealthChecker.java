@@ -31,6 +31,7 @@ import java.util.logging.Logger;
 
 import de.bwl.bwfla.eaas.cluster.NodeID;
 import de.bwl.bwfla.eaas.cluster.config.NodeAllocatorConfig;
+import de.bwl.bwfla.eaas.cluster.provider.Node;
 
 
 // package-private
@@ -80,11 +81,12 @@ class NodeHealthChecker implements Runnable
 		final AtomicInteger numRunningWorkers = new AtomicInteger(numParallelHealthChecks);
 		final AtomicInteger numTotalFailedNodes = new AtomicInteger(0);
 		final AtomicInteger numTotalHealthyNodes = new AtomicInteger(0);
+		final AtomicInteger numTotalDegradedNodes = new AtomicInteger(0);
 
 		// Subtask for executing health checks
 		final Runnable subtask = () -> {
 			Callable<Integer> healthcheck = null;
-			int numFailedNodes = 0, numHealthyNodes = 0;
+			int numFailedNodes = 0, numHealthyNodes = 0, numDegradedNodes = 0;
 			while ((healthcheck = healthchecks.poll()) != null) {
 				try {
 					final int result = healthcheck.call();
@@ -92,6 +94,9 @@ class NodeHealthChecker implements Runnable
 						++numFailedNodes;
 					else if (result > 0)
 						++numHealthyNodes;
+
+					if (result > 1)
+						++numDegradedNodes;
 				}
 				catch (Exception exception) {
 					log.log(Level.WARNING, "Executing health check failed!", exception);
@@ -100,6 +105,7 @@ class NodeHealthChecker implements Runnable
 
 			numTotalFailedNodes.addAndGet(numFailedNodes);
 			numTotalHealthyNodes.addAndGet(numHealthyNodes);
+			numTotalDegradedNodes.addAndGet(numDegradedNodes);
 
 			// Last subtask re-schedules health checks
 			if (numRunningWorkers.decrementAndGet() != 0)
@@ -110,12 +116,15 @@ class NodeHealthChecker implements Runnable
 			// Print summary
 			numFailedNodes = numTotalFailedNodes.get();
 			numHealthyNodes = numTotalHealthyNodes.get();
+			numDegradedNodes = numTotalDegradedNodes.get();
 			final String message = new StringBuilder(256)
 					.append("Health checking summary: ")
 					.append(numHealthyNodes)
 					.append(" out of ")
 					.append(numHealthChecks)
-					.append(" node(s) healthy, ")
+					.append(" node(s) healthy (")
+					.append(numDegradedNodes)
+					.append(" degraded), ")
 					.append(numHealthChecks - numHealthyNodes - numFailedNodes)
 					.append(" unhealthy, ")
 					.append(numFailedNodes)
@@ -156,7 +165,11 @@ class NodeHealthChecker implements Runnable
 				return -1;
 			}
 
-			return (info.getNode().isHealthy()) ? 1 : 0;
+			final Node node = info.getNode();
+			if (!node.isHealthy())
+				return 0;
+
+			return (node.isDegraded()) ? 2 : 1;
 		};
 
 		return healthcheck;
@@ -28,11 +28,13 @@ public class Tenant
 {
 	private final String name;
 	private final Quota quota;
+	private final int weight;
 
 	public Tenant(TenantConfig config)
 	{
 		this.name = config.getName();
 		this.quota = new Quota(config.getQuotaLimits());
+		this.weight = config.getWeight();
 	}
 
 	public Quota getQuota()
@@ -40,11 +42,17 @@ public class Tenant
 		return quota;
 	}
 
+	public int getWeight()
+	{
+		return weight;
+	}
+
 	public TenantConfig getConfig()
 	{
 		final TenantConfig config = new TenantConfig();
 		config.setName(name);
 		config.setQuotaLimits(quota.getLimits());
+		config.setWeight(weight);
 		return config;
 	}
 
@@ -29,6 +29,7 @@ public class TenantConfig
 {
 	private String name;
 	private ResourceSpec quota;
+	private int weight = 1;
 
 
 	// ========== Getters and Setters ==============================
@@ -59,6 +60,20 @@ public class TenantConfig
 		this.quota = quota;
 	}
 
+	/** Share of the cluster's resources relative to other tenants, when requests must wait */
+	@JsonProperty(Fields.WEIGHT)
+	public int getWeight()
+	{
+		return weight;
+	}
+
+	@JsonSetter(Fields.WEIGHT)
+	public void setWeight(int weight)
+	{
+		ConfigHelpers.check(weight, 1, Integer.MAX_VALUE, "Weight is invalid!");
+		this.weight = weight;
+	}
+
 
 	// ========== Internal Helpers ==============================
 
@@ -66,5 +81,6 @@ public class TenantConfig
 	{
 		private static final String NAME   = "name";
 		private static final String QUOTA  = "quota";
+		private static final String WEIGHT = "weight";
 	}
 }
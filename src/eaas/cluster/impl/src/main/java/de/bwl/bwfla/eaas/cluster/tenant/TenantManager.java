@@ -86,6 +86,13 @@ public class TenantManager
 		}
 	}
 
+	/** Returns tenant's weight for fair scheduling, or 1 for unknown tenants */
+	public int weight(String tid)
+	{
+		final Tenant tenant = tenants.get(tid);
+		return (tenant != null) ? tenant.getWeight() : 1;
+	}
+
 	public boolean remove(String tid)
 	{
 		log.info("Removing tenant: " + tid);
@@ -0,0 +1,93 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
+import de.bwl.bwfla.eaas.cluster.ResourceHandle;
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+
+
+public class AllocationBatchOrderTest
+{
+	private static final ResourceSpec CAPACITY = new MutableResourceSpec(8000, 32768);
+
+	private static final Comparator<AllocationRequest> LARGEST_FIRST = ResourceProvider.largestFirst(CAPACITY);
+
+	@Test
+	public void testLargestShareFirst()
+	{
+		final AllocationRequest small = AllocationBatchOrderTest.request(500, 1024, 100L);
+		final AllocationRequest cpuHeavy = AllocationBatchOrderTest.request(4000, 1024, 300L);
+		final AllocationRequest medium = AllocationBatchOrderTest.request(2000, 8192, 200L);
+		final AllocationRequest memoryHeavy = AllocationBatchOrderTest.request(2000, 24576, 400L);
+
+		// Half of a node's CPU is less than three quarters of its memory
+		final List<AllocationRequest> batch = new ArrayList<AllocationRequest>(Arrays.asList(small, medium, cpuHeavy, memoryHeavy));
+		batch.sort(LARGEST_FIRST);
+		Assert.assertEquals(Arrays.asList(memoryHeavy, cpuHeavy, medium, small), batch);
+	}
+
+	@Test
+	public void testEqualSharesBySpec()
+	{
+		final AllocationRequest memoryHeavy = AllocationBatchOrderTest.request(2000, 16384, 100L);
+		final AllocationRequest cpuHeavy = AllocationBatchOrderTest.request(4000, 1024, 200L);
+
+		final List<AllocationRequest> batch = new ArrayList<AllocationRequest>(Arrays.asList(memoryHeavy, cpuHeavy));
+		batch.sort(LARGEST_FIRST);
+		Assert.assertEquals(Arrays.asList(cpuHeavy, memoryHeavy), batch);
+	}
+
+	@Test
+	public void testEqualRequestsByDeadline()
+	{
+		final AllocationRequest late = AllocationBatchOrderTest.request(1000, 2048, 300L);
+		final AllocationRequest early = AllocationBatchOrderTest.request(1000, 2048, 100L);
+		final AllocationRequest middle = AllocationBatchOrderTest.request(1000, 2048, 200L);
+
+		final List<AllocationRequest> batch = new ArrayList<AllocationRequest>(Arrays.asList(late, early, middle));
+		batch.sort(LARGEST_FIRST);
+		Assert.assertEquals(Arrays.asList(early, middle, late), batch);
+	}
+
+	@Test
+	public void testDominantShare()
+	{
+		Assert.assertEquals(0.5, ResourceProvider.getDominantShare(new MutableResourceSpec(4000, 1024), CAPACITY), 0.0);
+		Assert.assertEquals(0.75, ResourceProvider.getDominantShare(new MutableResourceSpec(2000, 24576), CAPACITY), 0.0);
+		Assert.assertEquals(0.0, ResourceProvider.getDominantShare(new MutableResourceSpec(1000, 1024), new MutableResourceSpec(0, 0)), 0.0);
+	}
+
+	private static AllocationRequest request(int cpu, int memory, long deadline)
+	{
+		final CompletableFuture<ResourceHandle> result = new CompletableFuture<ResourceHandle>();
+		return new AllocationRequest(result, UUID.randomUUID(), new MutableResourceSpec(cpu, memory), deadline);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
+import de.bwl.bwfla.eaas.cluster.ResourceHandle;
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+
+
+public class AllocationRequestQueueTest
+{
+	private static final ResourceSpec CAPACITY = new MutableResourceSpec(4000, 8192);
+
+	@Test
+	public void testWeightedShares()
+	{
+		final AllocationRequestQueue queue = new AllocationRequestQueue(CAPACITY, (tenant) -> ("heavy".equals(tenant)) ? 2 : 1);
+
+		// The light tenant's requests are all due earlier...
+		for (int i = 0; i < 6; ++i) {
+			queue.add(AllocationRequestQueueTest.request("heavy", 200L + i));
+			queue.add(AllocationRequestQueueTest.request("light", 100L + i));
+		}
+
+		// ...but the heavy tenant gets twice as many served
+		Assert.assertEquals("light heavy heavy light heavy heavy light heavy heavy",
+				AllocationRequestQueueTest.serve(queue, 9));
+
+		Assert.assertEquals(3, queue.size());
+	}
+
+	@Test
+	public void testIdleTenantsGetNoCredit()
+	{
+		final AllocationRequestQueue queue = new AllocationRequestQueue(CAPACITY, (tenant) -> 1);
+		for (int i = 0; i < 8; ++i)
+			queue.add(AllocationRequestQueueTest.request("busy", 200L + i));
+
+		Assert.assertEquals("busy busy busy busy", AllocationRequestQueueTest.serve(queue, 4));
+
+		// A tenant arriving late shares from now on, without catching up on the past
+		for (int i = 0; i < 4; ++i)
+			queue.add(AllocationRequestQueueTest.request("late", 100L + i));
+
+		Assert.assertEquals("late late busy late busy late busy busy",
+				AllocationRequestQueueTest.serve(queue, 8));
+
+		Assert.assertTrue(queue.isEmpty());
+
+		// Drained tenants start over at the current virtual time
+		queue.add(AllocationRequestQueueTest.request("busy", 300L));
+		queue.add(AllocationRequestQueueTest.request("late", 400L));
+		Assert.assertEquals("busy late", AllocationRequestQueueTest.serve(queue, 2));
+	}
+
+	@Test
+	public void testUnchargedPoll()
+	{
+		final AllocationRequestQueue queue = new AllocationRequestQueue(CAPACITY, (tenant) -> 1);
+		final AllocationRequest first = AllocationRequestQueueTest.request("a", 100L);
+		final AllocationRequest second = AllocationRequestQueueTest.request("b", 200L);
+		queue.add(second);
+		queue.add(first);
+
+		// Expired requests are removed by deadline
+		Assert.assertSame(first, queue.poll());
+		Assert.assertSame(second, queue.filter(CAPACITY).peek());
+
+		// Tenants are tracked again, after being drained
+		queue.add(first);
+		Assert.assertEquals("a b", AllocationRequestQueueTest.serve(queue, 2));
+		Assert.assertNull(queue.poll());
+	}
+
+	@Test
+	public void testUpdatePrunesRequestsAboveBound()
+	{
+		final AllocationRequestQueue queue = new AllocationRequestQueue(CAPACITY, (tenant) -> 1);
+		queue.add(AllocationRequestQueueTest.request("a", 100L, 2000));
+		queue.add(AllocationRequestQueueTest.request("a", 101L, 2000));
+		queue.add(AllocationRequestQueueTest.request("a", 102L, 1000));
+		for (int i = 0; i < 3; ++i)
+			queue.add(AllocationRequestQueueTest.request("b", 200L + i, 1000));
+
+		final AllocationRequestQueue.View view = queue.filter(CAPACITY);
+		final Iterator<AllocationRequest> iterator = view.iterator();
+		final StringBuilder served = new StringBuilder();
+		while (iterator.hasNext()) {
+			final AllocationRequest request = iterator.next();
+			iterator.remove();
+			served.append(request.getTenant())
+					.append(':')
+					.append(request.getDeadline())
+					.append(' ');
+
+			// Large requests don't fit anymore, after serving the first one
+			view.update(new MutableResourceSpec(1500, 8192));
+		}
+
+		Assert.assertEquals("a:100 b:200 b:201 a:102 b:202", served.toString().trim());
+		Assert.assertTrue(view.isEmpty());
+		Assert.assertNull(view.peek());
+
+		// Pruned requests stay queued
+		Assert.assertEquals(1, queue.size());
+		Assert.assertEquals(101L, queue.peek().getDeadline());
+	}
+
+	@Test
+	public void testSkippedRequestsAreNotRevisited()
+	{
+		final AllocationRequestQueue queue = new AllocationRequestQueue(CAPACITY, (tenant) -> 1);
+		final AllocationRequest first = AllocationRequestQueueTest.request("a", 100L);
+		final AllocationRequest second = AllocationRequestQueueTest.request("b", 200L);
+		queue.add(first);
+		queue.add(second);
+
+		final AllocationRequestQueue.View view = queue.filter(CAPACITY);
+		final Iterator<AllocationRequest> iterator = view.iterator();
+		Assert.assertSame(first, iterator.next());
+		Assert.assertSame(second, view.peek());
+		Assert.assertSame(second, iterator.next());
+		iterator.remove();
+
+		// Iterators share view's positions
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertFalse(view.iterator().hasNext());
+		Assert.assertNull(view.poll());
+		Assert.assertEquals(1, view.size());
+
+		// Skipped requests are returned by new views
+		Assert.assertEquals(1, queue.size());
+		Assert.assertSame(first, queue.filter(CAPACITY).peek());
+	}
+
+
+	/* ==================== Internal Helpers ==================== */
+
+	private static AllocationRequest request(String tenant, long deadline)
+	{
+		return AllocationRequestQueueTest.request(tenant, deadline, 1000);
+	}
+
+	private static AllocationRequest request(String tenant, long deadline, int cpu)
+	{
+		final CompletableFuture<ResourceHandle> result = new CompletableFuture<ResourceHandle>();
+		return new AllocationRequest(result, tenant, UUID.randomUUID(), new MutableResourceSpec(cpu, 2048), deadline, false);
+	}
+
+	/** Serves the specified number of requests, returning their tenants */
+	private static String serve(AllocationRequestQueue queue, int count)
+	{
+		final AllocationRequestQueue.View view = queue.filter(CAPACITY);
+		final StringBuilder tenants = new StringBuilder();
+		for (int i = 0; i < count; ++i) {
+			final AllocationRequest request = view.poll();
+			Assert.assertNotNull(request);
+			if (tenants.length() > 0)
+				tenants.append(' ');
+
+			tenants.append(request.getTenant());
+		}
+
+		return tenants.toString();
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+
+
+public class DemandForecastTest
+{
+	private static final ZoneId UTC = ZoneOffset.UTC;
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1L);
+
+	private Path tmpdir;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		tmpdir = Files.createTempDirectory("forecast-");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(tmpdir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testRecordsPeakPerHour()
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+
+		// 2024-01-01 is a Monday
+		Assert.assertFalse(forecast.record(DemandForecastTest.time("2024-01-01T10:05", UTC), DemandForecastTest.spec(1000, 1024)));
+		Assert.assertFalse(forecast.record(DemandForecastTest.time("2024-01-01T10:30", UTC), DemandForecastTest.spec(2000, 512)));
+		Assert.assertFalse(forecast.record(DemandForecastTest.time("2024-01-01T10:59", UTC), DemandForecastTest.spec(500, 256)));
+		Assert.assertEquals(0, forecast.getNumObservedBuckets());
+
+		// The first observation in the next hour completes the bucket
+		Assert.assertTrue(forecast.record(DemandForecastTest.time("2024-01-01T11:00", UTC), DemandForecastTest.spec(100, 100)));
+		Assert.assertEquals(1, forecast.getNumObservedBuckets());
+
+		// Same hour in the next week
+		final long next = DemandForecastTest.time("2024-01-08T10:00", UTC);
+		DemandForecastTest.assertSpec(2000, 1024, forecast.predict(next, 0L));
+
+		// Incomplete and unobserved buckets predict nothing
+		DemandForecastTest.assertSpec(0, 0, forecast.predict(next + HOUR, 0L));
+		DemandForecastTest.assertSpec(0, 0, forecast.predict(next - HOUR, 0L));
+	}
+
+	@Test
+	public void testHourBoundary()
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+		final long boundary = DemandForecastTest.time("2024-01-01T11:00", UTC);
+		forecast.record(boundary - 1L, DemandForecastTest.spec(1000, 1000));
+		Assert.assertTrue(forecast.record(boundary, DemandForecastTest.spec(3000, 3000)));
+		Assert.assertTrue(forecast.record(boundary + HOUR, DemandForecastTest.spec(0, 0)));
+
+		final long next = DemandForecastTest.time("2024-01-08T10:00", UTC);
+		DemandForecastTest.assertSpec(1000, 1000, forecast.predict(next, 0L));
+		DemandForecastTest.assertSpec(3000, 3000, forecast.predict(next + HOUR, 0L));
+	}
+
+	@Test
+	public void testWeekBoundary()
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+
+		// Sunday's last hour and Monday's first hour are adjacent buckets
+		forecast.record(DemandForecastTest.time("2024-01-07T23:30", UTC), DemandForecastTest.spec(3000, 2048));
+		Assert.assertTrue(forecast.record(DemandForecastTest.time("2024-01-08T00:10", UTC), DemandForecastTest.spec(1000, 1024)));
+		Assert.assertTrue(forecast.record(DemandForecastTest.time("2024-01-08T01:10", UTC), DemandForecastTest.spec(0, 0)));
+		Assert.assertEquals(2, forecast.getNumObservedBuckets());
+
+		DemandForecastTest.assertSpec(3000, 2048, forecast.predict(DemandForecastTest.time("2024-01-14T23:00", UTC), 0L));
+		DemandForecastTest.assertSpec(1000, 1024, forecast.predict(DemandForecastTest.time("2024-01-15T00:00", UTC), 0L));
+
+		// Lead-time spans the end of the week
+		DemandForecastTest.assertSpec(3000, 2048, forecast.predict(DemandForecastTest.time("2024-01-14T22:30", UTC), 2L * HOUR));
+		DemandForecastTest.assertSpec(1000, 1024, forecast.predict(DemandForecastTest.time("2024-01-15T00:00", UTC), 2L * HOUR));
+	}
+
+	@Test
+	public void testPredictsMaximumWithinLeadTime()
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+		forecast.record(DemandForecastTest.time("2024-01-01T10:00", UTC), DemandForecastTest.spec(1000, 4096));
+		forecast.record(DemandForecastTest.time("2024-01-01T12:00", UTC), DemandForecastTest.spec(3000, 1024));
+		forecast.record(DemandForecastTest.time("2024-01-01T13:00", UTC), DemandForecastTest.spec(0, 0));
+
+		final long start = DemandForecastTest.time("2024-01-08T10:15", UTC);
+		DemandForecastTest.assertSpec(1000, 4096, forecast.predict(start, HOUR));
+
+		// The bucket of the lead-time's end is included
+		DemandForecastTest.assertSpec(3000, 4096, forecast.predict(start, 2L * HOUR));
+	}
+
+	@Test
+	public void testSmoothsProfilesAndTrend()
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+		forecast.record(DemandForecastTest.time("2024-01-01T10:00", UTC), DemandForecastTest.spec(1000, 1024));
+		forecast.record(DemandForecastTest.time("2024-01-01T11:00", UTC), DemandForecastTest.spec(0, 0));
+		Assert.assertEquals(1.0F, forecast.getTrend(), 0.0001F);
+
+		// Doubled CPU and unchanged memory demand one week later
+		forecast.record(DemandForecastTest.time("2024-01-08T10:00", UTC), DemandForecastTest.spec(2000, 1024));
+		forecast.record(DemandForecastTest.time("2024-01-08T11:00", UTC), DemandForecastTest.spec(0, 0));
+
+		// ratio = (2.0 + 1.0) / 2 = 1.5, trend = 0.5 * 1.5 + 0.5 * 1.0
+		Assert.assertEquals(1.25F, forecast.getTrend(), 0.0001F);
+
+		// cpu = 0.5 * 2000 + 0.5 * 1000, scaled by the trend
+		final long next = DemandForecastTest.time("2024-01-15T10:00", UTC);
+		DemandForecastTest.assertSpec(1875, 1280, forecast.predict(next, 0L));
+	}
+
+	@Test
+	public void testTrendIsClamped()
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 1.0F, UTC);
+		forecast.record(DemandForecastTest.time("2024-01-01T10:00", UTC), DemandForecastTest.spec(100, 100));
+		forecast.record(DemandForecastTest.time("2024-01-08T10:00", UTC), DemandForecastTest.spec(100000, 100000));
+		forecast.record(DemandForecastTest.time("2024-01-08T11:00", UTC), DemandForecastTest.spec(0, 0));
+		Assert.assertEquals(2.0F, forecast.getTrend(), 0.0001F);
+
+		forecast.record(DemandForecastTest.time("2024-01-15T10:00", UTC), DemandForecastTest.spec(1, 1));
+		forecast.record(DemandForecastTest.time("2024-01-15T11:00", UTC), DemandForecastTest.spec(0, 0));
+		Assert.assertEquals(0.5F, forecast.getTrend(), 0.0001F);
+	}
+
+	@Test
+	public void testBucketsFollowLocalHoursInFractionalZones()
+	{
+		// Local hours start at half past the UTC hours
+		final ZoneId zone = ZoneId.of("Asia/Kolkata");
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, zone);
+		forecast.record(DemandForecastTest.time("2024-01-01T15:40", zone), DemandForecastTest.spec(1000, 1000));
+		Assert.assertTrue(forecast.record(DemandForecastTest.time("2024-01-01T16:10", zone), DemandForecastTest.spec(2000, 2000)));
+		Assert.assertFalse(forecast.record(DemandForecastTest.time("2024-01-01T16:50", zone), DemandForecastTest.spec(3000, 3000)));
+		Assert.assertTrue(forecast.record(DemandForecastTest.time("2024-01-01T17:00", zone), DemandForecastTest.spec(0, 0)));
+
+		DemandForecastTest.assertSpec(1000, 1000, forecast.predict(DemandForecastTest.time("2024-01-08T15:00", zone), 0L));
+		DemandForecastTest.assertSpec(3000, 3000, forecast.predict(DemandForecastTest.time("2024-01-08T16:00", zone), 0L));
+	}
+
+	@Test
+	public void testBucketsFollowDaylightSavingTime()
+	{
+		// Clocks jump from 02:00 to 03:00 on 2024-03-31, a Sunday
+		final ZoneId zone = ZoneId.of("Europe/Berlin");
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, zone);
+		forecast.record(DemandForecastTest.time("2024-03-31T01:30", zone), DemandForecastTest.spec(1000, 1000));
+		Assert.assertTrue(forecast.record(DemandForecastTest.time("2024-03-31T03:10", zone), DemandForecastTest.spec(2000, 2000)));
+		Assert.assertTrue(forecast.record(DemandForecastTest.time("2024-03-31T04:00", zone), DemandForecastTest.spec(0, 0)));
+
+		DemandForecastTest.assertSpec(1000, 1000, forecast.predict(DemandForecastTest.time("2024-04-07T01:00", zone), 0L));
+		DemandForecastTest.assertSpec(0, 0, forecast.predict(DemandForecastTest.time("2024-04-07T02:00", zone), 0L));
+		DemandForecastTest.assertSpec(2000, 2000, forecast.predict(DemandForecastTest.time("2024-04-07T03:00", zone), 0L));
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+		for (int week = 0; week < 2; ++week) {
+			final long start = DemandForecastTest.time("2024-01-01T00:00", UTC) + week * 7L * 24L * HOUR;
+			for (int hour = 0; hour < 7 * 24; hour += 5)
+				forecast.record(start + hour * HOUR, DemandForecastTest.spec(100 * (hour + week), 10 * hour));
+		}
+
+		final Path path = tmpdir.resolve("state").resolve("forecast.json");
+		DemandForecast.save(path, forecast.snapshot());
+		Assert.assertTrue(Files.exists(path));
+		Assert.assertFalse(Files.exists(path.resolveSibling("forecast.json.tmp")));
+
+		final DemandForecast restored = new DemandForecast(0.5F, 0.5F, UTC);
+		Assert.assertTrue(restored.load(path));
+		Assert.assertEquals(forecast.getTrend(), restored.getTrend(), 0.0F);
+		Assert.assertEquals(forecast.getNumObservedBuckets(), restored.getNumObservedBuckets());
+
+		final long start = DemandForecastTest.time("2024-02-05T00:00", UTC);
+		for (int hour = 0; hour < 7 * 24; ++hour) {
+			final ResourceSpec expected = forecast.predict(start + hour * HOUR, 0L);
+			Assert.assertEquals("hour " + hour, expected, restored.predict(start + hour * HOUR, 0L));
+		}
+
+		// Saving again replaces the previous state
+		DemandForecast.save(path, restored.snapshot());
+		Assert.assertTrue(new DemandForecast(0.5F, 0.5F, UTC).load(path));
+	}
+
+	@Test
+	public void testLoadMissingState() throws IOException
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+		Assert.assertFalse(forecast.load(tmpdir.resolve("missing.json")));
+		Assert.assertEquals(0, forecast.getNumObservedBuckets());
+	}
+
+	@Test
+	public void testLoadRejectsInvalidState() throws IOException
+	{
+		final DemandForecast forecast = new DemandForecast(0.5F, 0.5F, UTC);
+		final String[] states = {
+				"{\"version\": 2, \"trend\": 1.0, \"buckets\": []}",
+				"{\"version\": 1, \"trend\": 1.0, \"buckets\": []}",
+				"{\"trend\": 1.0}",
+		};
+
+		final Path path = tmpdir.resolve("forecast.json");
+		for (String state : states) {
+			Files.write(path, state.getBytes(StandardCharsets.UTF_8));
+			try {
+				forecast.load(path);
+				Assert.fail("Invalid state was loaded: " + state);
+			}
+			catch (IOException error) {
+				// Expected!
+			}
+		}
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private static long time(String localtime, ZoneId zone)
+	{
+		return LocalDateTime.parse(localtime)
+				.atZone(zone)
+				.toInstant()
+				.toEpochMilli();
+	}
+
+	private static ResourceSpec spec(int cpu, int memory)
+	{
+		return new MutableResourceSpec(cpu, memory);
+	}
+
+	private static void assertSpec(int cpu, int memory, ResourceSpec actual)
+	{
+		Assert.assertEquals("cpu", cpu, actual.cpu());
+		Assert.assertEquals("memory", memory, actual.memory());
+	}
+}
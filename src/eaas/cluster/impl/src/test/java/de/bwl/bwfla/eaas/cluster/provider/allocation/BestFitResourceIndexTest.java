@@ -0,0 +1,179 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas.cluster.provider.allocation;
+
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.bwl.bwfla.eaas.cluster.MutableResourceSpec;
+import de.bwl.bwfla.eaas.cluster.NodeID;
+import de.bwl.bwfla.eaas.cluster.ResourceHandle;
+import de.bwl.bwfla.eaas.cluster.ResourceSpec;
+import de.bwl.bwfla.eaas.cluster.provider.Node;
+
+
+public class BestFitResourceIndexTest
+{
+	@Test
+	public void testBestFitSelection()
+	{
+		final BestFitResourceIndex index = new BestFitResourceIndex(1.0F, 1.0F);
+		final NodeInfo large = BestFitResourceIndexTest.node("10.0.0.1", 8000, 16000);
+		final NodeInfo small = BestFitResourceIndexTest.node("10.0.0.2", 2000, 4000);
+		final NodeInfo medium = BestFitResourceIndexTest.node("10.0.0.3", 4000, 8000);
+		index.add(large);
+		index.add(small);
+		index.add(medium);
+
+		// The smallest node with enough resources fits best
+		Assert.assertSame(small, index.find(spec(1000, 2000), false));
+		Assert.assertSame(medium, index.find(spec(3000, 2000), false));
+		Assert.assertSame(large, index.find(spec(1000, 12000), false));
+		Assert.assertNull(index.find(spec(9000, 1000), false));
+	}
+
+	@Test
+	public void testInsertAndRemove()
+	{
+		final BestFitResourceIndex index = new BestFitResourceIndex(1.0F, 1.0F);
+		final NodeInfo first = BestFitResourceIndexTest.node("10.0.0.1", 4000, 8000);
+		final NodeInfo second = BestFitResourceIndexTest.node("10.0.0.2", 4000, 8000);
+		index.add(first);
+		index.add(second);
+
+		// Found nodes can be taken out of the index
+		final NodeInfo found = index.find(spec(1000, 1000), true);
+		Assert.assertNotNull(found);
+		final NodeInfo other = (found == first) ? second : first;
+		Assert.assertSame(other, index.find(spec(1000, 1000), true));
+		Assert.assertNull(index.find(spec(1000, 1000), false));
+
+		// Re-inserted with less free resources after an allocation
+		BestFitResourceIndexTest.allocate(found, 3000, 6000);
+		index.add(found);
+		index.add(other);
+		Assert.assertSame(found, index.find(spec(1000, 2000), false));
+		Assert.assertSame(other, index.find(spec(2000, 2000), false));
+
+		Assert.assertTrue(index.remove(found));
+		Assert.assertFalse(index.remove(found));
+		Assert.assertSame(other, index.find(spec(1000, 2000), false));
+	}
+
+	@Test
+	public void testHealthTransitions()
+	{
+		final BestFitResourceIndex index = new BestFitResourceIndex(1.0F, 1.0F);
+		final Node healthy = BestFitResourceIndexTest.newNode("10.0.0.1", 8000, 16000);
+		final Node sick = BestFitResourceIndexTest.newNode("10.0.0.2", 2000, 4000);
+		BestFitResourceIndexTest.track(index, healthy);
+		BestFitResourceIndexTest.track(index, sick);
+
+		// Unhealthy nodes are skipped during lookups...
+		sick.setHealthy(false);
+		Assert.assertEquals(healthy.getId(), index.find(spec(1000, 1000), false).getNodeID());
+
+		// ...and are used again once recovered
+		sick.setHealthy(true);
+		Assert.assertEquals(sick.getId(), index.find(spec(1000, 1000), false).getNodeID());
+
+		// Same for degraded nodes
+		sick.setDegraded(true);
+		Assert.assertEquals(healthy.getId(), index.find(spec(1000, 1000), false).getNodeID());
+		sick.setDegraded(false);
+		Assert.assertEquals(sick.getId(), index.find(spec(1000, 1000), false).getNodeID());
+
+		// Nodes added while unhealthy are used once recovered
+		final Node late = BestFitResourceIndexTest.newNode("10.0.0.3", 1000, 1000);
+		late.setHealthy(false);
+		final NodeInfo lateInfo = BestFitResourceIndexTest.track(index, late);
+		Assert.assertEquals(sick.getId(), index.find(spec(1000, 1000), false).getNodeID());
+		late.setHealthy(true);
+		Assert.assertSame(lateInfo, index.find(spec(1000, 1000), false));
+
+		// Unhealthy nodes can still be removed
+		late.setHealthy(false);
+		Assert.assertEquals(sick.getId(), index.find(spec(1000, 1000), false).getNodeID());
+		Assert.assertTrue(index.remove(lateInfo));
+		late.setOnHealthStateChangedCallback(null);
+		late.setHealthy(true);
+		Assert.assertEquals(sick.getId(), index.find(spec(1000, 1000), false).getNodeID());
+	}
+
+	@Test
+	public void testRecoveredNodesNeedReindexing()
+	{
+		final BestFitResourceIndex index = new BestFitResourceIndex(1.0F, 1.0F);
+		final Node healthy = BestFitResourceIndexTest.newNode("10.0.0.1", 8000, 16000);
+		final Node sick = BestFitResourceIndexTest.newNode("10.0.0.2", 2000, 4000);
+		index.add(new NodeInfo(healthy));
+		sick.setHealthy(false);
+		final NodeInfo sickInfo = new NodeInfo(sick);
+		index.add(sickInfo);
+
+		// Lookups do not poll unhealthy nodes for recovery...
+		sick.setHealthy(true);
+		Assert.assertEquals(healthy.getId(), index.find(spec(1000, 1000), false).getNodeID());
+
+		// ...the node is placed according to its state when re-added
+		Assert.assertTrue(index.remove(sickInfo));
+		index.add(sickInfo);
+		Assert.assertSame(sickInfo, index.find(spec(1000, 1000), false));
+	}
+
+
+	/* ==================== Internal Helpers ==================== */
+
+	private static ResourceSpec spec(int cpu, int memory)
+	{
+		return new MutableResourceSpec(cpu, memory);
+	}
+
+	private static Node newNode(String address, int cpu, int memory)
+	{
+		return new Node(new NodeID(address), spec(cpu, memory));
+	}
+
+	/** Adds the node, re-indexing it on health changes like the allocator does */
+	private static NodeInfo track(BestFitResourceIndex index, Node node)
+	{
+		final NodeInfo info = new NodeInfo(node);
+		node.setOnHealthStateChangedCallback((nid, usable) -> {
+			index.remove(info);
+			index.add(info);
+		});
+
+		index.add(info);
+		return info;
+	}
+
+	private static NodeInfo node(String address, int cpu, int memory)
+	{
+		return new NodeInfo(BestFitResourceIndexTest.newNode(address, cpu, memory));
+	}
+
+	private static void allocate(NodeInfo node, int cpu, int memory)
+	{
+		final ResourceHandle handle = new ResourceHandle("test", node.getNodeID(), UUID.randomUUID());
+		node.addAllocation(new ResourceAllocation(handle, spec(cpu, memory)));
+	}
+}
@@ -16,6 +16,10 @@ import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.bwl.bwfla.common.services.security.MachineTokenProvider;
 import de.bwl.bwfla.common.utils.EaasFileUtils;
 import de.bwl.bwfla.common.utils.ImageInformation;
@@ -117,9 +121,16 @@ public class EmulatorUtils {
 				Path cowPath = resourceDir.resolve(resource.getId() + ".cow");
 
 				QcowOptions qcowOptions = new QcowOptions();
-				qcowOptions.setBackingFile(resUrl);
+				qcowOptions.setBackingFile(ImageBlockCache.toCachedUrl(resUrl));
 
-				if(MachineTokenProvider.getAuthenticationProxy() != null)
+				if (ImageBlockCache.isCachedUrl(qcowOptions.getBackingFile())) {
+					// The node-local block cache fetches all blocks through the proxy
+					if (xmountOpts == null)
+						xmountOpts = new XmountOptions();
+
+					xmountOpts.setProxyEnabled(false);
+				}
+				else if(MachineTokenProvider.getAuthenticationProxy() != null)
 					qcowOptions.setProxyUrl(MachineTokenProvider.getAuthenticationProxy());
 				else
 					qcowOptions.setProxyUrl(MachineTokenProvider.getProxy());
@@ -531,6 +542,104 @@ public class EmulatorUtils {
 		}
 	}
 
+	/**
+	 * Checks whether the top layer of a qcow2 image contains any allocated clusters.
+	 * The image's backing chain is not opened, hence no remote backing files are accessed.
+	 *
+	 * @param image The qcow2 image to inspect.
+	 * @return true if the top layer contains data or zeroed clusters, else false.
+	 */
+	public static boolean hasAllocatedClusters(Path image, Logger log) throws BWFLAException {
+		DeprecatedProcessRunner process = new DeprecatedProcessRunner();
+		process.setLogger(log);
+		process.setCommand("qemu-img");
+		process.addArguments("map", "--output=json");
+		process.addArgument(EmulatorUtils.toTopLayerImageSpec(image));
+
+		try {
+			if (!process.execute(false, false))
+				throw new BWFLAException("qemu-img map " + image.toString() + " failed: " + process.getStdErrString());
+
+			final ObjectMapper mapper = new ObjectMapper();
+			try (JsonParser parser = mapper.getFactory().createParser(process.getStdOutReader())) {
+				if (parser.nextToken() != JsonToken.START_ARRAY)
+					throw new BWFLAException("Unexpected output of qemu-img map for " + image.toString());
+
+				// Without a backing chain, unallocated extents are reported as
+				// neither present nor containing data, so stop at the first other one
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					final JsonNode extent = mapper.readTree(parser);
+					if (EmulatorUtils.isAllocated(extent))
+						return true;
+				}
+			}
+
+			return false;
+		}
+		catch (IOException error) {
+			throw new BWFLAException("Inspecting image " + image.toString() + " failed!", error);
+		}
+		finally {
+			process.cleanup();
+		}
+	}
+
+	/**
+	 * Copies the top layer of a qcow2 image into a new qcow2 image, which references the
+	 * specified backing file. The file is copied as is and only its backing reference is
+	 * rewritten, hence the backing chain of the source image is never read and clusters
+	 * not allocated in the top layer are still read from the backing file.
+	 *
+	 * @param image The qcow2 image to copy the top layer from.
+	 * @param outfile Path where the new qcow2 image will be created at.
+	 * @param backingFile The backing file to reference from the new image.
+	 */
+	public static void copyTopLayer(Path image, Path outfile, String backingFile, Logger log) throws BWFLAException {
+		DeprecatedProcessRunner process = new DeprecatedProcessRunner();
+		process.setLogger(log);
+		process.setCommand("cp");
+		process.addArgument("--sparse=always");
+		process.addArgument(image.toString());
+		process.addArgument(outfile.toString());
+
+		try {
+			if (!process.execute())
+				throw new BWFLAException("Copying top layer of " + image.toString() + " failed");
+
+			EmulatorUtils.changeBackingFile(outfile, backingFile, log);
+		}
+		catch (BWFLAException error) {
+			try {
+				Files.deleteIfExists(outfile);
+			} catch (Exception e) {
+				log.severe("Created a temporary file but cannot delete it after error. This is bad.");
+			}
+			throw error;
+		}
+	}
+
+	/** Returns true, if an extent reported by qemu-img map is allocated in the inspected layer */
+	private static boolean isAllocated(JsonNode extent) {
+		final boolean data = extent.path("data").asBoolean(false);
+		if (extent.has("present"))
+			return data || extent.path("present").asBoolean(false);
+
+		// Older qemu versions do not report 'present', hence zeroed extents
+		// are considered allocated. Unmodified images may then be exported,
+		// but modified ones are never skipped.
+		return data || extent.path("zero").asBoolean(false);
+	}
+
+	/** Returns qemu's image specification for opening a qcow2 image without its backing chain */
+	private static String toTopLayerImageSpec(Path image) {
+		final String filename = image.toAbsolutePath().toString()
+				.replace("\\", "\\\\")
+				.replace("\"", "\\\"");
+
+		return "json:{\"driver\":\"qcow2\",\"backing\":null,"
+				+ "\"file\":{\"driver\":\"file\",\"filename\":\"" + filename + "\"}}";
+	}
+
 	@Deprecated
 	public static ImageInformation.QemuImageFormat getImageFormat(Path inFile, Logger log) throws BWFLAException, IOException {
 		ImageInformation info = new ImageInformation(inFile.toString(), log);
@@ -0,0 +1,120 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.api;
+
+import org.apache.tamaya.Configuration;
+import org.apache.tamaya.ConfigurationProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+
+/**
+ * Helpers for routing the backing files of COW images through the node-local block cache,
+ * which is served by the emucomp at the configured URL. Cached URLs have the form
+ * {@code <cache-url>/<encoded-url>/<name>}, where the last path segment is preserved
+ * from the original URL, so that image IDs can still be derived from cached URLs.
+ */
+public class ImageBlockCache
+{
+	private static final boolean enabled;
+	private static final String prefix;
+
+	static {
+		final Configuration config = ConfigurationProvider.getConfiguration();
+		final String url = config.get("emucomp.blockcache.url");
+		enabled = Boolean.parseBoolean(config.get("emucomp.blockcache.enabled")) && url != null && !url.isEmpty();
+		prefix = (url != null && !url.endsWith("/")) ? url + "/" : url;
+	}
+
+	/** Returns true, if the block cache is enabled on this node */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/** Returns true, if the URL references the node-local block cache */
+	public static boolean isCachedUrl(String url)
+	{
+		return enabled && url != null && url.startsWith(prefix);
+	}
+
+	/**
+	 * Returns the block cache's URL for the given one, or the unmodified URL
+	 * if the cache is disabled or does not support the URL's transport.
+	 */
+	public static String toCachedUrl(String url)
+	{
+		if (!enabled || url == null || ImageBlockCache.isCachedUrl(url))
+			return url;
+
+		if (!(url.startsWith("http://") || url.startsWith("https://")))
+			return url;
+
+		final String encoded = Base64.getUrlEncoder()
+				.withoutPadding()
+				.encodeToString(url.getBytes(StandardCharsets.UTF_8));
+
+		return prefix + encoded + "/" + ImageBlockCache.getName(url);
+	}
+
+	/** Returns the original URL for a cached one, or the unmodified URL if it is not cached */
+	public static String toOriginalUrl(String url)
+	{
+		if (!ImageBlockCache.isCachedUrl(url))
+			return url;
+
+		return ImageBlockCache.decode(url.substring(prefix.length()));
+	}
+
+	/**
+	 * Decodes the original URL from a cached URL's path of the form {@code <encoded-url>/<name>}.
+	 *
+	 * @return The original URL or null, if the path is invalid
+	 */
+	public static String decode(String path)
+	{
+		if (path.startsWith("/"))
+			path = path.substring(1);
+
+		final int end = path.indexOf('/');
+		if (end < 1)
+			return null;
+
+		try {
+			final byte[] decoded = Base64.getUrlDecoder().decode(path.substring(0, end));
+			return new String(decoded, StandardCharsets.UTF_8);
+		}
+		catch (IllegalArgumentException error) {
+			return null;
+		}
+	}
+
+	/** Returns the last path segment of the given URL, without any query */
+	public static String getName(String url)
+	{
+		int end = url.indexOf('?');
+		if (end < 0)
+			end = url.length();
+
+		final String path = url.substring(0, end);
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+}
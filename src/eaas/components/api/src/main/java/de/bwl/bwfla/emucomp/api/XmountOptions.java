@@ -12,6 +12,7 @@ public class XmountOptions {
 	private EmulatorUtils.XmountInputFormat inFmt;
 	private long offset = 0;
 	private long size = -1;
+	private boolean proxyEnabled = true;
 	private static String curlProxySo = ConfigurationProvider.getConfiguration().get("emucomp.curl_proxy");
 
 	protected final Logger log	= Logger.getLogger(this.getClass().getName());
@@ -47,6 +48,17 @@ public class XmountOptions {
 		return readonly;
 	}
 
+	/** Enables or disables routing of remote image accesses through the configured proxy */
+	public void setProxyEnabled(boolean enabled)
+	{
+		this.proxyEnabled = enabled;
+	}
+
+	public boolean isProxyEnabled()
+	{
+		return proxyEnabled;
+	}
+
 	public EmulatorUtils.XmountInputFormat getInFmt() {
 		return inFmt;
 	}
@@ -80,6 +92,9 @@ public class XmountOptions {
 			process.addArguments("--morphopts", morphOpts);
 		}
 
+		if (!proxyEnabled)
+			return;
+
 		String proxyUrl = MachineTokenProvider.getAuthenticationProxy();
 		if(proxyUrl == null)
 			proxyUrl = MachineTokenProvider.getProxy();
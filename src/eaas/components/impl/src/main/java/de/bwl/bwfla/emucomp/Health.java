@@ -1,14 +1,140 @@
 package de.bwl.bwfla.emucomp;
 
+import de.bwl.bwfla.common.utils.SystemMonitor;
+import de.bwl.bwfla.common.utils.SystemMonitor.ValueID;
+import org.apache.tamaya.inject.api.Config;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Reports the node's capacity and resource pressure. The node is reported as "degraded", when its
+ * load, memory usage or number of components exceeds the configured limits, so that the cluster
+ * can steer new allocations to other nodes. A degraded node stays degraded, until all values
+ * fall below 90% of their limits again.
+ */
+@ApplicationScoped
 @Path("/health")
 public class Health {
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_DEGRADED = "degraded";
+
+    private static final float RECOVERY_FACTOR = 0.9F;
+
+    private final Logger log = Logger.getLogger(Health.class.getName());
+
+    @Inject
+    private NodeManager nodemgr = null;
+
+    @Inject
+    @Config("emucomp.health.max_load_per_cpu")
+    private float maxLoadPerCpu = 0.0F;
+
+    @Inject
+    @Config("emucomp.health.min_available_memory")
+    private float minAvailableMemory = 0.0F;
+
+    @Inject
+    @Config("emucomp.health.max_components")
+    private int maxComponents = 0;
+
+    private SystemMonitor monitor = null;
+    private boolean degraded = false;
+
+    @PostConstruct
+    protected void initialize() {
+        try {
+            this.monitor = new SystemMonitor();
+        }
+        catch (IOException error) {
+            log.log(Level.WARNING, "Initializing system monitor failed! Reporting component counts only.", error);
+        }
+    }
+
     @GET
-    public Response health() {
-        return Response.status(Status.OK).build();
+    @Produces(MediaType.APPLICATION_JSON)
+    public synchronized Response health() {
+        final JsonObjectBuilder json = Json.createObjectBuilder();
+        final JsonArrayBuilder reasons = Json.createArrayBuilder();
+        final float threshold = (degraded) ? RECOVERY_FACTOR : 1.0F;
+        boolean overloaded = false;
+
+        // Warm-pooled components occupy the node's resources too
+        final int numActiveComponents = nodemgr.getNumComponents();
+        final int numPooledComponents = nodemgr.getNumPooledComponents();
+        final int numComponents = numActiveComponents + numPooledComponents;
+        json.add("components", Json.createObjectBuilder()
+                .add("active", numActiveComponents)
+                .add("pooled", numPooledComponents)
+                .add("max", maxComponents));
+
+        if (maxComponents > 0 && numComponents >= threshold * maxComponents) {
+            reasons.add("components");
+            overloaded = true;
+        }
+
+        final int numCpus = Runtime.getRuntime().availableProcessors();
+        json.add("cpus", numCpus);
+
+        if (monitor != null) {
+            try {
+                monitor.update();
+
+                final float load = SystemMonitor.parseLoadValue(monitor.getValue(ValueID.LOAD_AVERAGE_1MIN));
+                final float loadPerCpu = load / numCpus;
+                json.add("load", Json.createObjectBuilder()
+                        .add("1m", load)
+                        .add("5m", SystemMonitor.parseLoadValue(monitor.getValue(ValueID.LOAD_AVERAGE_5MIN)))
+                        .add("15m", SystemMonitor.parseLoadValue(monitor.getValue(ValueID.LOAD_AVERAGE_15MIN)))
+                        .add("per_cpu", loadPerCpu));
+
+                if (maxLoadPerCpu > 0.0F && loadPerCpu >= threshold * maxLoadPerCpu) {
+                    reasons.add("load");
+                    overloaded = true;
+                }
+
+                final long total = SystemMonitor.parseMemoryValue(monitor.getValue(ValueID.MEMORY_TOTAL));
+                final long available = SystemMonitor.parseMemoryValue(monitor.getValue(ValueID.MEMORY_AVAILABLE));
+                json.add("memory", Json.createObjectBuilder()
+                        .add("total", total)
+                        .add("available", available));
+
+                // More memory must be available to recover
+                final float minAvailable = (degraded) ? minAvailableMemory / RECOVERY_FACTOR : minAvailableMemory;
+                if (total > 0L && (float) available / total < minAvailable) {
+                    reasons.add("memory");
+                    overloaded = true;
+                }
+            }
+            catch (Exception error) {
+                log.log(Level.WARNING, "Updating system monitor failed!", error);
+            }
+        }
+
+        if (overloaded != degraded) {
+            log.info("Node is " + ((overloaded) ? "degraded now" : "healthy again"));
+            degraded = overloaded;
+        }
+
+        json.add("status", (degraded) ? STATUS_DEGRADED : STATUS_OK);
+        json.add("reasons", reasons);
+
+        // The node is reachable and working, hence always respond with OK
+        return Response.status(Status.OK)
+                .entity(json.build().toString())
+                .build();
     }
 }
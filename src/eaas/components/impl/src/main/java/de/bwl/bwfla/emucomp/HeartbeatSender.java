@@ -0,0 +1,189 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp;
+
+import de.bwl.bwfla.emucomp.api.ComponentState;
+import de.bwl.bwfla.emucomp.components.AbstractEaasComponent;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Pushes the liveness of all components on this node to the gateway, using a single request
+ * per heartbeat. Every heartbeat carries the IDs and states of all registered components.
+ * Released components are pushed as soon as possible, so that the gateway can clean up
+ * their sessions without waiting for their heartbeat deadlines to expire.
+ */
+// package-private
+class HeartbeatSender
+{
+	private static final String ACCESS_TOKEN_HEADER = "X-Node-Access-Token";
+
+	private final Logger log;
+	private final URL url;
+	private final String token;
+	private final String node;
+	private final long interval;
+	private final Map<String, AbstractEaasComponent> components;
+	private final Set<String> removed;
+	private final Executor executor;
+	private final AtomicBoolean pending;
+
+	private boolean failing;
+
+
+	/**
+	 * @param token Access token expected by the gateway
+	 * @param interval Time in ms between two heartbeats
+	 * @param components Registered components to report
+	 */
+	HeartbeatSender(URL url, String token, long interval, Map<String, AbstractEaasComponent> components,
+					Executor executor, Logger log)
+	{
+		this.log = log;
+		this.url = url;
+		this.token = token;
+		this.node = HeartbeatSender.hostname();
+		this.interval = interval;
+		this.components = components;
+		this.removed = ConcurrentHashMap.newKeySet();
+		this.executor = executor;
+		this.pending = new AtomicBoolean(false);
+		this.failing = false;
+	}
+
+	/** Requests a heartbeat to be sent. Multiple requests are coalesced into one heartbeat. */
+	void trigger()
+	{
+		if (pending.compareAndSet(false, true))
+			executor.execute(this::send);
+	}
+
+	/** Reports a released component with the next heartbeat, triggering it immediately */
+	void removed(String componentId)
+	{
+		removed.add(componentId);
+		this.trigger();
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private synchronized void send()
+	{
+		pending.set(false);
+
+		final List<String> released = new ArrayList<String>(removed);
+		if (components.isEmpty() && released.isEmpty())
+			return;  // Nothing to report
+
+		final JsonArrayBuilder entries = Json.createArrayBuilder();
+		components.forEach((id, component) -> {
+			ComponentState state;
+			try {
+				state = component.getState();
+			}
+			catch (Exception error) {
+				state = ComponentState.FAILED;
+			}
+
+			entries.add(Json.createObjectBuilder()
+					.add("id", id)
+					.add("state", state.name().toLowerCase()));
+		});
+
+		final JsonArrayBuilder removals = Json.createArrayBuilder();
+		released.forEach(removals::add);
+
+		final JsonObjectBuilder json = Json.createObjectBuilder()
+				.add("node", node)
+				.add("interval", interval)
+				.add("components", entries)
+				.add("removed", removals);
+
+		HttpURLConnection connection = null;
+		try {
+			final byte[] body = json.build()
+					.toString()
+					.getBytes(StandardCharsets.UTF_8);
+
+			connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout((int) interval);
+			connection.setReadTimeout((int) interval);
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setRequestProperty(ACCESS_TOKEN_HEADER, token);
+			connection.setUseCaches(false);
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream output = connection.getOutputStream()) {
+				output.write(body);
+			}
+
+			final int code = connection.getResponseCode();
+			if (code / 100 != 2)
+				throw new IllegalStateException("Unexpected response code " + code);
+
+			if (failing) {
+				log.info("Sending heartbeats to '" + url + "' succeeded again");
+				failing = false;
+			}
+		}
+		catch (Exception error) {
+			// Log failures once, the gateway falls back to polling
+			if (!failing)
+				log.log(Level.WARNING, "Sending heartbeat to '" + url + "' failed!", error);
+
+			failing = true;
+		}
+		finally {
+			// Undelivered removals are not retried, their deadlines will expire on the gateway
+			removed.removeAll(released);
+			if (connection != null)
+				connection.disconnect();
+		}
+	}
+
+	private static String hostname()
+	{
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		}
+		catch (Exception error) {
+			return "unknown";
+		}
+	}
+}
@@ -19,12 +19,22 @@
 
 package de.bwl.bwfla.emucomp;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.enterprise.concurrent.ManagedThreadFactory;
@@ -36,6 +46,7 @@ import de.bwl.bwfla.common.utils.ConfigHelpers;
 import de.bwl.bwfla.emucomp.api.*;
 import de.bwl.bwfla.emucomp.components.containers.ContainerBean;
 import de.bwl.bwfla.emucomp.components.network.NodeTcpBean;
+import org.apache.tamaya.Configuration;
 import org.apache.tamaya.ConfigurationProvider;
 import org.apache.tamaya.inject.api.Config;
 
@@ -43,6 +54,7 @@ import de.bwl.bwfla.common.exceptions.BWFLAException;
 import de.bwl.bwfla.common.logging.PrefixLogger;
 import de.bwl.bwfla.emucomp.components.AbstractEaasComponent;
 import de.bwl.bwfla.emucomp.components.emulators.EmulatorBean;
+import de.bwl.bwfla.emucomp.components.emulators.IpcForwarder;
 import de.bwl.bwfla.emucomp.components.network.NetworkSwitchBean;
 import de.bwl.bwfla.emucomp.components.network.VdeSlirpBean;
 import de.bwl.bwfla.emucomp.components.network.VdeSocksBean;
@@ -70,10 +82,115 @@ public class NodeManager {
     @Inject
     @Config("components.timeout")
     protected Duration componentExpirationTimeout;
-    
-    
-    // TODO: does it make sense to do something for @PreDestroy?
-    
+
+    @Inject
+    @Config("components.warm_pool.max_idle_time")
+    protected Duration warmPoolMaxIdleTime;
+
+    @Inject
+    @Config("components.warm_pool.expiration_interval")
+    protected Duration warmPoolExpirationInterval;
+
+    @Inject
+    @Config("components.warm_pool.configs_dir")
+    protected String warmPoolConfigsDir;
+
+    @Inject
+    @Config("emucomp.heartbeat.url")
+    protected String heartbeatUrl;
+
+    @Inject
+    @Config("emucomp.heartbeat.interval")
+    protected Duration heartbeatInterval;
+
+    @Inject
+    @Config("emucomp.heartbeat.access_token")
+    protected String heartbeatAccessToken;
+
+    private WarmPool warmPool;
+    private HeartbeatSender heartbeats;
+
+
+    @PostConstruct
+    protected void initialize() {
+        // Pool sizes are configured per environment as: components.warm_pool.environments.<env-id>: <size>
+        final Configuration config = ConfigHelpers.filter(ConfigurationProvider.getConfiguration(),
+                "components.warm_pool.environments.");
+
+        final Map<String, Integer> capacities = new HashMap<String, Integer>();
+        config.getProperties().forEach((envId, size) -> {
+            final int capacity = Integer.parseInt(size.trim());
+            if (capacity > 0)
+                capacities.put(envId, capacity);
+        });
+
+        final Path configdir = (warmPoolConfigsDir != null && !warmPoolConfigsDir.isEmpty()) ?
+                Paths.get(warmPoolConfigsDir) : null;
+
+        this.warmPool = new WarmPool(capacities, warmPoolMaxIdleTime.toMillis(), configdir,
+                this::createWarmComponent, executor, log);
+
+        if (!capacities.isEmpty()) {
+            log.info("Warm pools configured for environments: " + capacities);
+            executor.execute(warmPool::restore);
+
+            final long interval = warmPoolExpirationInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(() -> executor.execute(this::updateWarmPools),
+                    interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        if (heartbeatUrl != null && !heartbeatUrl.isEmpty()) {
+            if (heartbeatAccessToken == null || heartbeatAccessToken.isEmpty()) {
+                log.warning("No heartbeat access token configured! Heartbeats are disabled.");
+                return;
+            }
+
+            try {
+                final long interval = heartbeatInterval.toMillis();
+                this.heartbeats = new HeartbeatSender(new URL(heartbeatUrl), heartbeatAccessToken, interval, components, executor, log);
+                scheduler.scheduleWithFixedDelay(heartbeats::trigger, interval, interval, TimeUnit.MILLISECONDS);
+                log.info("Sending component heartbeats to '" + heartbeatUrl + "' every " + interval + " ms");
+            }
+            catch (MalformedURLException error) {
+                log.log(Level.WARNING, "Invalid heartbeat URL '" + heartbeatUrl + "'! Heartbeats are disabled.", error);
+            }
+        }
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        if (warmPool != null)
+            warmPool.shutdown();
+
+        // Forwarding is not needed anymore, once all components are gone
+        IpcForwarder.shutdownInstance();
+    }
+
+    /** Returns the number of allocated components, excluding pooled ones */
+    public int getNumComponents()
+    {
+        return components.size();
+    }
+
+    /** Returns the number of components in warm pools, including the ones still warming up */
+    public int getNumPooledComponents()
+    {
+        return (warmPool != null) ? warmPool.size() : 0;
+    }
+
+    /** Returns the node's metrics in Prometheus' text format */
+    public String getMetrics()
+    {
+        final StringBuilder output = new StringBuilder(1024);
+        output.append("# HELP eaas_components Number of allocated components\n")
+                .append("# TYPE eaas_components gauge\n")
+                .append("eaas_components ").append(components.size()).append('\n');
+
+        if (warmPool != null)
+            warmPool.export(output);
+
+        return output.toString();
+    }
 
     public ManagedThreadFactory getWorkerThreadFactory()
     {
@@ -102,6 +219,13 @@ public class NodeManager {
             final ComponentConfiguration configuration =
                     ComponentConfiguration.fromValue(config, ComponentConfiguration.class);
 
+            // try to hand out an already initialized component first
+            if (configuration instanceof MachineConfiguration) {
+                final String envId = ((MachineConfiguration) configuration).getId();
+                if (warmPool.isPooled(envId) && this.claimWarmComponent(componentId, envId, config))
+                    return componentId;
+            }
+
             // atomically create a new bean iff the given id does not already exist
             final AbstractEaasComponent component = components.computeIfAbsent(componentId, id -> {
                 try {
@@ -137,8 +261,11 @@ public class NodeManager {
      */
     public void releaseComponent(String componentId) {
         AbstractEaasComponent component = components.remove(componentId);
-        if (component != null)
+        if (component != null) {
             component.destroy();
+            if (heartbeats != null)
+                heartbeats.removed(componentId);
+        }
     }
 
     /**
@@ -189,6 +316,16 @@ public class NodeManager {
      *             known bean class.
      */
     protected AbstractEaasComponent createComponentInstance(ComponentConfiguration configuration, String componentId) throws BWFLAException {
+        final AbstractEaasComponent component = this.newComponentInstance(configuration, componentId);
+        this.watch(component, componentWarmupTimeout);
+        return component;
+    }
+
+    /**
+     * Same as {@link #createComponentInstance(ComponentConfiguration, String)},
+     * but without submitting a cleanup handler for the new instance.
+     */
+    protected AbstractEaasComponent newComponentInstance(ComponentConfiguration configuration, String componentId) throws BWFLAException {
         try {
             AbstractEaasComponent component;
 
@@ -214,11 +351,6 @@ public class NodeManager {
 
             component.setComponentId(componentId);
             component.setKeepaliveTimestamp(NodeManager.timestamp());
-
-            // Submit cleanup handler
-            final Runnable cleanup = new CleanupTrigger(component, componentExpirationTimeout);
-            scheduler.schedule(cleanup, componentWarmupTimeout.toMillis(), TimeUnit.MILLISECONDS);
-
             return component;
 
         } catch (ClassNotFoundException e) {
@@ -226,6 +358,69 @@ public class NodeManager {
         }
     }
     
+    /** Submits a cleanup handler for the component, which runs first after the given delay */
+    protected void watch(AbstractEaasComponent component, Duration delay) {
+        final Runnable cleanup = new CleanupTrigger(component, componentExpirationTimeout);
+        scheduler.schedule(cleanup, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tries to claim a pre-initialized component from the warm pool and
+     * to register it under the given {@code componentId}.
+     *
+     * @return true if a pooled component was registered, else false
+     */
+    protected boolean claimWarmComponent(String componentId, String envId, String config) {
+        final AbstractEaasComponent component = warmPool.claim(envId, config);
+        if (component == null) {
+            log.info("Warm pool miss for environment " + envId);
+            return false;
+        }
+
+        final String poolId = component.getComponentId();
+        component.setComponentId(componentId);
+        component.setKeepaliveTimestamp(NodeManager.timestamp());
+        if (components.putIfAbsent(componentId, component) != null) {
+            // should not happen, fall back to regular allocation
+            component.destroy();
+            return false;
+        }
+
+        this.watch(component, componentExpirationTimeout);
+        log.info("Warm pool hit for environment " + envId + ", component " + poolId + " claimed as " + componentId);
+        return true;
+    }
+
+    /** Creates and initializes a component for the warm pool */
+    protected AbstractEaasComponent createWarmComponent(String config) throws BWFLAException {
+        try {
+            // each instance needs its own configuration, since components can modify it
+            final ComponentConfiguration configuration =
+                    ComponentConfiguration.fromValue(config, ComponentConfiguration.class);
+
+            final AbstractEaasComponent component =
+                    this.newComponentInstance(configuration, "warm-" + UUID.randomUUID().toString());
+
+            try {
+                component.initialize(configuration);
+            }
+            catch (Throwable error) {
+                component.destroy();
+                throw error;
+            }
+
+            return component;
+        } catch (JAXBException e) {
+            throw new BWFLAException("Cannot unmarshall configuration metadata.", e);
+        }
+    }
+
+    protected void updateWarmPools() {
+        warmPool.expire();
+        warmPool.refill();
+        log.info("Warm pool statistics: " + warmPool);
+    }
+
     protected void onComponentTimeout(String componentId) {
         if (!components.containsKey(componentId))
             return;
@@ -0,0 +1,502 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp;
+
+import de.bwl.bwfla.common.exceptions.BWFLAException;
+import de.bwl.bwfla.emucomp.api.ComponentState;
+import de.bwl.bwfla.emucomp.components.AbstractEaasComponent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Per-environment pools of pre-initialized emulator components. A pool is created on the first
+ * allocation of a configured environment and keyed by the exact configuration requested, since
+ * only components initialized with an identical configuration can be handed out to a session.
+ * <p/>
+ * Replenishment policy: every claim (hit or miss) refills the pool up to its target size in the
+ * background. Pools that are below their target because of failed warmups are refilled on the
+ * next claim or periodic {@link #refill()}. Pools that were not claimed from within the max. idle
+ * time are closed and their components destroyed.
+ * <p/>
+ * The configuration of every open pool is saved to the config directory, so that the pools can
+ * be pre-warmed with {@link #restore()} on the next start, before the first allocation arrives.
+ */
+// package-private
+class WarmPool
+{
+	private static final String CONFIG_FILE_SUFFIX = ".pool";
+
+	private final Logger log;
+	private final Map<String, Integer> capacities;
+	private final Map<String, Pool> pools;
+	private final Path configdir;
+	private final ComponentFactory factory;
+	private final Executor executor;
+	private final long maxIdleTime;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder failures;
+
+
+	/** Factory for fully initialized components */
+	@FunctionalInterface
+	interface ComponentFactory
+	{
+		AbstractEaasComponent create(String config) throws BWFLAException;
+	}
+
+	/**
+	 * @param capacities Pool sizes per environment ID
+	 * @param maxIdleTime Max. time in ms, that a pool can stay unclaimed
+	 * @param configdir Directory for saved pool configurations, or null to disable pre-warming
+	 */
+	WarmPool(Map<String, Integer> capacities, long maxIdleTime, Path configdir,
+			ComponentFactory factory, Executor executor, Logger log)
+	{
+		this.log = log;
+		this.capacities = capacities;
+		this.pools = new ConcurrentHashMap<String, Pool>();
+		this.configdir = configdir;
+		this.factory = factory;
+		this.executor = executor;
+		this.maxIdleTime = maxIdleTime;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.failures = new LongAdder();
+	}
+
+	/** Returns true, if pooling is configured for the environment */
+	boolean isPooled(String envId)
+	{
+		return envId != null && capacities.containsKey(envId);
+	}
+
+	/**
+	 * Claims a pre-initialized component for the given environment and configuration,
+	 * triggering a replenishment of the corresponding pool.
+	 *
+	 * @return A ready component or null, if the pool is currently empty
+	 */
+	AbstractEaasComponent claim(String envId, String config)
+	{
+		final Pool pool = this.open(envId, config);
+		if (pool == null)
+			return null;
+
+		final AbstractEaasComponent component = pool.poll();
+		if (component != null) {
+			hits.increment();
+			pool.hits.increment();
+		}
+		else {
+			misses.increment();
+			pool.misses.increment();
+		}
+
+		this.replenish(pool);
+		return component;
+	}
+
+	/** Opens and fills all pools, whose configurations were saved before */
+	void restore()
+	{
+		if (configdir == null || !Files.isDirectory(configdir))
+			return;
+
+		int numRestored = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(configdir, "*" + CONFIG_FILE_SUFFIX)) {
+			for (Path file : files) {
+				try {
+					final String data = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+					final int separator = data.indexOf('\n');
+					final String envId = (separator > 0) ? data.substring(0, separator) : null;
+					if (!this.isPooled(envId)) {
+						// pooling is not configured anymore
+						Files.delete(file);
+						continue;
+					}
+
+					final Pool pool = this.open(envId, data.substring(separator + 1));
+					this.replenish(pool);
+					++numRestored;
+				}
+				catch (IOException error) {
+					log.log(Level.WARNING, "Restoring warm pool from " + file + " failed!", error);
+				}
+			}
+		}
+		catch (IOException error) {
+			log.log(Level.WARNING, "Listing saved warm pools failed!", error);
+		}
+
+		log.info("Pre-warming " + numRestored + " restored warm pool(s)");
+	}
+
+	/** Refills all pools up to their target sizes */
+	void refill()
+	{
+		pools.values().forEach(this::replenish);
+	}
+
+	/** Returns the number of pooled components, including the ones still warming up */
+	int size()
+	{
+		int size = 0;
+		for (Pool pool : pools.values())
+			size += pool.size();
+
+		return size;
+	}
+
+	/** Closes all pools, that were not claimed from within the max. idle time */
+	void expire()
+	{
+		final long now = System.currentTimeMillis();
+		final Iterator<Pool> iter = pools.values().iterator();
+		while (iter.hasNext()) {
+			final Pool pool = iter.next();
+			if (now - pool.timestamp() < maxIdleTime)
+				continue;
+
+			iter.remove();
+			this.delete(pool);
+
+			final List<AbstractEaasComponent> components = pool.close();
+			log.info("Closing unused warm pool " + pool.key + " with " + components.size() + " component(s)");
+			components.forEach(this::destroy);
+		}
+	}
+
+	/** Closes all pools and destroys their components, keeping their saved configurations */
+	void shutdown()
+	{
+		final Iterator<Pool> iter = pools.values().iterator();
+		while (iter.hasNext()) {
+			final Pool pool = iter.next();
+			iter.remove();
+			pool.close().forEach(this::destroy);
+		}
+	}
+
+	long getNumHits()
+	{
+		return hits.sum();
+	}
+
+	long getNumMisses()
+	{
+		return misses.sum();
+	}
+
+	long getNumFailures()
+	{
+		return failures.sum();
+	}
+
+	/** Appends the metrics of all pools in Prometheus' text format */
+	void export(StringBuilder output)
+	{
+		output.append("# HELP eaas_warm_pool_claims_total Number of allocations served from warm pools (hit) or not (miss)\n")
+				.append("# TYPE eaas_warm_pool_claims_total counter\n")
+				.append("eaas_warm_pool_claims_total{result=\"hit\"} ").append(hits.sum()).append('\n')
+				.append("eaas_warm_pool_claims_total{result=\"miss\"} ").append(misses.sum()).append('\n');
+
+		output.append("# HELP eaas_warm_pool_failures_total Number of failed component warmups\n")
+				.append("# TYPE eaas_warm_pool_failures_total counter\n")
+				.append("eaas_warm_pool_failures_total ").append(failures.sum()).append('\n');
+
+		output.append("# HELP eaas_warm_pool_components Number of pooled components per pool and state\n")
+				.append("# TYPE eaas_warm_pool_components gauge\n");
+
+		for (Pool pool : pools.values()) {
+			final String labels = "environment=\"" + WarmPool.escape(pool.envId)
+					+ "\",pool=\"" + WarmPool.escape(pool.key) + "\"";
+
+			synchronized (pool) {
+				output.append("eaas_warm_pool_components{").append(labels).append(",state=\"idle\"} ")
+						.append(pool.idle.size()).append('\n');
+				output.append("eaas_warm_pool_components{").append(labels).append(",state=\"pending\"} ")
+						.append(pool.pending).append('\n');
+			}
+		}
+
+		output.append("# HELP eaas_warm_pool_target Target number of components per pool\n")
+				.append("# TYPE eaas_warm_pool_target gauge\n");
+
+		for (Pool pool : pools.values()) {
+			output.append("eaas_warm_pool_target{environment=\"").append(WarmPool.escape(pool.envId))
+					.append("\",pool=\"").append(WarmPool.escape(pool.key)).append("\"} ")
+					.append(pool.capacity).append('\n');
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder sb = new StringBuilder(512);
+		sb.append("hits: ").append(hits.sum())
+				.append(", misses: ").append(misses.sum())
+				.append(", failures: ").append(failures.sum());
+
+		pools.values().forEach((pool) -> sb.append("\n  ").append(pool));
+		return sb.toString();
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private Pool open(String envId, String config)
+	{
+		final Integer capacity = capacities.get(envId);
+		if (capacity == null)
+			return null;
+
+		final String key = envId + "/" + WarmPool.fingerprint(config);
+		final Pool pool = pools.get(key);
+		if (pool != null)
+			return pool;
+
+		final Pool created = new Pool(key, envId, config, capacity);
+		final Pool other = pools.putIfAbsent(key, created);
+		if (other != null)
+			return other;
+
+		this.save(created);
+		return created;
+	}
+
+	private void replenish(Pool pool)
+	{
+		for (int n = pool.reserve(); n > 0; --n)
+			executor.execute(() -> this.warmup(pool));
+	}
+
+	private void warmup(Pool pool)
+	{
+		AbstractEaasComponent component = null;
+		try {
+			final long start = System.currentTimeMillis();
+			component = factory.create(pool.config);
+			if (component.getState() != ComponentState.OK)
+				throw new BWFLAException("Component is in unexpected state: " + component.getState());
+
+			if (pool.offer(component)) {
+				final long duration = System.currentTimeMillis() - start;
+				log.info("Component " + component.getComponentId() + " added to warm pool "
+						+ pool.key + " after " + duration + " ms");
+
+				component = null;
+			}
+		}
+		catch (Throwable error) {
+			failures.increment();
+			pool.failed();
+			log.log(Level.WARNING, "Warming up component for pool " + pool.key + " failed!", error);
+		}
+		finally {
+			pool.release();
+			if (component != null)
+				this.destroy(component);
+		}
+	}
+
+	private void destroy(AbstractEaasComponent component)
+	{
+		try {
+			component.destroy();
+		}
+		catch (Throwable error) {
+			log.log(Level.WARNING, "Destroying pooled component " + component.getComponentId() + " failed!", error);
+		}
+	}
+
+	private void save(Pool pool)
+	{
+		if (configdir == null)
+			return;
+
+		try {
+			Files.createDirectories(configdir);
+
+			// write atomically, to never restore partial configurations
+			final Path file = this.toConfigPath(pool);
+			final Path tmpfile = configdir.resolve(file.getFileName() + ".tmp");
+			final String data = pool.envId + "\n" + pool.config;
+			Files.write(tmpfile, data.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmpfile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException error) {
+			log.log(Level.WARNING, "Saving configuration of warm pool " + pool.key + " failed!", error);
+		}
+	}
+
+	private void delete(Pool pool)
+	{
+		if (configdir == null)
+			return;
+
+		try {
+			Files.deleteIfExists(this.toConfigPath(pool));
+		}
+		catch (IOException error) {
+			log.log(Level.WARNING, "Deleting configuration of warm pool " + pool.key + " failed!", error);
+		}
+	}
+
+	private Path toConfigPath(Pool pool)
+	{
+		return configdir.resolve(WarmPool.fingerprint(pool.key) + CONFIG_FILE_SUFFIX);
+	}
+
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\")
+				.replace("\"", "\\\"")
+				.replace("\n", "\\n");
+	}
+
+	private static String fingerprint(String config)
+	{
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-256")
+					.digest(config.getBytes(StandardCharsets.UTF_8));
+
+			return Base64.getUrlEncoder()
+					.withoutPadding()
+					.encodeToString(digest)
+					.substring(0, 16);
+		}
+		catch (NoSuchAlgorithmException error) {
+			throw new IllegalStateException(error);
+		}
+	}
+
+	private static class Pool
+	{
+		private final String key;
+		private final String envId;
+		private final String config;
+		private final int capacity;
+		private final Deque<AbstractEaasComponent> idle;
+		private final LongAdder hits;
+		private final LongAdder misses;
+		private final LongAdder failures;
+		private int pending;
+		private long timestamp;
+		private boolean closed;
+
+		public Pool(String key, String envId, String config, int capacity)
+		{
+			this.key = key;
+			this.envId = envId;
+			this.config = config;
+			this.capacity = capacity;
+			this.idle = new ArrayDeque<AbstractEaasComponent>(capacity);
+			this.hits = new LongAdder();
+			this.misses = new LongAdder();
+			this.failures = new LongAdder();
+			this.pending = 0;
+			this.timestamp = System.currentTimeMillis();
+			this.closed = false;
+		}
+
+		public synchronized AbstractEaasComponent poll()
+		{
+			timestamp = System.currentTimeMillis();
+			return idle.pollFirst();
+		}
+
+		/** Reserves slots for all missing components, returning their number */
+		public synchronized int reserve()
+		{
+			if (closed)
+				return 0;
+
+			final int missing = Math.max(capacity - this.size(), 0);
+			pending += missing;
+			return missing;
+		}
+
+		public synchronized void release()
+		{
+			--pending;
+		}
+
+		public void failed()
+		{
+			failures.increment();
+		}
+
+		public synchronized boolean offer(AbstractEaasComponent component)
+		{
+			if (closed)
+				return false;
+
+			idle.addLast(component);
+			return true;
+		}
+
+		public synchronized List<AbstractEaasComponent> close()
+		{
+			closed = true;
+			final List<AbstractEaasComponent> components = new ArrayList<AbstractEaasComponent>(idle);
+			idle.clear();
+			return components;
+		}
+
+		public synchronized int size()
+		{
+			return idle.size() + pending;
+		}
+
+		public synchronized long timestamp()
+		{
+			return timestamp;
+		}
+
+		@Override
+		public synchronized String toString()
+		{
+			return key + " -> idle: " + idle.size() + "/" + capacity + ", pending: " + pending
+					+ ", hits: " + hits.sum() + ", misses: " + misses.sum() + ", failures: " + failures.sum();
+		}
+	}
+}
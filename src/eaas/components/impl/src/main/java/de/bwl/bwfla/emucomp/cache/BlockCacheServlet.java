@@ -0,0 +1,529 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.cache;
+
+import de.bwl.bwfla.common.services.net.HttpUtils;
+import de.bwl.bwfla.common.services.security.AuthenticatedUrlConnection;
+import de.bwl.bwfla.common.utils.ByteRange;
+import de.bwl.bwfla.common.utils.ByteRangeIterator;
+import de.bwl.bwfla.emucomp.api.ImageBlockCache;
+import org.apache.tamaya.inject.api.Config;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Node-local, read-through block cache for remote base images. COW images created for
+ * bindings reference this servlet as their backing file (see {@link ImageBlockCache}),
+ * hence blocks of the same image are fetched from the archive only once per node and
+ * then shared by all sessions. Blocks are keyed by the image's URL, length and version.
+ */
+@WebServlet("/blockcache/*")
+public class BlockCacheServlet extends HttpServlet
+{
+	private final Logger log = Logger.getLogger(BlockCacheServlet.class.getName());
+
+	/** Cached image descriptions: original URL -> image */
+	private final Map<String, ImageInfo> images = new ConcurrentHashMap<String, ImageInfo>();
+
+	private BlockStore store = null;
+	private OriginFilter origins = null;
+
+	@Inject
+	@Config("emucomp.blockcache.basedir")
+	private String basedir = null;
+
+	@Inject
+	@Config("emucomp.blockcache.max_size")
+	private long maxSize = -1L;
+
+	@Inject
+	@Config("emucomp.blockcache.block_size")
+	private int blockSize = -1;
+
+	@Inject
+	@Config("emucomp.blockcache.metadata_ttl")
+	private Duration metadataTtl = null;
+
+	/** Additional origins to fetch images from, comma-separated */
+	@Inject
+	@Config("emucomp.blockcache.origins")
+	private String extraOrigins = null;
+
+	@Inject
+	@Config("ws.imagearchive")
+	private String imageArchive = null;
+
+	@Inject
+	@Config("emucomp.image_proxy")
+	private String imageProxy = null;
+
+
+	public BlockCacheServlet()
+	{
+		// Configured by injection!
+	}
+
+	/** Constructor for use without injected configuration */
+	BlockCacheServlet(BlockStore store, int blockSize, Duration metadataTtl, OriginFilter origins)
+	{
+		this.store = store;
+		this.blockSize = blockSize;
+		this.metadataTtl = metadataTtl;
+		this.origins = origins;
+	}
+
+	@PostConstruct
+	protected void initialize()
+	{
+		if (!ImageBlockCache.isEnabled())
+			return;
+
+		// Only images from known origins may be fetched, else the cache would act as an open proxy
+		final List<String> allowed = new ArrayList<String>();
+		allowed.add(imageArchive);
+		allowed.add(imageProxy);
+		if (extraOrigins != null)
+			allowed.addAll(Arrays.asList(extraOrigins.split(",")));
+
+		try {
+			this.origins = new OriginFilter(allowed);
+			this.store = new BlockStore(Paths.get(basedir), maxSize, log);
+			log.info("Block cache serves images from origins: " + origins);
+		}
+		catch (Exception error) {
+			log.log(Level.WARNING, "Initializing block cache failed! Serving requests disabled.", error);
+			this.store = null;
+		}
+	}
+
+	@Override
+	protected void doHead(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException
+	{
+		this.respond(request, response, false);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException
+	{
+		this.respond(request, response, true);
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private void respond(HttpServletRequest request, HttpServletResponse response, boolean sendData)
+			throws ServletException, IOException
+	{
+		if (store == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "Block cache is disabled!");
+			return;
+		}
+
+		// Only emulators running on this node should use the cache
+		if (!InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress()) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		final String path = request.getPathInfo();
+		final String url = (path != null) ? ImageBlockCache.decode(path) : null;
+		if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid image URL!");
+			return;
+		}
+
+		if (!origins.isAllowed(url)) {
+			log.warning("Rejecting image from unknown origin: " + url);
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Image origin is not allowed!");
+			return;
+		}
+
+		final ImageInfo image;
+		try {
+			image = this.lookup(url);
+		}
+		catch (IOException error) {
+			log.log(Level.WARNING, "Looking up image failed: " + ImageBlockCache.getName(url), error);
+			response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+			return;
+		}
+
+		final long length = image.length();
+		try {
+			if (HttpUtils.hasRangeHeader(request)) {
+				final List<ByteRange> ranges = HttpUtils.parseRangeHeader(request, length);
+				HttpUtils.prepare(response, ranges, length);
+				if (!sendData)
+					return;
+
+				try (final BlockRangeIterator channels = new BlockRangeIterator(image, ranges)) {
+					final ServletOutputStream output = response.getOutputStream();
+					HttpUtils.write(output, channels, length, ranges.size() > 1);
+				}
+			}
+			else {
+				HttpUtils.prepare(response, image.name(), length);
+				if (!sendData)
+					return;
+
+				try (final BlockChannel channel = new BlockChannel(image, 0L)) {
+					final ServletOutputStream output = response.getOutputStream();
+					final ByteBuffer buffer = ByteBuffer.allocate(HttpUtils.DEFAULT_TRANSFER_BUFFER_SIZE);
+					while (channel.read(buffer) >= 0) {
+						output.write(buffer.array(), 0, buffer.position());
+						buffer.clear();
+					}
+				}
+			}
+		}
+		catch (IllegalArgumentException error) {
+			log.log(Level.WARNING, "Invalid range requested for image: " + image.name(), error);
+			if (!response.isCommitted()) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			}
+		}
+		catch (OriginException error) {
+			log.log(Level.WARNING, "Fetching blocks of image failed: " + image.name(), error);
+			if (!response.isCommitted())
+				response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+		}
+		catch (Exception error) {
+			log.log(Level.WARNING, "Writing HTTP response failed!\n", error);
+			if (!response.isCommitted())
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	private ImageInfo lookup(String url) throws IOException
+	{
+		final long now = System.currentTimeMillis();
+		final ImageInfo cached = images.get(url);
+		if (cached != null && now - cached.timestamp() < metadataTtl.toMillis())
+			return cached;
+
+		final HttpURLConnection connection = AuthenticatedUrlConnection.getConnection(new URL(url));
+		try {
+			connection.setRequestMethod("HEAD");
+			final int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK)
+				throw new IOException("Unexpected response status: " + status);
+
+			final long length = connection.getContentLengthLong();
+			if (length < 0L)
+				throw new IOException("Image length is unknown!");
+
+			String version = connection.getHeaderField("ETag");
+			if (version == null)
+				version = connection.getHeaderField("Last-Modified");
+
+			final String name = ImageBlockCache.getName(url);
+			final String key = BlockCacheServlet.sha256(url + "|" + length + "|" + version);
+			final ImageInfo image = new ImageInfo(url, name, key, length, now);
+			images.put(url, image);
+			if (cached == null || !cached.key().equals(key))
+				log.info("Caching blocks of image '" + name + "' (" + length + " bytes) as " + key);
+
+			return image;
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	private String toBlockKey(ImageInfo image, long index)
+	{
+		final String key = image.key();
+		return key.substring(0, 2) + "/" + key + "/" + index;
+	}
+
+	/** Fetches a block of the image from its origin */
+	private void fetch(ImageInfo image, long index, Path target) throws IOException
+	{
+		final long offset = index * blockSize;
+		final long length = Math.min(blockSize, image.length() - offset);
+
+		final HttpURLConnection connection = AuthenticatedUrlConnection.getConnection(new URL(image.url()));
+		try {
+			final int status;
+			final InputStream input;
+			try {
+				connection.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1L));
+				status = connection.getResponseCode();
+				if (status != HttpURLConnection.HTTP_PARTIAL && status != HttpURLConnection.HTTP_OK)
+					throw new OriginException("Unexpected response status: " + status);
+
+				input = connection.getInputStream();
+			}
+			catch (OriginException error) {
+				throw error;
+			}
+			catch (IOException error) {
+				throw new OriginException("Requesting block " + index + " failed!", error);
+			}
+
+			try (InputStream source = input; OutputStream output = Files.newOutputStream(target)) {
+				// Origin ignored the range, skip all preceding data
+				if (status == HttpURLConnection.HTTP_OK && BlockCacheServlet.skip(source, offset) != offset)
+					throw new OriginException("Image is shorter than expected!");
+
+				final byte[] buffer = new byte[64 * 1024];
+				long remaining = length;
+				while (remaining > 0L) {
+					final int numBytesRead;
+					try {
+						numBytesRead = source.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					}
+					catch (IOException error) {
+						throw new OriginException("Reading block " + index + " failed!", error);
+					}
+
+					if (numBytesRead < 0)
+						throw new OriginException("Image is shorter than expected!");
+
+					output.write(buffer, 0, numBytesRead);
+					remaining -= numBytesRead;
+				}
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	private static long skip(InputStream input, long count) throws OriginException
+	{
+		long remaining = count;
+		try {
+			while (remaining > 0L) {
+				final long skipped = input.skip(remaining);
+				if (skipped < 1L) {
+					if (input.read() < 0)
+						break;
+
+					--remaining;
+				}
+				else remaining -= skipped;
+			}
+		}
+		catch (IOException error) {
+			throw new OriginException("Skipping image data failed!", error);
+		}
+
+		return count - remaining;
+	}
+
+	private static String sha256(String value)
+	{
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			final StringBuilder result = new StringBuilder(64);
+			for (byte b : digest.digest(value.getBytes(StandardCharsets.UTF_8)))
+				result.append(String.format("%02x", b));
+
+			return result.toString();
+		}
+		catch (NoSuchAlgorithmException error) {
+			throw new IllegalStateException(error);
+		}
+	}
+
+
+	/** Failure of the image's origin, as opposed to local failures of the cache */
+	private static class OriginException extends IOException
+	{
+		public OriginException(String message)
+		{
+			super(message);
+		}
+
+		public OriginException(String message, Throwable cause)
+		{
+			super(message, cause);
+		}
+	}
+
+	private static class ImageInfo
+	{
+		private final String url;
+		private final String name;
+		private final String key;
+		private final long length;
+		private final long timestamp;
+
+		public ImageInfo(String url, String name, String key, long length, long timestamp)
+		{
+			this.url = url;
+			this.name = name;
+			this.key = key;
+			this.length = length;
+			this.timestamp = timestamp;
+		}
+
+		public String url()
+		{
+			return url;
+		}
+
+		public String name()
+		{
+			return name;
+		}
+
+		public String key()
+		{
+			return key;
+		}
+
+		public long length()
+		{
+			return length;
+		}
+
+		public long timestamp()
+		{
+			return timestamp;
+		}
+	}
+
+	/** Sequential reader of an image's data, backed by cached blocks */
+	private class BlockChannel implements ReadableByteChannel
+	{
+		private final ImageInfo image;
+		private long position;
+		private FileChannel block;
+
+		public BlockChannel(ImageInfo image, long position)
+		{
+			this.image = image;
+			this.position = position;
+			this.block = null;
+		}
+
+		@Override
+		public int read(ByteBuffer buffer) throws IOException
+		{
+			while (position < image.length()) {
+				if (block == null) {
+					final long index = position / blockSize;
+					block = store.open(BlockCacheServlet.this.toBlockKey(image, index),
+							(target) -> BlockCacheServlet.this.fetch(image, index, target));
+
+					block.position(position - index * blockSize);
+				}
+
+				final int numBytesRead = block.read(buffer);
+				if (numBytesRead >= 0) {
+					position += numBytesRead;
+					return numBytesRead;
+				}
+
+				// Current block is exhausted
+				block.close();
+				block = null;
+				if (position % blockSize != 0)
+					throw new IOException("Cached block is truncated at offset " + position);
+			}
+
+			return -1;
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return position < image.length();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (block != null) {
+				block.close();
+				block = null;
+			}
+		}
+	}
+
+	private class BlockRangeIterator extends ByteRangeIterator
+	{
+		private final ImageInfo image;
+		private BlockChannel channel;
+
+		public BlockRangeIterator(ImageInfo image, List<ByteRange> ranges) throws IOException
+		{
+			super(ranges);
+			this.image = image;
+			this.channel = null;
+		}
+
+		@Override
+		protected ReadableByteChannel getDataChannel(ByteRange range) throws IOException
+		{
+			this.close();
+			channel = new BlockChannel(image, range.getStartOffset());
+			return channel;
+		}
+
+
+		/* ========== AutoCloseable Implementation ========== */
+
+		@Override
+		public void close() throws IOException
+		{
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.cache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+
+/**
+ * Disk-backed, size-bounded store for blocks of remote images. Blocks are stored as files
+ * under their keys and evicted in least-recently-used order, once the store's total size
+ * exceeds its limit. Concurrent requests for a missing block are served by a single load.
+ */
+public class BlockStore
+{
+	private final Logger log;
+	private final Path basedir;
+	private final Path tmpdir;
+	private final long maxSize;
+
+	/** Stored blocks in access order: key -> size in bytes */
+	private final LinkedHashMap<String, Long> entries;
+	private final Map<String, CompletableFuture<Path>> loads;
+	private long size;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+
+	private static final String TMPDIR_NAME = ".tmp";
+
+
+	/** Loader for missing blocks */
+	@FunctionalInterface
+	public interface BlockLoader
+	{
+		/** Writes the block's data into the target file */
+		void load(Path target) throws IOException;
+	}
+
+	public BlockStore(Path basedir, long maxSize, Logger log) throws IOException
+	{
+		if (maxSize < 1L)
+			throw new IllegalArgumentException("Invalid max. size: " + maxSize);
+
+		this.log = log;
+		this.basedir = basedir;
+		this.tmpdir = basedir.resolve(TMPDIR_NAME);
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, Long>(1024, 0.75F, true);
+		this.loads = new ConcurrentHashMap<String, CompletableFuture<Path>>();
+		this.size = 0L;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+
+		this.restore();
+	}
+
+	/**
+	 * Opens a block for reading, loading it first if it is missing.
+	 *
+	 * @param key The block's key of the form {@code <dir>/.../<name>}
+	 * @param loader The loader to use, when the block is missing
+	 * @return A channel positioned at the block's start
+	 */
+	public FileChannel open(String key, BlockLoader loader) throws IOException
+	{
+		for (int attempt = 0; ; ++attempt) {
+			final Path path = this.lookup(key, loader);
+			try {
+				return FileChannel.open(path, StandardOpenOption.READ);
+			}
+			catch (NoSuchFileException error) {
+				// Block was evicted in-between, load it again once
+				if (attempt > 0)
+					throw error;
+
+				synchronized (this) {
+					final Long length = entries.remove(key);
+					if (length != null)
+						size -= length;
+				}
+			}
+		}
+	}
+
+	public long size()
+	{
+		synchronized (this) {
+			return size;
+		}
+	}
+
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	@Override
+	public String toString()
+	{
+		final int count;
+		synchronized (this) {
+			count = entries.size();
+		}
+
+		return "blocks: " + count + ", size: " + this.size() + "/" + maxSize
+				+ ", hits: " + hits.sum() + ", misses: " + misses.sum()
+				+ ", evictions: " + evictions.sum();
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private Path lookup(String key, BlockLoader loader) throws IOException
+	{
+		final Path path = basedir.resolve(key);
+		synchronized (this) {
+			if (entries.get(key) != null) {
+				hits.increment();
+				return path;
+			}
+		}
+
+		final CompletableFuture<Path> load = new CompletableFuture<Path>();
+		final CompletableFuture<Path> other = loads.putIfAbsent(key, load);
+		if (other != null) {
+			// Some other request is already loading this block
+			hits.increment();
+			return BlockStore.await(other);
+		}
+
+		misses.increment();
+
+		Path tmpfile = null;
+		try {
+			tmpfile = Files.createTempFile(tmpdir, "block-", ".tmp");
+			loader.load(tmpfile);
+
+			final long length = Files.size(tmpfile);
+			Files.createDirectories(path.getParent());
+			Files.move(tmpfile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			tmpfile = null;
+
+			this.insert(key, length);
+			load.complete(path);
+			return path;
+		}
+		catch (IOException | RuntimeException error) {
+			load.completeExceptionally(error);
+			throw error;
+		}
+		finally {
+			loads.remove(key, load);
+			if (tmpfile != null)
+				Files.deleteIfExists(tmpfile);
+		}
+	}
+
+	private void insert(String key, long length)
+	{
+		final List<String> victims = new ArrayList<String>();
+		synchronized (this) {
+			final Long previous = entries.put(key, length);
+			if (previous != null)
+				size -= previous;
+
+			size += length;
+
+			// Evict least-recently-used blocks, keeping the new one
+			final Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+			while (size > maxSize && iter.hasNext()) {
+				final Map.Entry<String, Long> entry = iter.next();
+				if (entry.getKey().equals(key))
+					continue;
+
+				size -= entry.getValue();
+				victims.add(entry.getKey());
+				iter.remove();
+			}
+		}
+
+		for (String victim : victims) {
+			try {
+				Files.deleteIfExists(basedir.resolve(victim));
+				evictions.increment();
+			}
+			catch (IOException error) {
+				log.log(Level.WARNING, "Evicting cached block failed: " + victim, error);
+			}
+		}
+	}
+
+	/** Restores the index from blocks stored by previous runs, ordered by their modification times */
+	private void restore() throws IOException
+	{
+		Files.createDirectories(basedir);
+		if (Files.exists(tmpdir)) {
+			try (Stream<Path> files = Files.list(tmpdir)) {
+				files.forEach((file) -> {
+					try {
+						Files.deleteIfExists(file);
+					}
+					catch (IOException error) {
+						log.log(Level.WARNING, "Removing stale temp-file failed: " + file, error);
+					}
+				});
+			}
+		}
+		else Files.createDirectories(tmpdir);
+
+		final List<Map.Entry<Path, BasicFileAttributes>> blocks = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(basedir)) {
+			files.filter((file) -> !file.startsWith(tmpdir))
+					.forEach((file) -> {
+						try {
+							final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+							if (attrs.isRegularFile())
+								blocks.add(new AbstractMap.SimpleImmutableEntry<>(file, attrs));
+						}
+						catch (IOException error) {
+							log.log(Level.WARNING, "Reading cached block failed: " + file, error);
+						}
+					});
+		}
+
+		blocks.sort(Comparator.comparing((entry) -> entry.getValue().lastModifiedTime()));
+		for (Map.Entry<Path, BasicFileAttributes> block : blocks) {
+			final String key = basedir.relativize(block.getKey()).toString();
+			this.insert(key, block.getValue().size());
+		}
+
+		log.info("Block store restored at " + basedir + ", " + this.toString());
+	}
+
+	private static Path await(CompletableFuture<Path> load) throws IOException
+	{
+		try {
+			return load.get();
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Waiting for block interrupted!", error);
+		}
+		catch (ExecutionException error) {
+			final Throwable cause = error.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+
+			throw new IOException("Loading block failed!", cause);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.cache;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+
+/**
+ * Allow-list of origins, from which the block cache may fetch images. Origins can be
+ * specified as URLs or as {@code <host>:<port>} pairs, which then match both HTTP and HTTPS.
+ */
+// package-private
+class OriginFilter
+{
+	private final Set<String> origins;
+
+
+	public OriginFilter(Collection<String> origins)
+	{
+		this.origins = new HashSet<String>();
+		for (String origin : origins) {
+			if (origin == null || (origin = origin.trim()).isEmpty())
+				continue;
+
+			if (origin.contains("://")) {
+				this.add(origin);
+				continue;
+			}
+
+			this.add("http://" + origin);
+			this.add("https://" + origin);
+		}
+	}
+
+	/** Returns true, if the URL's origin is allowed, else false */
+	public boolean isAllowed(String url)
+	{
+		try {
+			return origins.contains(OriginFilter.toOrigin(new URL(url)));
+		}
+		catch (MalformedURLException error) {
+			return false;
+		}
+	}
+
+	public boolean isEmpty()
+	{
+		return origins.isEmpty();
+	}
+
+	@Override
+	public String toString()
+	{
+		return origins.toString();
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private void add(String url)
+	{
+		try {
+			origins.add(OriginFilter.toOrigin(new URL(url)));
+		}
+		catch (MalformedURLException error) {
+			throw new IllegalArgumentException("Invalid origin: " + url, error);
+		}
+	}
+
+	private static String toOrigin(URL url)
+	{
+		final String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+		final int port = (url.getPort() < 0) ? url.getDefaultPort() : url.getPort();
+		return protocol + "://" + url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+	}
+}
@@ -43,12 +43,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -79,6 +82,18 @@ public class BindingsManager
 
 	private static final String ID_SEPARATOR = "/_____";
 
+	/** Callback for reporting the outcome of a single binding's mount */
+	@FunctionalInterface
+	public interface MountListener
+	{
+		/**
+		 * @param binding The binding's ID
+		 * @param duration Time spent mounting the binding, in milliseconds
+		 * @param error The failure's cause or null, if the binding was mounted successfully
+		 */
+		void finished(String binding, long duration, Throwable error);
+	}
+
 	public BindingsManager()
 	{
 		this(Logger.getLogger(BindingsManager.class.getName()));
@@ -86,8 +101,8 @@ public class BindingsManager
 
 	public BindingsManager(Logger log)
 	{
-		this.bindings = new HashMap<String, Binding>();
-		this.paths = new LinkedHashMap<String, String>();
+		this.bindings = new ConcurrentHashMap<String, Binding>();
+		this.paths = Collections.synchronizedMap(new LinkedHashMap<String, String>());
 		this.log = log;
 	}
 
@@ -97,16 +112,18 @@ public class BindingsManager
 		return Collections.unmodifiableMap(bindings);
 	}
 
-	/** Returns all mountpoints: binding's ID -> mountpoint */
+	/** Returns a snapshot of all mountpoints: binding's ID -> mountpoint */
 	public Map<String, String> mountpoints()
 	{
-		return Collections.unmodifiableMap(paths);
+		synchronized (paths) {
+			return Collections.unmodifiableMap(new LinkedHashMap<String, String>(paths));
+		}
 	}
 
-	/** Returns all mountpoints: binding's ID -> binding's access path */
+	/** Returns a snapshot of all mountpoints: binding's ID -> binding's access path */
 	public Stream<Map.Entry<String, String>> paths()
 	{
-		return paths.entrySet().stream()
+		return this.mountpoints().entrySet().stream()
 				.filter((entry) -> !entry.getKey().contains(ID_SEPARATOR));
 	}
 
@@ -183,11 +200,7 @@ public class BindingsManager
 		if (outformat == null)
 			throw new IllegalArgumentException("Output format is null!");
 
-		if (binding.startsWith("rom://"))
-			binding = "rom-" + binding.substring("rom://".length());
-
-		if (binding.startsWith("binding://"))
-			binding = binding.substring("binding://".length());
+		binding = BindingsManager.normalize(binding);
 
 		// if (binding.contains("/"))
 		// 	throw new BWFLAException("Subresource bindings are currently not supported!");
@@ -282,6 +295,41 @@ public class BindingsManager
 		return resourcePath;
 	}
 
+	/**
+	 * Resolves and mounts multiple bindings concurrently. Independent bindings are mounted
+	 * in parallel, while bindings of the form <parent_id>/<subresource> wait for their
+	 * parent's mount, if the parent is requested too. Failed mounts are reported to the
+	 * listener only, so that callers can fall back to mounting bindings on demand.
+	 *
+	 * @param requests Bindings to mount: binding location -> output format
+	 * @param executor Executor to run the mounts on
+	 * @param listener Listener to report each mount's outcome to
+	 * @return The number of successfully mounted bindings
+	 */
+	public int mount(Map<String, EmulatorUtils.XmountOutputFormat> requests, Path outdir,
+					 Executor executor, MountListener listener)
+	{
+		final Map<String, EmulatorUtils.XmountOutputFormat> normalized = new LinkedHashMap<>();
+		requests.forEach((binding, outformat) -> normalized.putIfAbsent(BindingsManager.normalize(binding), outformat));
+
+		final Map<String, CompletableFuture<String>> mounts = new LinkedHashMap<>();
+		for (String binding : normalized.keySet())
+			this.schedule(binding, normalized, outdir, executor, listener, mounts);
+
+		int numMounted = 0;
+		for (CompletableFuture<String> mount : mounts.values()) {
+			try {
+				mount.join();
+				++numMounted;
+			}
+			catch (CompletionException error) {
+				// Already reported!
+			}
+		}
+
+		return numMounted;
+	}
+
 	/** Unmounts all registered bindings */
 	public void cleanup()
 	{
@@ -364,6 +412,65 @@ public class BindingsManager
 
 	/* =============== Internal Helpers =============== */
 
+	private static String normalize(String binding)
+	{
+		if (binding.startsWith("rom://"))
+			binding = "rom-" + binding.substring("rom://".length());
+
+		if (binding.startsWith("binding://"))
+			binding = binding.substring("binding://".length());
+
+		return binding;
+	}
+
+	/** Returns the nearest requested parent of a binding, or null if none exists. */
+	private static String findParent(String binding, Map<String, ?> requests)
+	{
+		for (int index = binding.lastIndexOf('/'); index > 0; index = binding.lastIndexOf('/', index - 1)) {
+			final String parent = binding.substring(0, index);
+			if (requests.containsKey(parent))
+				return parent;
+		}
+
+		return null;
+	}
+
+	private CompletableFuture<String> schedule(String binding, Map<String, EmulatorUtils.XmountOutputFormat> requests,
+											   Path outdir, Executor executor, MountListener listener,
+											   Map<String, CompletableFuture<String>> mounts)
+	{
+		CompletableFuture<String> mount = mounts.get(binding);
+		if (mount != null)
+			return mount;
+
+		final String parent = BindingsManager.findParent(binding, requests);
+		final CompletableFuture<String> predecessor = (parent != null) ?
+				this.schedule(parent, requests, outdir, executor, listener, mounts) : CompletableFuture.completedFuture(null);
+
+		final EmulatorUtils.XmountOutputFormat outformat = requests.get(binding);
+		mount = predecessor.handleAsync((unused, error) -> {
+			if (error != null) {
+				final String message = "Parent binding '" + parent + "' could not be mounted!";
+				listener.finished(binding, 0L, new BWFLAException(message, error));
+				throw new CompletionException(error);
+			}
+
+			final long start = System.currentTimeMillis();
+			try {
+				final String path = this.mount(binding, outdir, outformat);
+				listener.finished(binding, System.currentTimeMillis() - start, null);
+				return path;
+			}
+			catch (Exception exception) {
+				listener.finished(binding, System.currentTimeMillis() - start, exception);
+				throw new CompletionException(exception);
+			}
+		}, executor);
+
+		mounts.put(binding, mount);
+		return mount;
+	}
+
 	private void put(String id, Binding binding)
 	{
 		bindings.put(id, binding);
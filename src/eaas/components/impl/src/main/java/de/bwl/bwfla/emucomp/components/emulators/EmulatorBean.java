@@ -35,8 +35,10 @@ import de.bwl.bwfla.common.services.guacplay.net.GuacTunnel;
 import de.bwl.bwfla.common.services.guacplay.net.TunnelConfig;
 import de.bwl.bwfla.common.services.guacplay.protocol.InstructionBuilder;
 import de.bwl.bwfla.common.services.guacplay.record.SessionRecorder;
+import de.bwl.bwfla.common.services.sse.EventSink;
 import de.bwl.bwfla.common.utils.DeprecatedProcessRunner;
 import de.bwl.bwfla.common.utils.EaasFileUtils;
+import de.bwl.bwfla.common.utils.ImageInformation;
 import de.bwl.bwfla.common.utils.ProcessMonitor;
 import de.bwl.bwfla.common.utils.Zip32Utils;
 import de.bwl.bwfla.emucomp.api.*;
@@ -46,6 +48,7 @@ import de.bwl.bwfla.emucomp.components.BindingsManager;
 import de.bwl.bwfla.emucomp.components.EaasComponentBean;
 import de.bwl.bwfla.emucomp.components.emulators.IpcDefs.EventID;
 import de.bwl.bwfla.emucomp.components.emulators.IpcDefs.MessageType;
+import de.bwl.bwfla.emucomp.control.SocketReadiness;
 import de.bwl.bwfla.emucomp.control.connectors.AudioConnector;
 import de.bwl.bwfla.emucomp.control.connectors.EthernetConnector;
 import de.bwl.bwfla.emucomp.control.connectors.GuacamoleConnector;
@@ -67,6 +70,9 @@ import javax.annotation.Resource;
 import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.JAXBException;
 import java.io.File;
 import java.io.IOException;
@@ -1230,21 +1236,82 @@ public abstract class EmulatorBean extends EaasComponentBean implements Emulator
 		this.unmountBindings();
 		this.sync();
 
-		// TODO: filter out all unchanged images with qemu-img compare!
-
-		// Create one DataHandler per image
+		// Create one DataHandler per modified image
 		final List<BindingDataHandler> handlers = new ArrayList<BindingDataHandler>();
-		images.forEach((id, path) -> {
+		for (Map.Entry<String, String> entry : images.entrySet()) {
+			final String id = entry.getKey();
+			final Path image = this.prepareSnapshotImage(id, Paths.get(entry.getValue()));
+			if (image == null)
+				continue;
+
 			final BindingDataHandler handler = new BindingDataHandler()
-					.setDataFromFile(Paths.get(path))
+					.setDataFromFile(image)
 					.setId(id);
 
 			handlers.add(handler);
-		});
+		}
 
 		return handlers;
 	}
 
+	/**
+	 * Prepares the image of a binding for a snapshot. Unmodified COW images are skipped,
+	 * modified ones are exported as a copy of their top layer, referencing the original backing file.
+	 *
+	 * @return The image to export or null, if the binding was not modified.
+	 */
+	private Path prepareSnapshotImage(String id, Path image) throws BWFLAException
+	{
+		final ImageInformation info;
+		try {
+			info = new ImageInformation(image.toString(), LOG);
+		}
+		catch (IOException error) {
+			throw new BWFLAException("Inspecting image of binding '" + id + "' failed!", error)
+					.setId(this.getComponentId());
+		}
+
+		// Local copies can't be compared cheaply, hence export them as is
+		if (info.getFileFormat() != ImageInformation.QemuImageFormat.QCOW2 || info.getBackingFile() == null)
+			return this.restoreBackingFile(id, image, info);
+
+		if (!EmulatorUtils.hasAllocatedClusters(image, LOG)) {
+			LOG.info("Binding '" + id + "' was not modified! Skipping it.");
+			return null;
+		}
+
+		final Path overlay = image.resolveSibling(image.getFileName() + ".snapshot");
+		try {
+			Files.deleteIfExists(overlay);
+			final String backingFile = ImageBlockCache.toOriginalUrl(info.getBackingFile());
+			EmulatorUtils.copyTopLayer(image, overlay, backingFile, LOG);
+			LOG.info("Binding '" + id + "' was modified, exporting its " + Files.size(overlay) + " bytes overlay");
+
+			return overlay;
+		}
+		catch (IOException | BWFLAException error) {
+			LOG.log(Level.WARNING, "Copying image of binding '" + id + "' failed! Exporting it as is.", error);
+			return this.restoreBackingFile(id, image, info);
+		}
+	}
+
+	/** Points the image's backing file back to its original URL, if it references the node-local block cache */
+	private Path restoreBackingFile(String id, Path image, ImageInformation info) throws BWFLAException
+	{
+		final String backingFile = info.getBackingFile();
+		if (!ImageBlockCache.isCachedUrl(backingFile))
+			return image;
+
+		try {
+			EmulatorUtils.changeBackingFile(image, ImageBlockCache.toOriginalUrl(backingFile), LOG);
+			return image;
+		}
+		catch (BWFLAException error) {
+			throw new BWFLAException("Restoring backing file of binding '" + id + "' failed!", error)
+					.setId(this.getComponentId());
+		}
+	}
+
 	@Override
 	public int changeMedium(int containerId, String objReference) throws BWFLAException
 	{
@@ -1475,7 +1542,8 @@ public abstract class EmulatorBean extends EaasComponentBean implements Emulator
 			}
 
 			this.setupEmulatorBackend();
-			
+
+			this.premountDrives(emuEnvironment.getDrive());
 			for(Drive drive: emuEnvironment.getDrive())
 				prepareDrive(drive);
 
@@ -2076,22 +2144,18 @@ public abstract class EmulatorBean extends EaasComponentBean implements Emulator
 		final Path socket = Paths.get(emuCtlSocketName);
 		final int timeout = 30000;  // in ms
 		final int waittime = 1000;  // in ms
-		for (int numretries = timeout / waittime; numretries > 0; --numretries) {
-			if (Files.exists(socket)) {
-				LOG.info("Emulator's control-socket is now available.");
-				return;
-			}
+		try (SocketReadiness.PathWatch watch = SocketReadiness.watch(socket)) {
+			for (int numretries = timeout / waittime; numretries > 0; --numretries) {
+				// Returns as soon as the socket is created, but at least once per waittime
+				if (this.awaitPath(watch, socket, waittime)) {
+					LOG.info("Emulator's control-socket is now available.");
+					return;
+				}
 
-			try {
-				Thread.sleep(waittime);
-			}
-			catch (Exception error) {
-				// Ignore it!
+				final String msgsuffix = "emulator's control-socket";
+				this.ensureEmuCompState(expstate, msgsuffix);
+				this.ensureEmulatorRunning(msgsuffix);
 			}
-
-			final String msgsuffix = "emulator's control-socket";
-			this.ensureEmuCompState(expstate, msgsuffix);
-			this.ensureEmulatorRunning(msgsuffix);
 		}
 
 		emuBeanState.update(EmuCompState.EMULATOR_FAILED);
@@ -2133,28 +2197,36 @@ public abstract class EmulatorBean extends EaasComponentBean implements Emulator
 
 		final int timeout = 60000;  // in ms
 		final int waittime = 1000;  // in ms
-		for (int numretries = timeout / waittime; numretries > 0; --numretries) {
-			if (Files.exists(path)) {
-				LOG.info("Path '" + path.toString() +"' exists now");
-				return;
-			}
+		try (SocketReadiness.PathWatch watch = SocketReadiness.watch(path)) {
+			for (int numretries = timeout / waittime; numretries > 0; --numretries) {
+				if (this.awaitPath(watch, path, waittime)) {
+					LOG.info("Path '" + path.toString() +"' exists now");
+					return;
+				}
 
-			try {
-				Thread.sleep(waittime);
-			}
-			catch (Exception error) {
-				// Ignore it!
+				final String msgsuffix = "path";
+				this.ensureEmuCompState(expstate, msgsuffix);
+				this.ensureEmulatorRunning(msgsuffix);
 			}
-
-			final String msgsuffix = "path";
-			this.ensureEmuCompState(expstate, msgsuffix);
-			this.ensureEmulatorRunning(msgsuffix);
 		}
 
 		throw new BWFLAException("Path '" + path.toString() +"' does not exist!")
 				.setId(this.getComponentId());
 	}
 
+	/** Waits up to timeout ms for the watched path to appear */
+	private boolean awaitPath(SocketReadiness.PathWatch watch, Path path, long timeout) throws BWFLAException
+	{
+		try {
+			return watch.await(timeout);
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+			throw new BWFLAException("Waiting for path '" + path.toString() + "' interrupted!", error)
+					.setId(this.getComponentId());
+		}
+	}
+
 	private void waitUntilRestoreDone()
 	{
 		LOG.info("Waiting for CRIU restore-worker to exit...");
@@ -2274,6 +2346,11 @@ public abstract class EmulatorBean extends EaasComponentBean implements Emulator
 
 		// NOTE: Premount all object's entries to allow media-changes inside containers...
 		if (this.isContainerModeEnabled() && (resource instanceof ObjectArchiveBinding)) {
+			final Map<String, XmountOutputFormat> entries = new LinkedHashMap<String, XmountOutputFormat>();
+			bindings.find(resource.getId() + "/")
+					.forEach((binding) -> entries.put(binding, XmountOutputFormat.RAW));
+
+			this.premountBindings(entries);
 			bindings.find(resource.getId() + "/")
 					.forEach((binding) -> {
 						try {
@@ -2286,6 +2363,117 @@ public abstract class EmulatorBean extends EaasComponentBean implements Emulator
 		}
 	}
 
+	/**
+	 * Mounts all bindings referenced by drives concurrently, before the drives are added.
+	 * Bindings requested in different output formats are left for mounting on first lookup,
+	 * since a binding can be mounted in one format only.
+	 */
+	private void premountDrives(List<Drive> drives)
+	{
+		final Map<String, Set<XmountOutputFormat>> formats = new LinkedHashMap<String, Set<XmountOutputFormat>>();
+		for (Drive drive : drives) {
+			final String binding = drive.getData();
+			if (binding == null || binding.isEmpty())
+				continue;
+
+			// Only whole bindings can be mounted upfront
+			final String id = (binding.startsWith("binding://")) ? binding.substring("binding://".length()) : binding;
+			if (bindings.get(id) == null)
+				continue;
+
+			formats.computeIfAbsent(id, (unused) -> EnumSet.noneOf(XmountOutputFormat.class))
+					.add(this.getImageFormatForDriveType(drive.getType()));
+		}
+
+		final Map<String, XmountOutputFormat> requests = new LinkedHashMap<String, XmountOutputFormat>();
+		formats.forEach((binding, outformats) -> {
+			if (outformats.size() == 1)
+				requests.put(binding, outformats.iterator().next());
+			else LOG.info("Binding '" + binding + "' is requested in formats " + outformats + ", skipping premount");
+		});
+
+		this.premountBindings(requests);
+	}
+
+	/**
+	 * Mounts the specified bindings concurrently, reporting the time spent on each binding.
+	 * Failures are logged only, since the bindings will be mounted again on first lookup.
+	 */
+	private void premountBindings(Map<String, XmountOutputFormat> requests)
+	{
+		if (requests.isEmpty())
+			return;
+
+		final BindingsManager.MountListener listener = (binding, duration, error) -> {
+			if (error != null)
+				LOG.log(Level.WARNING, "Mounting binding '" + binding + "' failed after " + duration + " ms!", error);
+			else LOG.info("Mounting binding '" + binding + "' took " + duration + " ms");
+
+			final String status = (error != null) ? "failed" : "mounted";
+			this.sendEvent(BindingMountNotification.name(), new BindingMountNotification(binding, status, duration));
+		};
+
+		final long start = System.currentTimeMillis();
+		final int numMounted = bindings.mount(requests, this.getBindingsDir(), ioTaskExecutor, listener);
+		final long duration = System.currentTimeMillis() - start;
+		LOG.info(numMounted + " out of " + requests.size() + " binding(s) mounted in " + duration + " ms");
+	}
+
+	private void sendEvent(String name, Object data)
+	{
+		if (!this.hasEventSink())
+			return;
+
+		final EventSink esink = this.getEventSink();
+		final OutboundSseEvent event = esink.newEventBuilder()
+				.name(name)
+				.mediaType(MediaType.APPLICATION_JSON_TYPE)
+				.data(data)
+				.build();
+
+		synchronized (esink) {
+			esink.send(event);
+		}
+	}
+
+	private static class BindingMountNotification
+	{
+		private final String binding;
+		private final String status;
+		private final long duration;
+
+		public BindingMountNotification(String binding, String status, long duration)
+		{
+			this.binding = binding;
+			this.status = status;
+			this.duration = duration;
+		}
+
+		@XmlElement(name = "binding")
+		public String getBinding()
+		{
+			return binding;
+		}
+
+		@XmlElement(name = "status")
+		public String getStatus()
+		{
+			return status;
+		}
+
+		@XmlElement(name = "duration")
+		public long getDuration()
+		{
+			return duration;
+		}
+
+		public static String name()
+		{
+			return "binding-mount";
+		}
+	}
+
+
 	/**************************************************************************
 	 *
 	 * Here be Drives
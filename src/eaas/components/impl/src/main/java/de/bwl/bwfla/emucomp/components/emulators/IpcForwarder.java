@@ -0,0 +1,567 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.components.emulators;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.InitialContext;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+
+
+/**
+ * Forwards data from many IPC sockets using a small number of poller threads.
+ * <p/>
+ * Every poller waits on its sockets with a single poll() call, reads available data into pooled
+ * direct buffers and hands them to the registered sinks. Data pending on stream sockets is batched
+ * into a single buffer. A socket is not polled again, until its sink has released the last buffer,
+ * hence slow consumers apply backpressure to their socket only, without blocking the poller.
+ */
+public class IpcForwarder
+{
+	private static final Logger LOG = Logger.getLogger("IpcForwarder");
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAX_POOLED_BUFFERS = 256;
+
+	private static final byte[] WAKEUP_MESSAGE = new byte[] { 1 };
+
+	private static final long SHUTDOWN_TIMEOUT = 5000L;  // in ms
+
+	// Layout of struct pollfd
+	private static final int POLLFD_SIZE = 8;
+	private static final int POLLFD_EVENTS_OFFSET = 4;
+	private static final int POLLFD_REVENTS_OFFSET = 6;
+
+	private final Poller[] pollers;
+	private final Queue<ByteBuffer> buffers;
+	private final AtomicInteger numPooledBuffers;
+	private final int maxPooledBuffers;
+	private final int bufferSize;
+	private final AtomicInteger nextPollerIndex;
+
+	private final LongAdder numBytes;
+	private final LongAdder numBatches;
+	private final LongAdder numAllocatedBuffers;
+
+	private static IpcForwarder instance = null;
+
+
+	/** Consumer of the forwarded data */
+	public interface Sink
+	{
+		/**
+		 * Forwards the buffer's data. Called from a poller thread, hence must not block.
+		 * @param data The data to forward
+		 * @param done Callback, to be invoked once the buffer is not used anymore
+		 */
+		void forward(ByteBuffer data, Runnable done);
+
+		/**
+		 * Called once, when the socket reached end-of-stream or failed.
+		 * @param error The failure's cause or null on end-of-stream
+		 */
+		void closed(Throwable error);
+	}
+
+	/** Returns the node-wide instance, starting it if needed */
+	public static synchronized IpcForwarder getInstance()
+	{
+		if (instance == null)
+			instance = IpcForwarder.create();
+
+		return instance;
+	}
+
+	/** Stops the node-wide instance, if it was started */
+	public static synchronized void shutdownInstance()
+	{
+		if (instance == null)
+			return;
+
+		instance.shutdown();
+		instance = null;
+		LOG.info("IPC forwarder stopped");
+	}
+
+	public IpcForwarder(int numPollers, int bufferSize, int maxPooledBuffers, ThreadFactory factory) throws IOException
+	{
+		this.pollers = new Poller[numPollers];
+		this.buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.numPooledBuffers = new AtomicInteger(0);
+		this.maxPooledBuffers = maxPooledBuffers;
+		this.bufferSize = bufferSize;
+		this.nextPollerIndex = new AtomicInteger(0);
+		this.numBytes = new LongAdder();
+		this.numBatches = new LongAdder();
+		this.numAllocatedBuffers = new LongAdder();
+
+		for (int i = 0; i < numPollers; ++i) {
+			final Poller poller = new Poller();
+			final Thread thread = factory.newThread(poller);
+			thread.setName("ipc-forwarder-" + i);
+			thread.setDaemon(true);
+			poller.start(thread);
+			pollers[i] = poller;
+		}
+	}
+
+	/** Starts forwarding data from the socket to the sink */
+	public Registration register(IpcSocket socket, Sink sink)
+	{
+		final int index = Math.floorMod(nextPollerIndex.getAndIncrement(), pollers.length);
+		final Registration registration = new Registration(pollers[index], socket, sink);
+		registration.poller.submit(() -> registration.poller.add(registration));
+		return registration;
+	}
+
+	/** Stops all pollers, waiting for their threads to exit */
+	public void shutdown()
+	{
+		for (Poller poller : pollers)
+			poller.stop();
+
+		try {
+			for (Poller poller : pollers)
+				poller.thread.join(SHUTDOWN_TIMEOUT);
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		int numRegistrations = 0;
+		for (Poller poller : pollers)
+			numRegistrations += poller.size();
+
+		return "sockets: " + numRegistrations + ", bytes: " + numBytes.sum() + ", batches: " + numBatches.sum()
+				+ ", buffers: " + numPooledBuffers.get() + " pooled, " + numAllocatedBuffers.sum() + " allocated";
+	}
+
+
+	/** Handle for a registered socket */
+	public final class Registration
+	{
+		private final Poller poller;
+		private final IpcSocket socket;
+		private final Sink sink;
+
+		// Accessed by the poller thread only!
+		private boolean armed;
+		private boolean eos;
+		private int slot;
+
+		private volatile boolean closed;
+
+		private Registration(Poller poller, IpcSocket socket, Sink sink)
+		{
+			this.poller = poller;
+			this.socket = socket;
+			this.sink = sink;
+			this.armed = true;
+			this.eos = false;
+			this.slot = -1;
+			this.closed = false;
+		}
+
+		/** Stops forwarding, waiting until the socket is not polled anymore. The socket is not closed. */
+		public void cancel() throws InterruptedException
+		{
+			if (closed)
+				return;
+
+			if (!poller.running) {
+				closed = true;
+				return;
+			}
+
+			if (Thread.currentThread() == poller.thread) {
+				poller.remove(this);
+				return;
+			}
+
+			final CountDownLatch latch = new CountDownLatch(1);
+			poller.submit(() -> {
+				poller.remove(this);
+				latch.countDown();
+			});
+
+			latch.await();
+		}
+
+		public boolean isClosed()
+		{
+			return closed;
+		}
+
+		/** Reads all available data, called by the poller thread */
+		private void onReadable()
+		{
+			final ByteBuffer buffer = IpcForwarder.this.acquire();
+			try {
+				while (buffer.hasRemaining()) {
+					final int numbytes = socket.read(buffer);
+					if (numbytes < 0)
+						eos = true;
+
+					if (numbytes <= 0 || socket.getType() == IpcSocket.Type.DGRAM)
+						break;  // Datagrams must not be merged
+				}
+			}
+			catch (Throwable error) {
+				IpcForwarder.this.release(buffer);
+				this.close(error);
+				return;
+			}
+
+			if (buffer.position() == 0) {
+				IpcForwarder.this.release(buffer);
+				if (eos)
+					this.close(null);
+
+				return;
+			}
+
+			buffer.flip();
+			numBytes.add(buffer.remaining());
+			numBatches.increment();
+
+			// Disarm until the sink is done with this buffer
+			armed = false;
+			poller.update(this);
+
+			final Runnable done = () -> {
+				IpcForwarder.this.release(buffer);
+				poller.submit(this::onForwarded);
+			};
+
+			try {
+				sink.forward(buffer, done);
+			}
+			catch (Throwable error) {
+				this.close(error);
+			}
+		}
+
+		private void onForwarded()
+		{
+			if (closed)
+				return;
+
+			if (eos) {
+				this.close(null);
+				return;
+			}
+
+			armed = true;
+			poller.update(this);
+		}
+
+		private void close(Throwable error)
+		{
+			if (closed)
+				return;
+
+			poller.remove(this);
+			try {
+				sink.closed(error);
+			}
+			catch (Throwable failure) {
+				LOG.log(Level.WARNING, "Notifying sink of closed IPC socket " + socket.getName() + " failed!", failure);
+			}
+		}
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private ByteBuffer acquire()
+	{
+		final ByteBuffer buffer = buffers.poll();
+		if (buffer != null) {
+			numPooledBuffers.decrementAndGet();
+			return buffer;
+		}
+
+		numAllocatedBuffers.increment();
+		return ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	private void release(ByteBuffer buffer)
+	{
+		if (numPooledBuffers.incrementAndGet() > maxPooledBuffers) {
+			numPooledBuffers.decrementAndGet();
+			return;
+		}
+
+		buffer.clear();
+		buffers.offer(buffer);
+	}
+
+	private class Poller implements Runnable
+	{
+		private final IpcSocket wakeup;
+		private final IpcSocket waker;
+		private final AtomicBoolean sleeping;
+		private final Queue<Runnable> tasks;
+		private final List<Registration> registrations;
+		private final AtomicInteger count;
+		private Thread thread;
+		private volatile boolean running;
+
+		// Native array of pollfd structs, rebuilt when registrations change
+		private Memory fds;
+		private NativeLong numfds;
+		private Registration[] polled;
+		private boolean valid;
+
+		public Poller() throws IOException
+		{
+			final String name = "/tmp/ipc-forwarder-" + UUID.randomUUID().toString() + ".sock";
+			this.wakeup = IpcSocket.create(name, IpcSocket.Type.DGRAM, false);
+			try {
+				this.waker = IpcSocket.connect(name, IpcSocket.Type.DGRAM);
+			}
+			catch (IOException error) {
+				wakeup.close();
+				throw error;
+			}
+			finally {
+				// Both ends are connected now, hence the socket file is not needed anymore
+				Files.deleteIfExists(Paths.get(name));
+			}
+
+			this.sleeping = new AtomicBoolean(false);
+			this.tasks = new ConcurrentLinkedQueue<Runnable>();
+			this.registrations = new ArrayList<Registration>();
+			this.count = new AtomicInteger(0);
+			this.running = false;
+			this.valid = false;
+		}
+
+		public void start(Thread thread)
+		{
+			this.thread = thread;
+			this.running = true;
+			thread.start();
+		}
+
+		public void stop()
+		{
+			running = false;
+			this.wakeup();
+		}
+
+		public int size()
+		{
+			return count.get();
+		}
+
+		/** Runs the task on the poller thread */
+		public void submit(Runnable task)
+		{
+			tasks.add(task);
+			if (Thread.currentThread() != thread)
+				this.wakeup();
+		}
+
+		public void add(Registration registration)
+		{
+			registrations.add(registration);
+			count.incrementAndGet();
+			valid = false;
+		}
+
+		public void remove(Registration registration)
+		{
+			registration.closed = true;
+			if (registrations.remove(registration))
+				count.decrementAndGet();
+
+			valid = false;
+		}
+
+		/** Updates the registration's poll state, without rebuilding the poll set */
+		public void update(Registration registration)
+		{
+			if (!valid || registration.slot < 1)
+				return;
+
+			// Negative descriptors are ignored by poll()
+			final int fd = registration.socket.getDescriptor();
+			fds.setInt(registration.slot * POLLFD_SIZE, (registration.armed) ? fd : -1);
+		}
+
+		@Override
+		public void run()
+		{
+			final ByteBuffer scratch = ByteBuffer.allocateDirect(16);
+			while (running) {
+				try {
+					this.execute();
+					if (!valid)
+						this.rebuild();
+
+					// Block only if no tasks were submitted in the meantime
+					sleeping.set(true);
+					final int timeout = (tasks.isEmpty() && running) ? -1 : 0;
+					final int numready = SocketAPI.poll(fds, numfds, timeout);
+					sleeping.set(false);
+					if (numready <= 0)
+						continue;
+
+					if (fds.getShort(POLLFD_REVENTS_OFFSET) != 0) {
+						// Drain all pending wakeups
+						do scratch.clear();
+						while (wakeup.read(scratch) > 0);
+					}
+
+					final int length = numfds.intValue();
+					for (int i = 1; i < length; ++i) {
+						final short revents = fds.getShort(i * POLLFD_SIZE + POLLFD_REVENTS_OFFSET);
+						final Registration registration = polled[i];
+						if (revents == 0 || !registration.armed || registration.closed)
+							continue;
+
+						if ((revents & SocketAPI.POLLNVAL) != 0) {
+							registration.close(new IOException("IPC socket is not open!"));
+							continue;
+						}
+
+						registration.onReadable();
+					}
+				}
+				catch (LastErrorException error) {
+					sleeping.set(false);
+					if (error.getErrorCode() != SocketAPI.EINTR)
+						LOG.log(Level.WARNING, "Polling IPC sockets failed!", error);
+				}
+				catch (Throwable error) {
+					LOG.log(Level.WARNING, "Forwarding from IPC sockets failed!", error);
+				}
+			}
+
+			this.execute();
+			for (Registration registration : new ArrayList<Registration>(registrations))
+				registration.close(new IOException("IPC forwarder stopped!"));
+
+			for (IpcSocket socket : new IpcSocket[] { waker, wakeup }) {
+				try {
+					socket.close();
+				}
+				catch (IOException error) {
+					LOG.log(Level.WARNING, "Closing poller's wakeup socket failed!", error);
+				}
+			}
+		}
+
+		private void execute()
+		{
+			Runnable task;
+			while ((task = tasks.poll()) != null)
+				task.run();
+		}
+
+		private void wakeup()
+		{
+			// Poller is running, submitted tasks will be executed in the next iteration
+			if (!sleeping.compareAndSet(true, false))
+				return;
+
+			try {
+				waker.send(WAKEUP_MESSAGE, false);
+			}
+			catch (IOException error) {
+				LOG.log(Level.WARNING, "Waking up poller failed!", error);
+			}
+		}
+
+		private void rebuild()
+		{
+			final int length = registrations.size() + 1;
+			if (polled == null || polled.length < length) {
+				// Grow geometrically, to avoid frequent reallocations
+				final int capacity = Math.max(length, (polled != null) ? 2 * polled.length : 16);
+				fds = new Memory((long) capacity * POLLFD_SIZE);
+				polled = new Registration[capacity];
+			}
+
+			fds.clear();
+			fds.setInt(0, wakeup.getDescriptor());
+			fds.setShort(POLLFD_EVENTS_OFFSET, SocketAPI.POLLIN);
+			for (int i = 1; i < length; ++i) {
+				final Registration registration = registrations.get(i - 1);
+				final int offset = i * POLLFD_SIZE;
+				fds.setInt(offset, (registration.armed) ? registration.socket.getDescriptor() : -1);
+				fds.setShort(offset + POLLFD_EVENTS_OFFSET, SocketAPI.POLLIN);
+				registration.slot = i;
+				polled[i] = registration;
+			}
+
+			for (int i = length; i < polled.length; ++i)
+				polled[i] = null;
+
+			numfds = new NativeLong(length);
+			valid = true;
+		}
+	}
+
+	private static IpcForwarder create()
+	{
+		ThreadFactory factory;
+		try {
+			factory = InitialContext.doLookup("java:jboss/ee/concurrency/factory/default");
+		}
+		catch (Exception error) {
+			factory = Executors.defaultThreadFactory();
+		}
+
+		final int numPollers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+		try {
+			final IpcForwarder forwarder = new IpcForwarder(numPollers, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS, factory);
+			LOG.info("IPC forwarder started with " + numPollers + " poller(s)");
+			return forwarder;
+		}
+		catch (IOException error) {
+			throw new IllegalStateException("Starting IPC forwarder failed!", error);
+		}
+	}
+}
@@ -32,6 +32,7 @@ import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
 import com.sun.jna.NativeLong;
 import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
 
 import de.bwl.bwfla.emucomp.components.emulators.SocketAPI.pollfd;
@@ -53,6 +54,9 @@ public class IpcSocket
 
 	public static final int DEFAULT_MSGBUFFER_CAPACITY = 8120;
 
+	/** Scratch buffers for sending from non-direct buffers */
+	private static final ThreadLocal<ByteBuffer> SCRATCH_BUFFERS = new ThreadLocal<ByteBuffer>();
+
 	/** Socket's type */
 	public enum Type
 	{
@@ -91,8 +95,9 @@ public class IpcSocket
 	public static IpcSocket connect(String sockname, Type socktype) throws IOException
 	{
 		IpcSocket socket = null;
+		int sockfd = -1;
 		try {
-			final int sockfd = SocketAPI.socket(SocketAPI.AF_UNIX, SocketAPI.socktype(socktype), 0);
+			sockfd = SocketAPI.socket(SocketAPI.AF_UNIX, SocketAPI.socktype(socktype), 0);
 			sockaddr_un addr = new sockaddr_un(SocketAPI.AF_UNIX, sockname);
 			SocketAPI.connect(sockfd, addr, sockaddr_un.length());
 
@@ -101,12 +106,94 @@ public class IpcSocket
 			LOG.info("IPC socket " + sockname + " connected.");
 		}
 		catch (LastErrorException exception) {
+			// Don't leak the descriptor, when connecting is retried
+			if (sockfd >= 0) {
+				try {
+					SocketAPI.close(sockfd);
+				}
+				catch (LastErrorException error) {
+					// Ignore it!
+				}
+			}
+
 			IpcSocket.rethrow("Connecting", sockname, exception);
 		}
 
 		return socket;
 	}
 
+	/** Creates a pair of connected, unnamed domain-sockets. */
+	public static IpcSocket[] pair(Type socktype) throws IOException
+	{
+		final int[] sockfds = new int[2];
+		try {
+			SocketAPI.socketpair(SocketAPI.AF_UNIX, SocketAPI.socktype(socktype), 0, sockfds);
+
+			final IpcSocket[] sockets = new IpcSocket[2];
+			for (int i = 0; i < sockets.length; ++i) {
+				final int msgsize = IpcSocket.getBufferSize(sockfds[i]);
+				sockets[i] = new IpcSocket("socketpair:" + sockfds[i], socktype, sockfds[i], msgsize, false);
+			}
+
+			return sockets;
+		}
+		catch (LastErrorException exception) {
+			IpcSocket.rethrow("Creating pair of", "socketpair", exception);
+		}
+
+		return null;
+	}
+
+	/** Marks this socket as listening for incoming connections. */
+	public void listen(int backlog) throws IOException
+	{
+		try {
+			SocketAPI.listen(sockfd, backlog);
+		}
+		catch (LastErrorException exception) {
+			IpcSocket.rethrow("Listening on", sockname, exception);
+		}
+	}
+
+	/**
+	 * Accepts a new connection on this listening socket.
+	 * @param timeout The time to wait in msec, when no connection is pending.
+	 * @return The connected socket or null, if the call timed out.
+	 */
+	public IpcSocket accept(int timeout) throws IOException
+	{
+		try {
+			final NativeLong numfds = new NativeLong(1);
+			final pollfd fds = new pollfd(sockfd, SocketAPI.POLLIN, (short) 0);
+			if (SocketAPI.poll(fds, numfds, timeout) == 0)
+				return null;  // Call timed out
+
+			final int connfd = SocketAPI.accept(sockfd, null, null);
+			final int msgsize = IpcSocket.getBufferSize(connfd);
+			return new IpcSocket(sockname + ":" + connfd, socktype, connfd, msgsize, false);
+		}
+		catch (LastErrorException exception) {
+			if (exception.getErrorCode() == SocketAPI.EAGAIN || exception.getErrorCode() == SocketAPI.EINTR)
+				return null;  // No pending connection anymore
+
+			IpcSocket.rethrow("Accepting on", sockname, exception);
+		}
+
+		return null;
+	}
+
+	/** Sets the default destination of this socket. */
+	public void connectTo(String destsock) throws IOException
+	{
+		try {
+			final sockaddr_un addr = new sockaddr_un(SocketAPI.AF_UNIX, destsock);
+			SocketAPI.connect(sockfd, addr, sockaddr_un.length());
+		}
+		catch (LastErrorException exception) {
+			IpcSocket.rethrow("Connecting to", destsock, exception);
+		}
+	}
+
 	/** Sends specified message. */
 	public boolean send(byte[] message, boolean blocking) throws IOException
 	{
@@ -130,6 +217,36 @@ public class IpcSocket
 		return true;
 	}
 
+	/**
+	 * Sends the remaining bytes of the buffer, without copying them for direct buffers.
+	 * In blocking mode all bytes are sent, else sending stops when the socket would block.
+	 * @return true if all remaining bytes were sent, else false.
+	 */
+	public boolean send(ByteBuffer message, boolean blocking) throws IOException
+	{
+		final ByteBuffer buffer = (message.isDirect()) ? message : IpcSocket.toDirectBuffer(message);
+		try {
+			final int flags = (blocking) ? 0 : SocketAPI.MSG_DONTWAIT;
+			final Pointer data = Native.getDirectBufferPointer(buffer);
+			while (message.hasRemaining()) {
+				final int length = message.remaining();
+				final int offset = (buffer == message) ? message.position() : (buffer.limit() - length);
+				final int numbytes = SocketAPI.send(sockfd, data.share(offset), length, flags);
+				message.position(message.position() + numbytes);
+				if (socktype == Type.DGRAM)
+					break;  // Datagrams are sent at once
+			}
+		}
+		catch (LastErrorException exception) {
+			if (!blocking && (exception.getErrorCode() == SocketAPI.EAGAIN))
+				return false;  // Don't throw on EAGAIN
+
+			IpcSocket.rethrow("Sending using", sockname, exception);
+		}
+
+		return !message.hasRemaining();
+	}
+
 	/** Sends specified message to the destination address. */
 	public boolean sendto(String destsock, byte[] message, boolean blocking) throws IOException
 	{
@@ -204,6 +321,38 @@ public class IpcSocket
 		return this.receive(buffer, true);
 	}
 	
+	/**
+	 * Reads available data into the remaining space of a direct buffer, without blocking.
+	 * @param buffer The direct buffer to read into, its position is advanced accordingly.
+	 * @return The number of bytes read, 0 if no data is available or -1 on end-of-stream.
+	 */
+	public int read(ByteBuffer buffer) throws IOException
+	{
+		if (!buffer.isDirect())
+			throw new IllegalArgumentException("A direct buffer is required!");
+
+		if (!buffer.hasRemaining())
+			return 0;
+
+		try {
+			final Pointer data = Native.getDirectBufferPointer(buffer).share(buffer.position());
+			final int numbytes = SocketAPI.recv(sockfd, data, buffer.remaining(), SocketAPI.MSG_DONTWAIT);
+			if (numbytes == 0 && socktype == Type.STREAM)
+				return -1;  // Peer has closed its socket
+
+			buffer.position(buffer.position() + numbytes);
+			return numbytes;
+		}
+		catch (LastErrorException exception) {
+			if (exception.getErrorCode() == SocketAPI.EAGAIN)
+				return 0;
+
+			IpcSocket.rethrow("Receiving from", sockname, exception);
+		}
+
+		return 0;
+	}
+
 	/** Closes this socket. */
 	public void close() throws IOException
 	{
@@ -232,6 +381,18 @@ public class IpcSocket
 	{
 		return msgsize;
 	}
+
+	/** Returns the socket's type. */
+	public Type getType()
+	{
+		return socktype;
+	}
+
+	/** Returns the socket's native descriptor. */
+	int getDescriptor()
+	{
+		return sockfd;
+	}
 	
 	
 	/* ==================== Internal Methods ==================== */
@@ -246,6 +407,22 @@ public class IpcSocket
 		this.socktype = socktype;
 	}
 
+	/** Copies the remaining bytes into a thread-local direct buffer, positioned at its start */
+	private static ByteBuffer toDirectBuffer(ByteBuffer message)
+	{
+		ByteBuffer buffer = SCRATCH_BUFFERS.get();
+		if (buffer == null || buffer.capacity() < message.remaining()) {
+			final int capacity = Math.max(message.remaining(), DEFAULT_MSGBUFFER_CAPACITY);
+			buffer = ByteBuffer.allocateDirect(capacity);
+			SCRATCH_BUFFERS.set(buffer);
+		}
+
+		buffer.clear();
+		buffer.put(message.duplicate());
+		buffer.flip();
+		return buffer;
+	}
+
 	private static void rethrow(String prefix, String name, LastErrorException exception) throws IOException
 	{
 		String cause = SocketAPI.strerror(exception);
@@ -351,6 +528,9 @@ final class SocketAPI
 	// Error ID for "IO operation would block."
 	public static final int EAGAIN = 11;
 
+	// Error ID for "Interrupted system call."
+	public static final int EINTR = 4;
+
 
 	/* ========== Constants from poll.h ========== */
 
@@ -454,15 +634,21 @@ final class SocketAPI
 	public static native int socket(int socket_family, int socket_type, int protocol) throws LastErrorException;
 	public static native int getsockname(int sockfd, sockaddr_un addr, Buffer addrlen) throws LastErrorException;
 	public static native int getsockopt(int sockfd, int level, int optname, Buffer optval, Buffer optlen) throws LastErrorException;
+	public static native int socketpair(int domain, int type, int protocol, int[] sockfds) throws LastErrorException;
 	public static native int connect(int sockfd, sockaddr_un addr, int addrlen) throws LastErrorException;
 	public static native int bind(int sockfd, sockaddr_un addr, int addrlen) throws LastErrorException;
+	public static native int listen(int sockfd, int backlog) throws LastErrorException;
+	public static native int accept(int sockfd, Pointer addr, Pointer addrlen) throws LastErrorException;
 	public static native int send(int sockfd, byte[] buf, int len, int flags) throws LastErrorException;
+	public static native int send(int sockfd, Pointer buf, int len, int flags) throws LastErrorException;
 	public static native int sendto(int sockfd, byte[] buf, int len, int flags, sockaddr_un destaddr, int addrlen) throws LastErrorException;
 	public static native int recv(int sockfd, byte[] buf, int len, int flags) throws LastErrorException;
+	public static native int recv(int sockfd, Pointer buf, int len, int flags) throws LastErrorException;
 	public static native int recvfrom(int sockfd, byte[] buf, int len, int flags, sockaddr_un srcaddr, Buffer addrlen) throws LastErrorException;
 	public static native int close(int fd) throws LastErrorException;
 	public static native int unlink(String name) throws LastErrorException;
 	public static native int poll(pollfd fds, NativeLong nfds, int timeout) throws LastErrorException;
+	public static native int poll(Pointer fds, NativeLong nfds, int timeout) throws LastErrorException;
 	
 	static {
 		if (!Platform.isLinux())
@@ -0,0 +1,436 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.components.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * An in-process ethernet switch, replacing external vde_switch processes.
+ * <p/>
+ * Source addresses of received frames are learned per port and expire after the aging time.
+ * When the address table is full, expired addresses are removed first, then the least recently
+ * seen ones, so that new stations are always learned.
+ * Frames to broadcast, multicast or unknown addresses are flooded to all other ports, in hub mode
+ * all frames are flooded. Every port has a bounded transmit queue and frames are dropped when it
+ * is full, hence a slow port can't stall the others. Local VDE clients can attach to the switch
+ * using the standard VDE control socket, see {@link #listen(Path)}.
+ */
+public class EthernetSwitch
+{
+	private static final Logger LOG = Logger.getLogger("EthernetSwitch");
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+	public static final long DEFAULT_AGING_TIME = 5L * 60L * 1000L;
+
+	// package-private
+	static final int MAX_MAC_TABLE_SIZE = 4096;
+
+	/** Number of least recently seen addresses to evict at once from a full table */
+	private static final int MAC_TABLE_EVICTION_BATCH = MAX_MAC_TABLE_SIZE / 16;
+
+	private static final int MIN_FRAME_SIZE = 14;  // Ethernet header only
+	private static final int MAX_FRAME_SIZE = 0xFFFF;
+
+	private final String name;
+	private final boolean hub;
+	private final int queueCapacity;
+	private final long agingTime;
+	private final Map<Long, MacEntry> macs;
+	private final List<Port> ports;
+	private final List<VdePortServer> servers;
+
+	private final LongAdder numFrames;
+	private final LongAdder numFloodedFrames;
+	private final LongAdder numInvalidFrames;
+
+
+	/** Creates a new learning switch */
+	public static EthernetSwitch create(String name, int queueCapacity, long agingTime)
+	{
+		return new EthernetSwitch(name, false, queueCapacity, agingTime);
+	}
+
+	/** Creates a new switch in hub mode */
+	public static EthernetSwitch hub(String name)
+	{
+		return new EthernetSwitch(name, true, DEFAULT_QUEUE_CAPACITY, DEFAULT_AGING_TIME);
+	}
+
+	/**
+	 * Starts accepting VDE clients, such as vde_plug or slirpvde.
+	 * @param path The switch's socket directory, as passed to the clients with "-s"
+	 */
+	public void listen(Path path) throws IOException
+	{
+		final VdePortServer server = new VdePortServer(this, path);
+		servers.add(server);
+		server.start();
+	}
+
+	/** Detaches all ports and stops accepting VDE clients */
+	public void close()
+	{
+		for (VdePortServer server : servers)
+			server.stop();
+
+		servers.clear();
+		for (Port port : new ArrayList<Port>(ports))
+			port.close();
+
+		macs.clear();
+		LOG.info("Switch " + name + " closed. " + this.toString());
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getNumPorts()
+	{
+		return ports.size();
+	}
+
+	/** Returns the number of learned addresses */
+	public int getNumAddresses()
+	{
+		return macs.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		long numDroppedFrames = 0L;
+		for (Port port : ports)
+			numDroppedFrames += port.numDroppedFrames.sum();
+
+		return "ports: " + ports.size() + ", macs: " + macs.size() + ", frames: " + numFrames.sum()
+				+ ", flooded: " + numFloodedFrames.sum() + ", invalid: " + numInvalidFrames.sum()
+				+ ", dropped: " + numDroppedFrames;
+	}
+
+
+	/** Base class for switch ports */
+	public abstract static class Port
+	{
+		private final EthernetSwitch owner;
+		private final String name;
+		private final Queue<ByteBuffer> queue;
+		private final AtomicBoolean transmitting;
+
+		private final LongAdder numReceivedFrames;
+		private final LongAdder numQueuedFrames;
+		private final LongAdder numDroppedFrames;
+
+		private volatile boolean opened;
+		private volatile boolean closed;
+
+		protected Port(EthernetSwitch owner, String name)
+		{
+			this.owner = owner;
+			this.name = name;
+			this.queue = new ArrayBlockingQueue<ByteBuffer>(owner.queueCapacity);
+			this.transmitting = new AtomicBoolean(false);
+			this.numReceivedFrames = new LongAdder();
+			this.numQueuedFrames = new LongAdder();
+			this.numDroppedFrames = new LongAdder();
+			this.opened = false;
+			this.closed = false;
+		}
+
+		/** Attaches this port to its switch */
+		public void open()
+		{
+			owner.attach(this);
+			opened = true;
+		}
+
+		/**
+		 * Passes a frame received from the port's peer to the switch. The buffer can be reused afterwards.
+		 * Frames received before the port was attached are dropped.
+		 */
+		public void receive(ByteBuffer frame)
+		{
+			if (opened && !closed)
+				owner.forward(this, frame);
+		}
+
+		/** Detaches this port from its switch, dropping all queued frames */
+		public void close()
+		{
+			if (closed)
+				return;
+
+			closed = true;
+			owner.detach(this);
+			queue.clear();
+			try {
+				this.onClosed();
+			}
+			catch (Throwable error) {
+				LOG.log(Level.WARNING, "Closing port " + name + " failed!", error);
+			}
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public boolean isClosed()
+		{
+			return closed;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + " -> received: " + numReceivedFrames.sum() + ", queued: " + numQueuedFrames.sum()
+					+ ", dropped: " + numDroppedFrames.sum();
+		}
+
+		/**
+		 * Sends queued frames to the port's peer. Only one transmission is active at any time.
+		 * @param frames The queue to take the frames from
+		 * @param done Callback, to be invoked when an asynchronous transmission completes
+		 * @return true if all taken frames were sent synchronously (done must not be invoked), else false
+		 */
+		protected abstract boolean transmit(Queue<ByteBuffer> frames, Runnable done);
+
+		/** Called once, after this port was detached */
+		protected void onClosed()
+		{
+			// Empty!
+		}
+
+		/** Counts frames, that could not be sent to the peer */
+		protected void dropped(int count)
+		{
+			numDroppedFrames.add(count);
+		}
+
+
+		private void enqueue(ByteBuffer frame)
+		{
+			if (closed || !queue.offer(frame)) {
+				numDroppedFrames.increment();
+				return;
+			}
+
+			numQueuedFrames.increment();
+			this.flush();
+		}
+
+		private void flush()
+		{
+			while (!closed && !queue.isEmpty() && transmitting.compareAndSet(false, true)) {
+				try {
+					if (!this.transmit(queue, this::onTransmitted))
+						return;  // onTransmitted() will resume
+				}
+				catch (Throwable error) {
+					LOG.log(Level.WARNING, "Transmitting frames on port " + name + " failed!", error);
+					transmitting.set(false);
+					this.close();
+					return;
+				}
+
+				transmitting.set(false);
+			}
+		}
+
+		private void onTransmitted()
+		{
+			transmitting.set(false);
+			this.flush();
+		}
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private EthernetSwitch(String name, boolean hub, int queueCapacity, long agingTime)
+	{
+		this.name = name;
+		this.hub = hub;
+		this.queueCapacity = queueCapacity;
+		this.agingTime = agingTime;
+		this.macs = new ConcurrentHashMap<Long, MacEntry>();
+		this.ports = new CopyOnWriteArrayList<Port>();
+		this.servers = new CopyOnWriteArrayList<VdePortServer>();
+		this.numFrames = new LongAdder();
+		this.numFloodedFrames = new LongAdder();
+		this.numInvalidFrames = new LongAdder();
+	}
+
+	private void attach(Port port)
+	{
+		if (!port.isClosed() && !ports.contains(port)) {
+			ports.add(port);
+			LOG.info("Port " + port.getName() + " attached to switch " + name);
+		}
+	}
+
+	private void detach(Port port)
+	{
+		if (!ports.remove(port))
+			return;
+
+		macs.values().removeIf((entry) -> entry.port == port);
+		LOG.info("Port " + port.toString() + " detached from switch " + name);
+	}
+
+	private void forward(Port ingress, ByteBuffer data)
+	{
+		final int length = data.remaining();
+		if (length < MIN_FRAME_SIZE || length > MAX_FRAME_SIZE) {
+			numInvalidFrames.increment();
+			return;
+		}
+
+		numFrames.increment();
+		ingress.numReceivedFrames.increment();
+
+		// The source buffer is reused by the caller, hence copy the frame once for all egress ports
+		final byte[] bytes = new byte[length];
+		data.duplicate().get(bytes);
+		final ByteBuffer frame = ByteBuffer.wrap(bytes)
+				.asReadOnlyBuffer();
+
+		if (!hub) {
+			final long now = System.currentTimeMillis();
+			if (!EthernetSwitch.isGroupAddress(bytes, 6))
+				this.learn(EthernetSwitch.toMacAddress(bytes, 6), ingress, now);
+
+			if (!EthernetSwitch.isGroupAddress(bytes, 0)) {
+				final Port egress = this.lookup(EthernetSwitch.toMacAddress(bytes, 0), now);
+				if (egress != null) {
+					// Frames for the ingress port's own segment are filtered
+					if (egress != ingress)
+						egress.enqueue(frame);
+
+					return;
+				}
+			}
+		}
+
+		numFloodedFrames.increment();
+		for (Port port : ports) {
+			if (port != ingress)
+				port.enqueue(frame.duplicate());
+		}
+	}
+
+	private void learn(long address, Port port, long now)
+	{
+		final MacEntry entry = macs.get(address);
+		if (entry != null && entry.port == port) {
+			entry.timestamp = now;
+			return;
+		}
+
+		if (port.isClosed())
+			return;
+
+		if (entry == null && macs.size() >= MAX_MAC_TABLE_SIZE)
+			this.evict(now);
+
+		macs.put(address, new MacEntry(port, now));
+	}
+
+	/** Makes room in a full address table, by removing expired or else the least recently seen entries */
+	private synchronized void evict(long now)
+	{
+		// Room could have been made by a concurrent call
+		if (macs.size() < MAX_MAC_TABLE_SIZE)
+			return;
+
+		macs.values().removeIf((entry) -> now - entry.timestamp > agingTime);
+		if (macs.size() < MAX_MAC_TABLE_SIZE)
+			return;
+
+		// Evict a batch, so that a flood of new addresses does not scan the table for every frame
+		final long[] timestamps = macs.values().stream()
+				.mapToLong((entry) -> entry.timestamp)
+				.sorted()
+				.toArray();
+
+		if (timestamps.length == 0)
+			return;
+
+		final long threshold = timestamps[Math.min(MAC_TABLE_EVICTION_BATCH, timestamps.length) - 1];
+		macs.values().removeIf((entry) -> entry.timestamp <= threshold);
+	}
+
+	private Port lookup(long address, long now)
+	{
+		final MacEntry entry = macs.get(address);
+		if (entry == null)
+			return null;
+
+		if (now - entry.timestamp > agingTime) {
+			macs.remove(address, entry);
+			return null;
+		}
+
+		return entry.port;
+	}
+
+	private static boolean isGroupAddress(byte[] frame, int offset)
+	{
+		// Broadcast and multicast addresses have the I/G bit set
+		return (frame[offset] & 0x01) != 0;
+	}
+
+	private static long toMacAddress(byte[] frame, int offset)
+	{
+		long address = 0L;
+		for (int i = offset; i < offset + 6; ++i)
+			address = (address << 8) | (frame[i] & 0xFFL);
+
+		return address;
+	}
+
+	private static class MacEntry
+	{
+		private final Port port;
+		private volatile long timestamp;
+
+		public MacEntry(Port port, long timestamp)
+		{
+			this.port = port;
+			this.timestamp = timestamp;
+		}
+	}
+}
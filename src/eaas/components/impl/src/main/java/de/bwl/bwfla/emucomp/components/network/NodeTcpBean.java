@@ -21,6 +21,7 @@ public class NodeTcpBean extends EaasComponentBean {
 
     protected DeprecatedProcessRunner runner = new DeprecatedProcessRunner();
     private ArrayList<DeprecatedProcessRunner> vdeProcesses = new ArrayList<DeprecatedProcessRunner>();
+    private EthernetSwitch hub = null;
 
     @Inject
     @ConfigKey("components.tcpNode.ports")
@@ -34,6 +35,10 @@ public class NodeTcpBean extends EaasComponentBean {
     @Config("components.binary.nodetcpscript")
     private String nodeTcpScript;
 
+    @Inject
+    @Config("components.network_switch.in_process")
+    private boolean inProcessSwitch;
+
     @Override
     public void destroy() {
         tcpPorts.release();
@@ -41,6 +46,8 @@ public class NodeTcpBean extends EaasComponentBean {
             process.stop();
             process.cleanup();
         }
+        if (hub != null)
+            hub.close();
         super.destroy();
     }
 
@@ -63,13 +70,23 @@ public class NodeTcpBean extends EaasComponentBean {
             throw new BWFLAException(e);
         }
 
-        DeprecatedProcessRunner process = new DeprecatedProcessRunner("vde_switch");
-        process.addArgument("-hub");
-        process.addArgument("-s");
-        process.addArgument(this.getWorkingDir().resolve(switchName).toString());
-        if(!process.start())
-            throw new BWFLAException("Cannot create vde_switch hub for VdeSlirpBean");
-        vdeProcesses.add(process);
+        if (inProcessSwitch) {
+            this.hub = EthernetSwitch.hub(switchName);
+            try {
+                hub.listen(this.getWorkingDir().resolve(switchName));
+            } catch (IOException e) {
+                throw new BWFLAException("Cannot create in-process hub for NodeTcpBean", e);
+            }
+        }
+        else {
+            DeprecatedProcessRunner process = new DeprecatedProcessRunner("vde_switch");
+            process.addArgument("-hub");
+            process.addArgument("-s");
+            process.addArgument(this.getWorkingDir().resolve(switchName).toString());
+            if(!process.start())
+                throw new BWFLAException("Cannot create vde_switch hub for VdeSlirpBean");
+            vdeProcesses.add(process);
+        }
 
         runner.setCommand(nodeTcpRunner);
         String info = null;
@@ -116,7 +133,9 @@ public class NodeTcpBean extends EaasComponentBean {
             throw new BWFLAException("Cannot start node process");
         vdeProcesses.add(runner);
 
-        this.addControlConnector(new EthernetConnector(hwAddress, this.getWorkingDir().resolve(switchName)));
+        if (hub != null)
+            this.addControlConnector(new EthernetConnector(hwAddress, hub));
+        else this.addControlConnector(new EthernetConnector(hwAddress, this.getWorkingDir().resolve(switchName)));
     }
 
     @Override
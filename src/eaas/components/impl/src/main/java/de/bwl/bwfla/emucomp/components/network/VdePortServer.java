@@ -0,0 +1,394 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.components.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.InitialContext;
+
+import de.bwl.bwfla.emucomp.components.emulators.IpcForwarder;
+import de.bwl.bwfla.emucomp.components.emulators.IpcSocket;
+
+
+/**
+ * Server-side of the VDE (v3) control protocol, attaching local VDE clients to an {@link EthernetSwitch}.
+ * <p/>
+ * A client connects to the "ctl" socket in the switch's directory and sends a request, containing the
+ * address of its datagram socket. For every request a new port with its own datagram socket is created,
+ * whose address is sent back. Frames are then exchanged as datagrams, one frame per datagram, until the
+ * client closes its control connection. Data of all ports is received using the {@link IpcForwarder}.
+ * Requests are handled by a small pool of threads, so that a stalled client can't block the accept loop.
+ */
+// package-private
+class VdePortServer implements Runnable
+{
+	private static final Logger LOG = Logger.getLogger("VdePortServer");
+
+	// Layout of struct request_v3
+	private static final int REQUEST_MAGIC = 0xFEEDFACE;
+	private static final int REQUEST_VERSION = 3;
+	private static final int REQUEST_HEADER_LENGTH = 4 + 4 + 4;
+	private static final int SOCKADDR_LENGTH = 2 + 108;
+	private static final int MAX_DESCRIPTION_LENGTH = 128;
+	private static final int MIN_REQUEST_LENGTH = REQUEST_HEADER_LENGTH + SOCKADDR_LENGTH;
+	private static final int MAX_REQUEST_LENGTH = MIN_REQUEST_LENGTH + MAX_DESCRIPTION_LENGTH;
+
+	private static final short AF_UNIX = 1;
+	private static final int ACCEPT_TIMEOUT = 1000;  // in ms
+	private static final int REQUEST_TIMEOUT = 5000;  // in ms
+	private static final int MAX_NUM_HANDSHAKE_THREADS = 4;
+	private static final int MAX_NUM_PENDING_HANDSHAKES = 64;
+
+	private final EthernetSwitch owner;
+	private final Path directory;
+	private final IpcSocket listener;
+	private final Set<VdePort> ports;
+	private final Queue<VdePort> closedPorts;
+	private final AtomicInteger nextPortId;
+	private ThreadPoolExecutor handshakes;
+	private Thread thread;
+	private volatile boolean running;
+
+
+	public VdePortServer(EthernetSwitch owner, Path directory) throws IOException
+	{
+		Files.createDirectories(directory);
+
+		this.owner = owner;
+		this.directory = directory;
+		this.listener = IpcSocket.create(directory.resolve("ctl").toString(), IpcSocket.Type.STREAM);
+		this.ports = ConcurrentHashMap.newKeySet();
+		this.closedPorts = new ConcurrentLinkedQueue<VdePort>();
+		this.nextPortId = new AtomicInteger(1);
+		this.running = false;
+
+		listener.listen(16);
+	}
+
+	public void start()
+	{
+		ThreadFactory factory;
+		try {
+			factory = InitialContext.doLookup("java:jboss/ee/concurrency/factory/default");
+		}
+		catch (Exception error) {
+			factory = Executors.defaultThreadFactory();
+		}
+
+		handshakes = new ThreadPoolExecutor(MAX_NUM_HANDSHAKE_THREADS, MAX_NUM_HANDSHAKE_THREADS,
+				REQUEST_TIMEOUT, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_NUM_PENDING_HANDSHAKES), factory);
+
+		handshakes.allowCoreThreadTimeOut(true);
+
+		running = true;
+		thread = factory.newThread(this);
+		thread.setName("vde-ctl-" + owner.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops accepting new clients and detaches all ports of this server */
+	public void stop()
+	{
+		running = false;
+		try {
+			thread.join();
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Pending handshakes finish or time out shortly
+		handshakes.shutdown();
+		try {
+			if (!handshakes.awaitTermination(2L * REQUEST_TIMEOUT, TimeUnit.MILLISECONDS))
+				LOG.warning("Waiting for VDE handshakes of switch " + owner.getName() + " timed out!");
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (VdePort port : ports)
+			port.release();
+
+		closedPorts.clear();
+	}
+
+	@Override
+	public void run()
+	{
+		LOG.info("Accepting VDE clients for switch " + owner.getName() + " at " + directory);
+		try {
+			while (running) {
+				final IpcSocket control = listener.accept(ACCEPT_TIMEOUT);
+				if (control != null)
+					this.submit(control);
+
+				this.cleanup();
+			}
+		}
+		catch (Throwable error) {
+			LOG.log(Level.WARNING, "Accepting VDE clients for switch " + owner.getName() + " failed!", error);
+		}
+		finally {
+			try {
+				listener.close();
+			}
+			catch (IOException error) {
+				LOG.log(Level.WARNING, "Closing VDE control socket failed!", error);
+			}
+		}
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private void submit(IpcSocket control)
+	{
+		try {
+			handshakes.execute(() -> this.handshake(control));
+		}
+		catch (RejectedExecutionException error) {
+			LOG.warning("Too many pending VDE clients for switch " + owner.getName() + ", rejecting " + control.getName());
+			VdePortServer.close(control);
+		}
+	}
+
+	private void handshake(IpcSocket control)
+	{
+		VdePort port = null;
+		try {
+			final String peer = VdePortServer.readRequest(control);
+			if (!running)
+				throw new IOException("VDE server is stopping!");
+
+			final String name = directory.resolve(String.format("%03d.%d", nextPortId.getAndIncrement(), System.nanoTime()))
+					.toString();
+
+			final IpcSocket data = IpcSocket.create(name, IpcSocket.Type.DGRAM);
+			port = new VdePort(control, data);
+			ports.add(port);
+			data.connectTo(peer);
+
+			// Reply with the address of the port's data socket
+			final ByteBuffer reply = ByteBuffer.allocate(SOCKADDR_LENGTH)
+					.order(ByteOrder.nativeOrder());
+
+			reply.putShort(AF_UNIX);
+			reply.put(name.getBytes(StandardCharsets.UTF_8));
+			control.send(reply.array(), true);
+
+			port.start();
+			port.open();
+		}
+		catch (Throwable error) {
+			LOG.log(Level.WARNING, "Attaching VDE client to switch " + owner.getName() + " failed!", error);
+			if (port != null)
+				port.release();
+			else VdePortServer.close(control);
+		}
+	}
+
+	/** Releases the resources of closed ports, outside of the forwarder's threads */
+	private void cleanup()
+	{
+		while (true) {
+			final VdePort port = closedPorts.poll();
+			if (port == null)
+				break;
+
+			port.release();
+		}
+	}
+
+	/** Reads a control request, returning the client's data socket address */
+	private static String readRequest(IpcSocket control) throws IOException
+	{
+		final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_LENGTH)
+				.order(ByteOrder.nativeOrder());
+
+		final ByteBuffer buffer = ByteBuffer.allocate(MAX_REQUEST_LENGTH);
+		final long deadline = System.currentTimeMillis() + REQUEST_TIMEOUT;
+		while (request.position() < MIN_REQUEST_LENGTH) {
+			final long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0L || !control.receive(buffer, (int) remaining))
+				throw new IOException("Reading VDE control request timed out!");
+
+			if (!buffer.hasRemaining())
+				throw new IOException("VDE client closed control connection!");
+
+			buffer.limit(Math.min(buffer.limit(), request.remaining()));
+			request.put(buffer);
+		}
+
+		request.flip();
+		if (request.getInt() != REQUEST_MAGIC || request.getInt() != REQUEST_VERSION)
+			throw new IOException("Unsupported VDE control request!");
+
+		// Requested port numbers are ignored, every client gets a new port
+		request.getInt();
+
+		if (request.getShort() != AF_UNIX)
+			throw new IOException("Unsupported address family of VDE client's data socket!");
+
+		final byte[] path = new byte[SOCKADDR_LENGTH - 2];
+		request.get(path);
+
+		int length = 0;
+		while (length < path.length && path[length] != 0)
+			++length;
+
+		if (length == 0)
+			throw new IOException("VDE client's data socket is unnamed!");
+
+		return new String(path, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private static void close(IpcSocket socket)
+	{
+		try {
+			socket.close();
+		}
+		catch (IOException error) {
+			LOG.log(Level.WARNING, "Closing socket " + socket.getName() + " failed!", error);
+		}
+	}
+
+
+	/** Port of a local VDE client */
+	private class VdePort extends EthernetSwitch.Port
+	{
+		private final IpcSocket control;
+		private final IpcSocket data;
+		private IpcForwarder.Registration controlRegistration;
+		private IpcForwarder.Registration dataRegistration;
+
+		public VdePort(IpcSocket control, IpcSocket data)
+		{
+			super(owner, data.getName());
+
+			this.control = control;
+			this.data = data;
+		}
+
+		public void start()
+		{
+			final IpcForwarder forwarder = IpcForwarder.getInstance();
+			dataRegistration = forwarder.register(data, new IpcForwarder.Sink() {
+				@Override
+				public void forward(ByteBuffer frame, Runnable done)
+				{
+					VdePort.this.receive(frame);
+					done.run();
+				}
+
+				@Override
+				public void closed(Throwable error)
+				{
+					if (error != null)
+						LOG.log(Level.WARNING, "Receiving frames on port " + VdePort.this.getName() + " failed!", error);
+
+					VdePort.this.close();
+				}
+			});
+
+			// The control connection is used only to signal the client's exit
+			controlRegistration = forwarder.register(control, new IpcForwarder.Sink() {
+				@Override
+				public void forward(ByteBuffer message, Runnable done)
+				{
+					done.run();
+				}
+
+				@Override
+				public void closed(Throwable error)
+				{
+					VdePort.this.close();
+				}
+			});
+		}
+
+		/** Cancels all registrations and closes the sockets */
+		public void release()
+		{
+			if (!ports.remove(this))
+				return;
+
+			super.close();
+			try {
+				if (dataRegistration != null)
+					dataRegistration.cancel();
+
+				if (controlRegistration != null)
+					controlRegistration.cancel();
+			}
+			catch (InterruptedException error) {
+				Thread.currentThread().interrupt();
+			}
+
+			VdePortServer.close(data);
+			VdePortServer.close(control);
+		}
+
+		@Override
+		protected boolean transmit(Queue<ByteBuffer> frames, Runnable done)
+		{
+			ByteBuffer frame;
+			while ((frame = frames.poll()) != null) {
+				try {
+					// Like vde_switch, drop frames when the client can't keep up
+					if (!data.send(frame, false))
+						this.dropped(1);
+				}
+				catch (IOException error) {
+					this.dropped(1);
+				}
+			}
+
+			return true;
+		}
+
+		@Override
+		protected void onClosed()
+		{
+			// Registrations can't be canceled from the forwarder's threads
+			closedPorts.add(this);
+		}
+	}
+}
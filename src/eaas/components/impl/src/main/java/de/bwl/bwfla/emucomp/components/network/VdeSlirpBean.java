@@ -19,6 +19,7 @@
 
 package de.bwl.bwfla.emucomp.components.network;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import javax.enterprise.inject.spi.CDI;
@@ -39,7 +40,12 @@ public class VdeSlirpBean extends EaasComponentBean {
     @Config("components.binary.vdeslirp")
     protected String vdeslirp_bin;
     
+    @Inject
+    @Config("components.network_switch.in_process")
+    protected boolean inProcessSwitch;
+
     protected DeprecatedProcessRunner runner = new DeprecatedProcessRunner();
+    protected EthernetSwitch hub = null;
     protected ArrayList<DeprecatedProcessRunner> vdeProcesses = new ArrayList<DeprecatedProcessRunner>();
 
     protected String slirpCommand;
@@ -65,13 +71,19 @@ public class VdeSlirpBean extends EaasComponentBean {
             // the switch can later be identified using the NIC's MAC address
             String switchName = "nic_" + config.getHwAddress();
 
-            DeprecatedProcessRunner process = new DeprecatedProcessRunner("vde_switch");
-            process.addArgument("-hub");
-            process.addArgument("-s");
-            process.addArgument(this.getWorkingDir().resolve(switchName).toString());
-            if(!process.start())
-                throw new BWFLAException("Cannot create vde_switch hub for VdeSlirpBean");
-            vdeProcesses.add(process);
+            if (inProcessSwitch) {
+                this.hub = EthernetSwitch.hub(switchName);
+                hub.listen(this.getWorkingDir().resolve(switchName));
+            }
+            else {
+                DeprecatedProcessRunner process = new DeprecatedProcessRunner("vde_switch");
+                process.addArgument("-hub");
+                process.addArgument("-s");
+                process.addArgument(this.getWorkingDir().resolve(switchName).toString());
+                if(!process.start())
+                    throw new BWFLAException("Cannot create vde_switch hub for VdeSlirpBean");
+                vdeProcesses.add(process);
+            }
             
             runner.addArguments("-s", this.getWorkingDir().resolve(switchName).toString());
             
@@ -80,9 +92,13 @@ public class VdeSlirpBean extends EaasComponentBean {
             vdeProcesses.add(runner);
             
             
-            this.addControlConnector(new EthernetConnector(config.getHwAddress(), this.getWorkingDir().resolve(switchName)));
+            if (hub != null)
+                this.addControlConnector(new EthernetConnector(config.getHwAddress(), hub));
+            else this.addControlConnector(new EthernetConnector(config.getHwAddress(), this.getWorkingDir().resolve(switchName)));
         } catch (ClassCastException e) {
             throw new BWFLAException("VdeSlirpBean can only be configured from VdeSlirpNode metadata.", e);
+        } catch (IOException e) {
+            throw new BWFLAException("Cannot create in-process hub for VdeSlirpBean", e);
         }
     }
     
@@ -92,6 +108,8 @@ public class VdeSlirpBean extends EaasComponentBean {
             process.stop();
             process.cleanup();
         }
+        if (hub != null)
+            hub.close();
         super.destroy();
     }
 
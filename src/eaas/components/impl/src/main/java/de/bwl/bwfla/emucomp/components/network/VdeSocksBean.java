@@ -51,7 +51,12 @@ public class VdeSocksBean extends EaasComponentBean {
     @ConfigKey("components.socks.ports")
     protected Port listenPort;
     
+    @Inject
+    @Config("components.network_switch.in_process")
+    protected boolean inProcessSwitch;
+
     protected ArrayList<ProcessRunner> vdeProcesses = new ArrayList<ProcessRunner>();
+    protected EthernetSwitch hub = null;
     protected ProcessRunner runner = new ProcessRunner();
     
     protected VdeSocksConfiguration config;
@@ -72,19 +77,27 @@ public class VdeSocksBean extends EaasComponentBean {
             // the switch can later be identified using the NIC's MAC address
             String switchName = "nic_" + config.getHwAddress();
 
-            ProcessRunner process = new ProcessRunner("vde_switch");
-            process.addArguments("-hub");
-            process.addArguments("-s");
-            process.addArguments(this.getWorkingDir().resolve(switchName));
-            process.start();
-            vdeProcesses.add(process);
+            if (inProcessSwitch) {
+                this.hub = EthernetSwitch.hub(switchName);
+                hub.listen(this.getWorkingDir().resolve(switchName));
+            }
+            else {
+                ProcessRunner process = new ProcessRunner("vde_switch");
+                process.addArguments("-hub");
+                process.addArguments("-s");
+                process.addArguments(this.getWorkingDir().resolve(switchName));
+                process.start();
+                vdeProcesses.add(process);
+            }
             
             runner.addArguments("-s", this.getWorkingDir().resolve(switchName).toString());
             
             runner.start();
             vdeProcesses.add(runner);
             
-            this.addControlConnector(new EthernetConnector(config.getHwAddress(), this.getWorkingDir().resolve(switchName)));
+            if (hub != null)
+                this.addControlConnector(new EthernetConnector(config.getHwAddress(), hub));
+            else this.addControlConnector(new EthernetConnector(config.getHwAddress(), this.getWorkingDir().resolve(switchName)));
             this.addControlConnector(new Socks4Connector(listenPort.get()));
         } catch (ClassCastException e) {
             throw new BWFLAException("Could not understand VdeSockspBean's config.", e);
@@ -108,6 +121,8 @@ public class VdeSocksBean extends EaasComponentBean {
         for (ProcessRunner process : this.vdeProcesses) {
             process.stop();
         }
+        if (hub != null)
+            hub.close();
         listenPort.release();
         super.destroy();
     }
@@ -21,23 +21,20 @@ package de.bwl.bwfla.emucomp.components.network;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collection;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.inject.Inject;
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
 import javax.websocket.CloseReason;
 import javax.websocket.DeploymentException;
 import javax.websocket.Session;
@@ -45,6 +42,7 @@ import javax.websocket.Session;
 import de.bwl.bwfla.common.utils.DeprecatedProcessRunner;
 import de.bwl.bwfla.common.utils.NetworkUtils;
 import de.bwl.bwfla.emucomp.api.ComponentConfiguration;
+import de.bwl.bwfla.emucomp.components.emulators.IpcForwarder;
 import de.bwl.bwfla.emucomp.components.emulators.IpcSocket;
 import de.bwl.bwfla.emucomp.control.IPCWebsocketProxy;
 import de.bwl.bwfla.emucomp.control.connectors.EthernetConnector;
@@ -68,25 +66,42 @@ public class VdeSwitchBean extends NetworkSwitchBean {
     @Config("components.binary.vdeplug")
     private String vdeplugBinary;
 
-    private ManagedThreadFactory threadFactory;
+    @Inject
+    @Config("components.network_switch.in_process")
+    private boolean inProcessSwitch;
+
+    @Inject
+    @Config("components.network_switch.port_queue_size")
+    private int portQueueSize;
+
+    @Inject
+    @Config("components.network_switch.mac_aging_time")
+    private Duration macAgingTime;
 
     // vde_switch process maintenance members
     protected final ProcessRunner runner = new ProcessRunner();
-    protected final Map<String, Thread> connections = new HashMap<String, Thread>();
+    protected final Map<String, Uplink> connections = new HashMap<String, Uplink>();
+
+    // in-process switch, replacing vde_switch when enabled
+    private EthernetSwitch ethswitch;
 
     private Path switchPath;
 
     public void initialize(ComponentConfiguration compConfig) throws BWFLAException {
-        try {
-            threadFactory = InitialContext
-                    .doLookup("java:jboss/ee/concurrency/factory/default");
-        } catch (NamingException e) {
-            throw new BWFLAException(
-                    "Error initializing VDE switch bean managed thread factory: " + e.getMessage(), e);
-        }
-
         this.switchPath = this.getWorkingDir().resolve("sockets");
 
+        if (inProcessSwitch) {
+            this.ethswitch = EthernetSwitch.create(this.getComponentId(), portQueueSize, macAgingTime.toMillis());
+            try {
+                // local VDE clients can still connect using the switch's directory
+                ethswitch.listen(this.switchPath);
+            } catch (IOException e) {
+                throw new BWFLAException("Could not create an in-process switch instance!", e);
+            }
+
+            return;
+        }
+
         // create a new vde switch instance in tmpdir/sockets
         runner.command(this.vdeswitchBinary);
         runner.addArguments("-s", this.switchPath);
@@ -100,15 +115,15 @@ public class VdeSwitchBean extends NetworkSwitchBean {
 
     @Override
     public void destroy() {
-        System.out.println("vdeswitch destroyed");
-        runner.close();
-        final Collection<Thread> threads = this.connections.values();
-        threads.forEach((thread) -> thread.interrupt());
-        threads.forEach((thread) -> {
+        LOG.info("vdeswitch destroyed");
+        if (ethswitch != null)
+            ethswitch.close();
+        else runner.close();
+
+        this.connections.values().forEach((connection) -> {
             try {
-                thread.join();
+                connection.close();
             } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
                 LOG.log(Level.SEVERE, e.getMessage(), e);
             }
         });
@@ -121,6 +136,17 @@ public class VdeSwitchBean extends NetworkSwitchBean {
 
         LOG.warning("connect to " + ethUrl);
 
+        if (ethswitch != null) {
+            try {
+                final PortConnection connection = new PortConnection(ethswitch, URI.create(ethUrl));
+                this.connections.put(ethUrl, connection);
+            } catch (IOException | DeploymentException e) {
+                throw new BWFLAException("Could not establish ethernet connection to " + ethUrl + ": " + e.getMessage(), e);
+            }
+
+            return;
+        }
+
         try {
             // start a new VDE plug instance that connects to the switch
             DeprecatedProcessRunner runner = new DeprecatedProcessRunner();
@@ -131,16 +157,14 @@ public class VdeSwitchBean extends NetworkSwitchBean {
             runner.addArgument("exec:" + this.vdeplugBinary + " -s " + this.switchPath);
             runner.start();
 
-            IPCWebsocketProxy.wait(Paths.get(socketPath));
-            IpcSocket iosock = IpcSocket.connect(socketPath, IpcSocket.Type.STREAM);
+            IpcSocket iosock = IPCWebsocketProxy.connect(Paths.get(socketPath), IpcSocket.Type.STREAM);
 
-            // start a new connection thread
+            // start a new connection
             // it will connect to the websocket url and start forwarding
             // traffic to/from the given process
-            Thread readThread = threadFactory
-                    .newThread(new Connection(runner, iosock, URI.create(ethUrl)));
-            readThread.start();
-            this.connections.put(ethUrl, readThread);
+            final Connection connection = new Connection(runner, iosock, URI.create(ethUrl));
+            connection.start();
+            this.connections.put(ethUrl, connection);
         } catch (IOException | DeploymentException e) {
             throw new BWFLAException(
                     "Could not establish ethernet connection to " + ethUrl
@@ -151,7 +175,9 @@ public class VdeSwitchBean extends NetworkSwitchBean {
 
     @Override
     public URI connect() {  // leaking the connector
-        IConnector connector = new EthernetConnector(NetworkUtils.getRandomHWAddress(), this.switchPath);
+        final String hwAddress = NetworkUtils.getRandomHWAddress();
+        IConnector connector = (ethswitch != null) ? new EthernetConnector(hwAddress, ethswitch)
+                : new EthernetConnector(hwAddress, this.switchPath);
         addControlConnector(connector);
         return connector.getControlPath(getComponentResource());
     }
@@ -159,25 +185,64 @@ public class VdeSwitchBean extends NetworkSwitchBean {
     @Override
     public void disconnect(String ethUrl) throws BWFLAException {
         LOG.severe("disconnect " + ethUrl);
-        final Thread thread = this.connections.remove(ethUrl);
-        if (thread == null)
+        final Uplink connection = this.connections.remove(ethUrl);
+        if (connection == null)
             throw new BWFLAException("Unknown connection URL: " + ethUrl);
 
         try {
-            // Stop the WebSocket thread!
-            thread.interrupt();
-            thread.join();
+            // Stop forwarding and close the WebSocket!
+            connection.close();
         }
         catch (Throwable error) {
             throw new BWFLAException("Disconnecting '" + ethUrl + "' failed!", error);
         }
     }
 
-    private static class Connection implements Runnable {
+    private interface Uplink {
+        void close() throws InterruptedException;
+    }
+
+    /** Uplink terminated by a port of the in-process switch */
+    private static class PortConnection implements Uplink {
+        private final WebsocketPort port;
+        private final WebsocketClient wsClient;
+
+        public PortConnection(EthernetSwitch ethswitch, URI ethUrl) throws DeploymentException, IOException {
+            final AtomicReference<WebsocketClient> client = new AtomicReference<WebsocketClient>();
+            this.port = new WebsocketPort(ethswitch, ethUrl.toString(),
+                    (message, handler) -> client.get().sendAsync(message, handler));
+
+            // this will immediately establish the connection (or fail with an
+            // exception)
+            this.wsClient = new WebsocketClient(ethUrl) {
+                @Override
+                public void doOnMessage(ByteBuffer msg) {
+                    port.onMessage(msg);
+                }
+            };
+
+            client.set(wsClient);
+            wsClient.addCloseListener((Session session, CloseReason reason) -> port.close());
+            port.open();
+        }
+
+        @Override
+        public void close() {
+            port.close();
+            try {
+                wsClient.close();
+            } catch (IOException e) {
+                Logger.getLogger(PortConnection.class.getName()).log(Level.WARNING, e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class Connection implements Uplink, IpcForwarder.Sink {
         public final DeprecatedProcessRunner runner;
         public final WebsocketClient wsClient;
         private final URI ethUrl;
         private final IpcSocket iosocket;
+        private volatile IpcForwarder.Registration registration;
 
         public Connection(final DeprecatedProcessRunner runner, IpcSocket iosocket, final URI ethUrl)
                 throws DeploymentException, IOException {
@@ -193,20 +258,23 @@ public class VdeSwitchBean extends NetworkSwitchBean {
                 @Override
                 public void doOnMessage(ByteBuffer msg) {
                     try {
-                        final int size = msg.remaining();
-                        final byte[] buffer  = new byte[size];
-                        msg.get(buffer);
-                        iosocket.send(buffer, true);
+                        iosocket.send(msg, true);
                     } catch (Throwable e) {
                         Logger.getLogger(Connection.class.getName()).log(Level.SEVERE, e.getMessage(), e);
                     }
                 }
             };
 
-            // if the socket is closed, closing the process/runner will
-            // automatically close the associated InputStream and thus
-            // terminate this thread
+            // if the socket is closed, stop forwarding and
+            // terminate the process/runner
             wsClient.addCloseListener((Session session, CloseReason reason) -> {
+                try {
+                    this.stop();
+                }
+                catch (InterruptedException ignore) {
+                    Thread.currentThread().interrupt();
+                }
+
                 runner.stop();
                 runner.cleanup();
                 try {
@@ -216,27 +284,45 @@ public class VdeSwitchBean extends NetworkSwitchBean {
             });
         }
 
+        public void start() {
+            this.registration = IpcForwarder.getInstance()
+                    .register(iosocket, this);
+        }
+
+        public void stop() throws InterruptedException {
+            if (registration != null)
+                registration.cancel();
+        }
+
         @Override
-        public void run() {
+        public void close() throws InterruptedException {
+            this.stop();
             try {
-                // Thread.sleep(1000);
-                final ByteBuffer buffer = ByteBuffer.allocate(4 * 1024);
-                while (!Thread.currentThread().isInterrupted() && iosocket.receive(buffer, true)) {
-                    wsClient.send(buffer);
-                }
-
-            } catch (InterruptedIOException ignore) {
-                // all is going well, we terminated the thread ourselves
-            } catch (Exception e) {
-                Logger.getLogger(Connection.class.getName()).log(Level.SEVERE, e.getMessage(), e);
+                wsClient.close();
+            } catch (IOException e) {
+                Logger.getLogger(Connection.class.getName()).log(Level.WARNING, e.getMessage(), e);
             }
-            finally {
-                try {
-                    System.out.println(" stream has closed " + ethUrl + " -- " + runner.getCommandString()); //  + " " + runner.exitValue());
-                    wsClient.close();
-                } catch (IOException e1) {
-                    e1.printStackTrace();
-                }
+        }
+
+        @Override
+        public void forward(ByteBuffer data, Runnable done) {
+            wsClient.sendAsync(data, (result) -> {
+                done.run();
+                if (!result.isOK())
+                    Logger.getLogger(Connection.class.getName()).log(Level.SEVERE, "Forwarding to " + ethUrl + " failed!", result.getException());
+            });
+        }
+
+        @Override
+        public void closed(Throwable error) {
+            if (error != null)
+                Logger.getLogger(Connection.class.getName()).log(Level.SEVERE, error.getMessage(), error);
+
+            try {
+                Logger.getLogger(Connection.class.getName()).info("Stream has closed " + ethUrl + " -- " + runner.getCommandString());
+                wsClient.close();
+            } catch (IOException e) {
+                Logger.getLogger(Connection.class.getName()).log(Level.WARNING, e.getMessage(), e);
             }
         }
     }
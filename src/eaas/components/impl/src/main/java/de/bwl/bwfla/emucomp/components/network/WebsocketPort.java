@@ -0,0 +1,133 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.components.network;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.websocket.SendHandler;
+import javax.websocket.Session;
+
+
+/**
+ * Switch port, terminating a websocket directly. Frames are exchanged using the stream format of
+ * vde_plug, where every frame is prefixed by its length as 2-byte big-endian integer. Hence ports
+ * are compatible with remote peers using vde_plug, while queued frames can be batched into
+ * a single websocket message.
+ */
+public class WebsocketPort extends EthernetSwitch.Port
+{
+	private static final Logger LOG = Logger.getLogger("WebsocketPort");
+
+	private static final int HEADER_LENGTH = 2;
+	private static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+	private final Sender sender;
+	private final ByteBuffer inbuffer;
+	private final ByteBuffer outbuffer;
+
+
+	/** Asynchronous sender of websocket messages */
+	@FunctionalInterface
+	public interface Sender
+	{
+		void send(ByteBuffer message, SendHandler handler);
+	}
+
+	public WebsocketPort(EthernetSwitch owner, String name, Sender sender)
+	{
+		super(owner, name);
+
+		this.sender = sender;
+		this.inbuffer = ByteBuffer.allocate(2 * (HEADER_LENGTH + MAX_FRAME_LENGTH));
+		this.outbuffer = ByteBuffer.allocate(HEADER_LENGTH + MAX_FRAME_LENGTH);
+	}
+
+	/** Creates a port for a server-side websocket session */
+	public static WebsocketPort create(EthernetSwitch owner, Session session)
+	{
+		final Sender sender = (message, handler) -> session.getAsyncRemote().sendBinary(message, handler);
+		return new WebsocketPort(owner, "ws:" + session.getId(), sender);
+	}
+
+	/** Decodes all complete frames from a received websocket message, which may contain partial frames */
+	public synchronized void onMessage(ByteBuffer message)
+	{
+		while (message.hasRemaining()) {
+			final int length = Math.min(inbuffer.remaining(), message.remaining());
+			final ByteBuffer chunk = message.duplicate();
+			chunk.limit(chunk.position() + length);
+			inbuffer.put(chunk);
+			message.position(message.position() + length);
+
+			inbuffer.flip();
+			while (inbuffer.remaining() >= HEADER_LENGTH) {
+				final int position = inbuffer.position();
+				final int framelen = inbuffer.getShort(position) & 0xFFFF;
+				if (inbuffer.remaining() < HEADER_LENGTH + framelen)
+					break;  // Frame is incomplete
+
+				final ByteBuffer frame = inbuffer.duplicate();
+				frame.position(position + HEADER_LENGTH);
+				frame.limit(position + HEADER_LENGTH + framelen);
+				this.receive(frame);
+
+				inbuffer.position(position + HEADER_LENGTH + framelen);
+			}
+
+			inbuffer.compact();
+		}
+	}
+
+	public void onMessage(byte[] message)
+	{
+		this.onMessage(ByteBuffer.wrap(message));
+	}
+
+	@Override
+	protected boolean transmit(Queue<ByteBuffer> frames, Runnable done)
+	{
+		// Only one message is in flight, hence the output buffer can be reused
+		outbuffer.clear();
+		ByteBuffer frame;
+		while ((frame = frames.peek()) != null) {
+			if (outbuffer.remaining() < HEADER_LENGTH + frame.remaining())
+				break;
+
+			frames.poll();
+			outbuffer.putShort((short) frame.remaining());
+			outbuffer.put(frame);
+		}
+
+		outbuffer.flip();
+		sender.send(outbuffer, (result) -> {
+			if (!result.isOK()) {
+				LOG.log(Level.WARNING, "Sending frames on port " + this.getName() + " failed!", result.getException());
+				this.close();
+			}
+
+			done.run();
+		});
+
+		return false;
+	}
+}
@@ -46,6 +46,7 @@ import de.bwl.bwfla.common.exceptions.BWFLAException;
 import de.bwl.bwfla.emucomp.NodeManager;
 import de.bwl.bwfla.emucomp.components.AbstractEaasComponent;
 import de.bwl.bwfla.emucomp.components.emulators.IpcSocket;
+import de.bwl.bwfla.emucomp.components.network.WebsocketPort;
 import de.bwl.bwfla.emucomp.control.connectors.EthernetConnector;
 import de.bwl.bwfla.emucomp.control.connectors.IConnector;
 import de.bwl.bwfla.emucomp.control.connectors.XpraConnector;
@@ -57,6 +58,7 @@ public class EthernetWebsocketServlet extends IPCWebsocketProxy{
     protected NodeManager nodeManager;
 
     private EthernetConnector connector;
+    private WebsocketPort port;
 
     @OnOpen
     public void open(Session session, EndpointConfig conf,
@@ -75,15 +77,21 @@ public class EthernetWebsocketServlet extends IPCWebsocketProxy{
                 session.close();
             }
             this.connector = (EthernetConnector) connector;
+            this.componentId = componentId;
+            if (this.connector.getSwitch() != null) {
+                // Attach the client to the in-process switch, without any helper processes
+                this.port = WebsocketPort.create(this.connector.getSwitch(), session);
+                port.open();
+                return;
+            }
+
             String id = UUID.randomUUID().toString();
             this.connector.connect(id);
-            this.componentId = componentId;
-            wait(Paths.get("/tmp/" + id + ".sock"));
-            this.iosock = IpcSocket.connect("/tmp/" + id + ".sock", IpcSocket.Type.STREAM);
+            this.iosock = IPCWebsocketProxy.connect(Paths.get("/tmp/" + id + ".sock"), IpcSocket.Type.STREAM);
 
-            // Start background thread for streaming from io-socket to client
+            // Start streaming from io-socket to client
             {
-                this.streamer = new OutputStreamer(session, nodeManager.getWorkerThreadFactory());
+                this.streamer = new OutputStreamer(session);
                 streamer.start();
             }
         }
@@ -93,4 +101,19 @@ public class EthernetWebsocketServlet extends IPCWebsocketProxy{
         }
     }
 
+    @Override
+    public void message(Session session, byte[] message, boolean last) throws IOException {
+        if (port != null)
+            port.onMessage(message);
+        else super.message(session, message, last);
+    }
+
+    @Override
+    protected void stop(Session session) {
+        if (port != null)
+            port.close();
+
+        super.stop(session);
+    }
+
 }
@@ -2,14 +2,12 @@ package de.bwl.bwfla.emucomp.control;
 
 import de.bwl.bwfla.common.datatypes.EmuCompState;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
-import de.bwl.bwfla.common.utils.DeprecatedProcessRunner;
+import de.bwl.bwfla.emucomp.components.emulators.IpcForwarder;
 import de.bwl.bwfla.emucomp.components.emulators.IpcSocket;
 
-import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.websocket.*;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -25,34 +23,42 @@ public abstract class IPCWebsocketProxy {
     {
         log.info("Waiting for socket to become ready...");
 
-        final int timeout = 60000;  // in ms
-        final int waittime = 1000;  // in ms
-        for (int numretries = timeout / waittime; numretries > 0; --numretries) {
-
-            DeprecatedProcessRunner runner = new DeprecatedProcessRunner();
-            runner.setCommand("awk");
-            runner.addArgument("BEGIN {e=1} $8==sock && $4==\"00010000\" {e=0; exit} END {exit e}");
-            runner.addArgument("sock=" + path.toString());
-            runner.addArgument("/proc/net/unix");
-            runner.execute(false, false);
-            int code = runner.getReturnCode();
-            if (code == 0) {
+        final long timeout = 60000L;  // in ms
+        try {
+            if (SocketReadiness.awaitListening(path, timeout)) {
                 log.info("socket seems to be ready now");
-                runner.cleanup();
                 return;
             }
-            runner.cleanup();
-            try {
-                Thread.sleep(waittime);
-            }
-            catch (Exception error) {
-                // Ignore it!
-            }
+        }
+        catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new BWFLAException("Waiting for socket interrupted!", error);
+        }
+        catch (IOException error) {
+            throw new BWFLAException("Waiting for socket failed!", error);
         }
 
         throw new BWFLAException("Socket is not available!");
     }
 
+    /** Connects to the socket, as soon as it becomes available */
+    public static IpcSocket connect(Path path, IpcSocket.Type type) throws BWFLAException
+    {
+        log.info("Waiting for socket to become ready...");
+
+        final long timeout = 60000L;  // in ms
+        try {
+            return SocketReadiness.connect(path, type, timeout);
+        }
+        catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new BWFLAException("Waiting for socket interrupted!", error);
+        }
+        catch (IOException error) {
+            throw new BWFLAException("Socket is not available!", error);
+        }
+    }
+
     protected void stop(Session session)
     {
         log.info("Stopping websocket proxy for component '" + componentId + "'...");
@@ -107,54 +113,62 @@ public abstract class IPCWebsocketProxy {
         this.stop(session);
     }
 
-    protected class OutputStreamer implements Runnable
+    /** Streams data from the io-socket to the client, using the node-wide {@link IpcForwarder} */
+    protected class OutputStreamer implements IpcForwarder.Sink
     {
-        private final Thread worker;
         private final Session session;
-        private boolean running;
+        private IpcForwarder.Registration registration;
 
-        public OutputStreamer(Session session, ManagedThreadFactory wfactory)
+        public OutputStreamer(Session session)
         {
-            this.worker = wfactory.newThread(this);
             this.session = session;
-            this.running = false;
+            this.registration = null;
         }
 
         public boolean isRunning()
         {
-            return running;
+            return registration != null && !registration.isClosed();
         }
 
         public void start()
         {
-            running = true;
-            worker.start();
+            registration = IpcForwarder.getInstance()
+                    .register(iosock, this);
         }
 
         public void stop() throws InterruptedException
         {
-            running = false;
-            worker.join();
+            registration.cancel();
         }
 
         @Override
-        public void run()
+        public void forward(ByteBuffer data, Runnable done)
         {
-            try {
-                final ByteBuffer buffer = ByteBuffer.allocate(4 * 1024);
-                while (running && iosock.receive(buffer, true)) {
-                    if (!session.isOpen())
-                        break;
+            if (!session.isOpen()) {
+                done.run();
+                throw new IllegalStateException("Websocket session is closed!");
+            }
 
-                    session.getBasicRemote()
-                            .sendBinary(buffer);
-                }
+            session.getAsyncRemote().sendBinary(data, (result) -> {
+                done.run();
+                if (!result.isOK())
+                    log.log(Level.WARNING, "Forwarding from io-socket to client failed!", result.getException());
+            });
+        }
 
+        @Override
+        public void closed(Throwable error)
+        {
+            if (error != null)
+                log.log(Level.WARNING, "Forwarding from io-socket to client failed!", error);
+
+            try {
                 final String message = "Server requested to closed connection!";
-                session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, message));
+                if (session.isOpen())
+                    session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, message));
             }
-            catch (Exception error) {
-                log.log(Level.WARNING, "Forwarding from io-socket to client failed!", error);
+            catch (Exception failure) {
+                log.log(Level.WARNING, "Closing websocket session failed!", failure);
             }
         }
     }
@@ -0,0 +1,243 @@
+package de.bwl.bwfla.emucomp.control;
+
+import de.bwl.bwfla.emucomp.components.emulators.IpcSocket;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Event-driven readiness checks for domain-sockets and other files created by
+ * helper processes. Waiting is based on the file-system's {@link WatchService}
+ * (inotify on Linux), hence callers are woken up as soon as a path appears,
+ * without forking any subprocesses.
+ */
+public class SocketReadiness {
+
+    private static final Logger log = Logger.getLogger(SocketReadiness.class.getName());
+
+    /** Socket flag, signaling a listening socket in /proc/net/unix */
+    private static final String SO_ACCEPTCON = "00010000";
+
+    private static final Path PROC_NET_UNIX = Paths.get("/proc/net/unix");
+
+    private static final long MIN_RETRY_DELAY = 1L;     // in ms
+    private static final long MAX_RETRY_DELAY = 100L;   // in ms
+
+
+    /**
+     * Waits until the given path exists.
+     *
+     * @param path The path to wait for
+     * @param timeout Max. time to wait in ms
+     * @return true if the path exists, else false
+     */
+    public static boolean awaitPath(Path path, long timeout) throws InterruptedException {
+        try (PathWatch watch = SocketReadiness.watch(path)) {
+            return watch.await(timeout);
+        }
+    }
+
+    /**
+     * Starts watching for the given path to appear. The returned watch can be awaited
+     * multiple times, e.g. to check other conditions in between, and must be closed.
+     *
+     * @param path The path to wait for
+     * @return A new watch for the path
+     */
+    public static PathWatch watch(Path path) {
+        return new PathWatch(path);
+    }
+
+    /**
+     * Waits until the given socket accepts connections, without connecting to it.
+     *
+     * @param path The socket's path
+     * @param timeout Max. time to wait in ms
+     * @return true if the socket is listening, else false
+     */
+    public static boolean awaitListening(Path path, long timeout) throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        if (!SocketReadiness.awaitPath(path, timeout))
+            return false;
+
+        // The socket is bound now, but listen() is usually called shortly afterwards
+        return SocketReadiness.poll(() -> SocketReadiness.isListening(path), deadline);
+    }
+
+    /**
+     * Connects to the given socket, as soon as it becomes available. Failed connection
+     * attempts are retried with an exponential backoff, until the timeout expires.
+     *
+     * @param path The socket's path
+     * @param type The socket's type
+     * @param timeout Max. time to wait in ms
+     * @return A connected socket
+     */
+    public static IpcSocket connect(Path path, IpcSocket.Type type, long timeout) throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        if (!SocketReadiness.awaitPath(path, timeout))
+            throw new IOException("Socket '" + path + "' is not available!");
+
+        long delay = MIN_RETRY_DELAY;
+        while (true) {
+            try {
+                return IpcSocket.connect(path.toString(), type);
+            }
+            catch (IOException error) {
+                // Most probably the socket is not yet listening, retry!
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L)
+                    throw error;
+
+                Thread.sleep(Math.min(delay, remaining));
+                delay = Math.min(2L * delay, MAX_RETRY_DELAY);
+            }
+        }
+    }
+
+    /** Returns true if the socket at the given path is listening, according to /proc/net/unix */
+    public static boolean isListening(Path path) throws IOException {
+        final String name = path.toAbsolutePath().toString();
+        try (Stream<String> lines = Files.lines(PROC_NET_UNIX)) {
+            // Format: Num RefCount Protocol Flags Type St Inode Path
+            return lines.skip(1L)
+                    .map((line) -> line.trim().split("\\s+"))
+                    .anyMatch((fields) -> fields.length > 7 && SO_ACCEPTCON.equals(fields[3]) && name.equals(fields[7]));
+        }
+        catch (NoSuchFileException error) {
+            // Not on Linux, fall back to checking the socket's existence only
+            return SocketReadiness.exists(path);
+        }
+    }
+
+
+    /* =============== Internal Helpers =============== */
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean check() throws IOException;
+    }
+
+    private static boolean poll(Condition condition, long deadline) throws IOException, InterruptedException {
+        long delay = MIN_RETRY_DELAY;
+        while (!condition.check()) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0L)
+                return false;
+
+            Thread.sleep(Math.min(delay, remaining));
+            delay = Math.min(2L * delay, MAX_RETRY_DELAY);
+        }
+
+        return true;
+    }
+
+    private static boolean exists(Path path) {
+        return Files.exists(path, LinkOption.NOFOLLOW_LINKS);
+    }
+
+
+    /**
+     * Watch for a path to appear, based on a single {@link WatchService} for its parent directory.
+     * When the parent can't be watched, e.g. because it does not exist yet or watching is not
+     * supported, the path's existence is polled instead.
+     */
+    public static class PathWatch implements AutoCloseable {
+        private final Path path;
+        private WatchService watcher;
+
+        private PathWatch(Path path) {
+            this.path = path;
+            this.watcher = null;
+
+            if (SocketReadiness.exists(path))
+                return;
+
+            final Path parent = path.toAbsolutePath().getParent();
+            try {
+                watcher = parent.getFileSystem().newWatchService();
+                parent.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            }
+            catch (IOException | UnsupportedOperationException error) {
+                log.log(Level.FINE, "Watching '" + parent + "' failed, polling for '" + path + "' instead", error);
+                this.close();
+            }
+        }
+
+        /**
+         * Waits until the path exists.
+         *
+         * @param timeout Max. time to wait in ms
+         * @return true if the path exists, else false
+         */
+        public boolean await(long timeout) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + timeout;
+
+            // Re-check first, since the path could be created before the watch was registered!
+            while (watcher != null && !SocketReadiness.exists(path)) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L)
+                    return false;
+
+                final WatchKey key;
+                try {
+                    key = watcher.poll(remaining, TimeUnit.MILLISECONDS);
+                }
+                catch (ClosedWatchServiceException error) {
+                    this.close();
+                    break;
+                }
+
+                if (key == null)
+                    continue;
+
+                // Events are not inspected, any change triggers a re-check
+                key.pollEvents();
+                if (!key.reset()) {
+                    // Parent directory is gone, continue by polling
+                    this.close();
+                }
+            }
+
+            // Not watched, hence poll for the path
+            long delay = MIN_RETRY_DELAY;
+            while (!SocketReadiness.exists(path)) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L)
+                    return false;
+
+                Thread.sleep(Math.min(delay, remaining));
+                delay = Math.min(2L * delay, MAX_RETRY_DELAY);
+            }
+
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (watcher == null)
+                return;
+
+            try {
+                watcher.close();
+            }
+            catch (IOException error) {
+                log.log(Level.WARNING, "Closing watcher for '" + path + "' failed!", error);
+            }
+
+            watcher = null;
+        }
+    }
+}
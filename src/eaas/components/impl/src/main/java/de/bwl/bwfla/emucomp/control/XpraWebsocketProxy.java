@@ -54,9 +54,9 @@ public class XpraWebsocketProxy extends IPCWebsocketProxy
 			this.connector = (XpraConnector) component.getControlConnector(XpraConnector.PROTOCOL);
 			this.iosock = IpcSocket.connect(connector.getIoSocketPath().toString(), IpcSocket.Type.STREAM);
 
-			// Start background thread for streaming from io-socket to client
+			// Start streaming from io-socket to client
 			{
-				this.streamer = new OutputStreamer(session, nodeManager.getWorkerThreadFactory());
+				this.streamer = new OutputStreamer(session);
 				streamer.start();
 
 				connector.setDisconnectHandler(() -> {
@@ -28,6 +28,7 @@ import java.nio.file.Path;
 import de.bwl.bwfla.common.utils.DeprecatedProcessRunner;
 import de.bwl.bwfla.common.utils.ProcessRunner;
 import de.bwl.bwfla.emucomp.components.emulators.EmulatorBean;
+import de.bwl.bwfla.emucomp.components.network.EthernetSwitch;
 
 
 public class EthernetConnector implements IConnector {
@@ -36,6 +37,7 @@ public class EthernetConnector implements IConnector {
     private final EmulatorBean emubean;
     private final String hwAddress;
     private final Path vdeSocket;
+    private final EthernetSwitch ethswitch;
     private DeprecatedProcessRunner runner = null;
     
     public static String getProtocolForHwaddress(final String hwAddress) {
@@ -50,6 +52,20 @@ public class EthernetConnector implements IConnector {
         this.emubean = emubean;
         this.hwAddress = hwAddress;
         this.vdeSocket = vdeSocket;
+        this.ethswitch = null;
+    }
+
+    /** Connector for websocket clients, that are attached to the in-process switch directly */
+    public EthernetConnector(final String hwAddress, final EthernetSwitch ethswitch) {
+        this.emubean = null;
+        this.hwAddress = hwAddress;
+        this.vdeSocket = null;
+        this.ethswitch = ethswitch;
+    }
+
+    /** Returns the in-process switch or null, if clients must be connected using vde_plug */
+    public EthernetSwitch getSwitch() {
+        return ethswitch;
     }
 
     @Override
@@ -103,6 +119,7 @@ public class EthernetConnector implements IConnector {
     }
     
     public void close() {
-        this.runner.stop();
+        if (this.runner != null)
+            this.runner.stop();
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import de.bwl.bwfla.common.exceptions.BWFLAException;
+import de.bwl.bwfla.emucomp.api.ComponentConfiguration;
+import de.bwl.bwfla.emucomp.components.AbstractEaasComponent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class WarmPoolTest
+{
+	private static final String ENVIRONMENT = "env-1";
+	private static final String CONFIG = "<machine id=\"env-1\"/>";
+	private static final int TARGET = 3;
+
+	private final Logger log = Logger.getLogger(WarmPoolTest.class.getName());
+
+	/** Runs warmups in the calling thread, for deterministic pool states */
+	private final Executor executor = Runnable::run;
+
+	private final List<TestComponent> created = new ArrayList<TestComponent>();
+	private final AtomicInteger numFailingWarmups = new AtomicInteger(0);
+
+	private Map<String, Integer> capacities;
+	private Path configdir;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		capacities = new HashMap<String, Integer>();
+		capacities.put(ENVIRONMENT, TARGET);
+		configdir = Files.createTempDirectory("warm-pools-");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(configdir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testClaimRefillsPoolToTarget()
+	{
+		final WarmPool pool = this.newWarmPool(Long.MAX_VALUE);
+		Assert.assertTrue(pool.isPooled(ENVIRONMENT));
+		Assert.assertFalse(pool.isPooled("env-2"));
+		Assert.assertNull(pool.claim("env-2", CONFIG));
+
+		Assert.assertNull(pool.claim(ENVIRONMENT, CONFIG));
+		Assert.assertEquals(TARGET, pool.size());
+		Assert.assertEquals(TARGET, created.size());
+
+		final AbstractEaasComponent component = pool.claim(ENVIRONMENT, CONFIG);
+		Assert.assertSame(created.get(0), component);
+		Assert.assertEquals(TARGET, pool.size());
+		Assert.assertEquals(TARGET + 1, created.size());
+
+		Assert.assertEquals(1L, pool.getNumHits());
+		Assert.assertEquals(1L, pool.getNumMisses());
+		Assert.assertEquals(0L, pool.getNumFailures());
+	}
+
+	@Test
+	public void testConfigurationsArePooledSeparately()
+	{
+		final WarmPool pool = this.newWarmPool(Long.MAX_VALUE);
+		pool.claim(ENVIRONMENT, CONFIG);
+		Assert.assertNull(pool.claim(ENVIRONMENT, "<machine id=\"env-1\" other=\"\"/>"));
+		Assert.assertEquals(2 * TARGET, pool.size());
+		Assert.assertEquals(2L, pool.getNumMisses());
+	}
+
+	@Test
+	public void testFailedWarmupsAreRetriedOnRefill()
+	{
+		final WarmPool pool = this.newWarmPool(Long.MAX_VALUE);
+		numFailingWarmups.set(TARGET);
+		pool.claim(ENVIRONMENT, CONFIG);
+		Assert.assertEquals(0, pool.size());
+		Assert.assertEquals((long) TARGET, pool.getNumFailures());
+
+		pool.refill();
+		Assert.assertEquals(TARGET, pool.size());
+		Assert.assertNotNull(pool.claim(ENVIRONMENT, CONFIG));
+	}
+
+	@Test
+	public void testRestorePrewarmsSavedPools()
+	{
+		final WarmPool first = this.newWarmPool(Long.MAX_VALUE);
+		first.claim(ENVIRONMENT, CONFIG);
+		first.shutdown();
+		Assert.assertEquals(0, first.size());
+		for (TestComponent component : created)
+			Assert.assertTrue(component.destroyed);
+
+		created.clear();
+
+		final WarmPool second = this.newWarmPool(Long.MAX_VALUE);
+		second.restore();
+		Assert.assertEquals(TARGET, second.size());
+		Assert.assertEquals(TARGET, created.size());
+		Assert.assertSame(created.get(0), second.claim(ENVIRONMENT, CONFIG));
+		Assert.assertEquals(1L, second.getNumHits());
+		Assert.assertEquals(0L, second.getNumMisses());
+	}
+
+	@Test
+	public void testRestoreSkipsUnpooledEnvironments() throws IOException
+	{
+		this.newWarmPool(Long.MAX_VALUE)
+				.claim(ENVIRONMENT, CONFIG);
+
+		capacities.clear();
+		capacities.put("env-2", TARGET);
+		created.clear();
+
+		final WarmPool pool = this.newWarmPool(Long.MAX_VALUE);
+		pool.restore();
+		Assert.assertEquals(0, pool.size());
+		Assert.assertTrue(created.isEmpty());
+		try (Stream<Path> files = Files.list(configdir)) {
+			Assert.assertEquals(0L, files.count());
+		}
+	}
+
+	@Test
+	public void testExpireClosesIdlePools()
+	{
+		final WarmPool first = this.newWarmPool(0L);
+		first.claim(ENVIRONMENT, CONFIG);
+		first.expire();
+		Assert.assertEquals(0, first.size());
+		for (TestComponent component : created)
+			Assert.assertTrue(component.destroyed);
+
+		// expired pools should not be pre-warmed again
+		final WarmPool second = this.newWarmPool(0L);
+		second.restore();
+		Assert.assertEquals(0, second.size());
+	}
+
+	@Test
+	public void testExportsMetrics()
+	{
+		final WarmPool pool = this.newWarmPool(Long.MAX_VALUE);
+		pool.claim(ENVIRONMENT, CONFIG);
+		pool.claim(ENVIRONMENT, CONFIG);
+		pool.claim(ENVIRONMENT, CONFIG);
+
+		final StringBuilder output = new StringBuilder();
+		pool.export(output);
+
+		final String metrics = output.toString();
+		Assert.assertTrue(metrics.contains("# TYPE eaas_warm_pool_claims_total counter\n"));
+		Assert.assertTrue(metrics.contains("eaas_warm_pool_claims_total{result=\"hit\"} 2\n"));
+		Assert.assertTrue(metrics.contains("eaas_warm_pool_claims_total{result=\"miss\"} 1\n"));
+		Assert.assertTrue(metrics.contains("eaas_warm_pool_failures_total 0\n"));
+		Assert.assertTrue(metrics.contains("eaas_warm_pool_components{environment=\"env-1\","));
+		Assert.assertTrue(metrics.contains(",state=\"idle\"} " + TARGET + "\n"));
+		Assert.assertTrue(metrics.contains(",state=\"pending\"} 0\n"));
+		Assert.assertTrue(metrics.matches("(?s).*eaas_warm_pool_target\\{environment=\"env-1\",pool=\"[^\"]+\"\\} " + TARGET + "\n.*"));
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private WarmPool newWarmPool(long maxIdleTime)
+	{
+		return new WarmPool(capacities, maxIdleTime, configdir, this::create, executor, log);
+	}
+
+	private AbstractEaasComponent create(String config) throws BWFLAException
+	{
+		if (numFailingWarmups.getAndUpdate((n) -> Math.max(n - 1, 0)) > 0)
+			throw new BWFLAException("Warmup failed!");
+
+		final TestComponent component = new TestComponent();
+		component.setComponentId("warm-" + created.size());
+		created.add(component);
+		return component;
+	}
+
+	private static class TestComponent extends AbstractEaasComponent
+	{
+		private boolean destroyed = false;
+
+		@Override
+		public void initialize(ComponentConfiguration config)
+		{
+			// Nothing to do!
+		}
+
+		@Override
+		public void destroy()
+		{
+			destroyed = true;
+		}
+
+		@Override
+		public String getComponentType()
+		{
+			return "test";
+		}
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class BlockCacheServletTest
+{
+	private static final int BLOCK_SIZE = 4096;
+	private static final int IMAGE_SIZE = 10 * BLOCK_SIZE + 123;
+
+	private final Logger log = Logger.getLogger(BlockCacheServletTest.class.getName());
+
+	/** Number of GET requests received by the origin */
+	private final AtomicInteger numFetches = new AtomicInteger(0);
+
+	private byte[] image;
+	private HttpServer origin;
+	private String url;
+	private Path basedir;
+	private BlockCacheServlet servlet;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		image = new byte[IMAGE_SIZE];
+		new Random(42).nextBytes(image);
+
+		origin = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		origin.createContext("/images/", this::serve);
+		origin.start();
+
+		final String address = "http://localhost:" + origin.getAddress().getPort();
+		url = address + "/images/test.img";
+
+		basedir = Files.createTempDirectory("blockcache-");
+		final BlockStore store = new BlockStore(basedir, 1024L * 1024L, log);
+		final OriginFilter origins = new OriginFilter(Arrays.asList(address, "nginx:81"));
+		servlet = new BlockCacheServlet(store, BLOCK_SIZE, Duration.ofMinutes(1L), origins);
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		origin.stop(0);
+		try (Stream<Path> paths = Files.walk(basedir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testSingleRangeAcrossBlocks() throws Exception
+	{
+		final int start = BLOCK_SIZE - 10;
+		final int end = 3 * BLOCK_SIZE + 9;
+		final Response response = this.get(url, "127.0.0.1", "bytes=" + start + "-" + end);
+		Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+		Assert.assertEquals("bytes " + start + "-" + end + "/" + IMAGE_SIZE, response.headers.get("Content-Range"));
+		Assert.assertArrayEquals(Arrays.copyOfRange(image, start, end + 1), response.body());
+		Assert.assertEquals(4, numFetches.get());
+	}
+
+	@Test
+	public void testMultipleRanges() throws Exception
+	{
+		final Response response = this.get(url, "127.0.0.1", "bytes=0-99,8000-8999,-50");
+		Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+
+		final byte[] body = response.body();
+		Assert.assertEquals(Long.parseLong(response.headers.get("Content-Length")), body.length);
+		Assert.assertTrue(BlockCacheServletTest.contains(body, Arrays.copyOfRange(image, 0, 100)));
+		Assert.assertTrue(BlockCacheServletTest.contains(body, Arrays.copyOfRange(image, 8000, 9000)));
+		Assert.assertTrue(BlockCacheServletTest.contains(body, Arrays.copyOfRange(image, IMAGE_SIZE - 50, IMAGE_SIZE)));
+	}
+
+	@Test
+	public void testLastPartialBlock() throws Exception
+	{
+		final Response response = this.get(url, "127.0.0.1", "bytes=" + (10 * BLOCK_SIZE) + "-");
+		Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+		Assert.assertArrayEquals(Arrays.copyOfRange(image, 10 * BLOCK_SIZE, IMAGE_SIZE), response.body());
+	}
+
+	@Test
+	public void testCompleteImage() throws Exception
+	{
+		final Response response = this.get(url, "127.0.0.1", null);
+		Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+		Assert.assertArrayEquals(image, response.body());
+		Assert.assertEquals(11, numFetches.get());
+	}
+
+	@Test
+	public void testCachedBlocksAreReused() throws Exception
+	{
+		this.get(url, "127.0.0.1", "bytes=100-5000");
+		Assert.assertEquals(2, numFetches.get());
+
+		final Response response = this.get(url, "127.0.0.1", "bytes=200-300,4500-4600");
+		Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+		Assert.assertEquals(2, numFetches.get());
+	}
+
+	@Test
+	public void testRejectsUnsatisfiableRange() throws Exception
+	{
+		final Response response = this.get(url, "127.0.0.1", "bytes=" + IMAGE_SIZE + "-" + (IMAGE_SIZE + 10));
+		Assert.assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.status);
+		Assert.assertEquals(0, numFetches.get());
+	}
+
+	@Test
+	public void testRejectsUnknownOrigins() throws Exception
+	{
+		final String[] urls = {
+				"http://169.254.169.254/latest/meta-data/iam",
+				"http://localhost:1/images/test.img",
+				"https://localhost:" + origin.getAddress().getPort() + "/images/test.img",
+				"http://localhost:" + origin.getAddress().getPort() + "@example.org/images/test.img",
+		};
+
+		for (String other : urls) {
+			final Response response = this.get(other, "127.0.0.1", "bytes=0-99");
+			Assert.assertEquals(other, HttpServletResponse.SC_FORBIDDEN, response.status);
+		}
+	}
+
+	@Test
+	public void testRejectsRemoteClients() throws Exception
+	{
+		final Response response = this.get(url, "10.0.0.1", "bytes=0-99");
+		Assert.assertEquals(HttpServletResponse.SC_FORBIDDEN, response.status);
+		Assert.assertEquals(0, numFetches.get());
+	}
+
+	@Test
+	public void testOriginFilter()
+	{
+		final OriginFilter filter = new OriginFilter(Arrays.asList("http://eaas:8080", "nginx:81", " ", null));
+		Assert.assertTrue(filter.isAllowed("http://eaas:8080/imagearchive/images/base/123"));
+		Assert.assertTrue(filter.isAllowed("http://EAAS:8080/x"));
+		Assert.assertTrue(filter.isAllowed("http://nginx:81/x"));
+		Assert.assertTrue(filter.isAllowed("https://nginx:81/x"));
+		Assert.assertFalse(filter.isAllowed("http://eaas/x"));
+		Assert.assertFalse(filter.isAllowed("https://eaas:8080/x"));
+		Assert.assertFalse(filter.isAllowed("http://eaas:8080.evil.org/x"));
+		Assert.assertFalse(filter.isAllowed("file:///etc/passwd"));
+		Assert.assertFalse(filter.isAllowed("not a url"));
+
+		final OriginFilter defaults = new OriginFilter(Collections.singletonList("https://archive.example.org"));
+		Assert.assertTrue(defaults.isAllowed("https://archive.example.org:443/x"));
+		Assert.assertFalse(defaults.isAllowed("http://archive.example.org/x"));
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private Response get(String url, String client, String range) throws Exception
+	{
+		final String encoded = Base64.getUrlEncoder()
+				.withoutPadding()
+				.encodeToString(url.getBytes(StandardCharsets.UTF_8));
+
+		final Map<String, String> headers = new HashMap<String, String>();
+		if (range != null)
+			headers.put("Range", range);
+
+		final HttpServletRequest request = BlockCacheServletTest.request("/" + encoded + "/test.img", client, headers);
+		final Response response = new Response();
+		servlet.doGet(request, response.proxy());
+		return response;
+	}
+
+	/** Serves the sample image, supporting single ranges only */
+	private void serve(HttpExchange exchange) throws IOException
+	{
+		try {
+			exchange.getResponseHeaders().set("ETag", "\"v1\"");
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.getResponseHeaders().set("Content-Length", Integer.toString(image.length));
+				exchange.sendResponseHeaders(200, -1L);
+				return;
+			}
+
+			numFetches.incrementAndGet();
+
+			int start = 0;
+			int end = image.length - 1;
+			final String range = exchange.getRequestHeaders().getFirst("Range");
+			if (range != null) {
+				final String[] offsets = range.substring("bytes=".length()).split("-");
+				start = Integer.parseInt(offsets[0]);
+				end = Math.min(end, Integer.parseInt(offsets[1]));
+			}
+
+			final int length = end - start + 1;
+			exchange.sendResponseHeaders((range != null) ? 206 : 200, length);
+			try (OutputStream output = exchange.getResponseBody()) {
+				output.write(image, start, length);
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private static boolean contains(byte[] data, byte[] part)
+	{
+		outer:
+		for (int i = 0; i + part.length <= data.length; ++i) {
+			for (int j = 0; j < part.length; ++j) {
+				if (data[i + j] != part[j])
+					continue outer;
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private static HttpServletRequest request(String path, String client, Map<String, String> headers)
+	{
+		final InvocationHandler handler = (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getPathInfo":
+					return path;
+				case "getRemoteAddr":
+					return client;
+				case "getMethod":
+					return "GET";
+				case "getHeader":
+					return headers.get((String) args[0]);
+				default:
+					return BlockCacheServletTest.defaultValue(method);
+			}
+		};
+
+		return (HttpServletRequest) Proxy.newProxyInstance(BlockCacheServletTest.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, handler);
+	}
+
+	private static Object defaultValue(Method method)
+	{
+		final Class<?> type = method.getReturnType();
+		if (type == boolean.class)
+			return false;
+		if (type == int.class)
+			return 0;
+		if (type == long.class)
+			return 0L;
+
+		return null;
+	}
+
+	/** Records the status, headers and body of a servlet's response */
+	private static class Response implements InvocationHandler
+	{
+		public final Map<String, String> headers = new HashMap<String, String>();
+		public int status = HttpServletResponse.SC_OK;
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final ServletOutputStream output = new ServletOutputStream() {
+			@Override
+			public void write(int b)
+			{
+				body.write(b);
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length)
+			{
+				body.write(buffer, offset, length);
+			}
+
+			@Override
+			public boolean isReady()
+			{
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener)
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		public HttpServletResponse proxy()
+		{
+			return (HttpServletResponse) Proxy.newProxyInstance(BlockCacheServletTest.class.getClassLoader(),
+					new Class<?>[] { HttpServletResponse.class }, this);
+		}
+
+		public byte[] body()
+		{
+			return body.toByteArray();
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			switch (method.getName()) {
+				case "setStatus":
+				case "sendError":
+					status = (Integer) args[0];
+					return null;
+				case "setHeader":
+					headers.put((String) args[0], (String) args[1]);
+					return null;
+				case "getOutputStream":
+					return output;
+				default:
+					return BlockCacheServletTest.defaultValue(method);
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class BlockStoreTest
+{
+	private static final int BLOCK_SIZE = 16;
+
+	private final Logger log = Logger.getLogger(BlockStoreTest.class.getName());
+	private final AtomicInteger numLoads = new AtomicInteger(0);
+
+	private Path basedir;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		basedir = Files.createTempDirectory("blockstore-");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(basedir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testLoadsMissingBlocksOnce() throws Exception
+	{
+		final BlockStore store = new BlockStore(basedir, 10 * BLOCK_SIZE, log);
+		Assert.assertEquals('a', this.read(store, "aa/a"));
+		Assert.assertEquals('a', this.read(store, "aa/a"));
+		Assert.assertEquals(1, numLoads.get());
+		Assert.assertEquals(BLOCK_SIZE, store.size());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception
+	{
+		final BlockStore store = new BlockStore(basedir, 3 * BLOCK_SIZE, log);
+		this.read(store, "aa/a");
+		this.read(store, "bb/b");
+		this.read(store, "cc/c");
+
+		// Touch the oldest block, so that the second one becomes the LRU
+		this.read(store, "aa/a");
+		this.read(store, "dd/d");
+
+		Assert.assertEquals(3 * BLOCK_SIZE, store.size());
+		Assert.assertTrue(Files.exists(basedir.resolve("aa/a")));
+		Assert.assertFalse(Files.exists(basedir.resolve("bb/b")));
+		Assert.assertTrue(Files.exists(basedir.resolve("cc/c")));
+		Assert.assertTrue(Files.exists(basedir.resolve("dd/d")));
+
+		// Evicted block must be loaded again
+		numLoads.set(0);
+		Assert.assertEquals('b', this.read(store, "bb/b"));
+		Assert.assertEquals(1, numLoads.get());
+		Assert.assertFalse(Files.exists(basedir.resolve("cc/c")));
+	}
+
+	@Test
+	public void testKeepsBlockLargerThanMaxSize() throws Exception
+	{
+		final BlockStore store = new BlockStore(basedir, BLOCK_SIZE / 2, log);
+		this.read(store, "aa/a");
+		Assert.assertTrue(Files.exists(basedir.resolve("aa/a")));
+
+		this.read(store, "bb/b");
+		Assert.assertFalse(Files.exists(basedir.resolve("aa/a")));
+		Assert.assertEquals(BLOCK_SIZE, store.size());
+	}
+
+	@Test
+	public void testRestoresBlocksInModificationOrder() throws Exception
+	{
+		BlockStore store = new BlockStore(basedir, 3 * BLOCK_SIZE, log);
+		this.read(store, "aa/a");
+		this.read(store, "bb/b");
+		this.read(store, "cc/c");
+
+		final long now = System.currentTimeMillis();
+		Files.setLastModifiedTime(basedir.resolve("bb/b"), FileTime.fromMillis(now - 3000L));
+		Files.setLastModifiedTime(basedir.resolve("cc/c"), FileTime.fromMillis(now - 2000L));
+		Files.setLastModifiedTime(basedir.resolve("aa/a"), FileTime.fromMillis(now - 1000L));
+
+		// Restored store is too small for all blocks, the oldest one must be evicted
+		store = new BlockStore(basedir, 2 * BLOCK_SIZE, log);
+		Assert.assertEquals(2 * BLOCK_SIZE, store.size());
+		Assert.assertFalse(Files.exists(basedir.resolve("bb/b")));
+
+		numLoads.set(0);
+		this.read(store, "aa/a");
+		this.read(store, "cc/c");
+		Assert.assertEquals(0, numLoads.get());
+	}
+
+	@Test
+	public void testConcurrentRequestsShareOneLoad() throws Exception
+	{
+		final BlockStore store = new BlockStore(basedir, 10 * BLOCK_SIZE, log);
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch resume = new CountDownLatch(1);
+		final BlockStore.BlockLoader loader = (target) -> {
+			loading.countDown();
+			try {
+				resume.await();
+			}
+			catch (InterruptedException error) {
+				throw new IOException(error);
+			}
+
+			this.write(target, 'x');
+		};
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<Integer> first = executor.submit(() -> BlockStoreTest.read(store, "xx/x", loader));
+			loading.await();
+
+			final Future<Integer> second = executor.submit(() -> BlockStoreTest.read(store, "xx/x", loader));
+			Thread.sleep(100L);
+			resume.countDown();
+
+			Assert.assertEquals('x', (int) first.get());
+			Assert.assertEquals('x', (int) second.get());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(1, numLoads.get());
+	}
+
+	@Test
+	public void testFailedLoadsAreNotStored() throws Exception
+	{
+		final BlockStore store = new BlockStore(basedir, 10 * BLOCK_SIZE, log);
+		try {
+			BlockStoreTest.read(store, "ee/e", (target) -> {
+				throw new IOException("Origin unavailable!");
+			});
+
+			Assert.fail("Expected a failed load");
+		}
+		catch (IOException error) {
+			// Expected!
+		}
+
+		Assert.assertEquals(0L, store.size());
+		try (Stream<Path> tmpfiles = Files.list(basedir.resolve(".tmp"))) {
+			Assert.assertEquals(0L, tmpfiles.count());
+		}
+
+		Assert.assertEquals('e', this.read(store, "ee/e"));
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	/** Reads the first byte of a block, which is filled with its key's last character */
+	private int read(BlockStore store, String key) throws IOException
+	{
+		return BlockStoreTest.read(store, key, (target) -> this.write(target, key.charAt(key.length() - 1)));
+	}
+
+	private static int read(BlockStore store, String key, BlockStore.BlockLoader loader) throws IOException
+	{
+		try (FileChannel channel = store.open(key, loader)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(1);
+			Assert.assertEquals(1, channel.read(buffer));
+			return buffer.get(0);
+		}
+	}
+
+	private void write(Path target, char value) throws IOException
+	{
+		numLoads.incrementAndGet();
+
+		final byte[] data = new byte[BLOCK_SIZE];
+		Arrays.fill(data, (byte) value);
+		Files.write(target, data);
+	}
+}
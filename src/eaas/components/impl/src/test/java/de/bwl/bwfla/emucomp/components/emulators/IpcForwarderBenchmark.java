@@ -0,0 +1,201 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.components.emulators;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Throughput test for forwarding packets from many local stream-sockets, comparing the
+ * {@link IpcForwarder} with the previous approach of one blocking reader thread per socket,
+ * that reads 4 KB chunks and copies every chunk into a freshly allocated array. Each operation
+ * sends a burst of ethernet-sized packets round-robin over all sockets and waits until all
+ * bytes were consumed.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=de.bwl.bwfla.emucomp.components.emulators.IpcForwarderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx512m" })
+public class IpcForwarderBenchmark
+{
+	private static final int PACKET_SIZE = 1514;
+	private static final int PACKETS_PER_BURST = 10000;
+
+	@Param({ "16", "256" })
+	public int numSockets;
+
+	@Param({ "2" })
+	public int numPollers;
+
+	private final byte[] packet = new byte[PACKET_SIZE];
+	private final AtomicLong numBytesReceived = new AtomicLong(0L);
+	private final List<IpcSocket> receivers = new ArrayList<IpcSocket>();
+	private final List<IpcSocket> senders = new ArrayList<IpcSocket>();
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private IpcForwarder forwarder;
+	private ExecutorService consumer;
+	private volatile boolean running;
+
+
+	@Setup
+	public void setup() throws IOException
+	{
+		for (int i = 0; i < numSockets; ++i) {
+			final IpcSocket[] pair = IpcSocket.pair(IpcSocket.Type.STREAM);
+			receivers.add(pair[0]);
+			senders.add(pair[1]);
+		}
+
+		// Simulates the asynchronous completion of websocket sends
+		consumer = Executors.newSingleThreadExecutor();
+		running = true;
+	}
+
+	@TearDown
+	public void teardown() throws Exception
+	{
+		if (forwarder != null)
+			forwarder.shutdown();
+
+		// Unblock all reader threads
+		running = false;
+		for (IpcSocket socket : senders)
+			socket.close();
+
+		for (Thread thread : threads)
+			thread.join();
+
+		for (IpcSocket socket : receivers)
+			socket.close();
+
+		consumer.shutdown();
+	}
+
+	@Benchmark
+	public long threadPerSocket() throws Exception
+	{
+		if (threads.isEmpty()) {
+			for (IpcSocket socket : receivers) {
+				final Thread thread = new Thread(() -> this.receive(socket));
+				thread.setDaemon(true);
+				thread.start();
+				threads.add(thread);
+			}
+		}
+
+		return this.burst();
+	}
+
+	@Benchmark
+	public long multiplexed() throws Exception
+	{
+		if (forwarder == null) {
+			forwarder = new IpcForwarder(numPollers, IpcForwarder.DEFAULT_BUFFER_SIZE,
+					IpcForwarder.DEFAULT_MAX_POOLED_BUFFERS, Executors.defaultThreadFactory());
+
+			final IpcForwarder.Sink sink = new IpcForwarder.Sink() {
+				@Override
+				public void forward(ByteBuffer data, Runnable done)
+				{
+					numBytesReceived.addAndGet(data.remaining());
+					consumer.execute(done);
+				}
+
+				@Override
+				public void closed(Throwable error)
+				{
+					// Ignore it!
+				}
+			};
+
+			for (IpcSocket socket : receivers)
+				forwarder.register(socket, sink);
+		}
+
+		return this.burst();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		final OptionsBuilder options = new OptionsBuilder();
+		options.include(IpcForwarderBenchmark.class.getSimpleName());
+		new Runner(options.build()).run();
+	}
+
+
+	private long burst() throws IOException
+	{
+		final long expected = numBytesReceived.get() + (long) PACKETS_PER_BURST * PACKET_SIZE;
+		for (int i = 0; i < PACKETS_PER_BURST; ++i)
+			senders.get(i % numSockets).send(packet, true);
+
+		long current;
+		while ((current = numBytesReceived.get()) < expected)
+			Thread.yield();
+
+		return current;
+	}
+
+	/** Previous forwarding loop, as used by the per-connection threads */
+	private void receive(IpcSocket socket)
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(4 * 1024);
+		try {
+			while (running && socket.receive(buffer, true)) {
+				if (!buffer.hasRemaining())
+					break;  // Peer has closed its socket
+
+				final byte[] message = new byte[buffer.remaining()];
+				buffer.get(message);
+				numBytesReceived.addAndGet(message.length);
+			}
+		}
+		catch (IOException error) {
+			// Socket closed!
+		}
+	}
+}
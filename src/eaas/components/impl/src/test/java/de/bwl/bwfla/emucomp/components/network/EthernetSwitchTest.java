@@ -0,0 +1,296 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.components.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class EthernetSwitchTest
+{
+	private static final long MAC_A = 0x020000000001L;
+	private static final long MAC_B = 0x020000000002L;
+	private static final long MAC_C = 0x020000000003L;
+	private static final long BROADCAST = 0xFFFFFFFFFFFFL;
+	private static final long MULTICAST = 0x01005E000001L;
+
+	private EthernetSwitch ethswitch;
+	private TestPort a;
+	private TestPort b;
+	private TestPort c;
+
+
+	@Before
+	public void setUp()
+	{
+		this.setUp(EthernetSwitch.create("test", 16, EthernetSwitch.DEFAULT_AGING_TIME));
+	}
+
+	@After
+	public void tearDown()
+	{
+		ethswitch.close();
+	}
+
+	@Test
+	public void testFloodsUnknownAndLearnsSourceAddresses()
+	{
+		// Destination is unknown yet
+		a.receive(EthernetSwitchTest.frame(MAC_B, MAC_A));
+		EthernetSwitchTest.assertReceived(0, a);
+		EthernetSwitchTest.assertReceived(1, b, c);
+
+		// Destination was learned from the previous frame
+		b.receive(EthernetSwitchTest.frame(MAC_A, MAC_B));
+		EthernetSwitchTest.assertReceived(1, a);
+		EthernetSwitchTest.assertReceived(0, b, c);
+
+		a.receive(EthernetSwitchTest.frame(MAC_B, MAC_A));
+		EthernetSwitchTest.assertReceived(0, a, c);
+		EthernetSwitchTest.assertReceived(1, b);
+		Assert.assertEquals(2, ethswitch.getNumAddresses());
+	}
+
+	@Test
+	public void testFloodsBroadcastAndMulticast()
+	{
+		this.learn(a, MAC_A);
+		this.learn(b, MAC_B);
+
+		c.receive(EthernetSwitchTest.frame(BROADCAST, MAC_C));
+		EthernetSwitchTest.assertReceived(1, a, b);
+		EthernetSwitchTest.assertReceived(0, c);
+
+		c.receive(EthernetSwitchTest.frame(MULTICAST, MAC_C));
+		EthernetSwitchTest.assertReceived(1, a, b);
+		EthernetSwitchTest.assertReceived(0, c);
+
+		// Group addresses as source should never be learned
+		a.receive(EthernetSwitchTest.frame(MAC_B, MULTICAST));
+		b.receive(EthernetSwitchTest.frame(MULTICAST, MAC_B));
+		EthernetSwitchTest.assertReceived(1, a, c);
+	}
+
+	@Test
+	public void testFiltersFramesForIngressSegment()
+	{
+		this.learn(a, MAC_A);
+		a.receive(EthernetSwitchTest.frame(MAC_A, MAC_C));
+		EthernetSwitchTest.assertReceived(0, a, b, c);
+	}
+
+	@Test
+	public void testForwardsCopiesOfFrames()
+	{
+		final ByteBuffer frame = EthernetSwitchTest.frame(BROADCAST, MAC_A);
+		a.receive(frame);
+
+		// The ingress buffer can be reused by the caller
+		frame.put(0, (byte) 0x00);
+		Assert.assertEquals((byte) 0xFF, b.frames.get(0)[0]);
+		Assert.assertEquals((byte) 0xFF, c.frames.get(0)[0]);
+	}
+
+	@Test
+	public void testExpiresAgedAddresses() throws Exception
+	{
+		ethswitch.close();
+		this.setUp(EthernetSwitch.create("test", 16, 100L));
+
+		this.learn(a, MAC_A);
+		b.receive(EthernetSwitchTest.frame(MAC_A, MAC_B));
+		EthernetSwitchTest.assertReceived(1, a);
+		EthernetSwitchTest.assertReceived(0, c);
+
+		Thread.sleep(250L);
+
+		// Expired destinations are flooded again
+		b.receive(EthernetSwitchTest.frame(MAC_A, MAC_B));
+		EthernetSwitchTest.assertReceived(1, a, c);
+	}
+
+	@Test
+	public void testRefreshesMovedAddresses()
+	{
+		this.learn(a, MAC_A);
+		this.learn(c, MAC_A);
+
+		b.receive(EthernetSwitchTest.frame(MAC_A, MAC_B));
+		EthernetSwitchTest.assertReceived(0, a);
+		EthernetSwitchTest.assertReceived(1, c);
+	}
+
+	@Test
+	public void testLearnsWhenTableIsFull()
+	{
+		for (int i = 0; i < EthernetSwitch.MAX_MAC_TABLE_SIZE; ++i)
+			this.learn(c, 0x060000000000L + i);
+
+		Assert.assertEquals(EthernetSwitch.MAX_MAC_TABLE_SIZE, ethswitch.getNumAddresses());
+
+		// A new station must still be learned, evicting least recently seen ones
+		this.learn(a, MAC_A);
+		Assert.assertTrue(ethswitch.getNumAddresses() <= EthernetSwitch.MAX_MAC_TABLE_SIZE);
+
+		b.receive(EthernetSwitchTest.frame(MAC_A, MAC_B));
+		EthernetSwitchTest.assertReceived(1, a);
+		EthernetSwitchTest.assertReceived(0, c);
+	}
+
+	@Test
+	public void testEvictsAgedAddressesFirst() throws Exception
+	{
+		ethswitch.close();
+		this.setUp(EthernetSwitch.create("test", 16, 100L));
+
+		for (int i = 0; i < EthernetSwitch.MAX_MAC_TABLE_SIZE; ++i)
+			this.learn(c, 0x060000000000L + i);
+
+		Thread.sleep(250L);
+
+		this.learn(a, MAC_A);
+		Assert.assertEquals(1, ethswitch.getNumAddresses());
+	}
+
+	@Test
+	public void testForgetsAddressesOfDetachedPorts()
+	{
+		this.learn(a, MAC_A);
+		a.close();
+		Assert.assertEquals(2, ethswitch.getNumPorts());
+		Assert.assertEquals(0, ethswitch.getNumAddresses());
+
+		b.receive(EthernetSwitchTest.frame(MAC_A, MAC_B));
+		EthernetSwitchTest.assertReceived(0, a);
+		EthernetSwitchTest.assertReceived(1, c);
+	}
+
+	@Test
+	public void testHubFloodsAllFrames()
+	{
+		ethswitch.close();
+		this.setUp(EthernetSwitch.hub("test"));
+
+		this.learn(a, MAC_A);
+		b.receive(EthernetSwitchTest.frame(MAC_A, MAC_B));
+		EthernetSwitchTest.assertReceived(1, a, c);
+		Assert.assertEquals(0, ethswitch.getNumAddresses());
+	}
+
+	@Test
+	public void testDropsInvalidFrames()
+	{
+		a.receive(ByteBuffer.allocate(13));
+		EthernetSwitchTest.assertReceived(0, b, c);
+		Assert.assertTrue(ethswitch.toString().contains("invalid: 1"));
+	}
+
+	@Test
+	public void testDropsFramesForStalledPorts()
+	{
+		final TestPort stalled = new TestPort(ethswitch, "stalled");
+		stalled.blocked = true;
+		stalled.open();
+
+		for (int i = 0; i < 20; ++i)
+			a.receive(EthernetSwitchTest.frame(BROADCAST, MAC_A));
+
+		// Other ports are not affected
+		EthernetSwitchTest.assertReceived(20, b, c);
+		Assert.assertTrue(stalled.toString().contains("queued: 16"));
+		Assert.assertTrue(stalled.toString().contains("dropped: 4"));
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private void setUp(EthernetSwitch ethswitch)
+	{
+		this.ethswitch = ethswitch;
+		this.a = new TestPort(ethswitch, "a");
+		this.b = new TestPort(ethswitch, "b");
+		this.c = new TestPort(ethswitch, "c");
+		a.open();
+		b.open();
+		c.open();
+	}
+
+	/** Lets the switch learn the address on the port, by sending a broadcast from it */
+	private void learn(TestPort port, long address)
+	{
+		port.receive(EthernetSwitchTest.frame(BROADCAST, address));
+		for (TestPort other : new TestPort[] { a, b, c })
+			other.frames.clear();
+	}
+
+	private static ByteBuffer frame(long dst, long src)
+	{
+		final ByteBuffer frame = ByteBuffer.allocate(60);
+		frame.putShort((short) (dst >>> 32));
+		frame.putInt((int) dst);
+		frame.putShort((short) (src >>> 32));
+		frame.putInt((int) src);
+		frame.putShort((short) 0x0800);
+		frame.rewind();
+		return frame;
+	}
+
+	private static void assertReceived(int expected, TestPort... ports)
+	{
+		for (TestPort port : ports) {
+			Assert.assertEquals(port.getName(), expected, port.frames.size());
+			port.frames.clear();
+		}
+	}
+
+	private static class TestPort extends EthernetSwitch.Port
+	{
+		private final List<byte[]> frames = new ArrayList<byte[]>();
+		private boolean blocked = false;
+
+		public TestPort(EthernetSwitch owner, String name)
+		{
+			super(owner, name);
+		}
+
+		@Override
+		protected boolean transmit(Queue<ByteBuffer> queue, Runnable done)
+		{
+			if (blocked)
+				return false;  // Transmission never completes
+
+			ByteBuffer frame;
+			while ((frame = queue.poll()) != null) {
+				final byte[] bytes = new byte[frame.remaining()];
+				frame.get(bytes);
+				frames.add(bytes);
+			}
+
+			return true;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.emucomp.components.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import de.bwl.bwfla.emucomp.components.emulators.IpcSocket;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/** Tests for the VDE control protocol, using real domain sockets */
+public class VdePortServerTest
+{
+	private static final int REQUEST_MAGIC = 0xFEEDFACE;
+	private static final int REQUEST_VERSION = 3;
+	private static final int SOCKADDR_LENGTH = 2 + 108;
+	private static final short AF_UNIX = 1;
+	private static final int TIMEOUT = 5000;  // in ms
+
+	private Path basedir;
+	private EthernetSwitch ethswitch;
+	private TestPort local;
+	private final List<IpcSocket> sockets = new ArrayList<IpcSocket>();
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		basedir = Files.createTempDirectory("vde-");
+		ethswitch = EthernetSwitch.create("test", 16, EthernetSwitch.DEFAULT_AGING_TIME);
+		ethswitch.listen(basedir.resolve("switch"));
+
+		local = new TestPort(ethswitch, "local");
+		local.open();
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		for (IpcSocket socket : sockets)
+			socket.close();
+
+		ethswitch.close();
+		try (Stream<Path> paths = Files.walk(basedir)) {
+			paths.sorted(Comparator.reverseOrder())
+					.forEach((path) -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testExchangesFramesWithClient() throws Exception
+	{
+		final IpcSocket data = this.newDataSocket("client");
+		final IpcSocket control = this.connect();
+		final String port = this.attach(control, data);
+		Assert.assertTrue(port.startsWith(basedir.resolve("switch").toString()));
+		VdePortServerTest.await(() -> ethswitch.getNumPorts() == 2);
+
+		// Client -> switch
+		final byte[] outgoing = VdePortServerTest.frame(0xFFFFFFFFFFFFL, 0x020000000001L);
+		data.sendto(port, outgoing, true);
+		VdePortServerTest.await(() -> local.frames.size() == 1);
+		Assert.assertArrayEquals(outgoing, local.frames.get(0));
+
+		// Switch -> client, using the learned address
+		final byte[] incoming = VdePortServerTest.frame(0x020000000001L, 0x020000000002L);
+		local.receive(ByteBuffer.wrap(incoming));
+
+		final ByteBuffer buffer = ByteBuffer.allocate(2048);
+		Assert.assertTrue(data.receive(buffer, TIMEOUT));
+		final byte[] received = new byte[buffer.remaining()];
+		buffer.get(received);
+		Assert.assertArrayEquals(incoming, received);
+	}
+
+	@Test
+	public void testDetachesPortWhenClientExits() throws Exception
+	{
+		final IpcSocket control = this.connect();
+		this.attach(control, this.newDataSocket("client"));
+		VdePortServerTest.await(() -> ethswitch.getNumPorts() == 2);
+
+		sockets.remove(control);
+		control.close();
+		VdePortServerTest.await(() -> ethswitch.getNumPorts() == 1);
+	}
+
+	@Test
+	public void testRejectsInvalidRequests() throws Exception
+	{
+		final IpcSocket control = this.connect();
+		final ByteBuffer request = VdePortServerTest.request(basedir.resolve("client").toString());
+		request.putInt(0, 0xDEADBEEF);
+		control.send(request.array(), true);
+
+		// The server closes the connection without a reply
+		final ByteBuffer reply = ByteBuffer.allocate(SOCKADDR_LENGTH);
+		Assert.assertTrue(control.receive(reply, TIMEOUT));
+		Assert.assertFalse(reply.hasRemaining());
+		Assert.assertEquals(1, ethswitch.getNumPorts());
+	}
+
+	@Test
+	public void testStalledClientDoesNotBlockOthers() throws Exception
+	{
+		// Connect without sending a request
+		this.connect();
+
+		final long start = System.currentTimeMillis();
+		this.attach(this.connect(), this.newDataSocket("client"));
+		Assert.assertTrue(System.currentTimeMillis() - start < TIMEOUT / 2);
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private IpcSocket newDataSocket(String name) throws IOException
+	{
+		final IpcSocket socket = IpcSocket.create(basedir.resolve(name).toString(), IpcSocket.Type.DGRAM);
+		sockets.add(socket);
+		return socket;
+	}
+
+	private IpcSocket connect() throws IOException
+	{
+		final String path = basedir.resolve("switch")
+				.resolve("ctl")
+				.toString();
+
+		final IpcSocket socket = IpcSocket.connect(path, IpcSocket.Type.STREAM);
+		sockets.add(socket);
+		return socket;
+	}
+
+	/** Sends a request for the data socket and returns the switch port's address */
+	private String attach(IpcSocket control, IpcSocket data) throws IOException
+	{
+		control.send(VdePortServerTest.request(data.getName()).array(), true);
+
+		final ByteBuffer reply = ByteBuffer.allocate(SOCKADDR_LENGTH)
+				.order(ByteOrder.nativeOrder());
+
+		Assert.assertTrue(control.receive(reply, TIMEOUT));
+		Assert.assertEquals(SOCKADDR_LENGTH, reply.remaining());
+		Assert.assertEquals(AF_UNIX, reply.getShort());
+
+		final byte[] path = new byte[SOCKADDR_LENGTH - 2];
+		reply.get(path);
+
+		int length = 0;
+		while (path[length] != 0)
+			++length;
+
+		return new String(path, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/** Returns a struct request_v3 */
+	private static ByteBuffer request(String path)
+	{
+		final ByteBuffer request = ByteBuffer.allocate(4 + 4 + 4 + SOCKADDR_LENGTH)
+				.order(ByteOrder.nativeOrder());
+
+		request.putInt(REQUEST_MAGIC);
+		request.putInt(REQUEST_VERSION);
+		request.putInt(0);
+		request.putShort(AF_UNIX);
+		request.put(path.getBytes(StandardCharsets.UTF_8));
+		return request;
+	}
+
+	private static byte[] frame(long dst, long src)
+	{
+		final ByteBuffer frame = ByteBuffer.allocate(60);
+		frame.putShort((short) (dst >>> 32));
+		frame.putInt((int) dst);
+		frame.putShort((short) (src >>> 32));
+		frame.putInt((int) src);
+		frame.putShort((short) 0x0800);
+		return frame.array();
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline)
+				Assert.fail("Condition not met within " + TIMEOUT + " ms!");
+
+			Thread.sleep(10L);
+		}
+	}
+
+	private static class TestPort extends EthernetSwitch.Port
+	{
+		private final List<byte[]> frames = new ArrayList<byte[]>();
+
+		public TestPort(EthernetSwitch owner, String name)
+		{
+			super(owner, name);
+		}
+
+		@Override
+		protected synchronized boolean transmit(Queue<ByteBuffer> queue, Runnable done)
+		{
+			ByteBuffer frame;
+			while ((frame = queue.poll()) != null) {
+				final byte[] bytes = new byte[frame.remaining()];
+				frame.get(bytes);
+				frames.add(bytes);
+			}
+
+			return true;
+		}
+	}
+}
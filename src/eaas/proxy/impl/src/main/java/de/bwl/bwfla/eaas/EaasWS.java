@@ -22,10 +22,18 @@ package de.bwl.bwfla.eaas;
 import java.net.URL;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
@@ -87,6 +95,9 @@ public class EaasWS
 	@Inject
 	private SessionRegistry sessions = null;
 
+	@Resource(name = "java:jboss/ee/concurrency/executor/io")
+	private ExecutorService executor = null;
+
 	private static final Logger			LOG	= Logger.getLogger(EaasWS.class.getName());
 	@Deprecated
 	private static Machine			    emulatorPort;
@@ -136,76 +147,117 @@ public class EaasWS
 	@WebMethod
 	public String createSessionWithOptions(final String xmlConfig, SessionOptions options) throws BWFLAException
 	{
-	    final ComponentConfiguration config;
-
 	    if(options == null)
 	    	options = new SessionOptions();
 
-		List<String> selectors;
-		if(options.selectors == null)
-			selectors = Collections.EMPTY_LIST;
-		else
-			selectors = options.selectors;
-
-	    try  {
-	        config = ComponentConfiguration.fromValue(xmlConfig, ComponentConfiguration.class);
-	    } catch (JAXBException e) {
-            LOG.log(Level.SEVERE, "Could not unmarshal configuration", e);
-	        throw new IllegalArgumentException("Could not unmarshal configuration", e);
-	    }
-	    
+	    final ComponentConfiguration config = EaasWS.parseConfiguration(xmlConfig);
         final UUID allocationId = UUID.randomUUID();
 		final String componentId = allocationId.toString();
 		final String tenantId = options.getTenantId();
 	    try {
-            for (IAccessControlList acl : sortedAcls) {
-            	if(acl instanceof EnvironmentLock) {
-					if(options.lockEnvironment)
-						acl.checkPermission(allocationId, options.userId, config);
-				}
-				else acl.checkPermission(allocationId, options.userId, config);
-            }
-            
-            final List<LabelSelector> labelSelectors = this.parseLabelSelectors(selectors);
+            this.checkPermissions(allocationId, options, config);
 
-            ResourceSpec spec = null;
-            if (config instanceof Environment) {
-				// TODO: use per environment spec!
-				spec = defaultSessionSpec;
-			}
-            else
-            	spec = ResourceSpec.create(1, CpuUnit.MILLICORES, 1, MemoryUnit.MEGABYTES);
+            final List<LabelSelector> labelSelectors = this.parseLabelSelectors(options.getSelectors());
+            final ResourceSpec spec = this.getResourceSpec(config);
 
-	        final ResourceHandle resource = clusterManager.allocate(tenantId, labelSelectors, allocationId, spec, Duration.ofMinutes(2));
-			try {
-				final Component component = serviceCache.getComponentPort(resource.getNodeID());
-				component.initialize(componentId, config.value(false));
-			}
-			catch (Exception error) {
-				clusterManager.release(resource);
-				throw error;
-			}
+	        final ResourceHandle resource = clusterManager.allocate(tenantId, labelSelectors, allocationId, spec, ALLOCATION_TIMEOUT);
+			this.initializeComponent(componentId, resource, config);
 
 			sessions.add(componentId, resource, () -> this.releaseSession(componentId));
             return componentId;
         }
         catch (Exception error) {
             LOG.log(Level.WARNING, "Creating new session failed!\n", error);
-            LOG.info("Rolling back all ACL allocations...");
-            for (IAccessControlList acl : sortedAcls) {
-                acl.release(allocationId, null);
-            }
-
+            this.rollbackAclAllocations(allocationId);
             throw new BWFLAException("Creating new session failed!", error);
         }
 	}
 
+	/**
+	 * Creates a new session without waiting for it to become ready. The returned session
+	 * progresses through allocation and initialization in the background, its status can
+	 * be polled with {@link #getSessionStatus(String)} or observed via server-sent events.
+	 */
+	@WebMethod
+	public String createSessionAsync(final String xmlConfig, SessionOptions options) throws BWFLAException
+	{
+		final SessionOptions opts = (options != null) ? options : new SessionOptions();
+		final ComponentConfiguration config = EaasWS.parseConfiguration(xmlConfig);
+		final UUID allocationId = UUID.randomUUID();
+		final String componentId = allocationId.toString();
+		final SessionLaunch launch = new SessionLaunch(componentId);
+		sessions.addLaunch(launch);
+
+		final Supplier<CompletableFuture<ResourceHandle>> allocation = () -> {
+			try {
+				this.checkPermissions(allocationId, opts, config);
+
+				final List<LabelSelector> selectors = this.parseLabelSelectors(opts.getSelectors());
+				final ResourceSpec spec = this.getResourceSpec(config);
+				return clusterManager.allocateAsync(opts.getTenantId(), selectors, allocationId, spec,
+						ALLOCATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			catch (Exception error) {
+				throw new CompletionException(error);
+			}
+		};
+
+		final Function<ResourceHandle, ResourceHandle> initializer = (resource) -> {
+			launch.update(SessionLaunch.State.INITIALIZING);
+			try {
+				this.initializeComponent(componentId, resource, config);
+			}
+			catch (Exception error) {
+				throw new CompletionException(error);
+			}
+
+			return resource;
+		};
+
+		final BiConsumer<ResourceHandle, Throwable> finalizer = (resource, error) -> {
+			if (error != null) {
+				final Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+				LOG.log(Level.WARNING, "Creating new session '" + componentId + "' failed!\n", cause);
+				this.rollbackAclAllocations(allocationId);
+				launch.update(SessionLaunch.State.FAILED, cause.toString());
+				return;
+			}
+
+			// Was the session released, while it was created?
+			if (!sessions.complete(launch, resource, () -> this.releaseSession(componentId)))
+				this.releaseSession(componentId);
+		};
+
+		// Blocking steps run on the executor, allocation completes on cluster-manager's threads
+		CompletableFuture.supplyAsync(allocation, executor)
+				.thenCompose((future) -> future)
+				.thenApplyAsync(initializer, executor)
+				.whenComplete(finalizer);
+
+		return componentId;
+	}
+
+	@WebMethod
+	public SessionStatus getSessionStatus(String componentId) throws BWFLAException
+	{
+		final SessionLaunch launch = sessions.lookupLaunch(componentId);
+		if (launch != null)
+			return new SessionStatus(launch.getState().value(), launch.getError());
+
+		// Sessions created synchronously are ready, when registered
+		if (sessions.lookup(componentId) != null)
+			return new SessionStatus(SessionLaunch.State.READY.value(), null);
+
+		throw new BWFLAException("Unknown session: " + componentId);
+	}
+
 	@WebMethod
 	public void releaseSession(String componentId)
 	{
-		final SessionRegistry.Entry session = sessions.remove(componentId);
-        if (session == null)
-        	return;
+		// Sessions still being created are released, once their creation completes
+		final SessionRegistry.Entry session = sessions.release(componentId);
+		if (session == null)
+			return;
 
 		final ResourceHandle resource = session.getResourceHandle();
         try {
@@ -223,9 +275,67 @@ public class EaasWS
 
 
 	/* ==================== Internal Helpers ==================== */
-	
+
+	private static final Duration ALLOCATION_TIMEOUT = Duration.ofMinutes(2);
+
+	private static ComponentConfiguration parseConfiguration(String xmlConfig)
+	{
+	    try  {
+	        return ComponentConfiguration.fromValue(xmlConfig, ComponentConfiguration.class);
+	    } catch (JAXBException e) {
+            LOG.log(Level.SEVERE, "Could not unmarshal configuration", e);
+	        throw new IllegalArgumentException("Could not unmarshal configuration", e);
+	    }
+	}
+
+	private void checkPermissions(UUID allocationId, SessionOptions options, ComponentConfiguration config)
+			throws BWFLAException
+	{
+		for (IAccessControlList acl : sortedAcls) {
+			if(acl instanceof EnvironmentLock) {
+				if(options.lockEnvironment)
+					acl.checkPermission(allocationId, options.userId, config);
+			}
+			else acl.checkPermission(allocationId, options.userId, config);
+		}
+	}
+
+	private void rollbackAclAllocations(UUID allocationId)
+	{
+		LOG.info("Rolling back all ACL allocations...");
+		for (IAccessControlList acl : sortedAcls) {
+			acl.release(allocationId, null);
+		}
+	}
+
+	private ResourceSpec getResourceSpec(ComponentConfiguration config)
+	{
+		if (config instanceof Environment) {
+			// TODO: use per environment spec!
+			return defaultSessionSpec;
+		}
+
+		return ResourceSpec.create(1, CpuUnit.MILLICORES, 1, MemoryUnit.MEGABYTES);
+	}
+
+	private void initializeComponent(String componentId, ResourceHandle resource, ComponentConfiguration config)
+			throws Exception
+	{
+		try {
+			final Component component = serviceCache.getComponentPort(resource.getNodeID());
+			component.initialize(componentId, config.value(false));
+		}
+		catch (Exception error) {
+			clusterManager.release(resource);
+			throw error;
+		}
+	}
+
 	private List<LabelSelector> parseLabelSelectors(List<String> selectors) throws BWFLAException
 	{
+		if (selectors == null)
+			return Collections.emptyList();
+
 		final List<LabelSelector> list = new ArrayList<LabelSelector>(selectors.size());
 		final LabelSelectorParser parser = new LabelSelectorParser();
 		try {
@@ -239,6 +349,37 @@ public class EaasWS
 		return list;
 	}
 
+	/** Status of a session, as reported to clients */
+	public static class SessionStatus {
+		private String state;
+		private String error;
+
+		public SessionStatus() {
+			// Empty!
+		}
+
+		public SessionStatus(String state, String error) {
+			this.state = state;
+			this.error = error;
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		public void setState(String state) {
+			this.state = state;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		public void setError(String error) {
+			this.error = error;
+		}
+	}
+
 	public static class SessionOptions {
 		List<String> selectors;
 		String userId;
@@ -0,0 +1,210 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import de.bwl.bwfla.eaas.cluster.NodeID;
+import de.bwl.bwfla.emucomp.api.ComponentState;
+import org.apache.tamaya.inject.api.Config;
+
+
+/**
+ * Receives batched component heartbeats from emulator nodes. Every request carries all
+ * components of one node, with their current states, and the components released since
+ * the previous heartbeat:
+ * <pre>
+ * { "node": "...", "interval": 5000,
+ *   "components": [ { "id": "...", "state": "ok" }, ... ],
+ *   "removed": [ "...", ... ] }
+ * </pre>
+ * Requests must carry the node access token. Components are accepted only from the node
+ * they were allocated on, which is identified by the request's source address or the
+ * reported node name. All other components are ignored.
+ */
+@Path("api/v1/heartbeats")
+public class HeartbeatAPI
+{
+	private static final Logger LOG = Logger.getLogger(HeartbeatAPI.class.getName());
+
+	/* Supported Http-Headers **/
+	private static class Headers
+	{
+		private static final String NODE_ACCESS_TOKEN = "X-Node-Access-Token";
+	}
+
+	@Inject
+	private SessionRegistry sessions;
+
+	@Inject
+	@Config("ws.session_heartbeat.access_token")
+	private String accessToken;
+
+	@Context
+	private HttpServletRequest request;
+
+
+	/* ========== Public API ========== */
+
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	public Response heartbeat(@HeaderParam(Headers.NODE_ACCESS_TOKEN) String token, InputStream input)
+	{
+		if (!this.isAuthorized(token)) {
+			LOG.warning("Rejecting unauthorized heartbeat from " + request.getRemoteAddr());
+			return Response.status(Status.UNAUTHORIZED)
+					.build();
+		}
+
+		final JsonObject heartbeat;
+		final JsonArray components;
+		final JsonArray removed;
+		final long interval;
+		try (JsonReader reader = Json.createReader(input)) {
+			heartbeat = reader.readObject();
+			interval = heartbeat.getJsonNumber("interval").longValue();
+			components = heartbeat.getJsonArray("components");
+			removed = heartbeat.getJsonArray("removed");
+			if (interval <= 0L || components == null)
+				throw new IllegalArgumentException("Invalid heartbeat: " + heartbeat);
+		}
+		catch (Exception error) {
+			LOG.log(Level.WARNING, "Parsing heartbeat failed!", error);
+			return Response.status(Status.BAD_REQUEST)
+					.build();
+		}
+
+		final String node = heartbeat.getString("node", "unknown");
+		final Set<String> addresses = new HashSet<String>();
+		addresses.add(request.getRemoteAddr());
+		addresses.add(node);
+
+		int numUnknown = 0;
+		int numForeign = 0;
+		for (JsonObject component : components.getValuesAs(JsonObject.class)) {
+			final String componentId = component.getString("id");
+			final SessionRegistry.Entry session = sessions.lookup(componentId);
+			if (session == null) {
+				++numUnknown;
+				continue;
+			}
+
+			if (!HeartbeatAPI.isAllocatedOn(session, addresses)) {
+				++numForeign;
+				continue;
+			}
+
+			final ComponentState state = HeartbeatAPI.toComponentState(component.getString("state", null));
+			if (!sessions.heartbeat(componentId, state, interval))
+				++numUnknown;
+		}
+
+		if (removed != null) {
+			for (JsonString component : removed.getValuesAs(JsonString.class)) {
+				final SessionRegistry.Entry session = sessions.lookup(component.getString());
+				if (session == null)
+					continue;
+
+				if (HeartbeatAPI.isAllocatedOn(session, addresses))
+					sessions.released(component.getString());
+				else ++numForeign;
+			}
+		}
+
+		if (numUnknown > 0)
+			LOG.fine("Node '" + node + "' reported " + numUnknown + " component(s) without sessions");
+
+		if (numForeign > 0) {
+			LOG.warning("Node '" + node + "' (" + request.getRemoteAddr() + ") reported " + numForeign
+					+ " component(s) allocated on other nodes, ignoring them");
+		}
+
+		return Response.noContent()
+				.build();
+	}
+
+
+	/* ========== Internal Helpers ========== */
+
+	private boolean isAuthorized(String token)
+	{
+		if (token == null || accessToken == null || accessToken.isEmpty())
+			return false;
+
+		return MessageDigest.isEqual(accessToken.getBytes(StandardCharsets.UTF_8),
+				token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** Returns true, if the session's component was allocated on a node with one of the addresses */
+	private static boolean isAllocatedOn(SessionRegistry.Entry session, Set<String> addresses)
+	{
+		final NodeID nid = session.getResourceHandle().getNodeID();
+		if (addresses.contains(HeartbeatAPI.toHostName(nid.getIpAddress())))
+			return true;
+
+		final String fqdn = nid.getDomainName();
+		return fqdn != null && addresses.contains(HeartbeatAPI.toHostName(fqdn));
+	}
+
+	/** Strips an optional port from the node's address */
+	private static String toHostName(String address)
+	{
+		final int index = address.lastIndexOf(':');
+		if (index < 0 || address.indexOf(':') != index)
+			return address;  // No port or an IPv6 address
+
+		return address.substring(0, index);
+	}
+
+	private static ComponentState toComponentState(String state)
+	{
+		if (state == null)
+			return null;
+
+		try {
+			return ComponentState.valueOf(state.toUpperCase());
+		}
+		catch (IllegalArgumentException error) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+
+/** Progress of a session, that is created asynchronously */
+public class SessionLaunch
+{
+	private final String componentId;
+	private final List<Consumer<SessionLaunch>> observers;
+	private volatile State state;
+	private volatile String error;
+	private volatile boolean cancelled;
+
+
+	public enum State
+	{
+		ALLOCATING,
+		INITIALIZING,
+		READY,
+		FAILED;
+
+		public String value()
+		{
+			return this.name().toLowerCase();
+		}
+	}
+
+	public SessionLaunch(String componentId)
+	{
+		this.componentId = componentId;
+		this.observers = new CopyOnWriteArrayList<Consumer<SessionLaunch>>();
+		this.state = State.ALLOCATING;
+		this.error = null;
+		this.cancelled = false;
+	}
+
+	public String getComponentId()
+	{
+		return componentId;
+	}
+
+	public State getState()
+	{
+		return state;
+	}
+
+	/** Returns the failure's description or null */
+	public String getError()
+	{
+		return error;
+	}
+
+	public boolean isDone()
+	{
+		return state == State.READY || state == State.FAILED;
+	}
+
+	/** Requests the session to be released, as soon as it is ready */
+	public void cancel()
+	{
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/** Registers an observer, which is called immediately and on every following state change */
+	public void observe(Consumer<SessionLaunch> observer)
+	{
+		observers.add(observer);
+		observer.accept(this);
+	}
+
+	public void unobserve(Consumer<SessionLaunch> observer)
+	{
+		observers.remove(observer);
+	}
+
+	public void update(State state)
+	{
+		this.update(state, null);
+	}
+
+	public void update(State state, String error)
+	{
+		this.error = error;
+		this.state = state;
+		observers.forEach((observer) -> observer.accept(this));
+	}
+}
@@ -22,6 +22,8 @@ package de.bwl.bwfla.eaas;
 import de.bwl.bwfla.api.emucomp.Component;
 import de.bwl.bwfla.eaas.cluster.ResourceHandle;
 import de.bwl.bwfla.eaas.proxy.DirectComponentClient;
+import de.bwl.bwfla.emucomp.api.ComponentState;
+import org.apache.tamaya.inject.api.Config;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -29,24 +31,32 @@ import javax.annotation.Resource;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.time.Duration;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
+/**
+ * Registry of active sessions. Emulator nodes push heartbeats for their components, which
+ * extend the deadlines of the corresponding sessions. Sessions are expired by a timer wheel,
+ * when their deadlines are missed. Before an expired session is removed, its component is
+ * probed once, hence sessions on nodes not sending heartbeats are polled at the probe interval.
+ */
 @ApplicationScoped
 public class SessionRegistry
 {
+	private final Logger log = Logger.getLogger(SessionRegistry.class.getName());
+
 	/** Active sessions */
 	private final Map<String, Entry> sessions = new ConcurrentHashMap<String, Entry>();
 
-	private AtomicBoolean cancelled = new AtomicBoolean(false);
+	/** Sessions created asynchronously, kept for a while after completion */
+	private final Map<String, SessionLaunch> launches = new ConcurrentHashMap<String, SessionLaunch>();
 
 	@Resource(name = "java:jboss/ee/concurrency/scheduler/default")
 	private ScheduledExecutorService scheduler = null;
@@ -57,13 +67,46 @@ public class SessionRegistry
 	@Inject
 	private DirectComponentClient components = null;
 
-	/** Intervall between session-cleanup runs */
-	private static final Duration CLEANUP_INTERVAL = Duration.ofSeconds(15);
+	/** Number of heartbeats, that can be missed before a session expires */
+	@Inject
+	@Config("ws.session_heartbeat.max_missed")
+	private int maxMissedHeartbeats = 3;
+
+	/** Intervall between probes of components without heartbeats */
+	@Inject
+	@Config("ws.session_heartbeat.probe_interval")
+	private Duration probeInterval = Duration.ofSeconds(15);
+
+	private TimerWheel<Entry> deadlines = null;
+	private ScheduledFuture<?> ticker = null;
+
+	/** Resolution of session deadlines */
+	private static final Duration TICK_DURATION = Duration.ofSeconds(1);
+	private static final int NUM_WHEEL_SLOTS = 512;
+
+	/** Time to keep completed launches observable */
+	private static final Duration LAUNCH_RETENTION_TIME = Duration.ofMinutes(5);
+
+
+	public SessionRegistry()
+	{
+		// Empty!
+	}
 
+	/** Constructor for use without injected resources */
+	SessionRegistry(ScheduledExecutorService scheduler, ExecutorService executor)
+	{
+		this.scheduler = scheduler;
+		this.executor = executor;
+		this.initialize();
+	}
 
 	public void add(String componentId, ResourceHandle handle, Runnable cleanup)
 	{
-		this.sessions.put(componentId, new Entry(componentId, handle, cleanup));
+		final Entry entry = new Entry(componentId, handle, cleanup);
+		entry.setDeadline(SessionRegistry.timestamp() + probeInterval.toMillis());
+		this.sessions.put(componentId, entry);
+		deadlines.schedule(entry);
 	}
 
 	public Entry remove(String componentId)
@@ -71,23 +114,111 @@ public class SessionRegistry
 		return this.sessions.remove(componentId);
 	}
 
+	/**
+	 * Removes a session, that should be released. If the session is still being launched,
+	 * the launch is cancelled instead and {@link #complete(SessionLaunch, ResourceHandle, Runnable)}
+	 * reports that the session must be released, once it is ready.
+	 *
+	 * @return The removed session, to be released by the caller, or null
+	 */
+	public Entry release(String componentId)
+	{
+		final Entry session = this.sessions.remove(componentId);
+		if (session != null)
+			return session;
+
+		final SessionLaunch launch = launches.get(componentId);
+		if (launch == null)
+			return null;
+
+		launch.cancel();
+
+		// The launch could have completed between the removal and the cancellation.
+		// Either the retry or the launch's check in complete() will see the other side.
+		return this.sessions.remove(componentId);
+	}
+
+	/**
+	 * Registers the session of a launch, that completed successfully.
+	 *
+	 * @return false, if the launch was cancelled and the session must be released by the caller, else true
+	 */
+	public boolean complete(SessionLaunch launch, ResourceHandle handle, Runnable cleanup)
+	{
+		this.add(launch.getComponentId(), handle, cleanup);
+		launch.update(SessionLaunch.State.READY);
+		return !launch.isCancelled();
+	}
+
 	public Entry lookup(String componentId)
 	{
 		return this.sessions.get(componentId);
 	}
 
+	public void addLaunch(SessionLaunch launch)
+	{
+		final String componentId = launch.getComponentId();
+		launches.put(componentId, launch);
+		launch.observe((update) -> {
+			if (!update.isDone())
+				return;
+
+			final Runnable cleanup = () -> launches.remove(componentId, launch);
+			scheduler.schedule(cleanup, LAUNCH_RETENTION_TIME.toMillis(), TimeUnit.MILLISECONDS);
+		});
+	}
 
-	public static class Entry
+	public SessionLaunch lookupLaunch(String componentId)
+	{
+		return launches.get(componentId);
+	}
+
+	/**
+	 * Extends the deadline of a session, whose component was reported alive by its node.
+	 * @param interval Node's heartbeat interval in ms
+	 * @return true if the session is registered, else false
+	 */
+	public boolean heartbeat(String componentId, ComponentState state, long interval)
+	{
+		final Entry session = this.sessions.get(componentId);
+		if (session == null)
+			return false;
+
+		session.setDeadline(SessionRegistry.timestamp() + maxMissedHeartbeats * interval);
+		final ComponentState prevstate = session.setComponentState(state);
+		if (state != prevstate && state == ComponentState.FAILED)
+			log.warning("Component '" + componentId + "' has failed!");
+
+		return true;
+	}
+
+	/** Cleans up a session, whose component was released by its node */
+	public void released(String componentId)
+	{
+		final Entry session = this.sessions.get(componentId);
+		if (session == null)
+			return;
+
+		log.info("Component '" + componentId + "' was released by its node! Removing it from registry...");
+		executor.execute(() -> this.cleanup(session));
+	}
+
+
+	public static class Entry implements TimerWheel.Timer
 	{
 		private final String componentId;
 		private final ResourceHandle handle;
 		private final Runnable callback;
+		private volatile long deadline;
+		private volatile ComponentState state;
 
 		public Entry(String componentId, ResourceHandle handle, Runnable callback)
 		{
 			this.componentId = componentId;
 			this.handle = handle;
 			this.callback = callback;
+			this.deadline = 0L;
+			this.state = null;
 		}
 
 		public String getComponentId()
@@ -100,6 +231,30 @@ public class SessionRegistry
 			return handle;
 		}
 
+		/** Returns the component's state, as last reported by its node or null */
+		public ComponentState getComponentState()
+		{
+			return state;
+		}
+
+		@Override
+		public long getDeadline()
+		{
+			return deadline;
+		}
+
+		private void setDeadline(long deadline)
+		{
+			this.deadline = deadline;
+		}
+
+		private ComponentState setComponentState(ComponentState state)
+		{
+			final ComponentState prevstate = this.state;
+			this.state = state;
+			return prevstate;
+		}
+
 		private Runnable getCleanupCallback()
 		{
 			return callback;
@@ -112,68 +267,77 @@ public class SessionRegistry
 	@PostConstruct
 	private void initialize()
 	{
-		final Runnable trigger = () -> executor.execute(new CleanupTask());
-		scheduler.schedule(trigger, CLEANUP_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+		final long tick = TICK_DURATION.toMillis();
+		this.deadlines = new TimerWheel<Entry>(tick, NUM_WHEEL_SLOTS, SessionRegistry.timestamp());
+
+		// Advancing the wheel is cheap, only probes are submitted to the executor
+		final Runnable trigger = () -> deadlines.advance(SessionRegistry.timestamp(), this::onDeadlineMissed);
+		this.ticker = scheduler.scheduleWithFixedDelay(trigger, tick, tick, TimeUnit.MILLISECONDS);
 	}
 
 	@PreDestroy
 	private void destroy()
 	{
-		this.cancelled.set(true);
+		if (ticker != null)
+			ticker.cancel(false);
 	}
 
-	private class CleanupTask implements Runnable
+	private void onDeadlineMissed(Entry session)
 	{
-		private final Logger log = Logger.getLogger(CleanupTask.class.getName());
+		if (sessions.get(session.getComponentId()) != session)
+			return;  // Session was already removed
 
-		@Override
-		public void run()
-		{
-			if (cancelled.get())
-				return;
+		executor.execute(() -> this.probe(session));
+	}
 
-			try {
-				final Iterator<Entry> iterator = sessions.values().iterator();
-				while (iterator.hasNext()) {
-					final Entry session = iterator.next();
-					if (this.isComponentReachable(session))
-						continue;  // Check next component
-
-					final String cid = session.getComponentId();
-					log.warning("Component '" + cid + "' is unreachable! Removing it from registry...");
-
-					// Execute cleanup-callback
-					final Runnable callback = session.getCleanupCallback();
-					if (callback != null) {
-						try {
-							callback.run();
-						}
-						catch (Exception error) {
-							log.log(Level.WARNING, "Running cleanup-callback for component '" + cid + "' failed!", error);
-						}
-					}
-
-					iterator.remove();
-				}
-			}
-			finally {
-				final Runnable trigger = () -> executor.execute(this);
-				scheduler.schedule(trigger, CLEANUP_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
-			}
+	private void probe(Entry session)
+	{
+		if (this.isComponentReachable(session)) {
+			// Node seems to not send heartbeats, check again later
+			final long deadline = SessionRegistry.timestamp() + probeInterval.toMillis();
+			session.setDeadline(Math.max(session.getDeadline(), deadline));
+			deadlines.schedule(session);
+			return;
 		}
 
-		private boolean isComponentReachable(Entry session)
-		{
+		log.warning("Component '" + session.getComponentId() + "' is unreachable! Removing it from registry...");
+		this.cleanup(session);
+	}
+
+	private void cleanup(Entry session)
+	{
+		final String cid = session.getComponentId();
+
+		// Execute cleanup-callback
+		final Runnable callback = session.getCleanupCallback();
+		if (callback != null) {
 			try {
-				final ResourceHandle resource = session.getResourceHandle();
-				final Component component = components.getComponentPort(resource.getNodeID());
-				component.getState(session.getComponentId());
+				callback.run();
 			}
 			catch (Exception error) {
-				return false;
+				log.log(Level.WARNING, "Running cleanup-callback for component '" + cid + "' failed!", error);
 			}
+		}
+
+		sessions.remove(cid, session);
+	}
 
-			return true;  // Component seems to be reachable!
+	private boolean isComponentReachable(Entry session)
+	{
+		try {
+			final ResourceHandle resource = session.getResourceHandle();
+			final Component component = components.getComponentPort(resource.getNodeID());
+			component.getState(session.getComponentId());
+		}
+		catch (Exception error) {
+			return false;
 		}
+
+		return true;  // Component seems to be reachable!
+	}
+
+	private static long timestamp()
+	{
+		return System.currentTimeMillis();
 	}
 }
@@ -0,0 +1,151 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas;
+
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+
+/** Status of sessions created with {@link EaasWS#createSessionAsync}, for polling or as server-sent events */
+@Path("api/v1/sessions")
+public class SessionStatusAPI
+{
+	private static final Logger LOG = Logger.getLogger(SessionStatusAPI.class.getName());
+
+	private static final String STATUS_EVENT = "status";
+
+	@Inject
+	private SessionRegistry sessions;
+
+
+	/* ========== Public API ========== */
+
+	@GET
+	@Path("/{componentId}/status")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getStatus(@PathParam("componentId") String componentId)
+	{
+		final SessionLaunch launch = sessions.lookupLaunch(componentId);
+		final String json = (launch != null) ? SessionStatusAPI.toJson(launch)
+				: SessionStatusAPI.toJson(this.findSession(componentId));
+
+		return Response.ok(json, MediaType.APPLICATION_JSON_TYPE)
+				.build();
+	}
+
+	/** Sends a status event on every state change, closing the stream when the launch is done */
+	@GET
+	@Path("/{componentId}/status")
+	@Produces(MediaType.SERVER_SENT_EVENTS)
+	public void observeStatus(@PathParam("componentId") String componentId, @Context SseEventSink sink, @Context Sse sse)
+	{
+		final SessionLaunch launch = sessions.lookupLaunch(componentId);
+		if (launch == null) {
+			final OutboundSseEvent event = SessionStatusAPI.newEvent(sse, SessionStatusAPI.toJson(this.findSession(componentId)));
+			sink.send(event)
+					.whenComplete((result, error) -> sink.close());
+
+			return;
+		}
+
+		final Consumer<SessionLaunch> observer = new Consumer<SessionLaunch>() {
+			@Override
+			public synchronized void accept(SessionLaunch update)
+			{
+				if (sink.isClosed()) {
+					update.unobserve(this);
+					return;
+				}
+
+				sink.send(SessionStatusAPI.newEvent(sse, SessionStatusAPI.toJson(update)))
+						.whenComplete((result, error) -> {
+							if (error != null)
+								LOG.log(Level.FINE, "Sending status of session " + componentId + " failed!", error);
+						});
+
+				if (update.isDone()) {
+					update.unobserve(this);
+					sink.close();
+				}
+			}
+		};
+
+		launch.observe(observer);
+	}
+
+
+	/* ========== Internal Helpers ========== */
+
+	private SessionRegistry.Entry findSession(String componentId)
+	{
+		final SessionRegistry.Entry session = sessions.lookup(componentId);
+		if (session == null)
+			throw new NotFoundException("Session not found: " + componentId);
+
+		return session;
+	}
+
+	private static String toJson(SessionLaunch launch)
+	{
+		final JsonObjectBuilder json = Json.createObjectBuilder()
+				.add("id", launch.getComponentId())
+				.add("state", launch.getState().value());
+
+		if (launch.getError() != null)
+			json.add("error", launch.getError());
+
+		return json.build().toString();
+	}
+
+	private static String toJson(SessionRegistry.Entry session)
+	{
+		// Sessions created synchronously are ready, when registered
+		return Json.createObjectBuilder()
+				.add("id", session.getComponentId())
+				.add("state", SessionLaunch.State.READY.value())
+				.build()
+				.toString();
+	}
+
+	private static OutboundSseEvent newEvent(Sse sse, String data)
+	{
+		return sse.newEventBuilder()
+				.name(STATUS_EVENT)
+				.mediaType(MediaType.APPLICATION_JSON_TYPE)
+				.data(data)
+				.build();
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+
+/**
+ * A hashed timer wheel for expiring deadlines, with a resolution of one tick.
+ * <p/>
+ * Deadlines can be extended without touching the wheel, by updating the value returned from
+ * {@link Timer#getDeadline()}. When a timer's slot is reached and its deadline was extended,
+ * the timer is moved to the slot of its new deadline instead of being expired. Hence frequent
+ * deadline updates are cheap, while every timer is visited at most once per expiration.
+ */
+// package-private
+class TimerWheel<T extends TimerWheel.Timer>
+{
+	private final Deque<T>[] slots;
+	private final long tick;
+	private long curtick;
+
+
+	/** A timer with a changeable deadline */
+	interface Timer
+	{
+		/** Returns the deadline as timestamp in ms */
+		long getDeadline();
+	}
+
+	/**
+	 * @param tick Duration of one tick in ms
+	 * @param numSlots Number of slots per wheel revolution
+	 * @param now Current timestamp in ms
+	 */
+	@SuppressWarnings("unchecked")
+	TimerWheel(long tick, int numSlots, long now)
+	{
+		this.slots = new Deque[numSlots];
+		for (int i = 0; i < numSlots; ++i)
+			slots[i] = new ArrayDeque<T>();
+
+		this.tick = tick;
+		this.curtick = now / tick;
+	}
+
+	/** Adds a new timer to the wheel */
+	synchronized void schedule(T timer)
+	{
+		// Timers in the past expire on the next tick
+		final long deadline = Math.max(timer.getDeadline() / tick, curtick + 1L);
+		slots[(int) (deadline % slots.length)].add(timer);
+	}
+
+	/**
+	 * Advances the wheel up to the given time, passing all expired timers to the consumer.
+	 * The consumer is called outside of the wheel's lock and may schedule timers again.
+	 */
+	void advance(long now, Consumer<T> expired)
+	{
+		final Deque<T> expirations = new ArrayDeque<T>();
+		synchronized (this) {
+			final long endtick = now / tick;
+			while (curtick < endtick) {
+				++curtick;
+
+				final Deque<T> slot = slots[(int) (curtick % slots.length)];
+				for (int i = slot.size(); i > 0; --i) {
+					final T timer = slot.poll();
+					if (timer.getDeadline() / tick > curtick)
+						this.schedule(timer);  // Deadline was extended or is in a later revolution
+					else expirations.add(timer);
+				}
+			}
+		}
+
+		expirations.forEach(expired);
+	}
+}
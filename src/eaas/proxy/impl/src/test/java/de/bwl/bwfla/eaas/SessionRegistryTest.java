@@ -0,0 +1,133 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class SessionRegistryTest
+{
+	private static final String COMPONENT_ID = "component-1";
+
+	private ScheduledExecutorService scheduler;
+	private ExecutorService executor;
+	private SessionRegistry sessions;
+
+
+	@Before
+	public void setUp()
+	{
+		this.scheduler = Executors.newSingleThreadScheduledExecutor();
+		this.executor = Executors.newFixedThreadPool(2);
+		this.sessions = new SessionRegistry(scheduler, executor);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException
+	{
+		scheduler.shutdownNow();
+		executor.shutdownNow();
+		executor.awaitTermination(5L, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testReleaseRemovesSession()
+	{
+		sessions.add(COMPONENT_ID, null, null);
+		final SessionRegistry.Entry session = sessions.release(COMPONENT_ID);
+		Assert.assertNotNull(session);
+		Assert.assertEquals(COMPONENT_ID, session.getComponentId());
+		Assert.assertNull(sessions.lookup(COMPONENT_ID));
+		Assert.assertNull(sessions.release(COMPONENT_ID));
+	}
+
+	@Test
+	public void testReleaseAfterLaunch()
+	{
+		final SessionLaunch launch = this.launch(COMPONENT_ID);
+		Assert.assertTrue(sessions.complete(launch, null, null));
+		Assert.assertEquals(SessionLaunch.State.READY, launch.getState());
+		Assert.assertNotNull(sessions.release(COMPONENT_ID));
+	}
+
+	@Test
+	public void testReleaseDuringLaunch()
+	{
+		final SessionLaunch launch = this.launch(COMPONENT_ID);
+
+		// The session is not registered yet, hence it can only be released by its launch
+		Assert.assertNull(sessions.release(COMPONENT_ID));
+		Assert.assertTrue(launch.isCancelled());
+
+		Assert.assertFalse(sessions.complete(launch, null, null));
+		Assert.assertEquals(SessionLaunch.State.READY, launch.getState());
+		Assert.assertNotNull(sessions.release(COMPONENT_ID));
+		Assert.assertNull(sessions.lookup(COMPONENT_ID));
+	}
+
+	@Test
+	public void testConcurrentReleaseDuringLaunch() throws Exception
+	{
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		for (int i = 0; i < 10000; ++i) {
+			final String componentId = "component-" + i;
+			final SessionLaunch launch = this.launch(componentId);
+
+			// Same steps as the launch's finalizer and releaseSession() in EaasWS
+			final Future<Integer> completer = executor.submit(() -> {
+				barrier.await();
+				if (sessions.complete(launch, null, null))
+					return 0;
+
+				return (sessions.release(componentId) != null) ? 1 : 0;
+			});
+
+			final Future<Integer> releaser = executor.submit(() -> {
+				barrier.await();
+				return (sessions.release(componentId) != null) ? 1 : 0;
+			});
+
+			final int numReleases = completer.get(5L, TimeUnit.SECONDS) + releaser.get(5L, TimeUnit.SECONDS);
+			Assert.assertEquals("Session " + componentId + " released " + numReleases + " times", 1, numReleases);
+			Assert.assertNull(sessions.lookup(componentId));
+		}
+	}
+
+
+	/* =============== Internal Helpers =============== */
+
+	private SessionLaunch launch(String componentId)
+	{
+		final SessionLaunch launch = new SessionLaunch(componentId);
+		sessions.addLaunch(launch);
+		launch.update(SessionLaunch.State.INITIALIZING);
+		return launch;
+	}
+}
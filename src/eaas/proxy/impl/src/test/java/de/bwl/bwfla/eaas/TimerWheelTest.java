@@ -0,0 +1,172 @@
+/*
+ * This file is part of the Emulation-as-a-Service framework.
+ *
+ * The Emulation-as-a-Service framework is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * The Emulation-as-a-Service framework is distributed in the hope that
+ * it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Emulation-as-a-Software framework.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.bwl.bwfla.eaas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class TimerWheelTest
+{
+	private static final long TICK = 100L;
+	private static final int NUM_SLOTS = 8;
+
+	private TimerWheel<TestTimer> wheel;
+	private List<TestTimer> expired;
+
+
+	@Before
+	public void setUp()
+	{
+		this.wheel = new TimerWheel<TestTimer>(TICK, NUM_SLOTS, 0L);
+		this.expired = new ArrayList<TestTimer>();
+	}
+
+	@Test
+	public void testExpiresAtDeadline()
+	{
+		final TestTimer timer = new TestTimer("a", 350L);
+		wheel.schedule(timer);
+
+		wheel.advance(299L, expired::add);
+		Assert.assertTrue(expired.isEmpty());
+
+		wheel.advance(399L, expired::add);
+		Assert.assertEquals(Arrays.asList(timer), expired);
+
+		// Expired timers are removed from the wheel
+		wheel.advance(5000L, expired::add);
+		Assert.assertEquals(1, expired.size());
+	}
+
+	@Test
+	public void testExpiresInDeadlineOrder()
+	{
+		final TestTimer late = new TestTimer("late", 500L);
+		final TestTimer early = new TestTimer("early", 200L);
+		wheel.schedule(late);
+		wheel.schedule(early);
+
+		wheel.advance(250L, expired::add);
+		Assert.assertEquals(Arrays.asList(early), expired);
+
+		wheel.advance(550L, expired::add);
+		Assert.assertEquals(Arrays.asList(early, late), expired);
+	}
+
+	@Test
+	public void testPastDeadlineExpiresOnNextTick()
+	{
+		wheel.advance(1000L, expired::add);
+
+		final TestTimer timer = new TestTimer("past", 100L);
+		wheel.schedule(timer);
+
+		wheel.advance(1050L, expired::add);
+		Assert.assertTrue(expired.isEmpty());
+
+		wheel.advance(1100L, expired::add);
+		Assert.assertEquals(Arrays.asList(timer), expired);
+	}
+
+	@Test
+	public void testExtendedDeadlineIsRescheduled()
+	{
+		final TestTimer timer = new TestTimer("extended", 200L);
+		wheel.schedule(timer);
+
+		// Extend the deadline without touching the wheel
+		timer.deadline = 600L;
+		wheel.advance(500L, expired::add);
+		Assert.assertTrue(expired.isEmpty());
+
+		wheel.advance(600L, expired::add);
+		Assert.assertEquals(Arrays.asList(timer), expired);
+	}
+
+	@Test
+	public void testDeadlineBeyondOneRevolution()
+	{
+		// Maps to the same slot as tick 2, but one revolution later
+		final TestTimer timer = new TestTimer("far", (2L + NUM_SLOTS) * TICK);
+		wheel.schedule(timer);
+
+		wheel.advance(2L * TICK, expired::add);
+		Assert.assertTrue(expired.isEmpty());
+
+		wheel.advance((1L + NUM_SLOTS) * TICK, expired::add);
+		Assert.assertTrue(expired.isEmpty());
+
+		wheel.advance((2L + NUM_SLOTS) * TICK, expired::add);
+		Assert.assertEquals(Arrays.asList(timer), expired);
+	}
+
+	@Test
+	public void testRescheduleFromConsumer()
+	{
+		final TestTimer timer = new TestTimer("probed", 100L);
+		wheel.schedule(timer);
+
+		// Expired timers can be scheduled again, e.g. after a successful probe
+		wheel.advance(100L, (expiration) -> {
+			expired.add(expiration);
+			expiration.deadline = 400L;
+			wheel.schedule(expiration);
+		});
+
+		Assert.assertEquals(1, expired.size());
+
+		wheel.advance(300L, expired::add);
+		Assert.assertEquals(1, expired.size());
+
+		wheel.advance(400L, expired::add);
+		Assert.assertEquals(Arrays.asList(timer, timer), expired);
+	}
+
+
+	private static class TestTimer implements TimerWheel.Timer
+	{
+		private final String name;
+		private long deadline;
+
+		public TestTimer(String name, long deadline)
+		{
+			this.name = name;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public long getDeadline()
+		{
+			return deadline;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+}
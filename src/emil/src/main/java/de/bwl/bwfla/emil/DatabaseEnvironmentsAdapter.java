@@ -203,6 +203,7 @@ public class DatabaseEnvironmentsAdapter {
     private List<Environment> updateDatabase(String archive) throws BWFLAException, JAXBException {
         List<Environment> environments = environmentsAdapter.getEnvironments(archive, null);
         db.drop(archive);
+        db.createIndex(archive, metaDataIdKey);
         environments.forEach(env -> {
             try {
                 if (!env.getConfigurationType().equals(MachineConfigurationTemplate.class))
@@ -225,6 +226,12 @@ public class DatabaseEnvironmentsAdapter {
         return db.find(archive, offset, maxcount, filter, classNameDBKey);
     }
 
+    /** Lists environments ordered by ID, starting after the given environment ID (if not null) */
+    public Stream<Environment> listEnvironments(String archive, String afterId, int maxcount, MongodbEaasConnector.FilterBuilder filter)
+    {
+        return db.find(archive, metaDataIdKey, afterId, maxcount, filter, classNameDBKey);
+    }
+
     public long countEnvironments(String archive)
     {
         return db.count(archive);
@@ -186,6 +186,11 @@ public class EmilEnvironmentRepository {
 		return db.find(MetadataCollection.PUBLIC, offset, maxcount, filter, "type");
 	}
 
+	/** Lists public environments ordered by ID, starting after the given environment ID (if not null). */
+	public Stream<EmilEnvironment> listPublicEnvironments(String afterEnvId, int maxcount, MongodbEaasConnector.FilterBuilder filter) {
+		return db.find(MetadataCollection.PUBLIC, "envId", afterEnvId, maxcount, filter, "type");
+	}
+
 	public long countPublicEnvironments(MongodbEaasConnector.FilterBuilder filter) {
 		return db.count(MetadataCollection.PUBLIC, filter);
 	}
@@ -198,18 +203,15 @@ public class EmilEnvironmentRepository {
 		return all;
 	}
 
-	private List<EmilObjectEnvironment> loadEmilObjectEnvironments(String userCtx) throws BWFLAException {
-		//TODO: refactor to stream
-		List<EmilObjectEnvironment> result = db.getRootlessJaxbObjects(getCollectionCtx(userCtx),
-				EmilObjectEnvironment.class.getCanonicalName(), "type");
-
-		result.addAll(db.getRootlessJaxbObjects(MetadataCollection.PUBLIC,
-				EmilObjectEnvironment.class.getCanonicalName(), "type"));
+	private Stream<EmilObjectEnvironment> loadEmilObjectEnvironments(String userCtx) {
+		final MongodbEaasConnector.FilterBuilder filter = new MongodbEaasConnector.FilterBuilder()
+				.eq("type", EmilObjectEnvironment.class.getCanonicalName());
 
-		result.addAll(db.getRootlessJaxbObjects(MetadataCollection.REMOTE,
-				EmilObjectEnvironment.class.getCanonicalName(), "type"));
-
-		return result;
+		// A single broken document should not hide all other object environments
+		Stream<EmilObjectEnvironment> all = db.findDecodable(getCollectionCtx(userCtx), filter, "type");
+		all = Stream.concat(all, db.findDecodable(MetadataCollection.PUBLIC, filter, "type"));
+		all = Stream.concat(all, db.findDecodable(MetadataCollection.REMOTE, filter, "type"));
+		return all;
 	}
 
 	private void setPermissions(EmilEnvironment ee) {
@@ -261,6 +263,7 @@ public class EmilEnvironmentRepository {
 		db = dbConnector.getInstance(dbName);
 		try {
 			db.createIndex(emilDbCollectionName, "envId");
+			db.createIndex(MetadataCollection.PUBLIC, "envId");
 			db.ensureTimestamp(emilDbCollectionName);
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -356,11 +359,11 @@ public class EmilEnvironmentRepository {
 		if (objectId == null)
 			return result;
 
-		List<EmilObjectEnvironment> all = loadEmilObjectEnvironments(userCtx);
-		for (EmilObjectEnvironment objEnv : all) {
-			if (objEnv.getObjectId().equals(objectId) && isEnvironmentVisible(objEnv)
-					&& checkPermissions(objEnv, EmilEnvironmentPermissions.Permissions.READ, userCtx))
-				result.add(objEnv);
+		try (Stream<EmilObjectEnvironment> all = loadEmilObjectEnvironments(userCtx)) {
+			all.filter(objEnv -> objectId.equals(objEnv.getObjectId()))
+					.filter(this::isEnvironmentVisible)
+					.filter(objEnv -> checkPermissions(objEnv, EmilEnvironmentPermissions.Permissions.READ, userCtx))
+					.forEach(result::add);
 		}
 		return result;
 	}
@@ -603,14 +606,15 @@ public class EmilEnvironmentRepository {
 			EmilDataExport emilDataExport = new EmilDataExport();
 			for(String collection : collections) {
 				try {
-					Stream<EmilEnvironment> all = db.find(collection, new MongodbEaasConnector.FilterBuilder(), "type");
-					all.forEach(emilEnvironment -> {
-						try {
-							emilDataExport.saveEnvToPath(collection, emilEnvironment);
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-					});
+					try (Stream<EmilEnvironment> all = db.find(collection, new MongodbEaasConnector.FilterBuilder(), "type")) {
+						all.forEach(emilEnvironment -> {
+							try {
+								emilDataExport.saveEnvToPath(collection, emilEnvironment);
+							} catch (IOException e) {
+								e.printStackTrace();
+							}
+						});
+					}
 				} catch (Exception e) {
 					e.printStackTrace();
 					LOG.warning("failed to export collection: " + collection);
@@ -648,16 +652,16 @@ public class EmilEnvironmentRepository {
 
 	public List<EmilEnvironment> getEmilEnvironments(String userCtx)
 	{
-		final Stream<EmilEnvironment> all = loadEmilEnvironments(userCtx);
 		final HashSet<String> known = new HashSet<>();
-
-		return all.filter(e -> {
-			if(known.contains(e.getEnvId()))
-				return false;
-			return known.add(e.getEnvId());
-		}).filter(this::isEnvironmentVisible)
-				.filter(e-> (authenticatedUser == null || checkPermissions(e, EmilEnvironmentPermissions.Permissions.READ, userCtx)))
-				.collect(Collectors.toList());
+		try (Stream<EmilEnvironment> all = loadEmilEnvironments(userCtx)) {
+			return all.filter(e -> {
+				if(known.contains(e.getEnvId()))
+					return false;
+				return known.add(e.getEnvId());
+			}).filter(this::isEnvironmentVisible)
+					.filter(e-> (authenticatedUser == null || checkPermissions(e, EmilEnvironmentPermissions.Permissions.READ, userCtx)))
+					.collect(Collectors.toList());
+		}
 	}
 
 	public List<EmilEnvironment> getEmilEnvironments() {
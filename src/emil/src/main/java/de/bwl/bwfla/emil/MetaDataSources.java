@@ -100,6 +100,9 @@ public class MetaDataSources
 				if (options.hasUntil())
 					filter.withUntilTime(Environment.Fields.TIMESTAMP, options.until(), true);
 
+				if (options.hasAfter())
+					return db.listEnvironments(archive, options.after(), options.count(), filter);
+
 				return db.listEnvironments(archive, options.offset(), options.count(), filter);
 			};
 
@@ -149,6 +152,9 @@ public class MetaDataSources
 
 				filter.eq("archive", "public");
 
+				if (options.hasAfter())
+					return environmentRepository.listPublicEnvironments(options.after(), options.count(), filter);
+
 				return environmentRepository.listPublicEnvironments(options.offset(), options.count(), filter);
 			};
 
@@ -1,5 +1,6 @@
 package de.bwl.bwfla.emil;
 
+import com.mongodb.MongoException;
 import de.bwl.bwfla.common.exceptions.BWFLAException;
 import de.bwl.bwfla.common.database.MongodbEaasConnector;
 import de.bwl.bwfla.emil.datatypes.EnvironmentInfo;
@@ -33,10 +34,13 @@ import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 @Path("/classification")
@@ -223,21 +227,24 @@ public class ObjectClassification {
 
 
     public void export(File exportDirectory) throws JAXBException, IOException {
-         List<ClassificationResult> results = db.getJaxbObjects(collectionName, parentElement + idDBkey, ClassificationResult.class);
          File currentExportDir = new File(exportDirectory, (new Date().toString()));
          Files.createDirectories(currentExportDir.toPath());
-         for(ClassificationResult result : results)
-         {
-             if(result.getObjectId() == null)
-                 continue;
-
-             File exportFile = new File(currentExportDir, result.getObjectId() + ".xml");
-             try {
-                 PrintWriter out = new PrintWriter(exportFile);
-                 out.print(result.value(true));
-                 out.close();
-             } catch (FileNotFoundException e) {
-                 e.printStackTrace();
+         try (Stream<ClassificationResult> results = db.findJaxbObjects(collectionName, parentElement + idDBkey, ClassificationResult.class)) {
+             final Iterator<ClassificationResult> iterator = results.iterator();
+             while (iterator.hasNext())
+             {
+                 final ClassificationResult result = iterator.next();
+                 if(result.getObjectId() == null)
+                     continue;
+
+                 File exportFile = new File(currentExportDir, result.getObjectId() + ".xml");
+                 try {
+                     PrintWriter out = new PrintWriter(exportFile);
+                     out.print(result.value(true));
+                     out.close();
+                 } catch (FileNotFoundException e) {
+                     e.printStackTrace();
+                 }
              }
          }
     }
@@ -260,23 +267,14 @@ public class ObjectClassification {
     }
 
     public List<String> getEnvironmentDependencies(String envId) {
-        List<String> objects = new ArrayList<>();
-        ArrayList<ClassificationResult> results = null;
-        try {
-            results = db.getJaxbObjects(collectionName, parentElement, ClassificationResult.class);
-
-        } catch (JAXBException e) {
+        try (Stream<ClassificationResult> results = db.findJaxbObjects(collectionName, parentElement, ClassificationResult.class)) {
+            return results.filter(f -> f.hasReferenceTo(envId))
+                    .map(ClassificationResult::getObjectId)
+                    .collect(Collectors.toList());
+        } catch (MongoException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        if (results == null) {
-            return objects;
-        }
-        for (ClassificationResult f : results) {
-            if (f.hasReferenceTo(envId)) {
-                objects.add(f.getObjectId());
-            }
-        }
-        return objects;
     }
 
     public void dump() {
@@ -25,6 +25,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class UserSessions {
@@ -70,11 +71,11 @@ public class UserSessions {
             return;
         }
 
-        try {
-            List<EmilSessionEnvironment> sessionList = db.getRootlessJaxbObjects(EmilEnvironmentRepository.MetadataCollection.PUBLIC,
-                    EmilObjectEnvironment.class.getCanonicalName(), "type");
-            for(EmilSessionEnvironment session : sessionList)
-            {
+        final MongodbEaasConnector.FilterBuilder filter = new MongodbEaasConnector.FilterBuilder()
+                .eq("type", EmilObjectEnvironment.class.getCanonicalName());
+
+        try (Stream<EmilSessionEnvironment> sessions = db.findDecodable(EmilEnvironmentRepository.MetadataCollection.PUBLIC, filter, "type")) {
+            sessions.forEach(session -> {
                 try {
                     add(session);
                 }
@@ -82,10 +83,7 @@ public class UserSessions {
                 {
                     LOG.log(Level.SEVERE, e.getMessage(), e);
                 }
-            }
-        } catch (BWFLAException e) {
-            e.printStackTrace();
-            return;
+            });
         }
     }
 
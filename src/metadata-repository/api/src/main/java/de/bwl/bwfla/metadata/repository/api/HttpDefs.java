@@ -45,5 +45,6 @@ public final class HttpDefs
 		public static final String FROM    = "from";
 		public static final String UNTIL   = "until";
 		public static final String SETSPEC = "setspec";
+		public static final String AFTER   = "after";
 	}
 }
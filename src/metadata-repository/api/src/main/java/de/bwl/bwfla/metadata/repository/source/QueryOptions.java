@@ -29,6 +29,7 @@ public class QueryOptions
 	private long from;
 	private long until;
 	private String setspec;
+	private String after;
 
 	public QueryOptions()
 	{
@@ -37,6 +38,7 @@ public class QueryOptions
 		this.from = Defaults.FROM;
 		this.until = Defaults.UNTIL;
 		this.setspec = null;
+		this.after = null;
 	}
 
 	public static class Defaults
@@ -75,6 +77,12 @@ public class QueryOptions
 		return setspec;
 	}
 
+	/** Returns the ID of the last item of the previous page, if keyset paging is used. */
+	public String after()
+	{
+		return after;
+	}
+
 
 	// ===== Setters ===============
 
@@ -120,6 +128,12 @@ public class QueryOptions
 		return this;
 	}
 
+	public QueryOptions withAfter(String id)
+	{
+		this.after = id;
+		return this;
+	}
+
 
 	// ===== Checkers ===============
 
@@ -147,4 +161,9 @@ public class QueryOptions
 	{
 		return setspec != null;
 	}
+
+	public boolean hasAfter()
+	{
+		return after != null;
+	}
 }
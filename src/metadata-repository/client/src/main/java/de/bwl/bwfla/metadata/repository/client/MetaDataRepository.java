@@ -283,6 +283,7 @@ public class MetaDataRepository
 		target = MetaDataRepository.addQueryParam(target, HttpDefs.QueryParams.FROM, options.from(), options.hasFrom());
 		target = MetaDataRepository.addQueryParam(target, HttpDefs.QueryParams.UNTIL, options.until(), options.hasUntil());
 		target = MetaDataRepository.addQueryParam(target, HttpDefs.QueryParams.SETSPEC, options.setspec(), options.hasSetSpec());
+		target = MetaDataRepository.addQueryParam(target, HttpDefs.QueryParams.AFTER, options.after(), options.hasAfter());
 
 		return target;
 	}
@@ -356,6 +356,7 @@ public class MetaDataRepositoryAPI implements IMetaDataRepositoryAPI
 				.withCount(MetaDataRepositoryAPI.getIntParam(request, HttpDefs.QueryParams.COUNT, QueryOptions.Defaults.COUNT))
 				.withFrom(MetaDataRepositoryAPI.getLongParam(request, HttpDefs.QueryParams.FROM, QueryOptions.Defaults.FROM))
 				.withUntil(MetaDataRepositoryAPI.getLongParam(request, HttpDefs.QueryParams.UNTIL, QueryOptions.Defaults.UNTIL))
-				.withSetSpec(MetaDataRepositoryAPI.getStringParam(request, HttpDefs.QueryParams.SETSPEC, null));
+				.withSetSpec(MetaDataRepositoryAPI.getStringParam(request, HttpDefs.QueryParams.SETSPEC, null))
+				.withAfter(MetaDataRepositoryAPI.getStringParam(request, HttpDefs.QueryParams.AFTER, null));
 	}
 }
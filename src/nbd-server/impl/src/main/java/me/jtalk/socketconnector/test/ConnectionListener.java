@@ -18,13 +18,11 @@
 
 package me.jtalk.socketconnector.test;
 
-import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.ActivationConfigProperty;
 import javax.ejb.EJB;
 import javax.ejb.MessageDriven;
-import javax.resource.ResourceException;
 
 import me.jtalk.socketconnector.api.TCPDisconnectionNotification;
 import me.jtalk.socketconnector.api.TCPMessage;
@@ -54,13 +52,7 @@ public class ConnectionListener implements TCPMessageListener {
 
     @Override
     public void onMessage(TCPMessage message) {
-        try {
-            connector.checkTheMessageIntegrity(message);
-        } catch (ResourceException e) {
-            log.log(Level.SEVERE, "Exception on message receival id " + message.getConnectionId(), e);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        connector.checkTheMessageIntegrity(message);
     }
 
     @Override
@@ -70,11 +62,9 @@ public class ConnectionListener implements TCPMessageListener {
 
         } else {
             log.log(Level.FINE, String.format("TCP disconnect id %s, from %s to %s", notification.getId(), notification.getLocal(), notification.getRemote()));
-            try {
-                connector.disconnect(notification.getId());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
+
+        // Overlays are bound to their connection, release them in any case
+        connector.disconnect(notification.getId());
     }
 }
@@ -16,11 +16,21 @@ import me.jtalk.socketconnector.api.TCPConnection;
 import me.jtalk.socketconnector.api.TCPConnectionFactory;
 import me.jtalk.socketconnector.api.TCPMessage;
 import me.jtalk.socketconnector.test.entity.NBDConnection;
+import me.jtalk.socketconnector.test.io.Export;
+import me.jtalk.socketconnector.test.io.FileExtents;
+import me.jtalk.socketconnector.test.io.OverlayRegistry;
+import me.jtalk.socketconnector.test.protocol.NBDReplies;
+
+import org.apache.tamaya.inject.api.Config;
 
 import javax.annotation.Resource;
-import javax.ejb.AccessTimeout;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.EJBException;
 import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.inject.Inject;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NameClassPair;
@@ -28,15 +38,17 @@ import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.resource.ResourceException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
@@ -44,7 +56,7 @@ import java.util.logging.Logger;
 
 import static me.jtalk.socketconnector.test.protocol.NBDProtocol.*;
 
-@AccessTimeout(value = 20, unit = TimeUnit.MINUTES)
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 @Singleton
 public class Connector {
     private static final Logger log = Logger.getLogger(Connector.class.getName());
@@ -53,15 +65,35 @@ public class Connector {
     public static final long UUID = Long.parseLong(UUID_STRING);
 
     private final AtomicBoolean sent = new AtomicBoolean(false);
-    private volatile long clientId = -1;
     private volatile long listeningId = -1;
-    private HashMap<Long, NBDConnection> connectionMap = new HashMap<>();
-    Collection<NBDFileProvider> connectors;
+    private final ConcurrentHashMap<Long, NBDConnection> connectionMap = new ConcurrentHashMap<>();
+    volatile Collection<NBDFileProvider> connectors;
 
 
     @Resource(lookup = "java:/socket/TCP")
     TCPConnectionFactory factory;
 
+    @Resource(lookup = "java:jboss/ee/concurrency/scheduler/default")
+    ManagedScheduledExecutorService scheduler;
+
+    /* requests are served here, since messages are delivered on the socket's event loop */
+    @Resource(lookup = "java:jboss/ee/concurrency/executor/default")
+    ManagedExecutorService executor;
+
+    @Inject
+    @Config("nbd.overlays.base_dir")
+    String overlayBaseDir;
+
+    @Inject
+    @Config("nbd.overlays.idle_timeout")
+    Duration overlayIdleTimeout;
+
+    @Inject
+    @Config("nbd.overlays.secret")
+    String overlaySecret;
+
+    private volatile OverlayRegistry overlays;
+
     /**
      * This method recursively searches the global JNDI NAMESPACE and
      * looks for JNDI names that indicate beans implementing the given
@@ -128,6 +160,17 @@ public class Connector {
             log.log(Level.SEVERE, "No NBDFileProvider implementation found!");
         }
 
+        try {
+            overlays = new OverlayRegistry(Paths.get(overlayBaseDir), overlayIdleTimeout.toMillis(), overlaySecret);
+            if (!overlays.isEnabled())
+                log.log(Level.INFO, "NBD: no overlay secret configured, writable exports are disabled");
+
+            final long interval = Math.max(overlayIdleTimeout.toMillis() / 2, 1000L);
+            scheduler.scheduleWithFixedDelay(overlays::expire, interval, interval, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            throw new EJBException("Exception on overlay directory setup", e);
+        }
+
         int port = 10809;
 
         try {
@@ -144,162 +187,626 @@ public class Connector {
     }
 
     /**
-     * Send a chunk of data to the initialized client
+     * Serve all complete requests received so far. Reads are answered with the
+     * file region itself, which is transferred asynchronously by the socket layer,
+     * so many requests of the same connection can be in flight at once.
      *
      * @param id
+     * @param connection
      * @throws ResourceException
      * @throws IOException
      */
-    private void sendDataBlock(long id) throws ResourceException, IOException {
-        ByteBuffer messageBuffer = connectionMap.get(id).getReceivedData();
-        if (id == this.clientId) {
-            log.info("testing.. " + new String(messageBuffer.array()));
-        } else {
-            int respondMagic = messageBuffer.getInt();
-            if (respondMagic == CLIENT_MAGIC_RESPONSE) {
-                short commandFlags = messageBuffer.getShort();
-                short type = messageBuffer.getShort();
-                long handle = messageBuffer.getLong();
-                long offset = messageBuffer.getLong();
-
-                long requestLength = Integer.toUnsignedLong(messageBuffer.getInt());
-                ByteBuffer buffer = ByteBuffer.allocate((int) requestLength);
-                connectionMap.get(id).getFileChannel().read(buffer, offset);
-
-                try (TCPConnection connection = factory.getConnection(UUID, id)) {
-                    connection.send(ByteBuffer.wrap(Utils.toBytes(NBD_REPLY_MAGIC)));
-                    connection.send(ByteBuffer.wrap(NBD_OK_BYTES));
-                    connection.send(ByteBuffer.wrap(Utils.longToBytes(handle)));
-                    connection.send(ByteBuffer.wrap(buffer.array()));
+    private void processRequests(long id, NBDConnection connection) throws ResourceException, IOException {
+        final ByteBuffer messageBuffer = connection.getReceivedData();
+        if (messageBuffer.remaining() < REQUEST_HEADER_LENGTH)
+            return;
+
+        try (TCPConnection output = factory.getConnection(UUID, id)) {
+            while (messageBuffer.remaining() >= REQUEST_HEADER_LENGTH) {
+                final int start = messageBuffer.position();
+                if (messageBuffer.getInt(start) != CLIENT_MAGIC_RESPONSE) {
+                    log.log(Level.WARNING, "NBD: invalid request magic, disconnecting id: " + id);
+                    connection.discardReceivedData();
+                    output.disconnect();
+                    return;
+                }
+
+                final short type = messageBuffer.getShort(start + 6);
+                final long requestLength = Integer.toUnsignedLong(messageBuffer.getInt(start + 24));
+                if (type == NBD_CMD_WRITE && requestLength > MAX_WRITE_LENGTH) {
+                    log.log(Level.WARNING, "NBD: write of " + requestLength + " bytes too large, disconnecting id: " + id);
+                    connection.discardReceivedData();
+                    output.disconnect();
+                    return;
                 }
-            } else {
-                log.log(Level.FINEST, new String(messageBuffer.array()));
 
+                if (type == NBD_CMD_WRITE && messageBuffer.remaining() < REQUEST_HEADER_LENGTH + requestLength) {
+                    // Payload is not yet complete
+                    break;
+                }
+
+                final short flags = messageBuffer.getShort(start + 4);
+                final long handle = messageBuffer.getLong(start + 8);
+                final long offset = messageBuffer.getLong(start + 16);
+                messageBuffer.position(start + REQUEST_HEADER_LENGTH);
+
+                switch (type) {
+                    case NBD_CMD_READ:
+                        if (connection.isStructuredReplies())
+                            sendStructuredDataBlock(output, connection, handle, flags, offset, requestLength);
+                        else sendDataBlock(output, connection, handle, offset, requestLength);
+                        break;
+                    case NBD_CMD_BLOCK_STATUS:
+                        sendBlockStatus(output, connection, handle, flags, offset, requestLength);
+                        break;
+                    case NBD_CMD_WRITE: {
+                        final ByteBuffer payload = messageBuffer.slice();
+                        payload.limit((int) requestLength);
+                        messageBuffer.position(messageBuffer.position() + (int) requestLength);
+                        output.send(NBDReplies.simple(writeDataBlock(connection, flags, offset, payload), handle));
+                        break;
+                    }
+                    case NBD_CMD_TRIM:
+                        output.send(NBDReplies.simple(trimDataBlock(connection, offset, requestLength), handle));
+                        break;
+                    case NBD_CMD_FLUSH:
+                        output.send(NBDReplies.simple(flush(connection), handle));
+                        break;
+                    case NBD_CMD_DISC:
+                        log.log(Level.FINEST, "NBD: disconnect requested by id: " + id);
+                        connection.discardReceivedData();
+                        output.disconnect();
+                        return;
+                    default:
+                        output.send(NBDReplies.simple(NBD_EINVAL, handle));
+                }
             }
         }
-
     }
 
     /**
-     * Read the fileName and create FileChannel
+     * Send a chunk of data to the initialized client
      *
-     * @param id
-     * @return
+     * @param output
+     * @param connection
+     * @param handle
+     * @param offset
+     * @param length
      * @throws ResourceException
      * @throws IOException
      */
-    private FileChannel initializeNBDFile(long id) throws ResourceException, IOException, IllegalAccessException, InstantiationException, ClassNotFoundException {
-        FileChannel fileChannel = null;
-        ByteBuffer messageBuffer = connectionMap.get(id).getReceivedData();
-        int clientFlags = messageBuffer.getInt();
-        long magic = messageBuffer.getLong();
-        if (magic == CLIENT_MAGIC) {
-            int opt = messageBuffer.getInt();
-            long length = Integer.toUnsignedLong(messageBuffer.getInt());
-            byte[] bytes = new byte[(int) length];
-            if (messageBuffer.array().length >= 17 + (int) length) {
-                messageBuffer.get(bytes);
-                String exportName = new String(bytes);
-                log.log(Level.FINEST, "NBD: " + exportName + "id: " + id);
-
-
-                File exportFile = resolveRequest(exportName);
-                if (exportFile == null) {
-                    log.log(Level.SEVERE, "NBD: FileNotFound");
-                    disconnectClient(id);
-
-                } else {
-                    long size = exportFile.length();
-                    try {
-                        fileChannel = new FileInputStream(exportFile).getChannel();
-                    } catch (FileNotFoundException e) {
-                        log.log(Level.SEVERE, "NBD: FileNotFound " + exportName);
-                        disconnectClient(id);
-                    }
-                    try (TCPConnection connection = factory.getConnection(UUID, id)) {
-                        connection.send(ByteBuffer.wrap(Utils.longToBytes(size)));
-                        connection.send(ByteBuffer.wrap(SERVER_RESPOND_FLAG));
-                        connection.send(ByteBuffer.wrap(EMPTY_124));
-                    }
-                    connectionMap.get(id).setInitialPhase(false);
-                }
-            }
+    private void sendDataBlock(TCPConnection output, NBDConnection connection, long handle, long offset, long length)
+            throws ResourceException, IOException {
+        if (!isValidRange(connection, offset, length)) {
+            output.send(NBDReplies.simple(NBD_EINVAL, handle));
+            return;
         }
 
+        ByteBuffer header = NBDReplies.simple(NBD_OK, handle);
+        for (FileExtents.Extent region : connection.getExport().regions(offset, length)) {
+            output.sendFile(header, region.getSource(), region.getOffset(), region.getLength());
+            header = null;
+        }
+    }
+
+    /**
+     * Write a chunk of data to the export's overlay
+     *
+     * @param connection
+     * @param flags
+     * @param offset
+     * @param data
+     * @return the error code to reply with
+     */
+    private int writeDataBlock(NBDConnection connection, short flags, long offset, ByteBuffer data) {
+        final Export export = connection.getExport();
+        if (!export.isWritable())
+            return NBD_EPERM;
+
+        if (!isValidRange(connection, offset, data.remaining()))
+            return NBD_ENOSPC;
 
-        return fileChannel;
+        try {
+            export.write(offset, data);
+            if ((flags & NBD_CMD_FLAG_FUA) != 0)
+                export.flush();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "NBD: writing to overlay failed", e);
+            return NBD_EIO;
+        }
+
+        return NBD_OK;
     }
 
+    /**
+     * Discard a chunk of data from the export's overlay
+     *
+     * @param connection
+     * @param offset
+     * @param length
+     * @return the error code to reply with
+     */
+    private int trimDataBlock(NBDConnection connection, long offset, long length) {
+        final Export export = connection.getExport();
+        if (!export.isWritable())
+            return NBD_EPERM;
+
+        if (!isValidRange(connection, offset, length))
+            return NBD_EINVAL;
+
+        try {
+            export.trim(offset, length);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "NBD: trimming overlay failed", e);
+            return NBD_EIO;
+        }
+
+        return NBD_OK;
+    }
+
+    private int flush(NBDConnection connection) {
+        try {
+            connection.getExport().flush();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "NBD: flushing overlay failed", e);
+            return NBD_EIO;
+        }
+
+        return NBD_OK;
+    }
 
     /**
-     * Method to check incoming message for integrity and merge messages otherwise
+     * Send a chunk of data as structured reply. Holes of the exported file
+     * are announced with hole chunks, instead of transferring their zeroes.
      *
-     * @param message
+     * @param output
+     * @param connection
+     * @param handle
+     * @param flags
+     * @param offset
+     * @param length
      * @throws ResourceException
      * @throws IOException
      */
-    public void checkTheMessageIntegrity(TCPMessage message) throws ResourceException, IOException {
-        long id = message.getConnectionId();
-        byte[] messageData = message.getData();
-
-        if (connectionMap.containsKey(id)) {
-
-            if (connectionMap.get(id).isInitialPhase()) {
-                mergeByteBuffers(id, messageData);
-                processMessageData(id);
-            } else if (messageData.length >= 28) {
-                connectionMap.get(id).setReceivedData(ByteBuffer.wrap(messageData));
-                processMessageData(id);
+    private void sendStructuredDataBlock(TCPConnection output, NBDConnection connection, long handle, short flags,
+                                         long offset, long length) throws ResourceException, IOException {
+        if (!isValidRange(connection, offset, length)) {
+            output.send(NBDReplies.error(NBD_EINVAL, handle));
+            return;
+        }
+
+        if (length == 0 || (flags & NBD_CMD_FLAG_DF) != 0) {
+            // The client requested the data in one chunk
+            sendDataChunk(output, NBD_REPLY_FLAG_DONE, handle, offset, length,
+                    connection.getExport().regions(offset, length));
+            return;
+        }
+
+        final List<FileExtents.Extent> extents = connection.getExport().find(offset, length, Integer.MAX_VALUE);
+        for (int i = 0; i < extents.size(); ++i) {
+            final FileExtents.Extent extent = extents.get(i);
+            final short chunkFlags = (i + 1 == extents.size()) ? NBD_REPLY_FLAG_DONE : 0;
+            if (extent.isHole()) {
+                final ByteBuffer chunk = NBDReplies.chunk(chunkFlags, NBD_REPLY_TYPE_OFFSET_HOLE, handle, 12, 12);
+                chunk.putLong(extent.getOffset());
+                chunk.putInt((int) extent.getLength());
+                chunk.flip();
+                output.send(chunk);
             } else {
-                mergeByteBuffers(id, messageData);
+                sendDataChunk(output, chunkFlags, handle, extent.getOffset(), extent.getLength(),
+                        Collections.singletonList(extent));
             }
+        }
+    }
 
-        } else {
-            if (message.getData().length >= 17) {
-                connectionMap.put(id, new NBDConnection(ByteBuffer.wrap(messageData)));
-                processMessageData(id);
-            } else
-                connectionMap.put(id, new NBDConnection(ByteBuffer.wrap(messageData)));
+    private void sendDataChunk(TCPConnection output, short flags, long handle, long offset, long length,
+                               List<FileExtents.Extent> regions) throws ResourceException {
+        ByteBuffer header = NBDReplies.chunk(flags, NBD_REPLY_TYPE_OFFSET_DATA, handle, Long.BYTES + length, Long.BYTES);
+        header.putLong(offset);
+        header.flip();
+        for (FileExtents.Extent region : regions) {
+            output.sendFile(header, region.getSource(), region.getOffset(), region.getLength());
+            header = null;
         }
     }
 
     /**
-     * Process the message and determine, if it's a initializing handshake or export request
+     * Describe the allocation status of the requested range (base:allocation)
+     *
+     * @param output
+     * @param connection
+     * @param handle
+     * @param flags
+     * @param offset
+     * @param length
+     * @throws ResourceException
+     * @throws IOException
+     */
+    private void sendBlockStatus(TCPConnection output, NBDConnection connection, long handle, short flags,
+                                 long offset, long length) throws ResourceException, IOException {
+        if (!connection.hasAllocationContext() || length == 0 || !isValidRange(connection, offset, length)) {
+            // Clients without structured replies expect a simple one
+            if (connection.isStructuredReplies())
+                output.send(NBDReplies.error(NBD_EINVAL, handle));
+            else output.send(NBDReplies.simple(NBD_EINVAL, handle));
+
+            return;
+        }
+
+        final int maxCount = ((flags & NBD_CMD_FLAG_REQ_ONE) != 0) ? 1 : MAX_BLOCK_STATUS_EXTENTS;
+        final List<FileExtents.Extent> extents = connection.getExport().find(offset, length, maxCount);
+        final int payloadLength = Integer.BYTES + extents.size() * 2 * Integer.BYTES;
+        final ByteBuffer reply = NBDReplies.chunk(NBD_REPLY_FLAG_DONE, NBD_REPLY_TYPE_BLOCK_STATUS, handle,
+                payloadLength, payloadLength);
+
+        reply.putInt(BASE_ALLOCATION_CONTEXT_ID);
+        for (FileExtents.Extent extent : extents) {
+            reply.putInt((int) extent.getLength());
+            reply.putInt((extent.isHole()) ? NBD_STATE_HOLE | NBD_STATE_ZERO : 0);
+        }
+
+        reply.flip();
+        output.send(reply);
+    }
+
+    private static boolean isValidRange(NBDConnection connection, long offset, long length) {
+        return isValidRange(connection.getExportSize(), offset, length);
+    }
+
+    /** Check the range without overflowing for client-supplied values */
+    static boolean isValidRange(long size, long offset, long length) {
+        return length >= 0 && offset >= 0 && offset <= size - length;
+    }
+
+    /**
+     * Process all complete handshake options received so far
      *
      * @param id
+     * @param connection
+     * @return true when the transmission phase was entered, else false
+     * @throws ResourceException
+     * @throws IOException
+     */
+    private boolean negotiate(long id, NBDConnection connection) throws ResourceException, IOException {
+        final ByteBuffer messageBuffer = connection.getReceivedData();
+        if (!connection.hasClientFlags()) {
+            if (messageBuffer.remaining() < CLIENT_FLAGS_LENGTH)
+                return false;
+
+            connection.setClientFlags(messageBuffer.getInt());
+        }
+
+        while (messageBuffer.remaining() >= OPTION_HEADER_LENGTH) {
+            final int start = messageBuffer.position();
+            final long length = Integer.toUnsignedLong(messageBuffer.getInt(start + 12));
+            if (messageBuffer.getLong(start) != CLIENT_MAGIC || length > MAX_OPTION_LENGTH) {
+                log.log(Level.WARNING, "NBD: invalid handshake, disconnecting id: " + id);
+                connection.discardReceivedData();
+                disconnectClient(id);
+                return false;
+            }
+
+            if (messageBuffer.remaining() < OPTION_HEADER_LENGTH + length)
+                return false;
+
+            final int option = messageBuffer.getInt(start + 8);
+            final ByteBuffer data = messageBuffer.duplicate();
+            data.position(start + OPTION_HEADER_LENGTH);
+            data.limit(start + OPTION_HEADER_LENGTH + (int) length);
+            messageBuffer.position(data.limit());
+
+            try (TCPConnection output = factory.getConnection(UUID, id)) {
+                if (processOption(output, connection, option, data.slice()))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Process a single handshake option
+     *
+     * @param output
+     * @param connection
+     * @param option
+     * @param data
+     * @return true when the transmission phase was entered, else false
      * @throws ResourceException
      * @throws IOException
      */
-    private void processMessageData(long id) throws ResourceException, IOException {
-        if (connectionMap.get(id).getFileChannel() != null) {
-            sendDataBlock(id);
-        } else {
-            FileChannel fileChannel = null;
-            try {
-                fileChannel = initializeNBDFile(id);
-            } catch (IllegalAccessException | InstantiationException | ClassNotFoundException e) {
-                e.printStackTrace();
+    private boolean processOption(TCPConnection output, NBDConnection connection, int option, ByteBuffer data)
+            throws ResourceException, IOException {
+        switch (option) {
+            case NBD_OPT_EXPORT_NAME: {
+                final byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                if (bytes.length > MAX_EXPORT_NAME_LENGTH || !openExport(connection, new String(bytes))) {
+                    // No way to report errors here
+                    connection.discardReceivedData();
+                    output.disconnect();
+                    return false;
+                }
+
+                final boolean zeroes = (connection.getClientFlags() & NBD_FLAG_C_NO_ZEROES) == 0;
+                final ByteBuffer reply = ByteBuffer.allocate(Long.BYTES + Short.BYTES + ((zeroes) ? NBD_ZEROES.length : 0));
+                reply.putLong(connection.getExportSize());
+                reply.putShort(getTransmissionFlags(connection));
+                if (zeroes)
+                    reply.put(NBD_ZEROES);
+
+                reply.flip();
+                output.send(reply);
+                connection.setInitialPhase(false);
+                return true;
             }
-            if (fileChannel != null) {
-                connectionMap.get(id).setFileChannel(fileChannel);
-                log.log(Level.FINEST, "NBD:  size:" + connectionMap.get(id).getFileChannel().size() + " id: " + id);
+
+            case NBD_OPT_INFO:
+            case NBD_OPT_GO: {
+                // Requested info items are ignored, the export info is always sent
+                final String exportName = readString(data);
+                if (exportName == null) {
+                    sendOptionReply(output, option, NBD_REP_ERR_INVALID);
+                    return false;
+                }
+
+                if (!openExport(connection, exportName)) {
+                    sendOptionReply(output, option, NBD_REP_ERR_UNKNOWN);
+                    return false;
+                }
+
+                final ByteBuffer info = NBDReplies.option(option, NBD_REP_INFO, Short.BYTES + Long.BYTES + Short.BYTES);
+                info.putShort(NBD_INFO_EXPORT);
+                info.putLong(connection.getExportSize());
+                info.putShort(getTransmissionFlags(connection));
+                info.flip();
+                output.send(info);
+                sendOptionReply(output, option, NBD_REP_ACK);
+                if (option == NBD_OPT_INFO) {
+                    connection.closeExport();
+                    return false;
+                }
+
+                connection.setInitialPhase(false);
+                return true;
+            }
+
+            case NBD_OPT_STRUCTURED_REPLY:
+                if (data.hasRemaining()) {
+                    sendOptionReply(output, option, NBD_REP_ERR_INVALID);
+                    return false;
+                }
+
+                connection.setStructuredReplies(true);
+                sendOptionReply(output, option, NBD_REP_ACK);
+                return false;
+
+            case NBD_OPT_LIST_META_CONTEXT:
+            case NBD_OPT_SET_META_CONTEXT:
+                processMetaContextOption(output, connection, option, data);
+                return false;
+
+            case NBD_OPT_ABORT:
+                sendOptionReply(output, option, NBD_REP_ACK);
+                connection.discardReceivedData();
+                output.disconnect();
+                return false;
+
+            default:
+                sendOptionReply(output, option, NBD_REP_ERR_UNSUP);
+                return false;
+        }
+    }
+
+    /**
+     * List or select metadata contexts, only base:allocation is supported
+     *
+     * @param output
+     * @param connection
+     * @param option
+     * @param data
+     * @throws ResourceException
+     */
+    private void processMetaContextOption(TCPConnection output, NBDConnection connection, int option, ByteBuffer data)
+            throws ResourceException {
+        final boolean selecting = (option == NBD_OPT_SET_META_CONTEXT);
+        if ((selecting && !connection.isStructuredReplies()) || readString(data) == null || data.remaining() < Integer.BYTES) {
+            sendOptionReply(output, option, NBD_REP_ERR_INVALID);
+            return;
+        }
+
+        final long numQueries = Integer.toUnsignedLong(data.getInt());
+        boolean allocation = (numQueries == 0 && !selecting);
+        for (long i = 0; i < numQueries; ++i) {
+            final String query = readString(data);
+            if (query == null) {
+                sendOptionReply(output, option, NBD_REP_ERR_INVALID);
+                return;
             }
+
+            if (query.equals(BASE_ALLOCATION_CONTEXT) || (!selecting && query.equals(BASE_NAMESPACE)))
+                allocation = true;
         }
+
+        if (selecting)
+            connection.setAllocationContext(allocation);
+
+        if (allocation) {
+            final byte[] name = BASE_ALLOCATION_CONTEXT.getBytes(StandardCharsets.US_ASCII);
+            final ByteBuffer reply = NBDReplies.option(option, NBD_REP_META_CONTEXT, Integer.BYTES + name.length);
+            reply.putInt(BASE_ALLOCATION_CONTEXT_ID);
+            reply.put(name);
+            reply.flip();
+            output.send(reply);
+        }
+
+        sendOptionReply(output, option, NBD_REP_ACK);
+    }
+
+    private static void sendOptionReply(TCPConnection output, int option, int type) throws ResourceException {
+        final ByteBuffer reply = NBDReplies.option(option, type, 0);
+        reply.flip();
+        output.send(reply);
+    }
+
+    private static short getTransmissionFlags(NBDConnection connection) {
+        short flags = NBD_FLAG_HAS_FLAGS;
+        if (connection.getExport().isWritable())
+            flags |= NBD_FLAG_SEND_FLUSH | NBD_FLAG_SEND_FUA | NBD_FLAG_SEND_TRIM;
+        else flags |= NBD_FLAG_READ_ONLY;
+
+        if (connection.isStructuredReplies())
+            flags |= NBD_FLAG_SEND_DF;
+
+        return flags;
+    }
+
+    /** Read a string prefixed with its 32-bit length, or return null if malformed */
+    private static String readString(ByteBuffer data) {
+        if (data.remaining() < Integer.BYTES)
+            return null;
+
+        final long length = Integer.toUnsignedLong(data.getInt());
+        if (length > data.remaining() || length > MAX_EXPORT_NAME_LENGTH)
+            return null;
+
+        final byte[] bytes = new byte[(int) length];
+        data.get(bytes);
+        return new String(bytes);
     }
 
     /**
-     * When client disconnects, we close and removed corresponding FileChannel
+     * Resolve the export and open it. Names of the form {@code <file>;overlay=<key>;token=<token>}
+     * select a writable overlay over the file, usable by one client at a time. The token must
+     * match the overlay's name, see {@link OverlayRegistry#token(String, String)}.
+     *
+     * @param connection
+     * @param exportName
+     * @return true when the export was opened, else false
+     */
+    private boolean openExport(NBDConnection connection, String exportName) {
+        final int tokenSeparator = exportName.lastIndexOf(TOKEN_SEPARATOR);
+        final String name = (tokenSeparator < 0) ? exportName : exportName.substring(0, tokenSeparator);
+        final String token = (tokenSeparator < 0) ? null : exportName.substring(tokenSeparator + TOKEN_SEPARATOR.length());
+        log.log(Level.FINEST, "NBD: " + name);
+
+        final int separator = name.indexOf(OVERLAY_SEPARATOR);
+        final boolean writable = (separator > 0 && separator + OVERLAY_SEPARATOR.length() < name.length());
+        final String fileName = (writable) ? name.substring(0, separator) : name;
+        if (writable && token == null) {
+            log.log(Level.WARNING, "NBD: no token given for overlay " + name);
+            return false;
+        }
+
+        File exportFile = null;
+        try {
+            exportFile = resolveRequest(fileName);
+        } catch (IOException | IllegalAccessException | InstantiationException | ClassNotFoundException e) {
+            log.log(Level.WARNING, "NBD: resolving export " + fileName + " failed", e);
+        }
+
+        if (exportFile == null) {
+            log.log(Level.SEVERE, "NBD: FileNotFound " + fileName);
+            return false;
+        }
+
+        try {
+            final Export export = (writable) ? Export.open(exportFile.toPath(), overlays, name, token)
+                    : Export.open(exportFile.toPath());
+
+            connection.setExport(export);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "NBD: opening " + name + " failed", e);
+            return false;
+        }
+
+        log.log(Level.FINEST, "NBD:  size:" + connection.getExportSize());
+        return true;
+    }
+
+
+    /**
+     * Method to collect incoming message data and schedule serving all requests completed by it.
+     * Messages are delivered on the socket's event loop, so the requests are served by the
+     * executor, one task per connection at a time.
+     *
+     * @param message
+     */
+    public void checkTheMessageIntegrity(TCPMessage message) {
+        final long id = message.getConnectionId();
+        final NBDConnection connection = connectionMap.computeIfAbsent(id, key -> new NBDConnection());
+        if (connection.enqueue(message.getData()))
+            executor.execute(() -> processPendingData(id, connection));
+    }
+
+    /**
+     * Serve all data received for a connection, until no more data is queued
      *
      * @param id
+     * @param connection
+     */
+    private void processPendingData(long id, NBDConnection connection) {
+        do {
+            // Messages of one connection are processed in order, but
+            // different connections are served concurrently
+            synchronized (connection) {
+                if (connection.isClosed())
+                    return;
+
+                try {
+                    connection.appendPendingData();
+                    processMessageData(id, connection);
+                } catch (ResourceException | IOException | RuntimeException e) {
+                    log.log(Level.SEVERE, "NBD: processing requests failed, disconnecting id: " + id, e);
+                    connection.discardReceivedData();
+                    try {
+                        disconnectClient(id);
+                    } catch (ResourceException error) {
+                        log.log(Level.WARNING, "NBD: disconnecting id " + id + " failed", error);
+                    }
+                }
+            }
+        } while (connection.finishProcessing());
+    }
+
+    /**
+     * Process the message and determine, if it's a initializing handshake or export request
+     *
+     * @param id
+     * @param connection
+     * @throws ResourceException
      * @throws IOException
      */
-    public void disconnect(long id) throws IOException {
-        if (connectionMap.containsKey(id)) {
-            if (connectionMap.get(id).getFileChannel() != null)
-                connectionMap.get(id).getFileChannel().close();
-            connectionMap.remove(id, connectionMap.get(id));
+    void processMessageData(long id, NBDConnection connection) throws ResourceException, IOException {
+        if (connection.isInitialPhase() && !negotiate(id, connection))
+            return;
+
+        processRequests(id, connection);
+    }
+
+    /**
+     * When client disconnects, we close and removed corresponding FileChannel.
+     * Closing is done by the executor, since a request may still be served.
+     *
+     * @param id
+     */
+    public void disconnect(long id) {
+        final NBDConnection connection = connectionMap.remove(id);
+        if (connection == null)
+            return;
+
+        executor.execute(() -> {
+            synchronized (connection) {
+                connection.setClosed();
+                try {
+                    connection.closeExport();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "NBD: closing export of id " + id + " failed", e);
+                }
+            }
+
             log.log(Level.FINEST, "NBD: closed and removed " + id);
-        }
+        });
     }
 
     /**
@@ -322,20 +829,6 @@ public class Connector {
         return null;
     }
 
-    /**
-     * Merge two messages, in case of message division
-     *
-     * @param id
-     * @param b
-     */
-    private void mergeByteBuffers(long id, byte[] b) {
-        byte[] a = connectionMap.get(id).getReceivedData().array();
-        byte[] c = new byte[a.length + b.length];
-        System.arraycopy(a, 0, c, 0, a.length);
-        System.arraycopy(b, 0, c, a.length, b.length);
-        connectionMap.get(id).setReceivedData(ByteBuffer.wrap(c));
-    }
-
     /**
      * Disconnects the client
      *
@@ -10,34 +10,108 @@
 
 package me.jtalk.socketconnector.test.entity;
 
+import me.jtalk.socketconnector.test.io.Export;
+
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class NBDConnection {
-    private FileChannel fileChannel;
-    private ByteBuffer receivedData;
+    private final Queue<byte[]> pendingData = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean processingScheduled = new AtomicBoolean(false);
+    private volatile boolean closed;
+    private Export export;
+    private ByteBuffer receivedData = ByteBuffer.allocate(0);
     private boolean initialPhase = true;
+    private Integer clientFlags;
+    private boolean structuredReplies;
+    private boolean allocationContext;
 
 
-    public NBDConnection(ByteBuffer receivedData) {
-        this.receivedData = receivedData;
+    public Export getExport() {
+        return export;
     }
 
-    public FileChannel getFileChannel() {
-        return fileChannel;
+    public long getExportSize() {
+        return export.getSize();
     }
 
     public ByteBuffer getReceivedData() {
         return receivedData;
     }
 
-    public void setFileChannel(FileChannel fileChannel) {
-        this.fileChannel = fileChannel;
+    public void setExport(Export export) {
+        this.export = export;
+    }
+
+    /** Close the export, if one is opened */
+    public void closeExport() throws IOException {
+        try (Export current = export) {
+            export = null;
+        }
+    }
+
+    /**
+     * Append received bytes to the still unprocessed ones.
+     * A message following fully processed data is used without copying.
+     *
+     * @param data
+     */
+    public void append(byte[] data) {
+        if (!receivedData.hasRemaining()) {
+            receivedData = ByteBuffer.wrap(data);
+            return;
+        }
+
+        final ByteBuffer merged = ByteBuffer.allocate(receivedData.remaining() + data.length);
+        merged.put(receivedData);
+        merged.put(data);
+        merged.flip();
+        receivedData = merged;
+    }
+
+    /**
+     * Queue received bytes, without blocking on a running processing.
+     *
+     * @param data
+     * @return true when the caller has to schedule the processing, else false
+     */
+    public boolean enqueue(byte[] data) {
+        pendingData.add(data);
+        return processingScheduled.compareAndSet(false, true);
+    }
+
+    /** Append all queued bytes to the unprocessed ones */
+    public void appendPendingData() {
+        byte[] data;
+        while ((data = pendingData.poll()) != null)
+            this.append(data);
+    }
+
+    /**
+     * Mark the scheduled processing as finished.
+     *
+     * @return true when more bytes were queued meanwhile and the processing has to be rescheduled
+     */
+    public boolean finishProcessing() {
+        processingScheduled.set(false);
+        return !pendingData.isEmpty() && processingScheduled.compareAndSet(false, true);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed() {
+        this.closed = true;
     }
 
-    public void setReceivedData(ByteBuffer receivedData) {
-        this.receivedData = receivedData;
+    /** Drop all unprocessed bytes */
+    public void discardReceivedData() {
+        receivedData.position(receivedData.limit());
     }
 
     public void setInitialPhase(boolean initialPhase) {
@@ -47,4 +121,32 @@ public class NBDConnection {
     public boolean isInitialPhase() {
         return initialPhase;
     }
+
+    public boolean hasClientFlags() {
+        return clientFlags != null;
+    }
+
+    public int getClientFlags() {
+        return clientFlags;
+    }
+
+    public void setClientFlags(int clientFlags) {
+        this.clientFlags = clientFlags;
+    }
+
+    public boolean isStructuredReplies() {
+        return structuredReplies;
+    }
+
+    public void setStructuredReplies(boolean structuredReplies) {
+        this.structuredReplies = structuredReplies;
+    }
+
+    public boolean hasAllocationContext() {
+        return allocationContext;
+    }
+
+    public void setAllocationContext(boolean allocationContext) {
+        this.allocationContext = allocationContext;
+    }
 }
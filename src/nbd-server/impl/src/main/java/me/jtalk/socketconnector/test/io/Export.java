@@ -0,0 +1,126 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+
+/** An opened export, either read-only or with a writable overlay */
+public class Export implements Closeable {
+    private final FileChannel channel;
+    private final FileExtents extents;
+    private final long size;
+    private final Overlay overlay;
+    private final OverlayRegistry registry;
+
+    private Export(FileChannel channel, FileExtents extents, long size, Overlay overlay, OverlayRegistry registry) {
+        this.channel = channel;
+        this.extents = extents;
+        this.size = size;
+        this.overlay = overlay;
+        this.registry = registry;
+    }
+
+    /** Open a read-only export */
+    public static Export open(Path path) throws IOException {
+        return Export.open(path, null, null, null);
+    }
+
+    /**
+     * Open an export
+     *
+     * @param path the exported file
+     * @param registry registry to get the overlay from, or null for read-only exports
+     * @param name the overlay's name, or null for read-only exports
+     * @param token the token authorizing access to the overlay, or null for read-only exports
+     */
+    public static Export open(Path path, OverlayRegistry registry, String name, String token) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        FileExtents extents = null;
+        try {
+            extents = FileExtents.open(path, channel);
+            final long size = channel.size();
+            final Overlay overlay = (registry != null) ? registry.acquire(name, token, path, size) : null;
+            return new Export(channel, extents, size, overlay, registry);
+        } catch (IOException | RuntimeException error) {
+            try (FileChannel input = channel; FileExtents map = extents) {
+                throw error;
+            }
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isWritable() {
+        return overlay != null;
+    }
+
+    /** Channel of the exported file, without any changes written to the overlay */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /** @see FileExtents#find(long, long, int) */
+    public List<FileExtents.Extent> find(long offset, long length, int maxCount) throws IOException {
+        if (overlay != null)
+            return overlay.find(extents, offset, length, maxCount);
+
+        return extents.find(offset, length, maxCount);
+    }
+
+    /**
+     * Split the given range into regions to transfer the data from.
+     * Unlike {@link #find(long, long, int)}, holes are not looked up.
+     */
+    public List<FileExtents.Extent> regions(long offset, long length) throws IOException {
+        if (overlay != null)
+            return overlay.find(extents, offset, length, Integer.MAX_VALUE);
+
+        return Collections.singletonList(new FileExtents.Extent(offset, length, false, channel));
+    }
+
+    public void write(long offset, ByteBuffer data) throws IOException {
+        this.checkWritable();
+        overlay.write(offset, data);
+    }
+
+    public void trim(long offset, long length) throws IOException {
+        this.checkWritable();
+        overlay.trim(offset, length);
+    }
+
+    public void flush() throws IOException {
+        if (overlay != null)
+            overlay.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (FileChannel input = channel; FileExtents map = extents) {
+            if (overlay != null)
+                registry.release(overlay);
+        }
+    }
+
+    private void checkWritable() throws IOException {
+        if (overlay == null)
+            throw new IOException("Export is read-only");
+    }
+}
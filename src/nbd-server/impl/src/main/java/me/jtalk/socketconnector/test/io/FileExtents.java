@@ -0,0 +1,136 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.io;
+
+import com.sun.jna.LastErrorException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/** Allocation map of a (sparse) file, queried with SEEK_DATA/SEEK_HOLE */
+public class FileExtents implements Closeable {
+    private final int fd;
+    private final String path;
+    private final FileChannel source;
+    private boolean seekSupported = true;
+
+    private FileExtents(int fd, String path, FileChannel source) {
+        this.fd = fd;
+        this.path = path;
+        this.source = source;
+    }
+
+    /**
+     * Open the allocation map of a file
+     *
+     * @param path the file to describe
+     * @param source channel to read the described data from, attached to all found extents
+     */
+    public static FileExtents open(Path path, FileChannel source) throws IOException {
+        final String name = path.toString();
+        try {
+            return new FileExtents(LibC.open(name, LibC.O_RDONLY), name, source);
+        } catch (LastErrorException error) {
+            throw new IOException("Opening " + name + " failed: " + LibC.strerror(error.getErrorCode()));
+        }
+    }
+
+    /**
+     * Split the given range into alternating data and hole extents.
+     * When a filesystem does not report holes, the whole range is data.
+     *
+     * @param offset start of the range
+     * @param length length of the range
+     * @param maxCount max. number of extents to return, the last one may end before the range does
+     * @return extents covering the range from its start
+     */
+    public List<Extent> find(long offset, long length, int maxCount) throws IOException {
+        final List<Extent> extents = new ArrayList<>();
+        final long end = offset + length;
+        long position = offset;
+        while (position < end && extents.size() < maxCount) {
+            final long data = this.seek(position, LibC.SEEK_DATA);
+            final boolean hole = (data > position);
+            final long next = Math.min((hole) ? data : this.seek(position, LibC.SEEK_HOLE), end);
+            extents.add(new Extent(position, next - position, hole, source));
+            position = next;
+        }
+
+        return extents;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            LibC.close(fd);
+        } catch (LastErrorException error) {
+            throw new IOException("Closing " + path + " failed: " + LibC.strerror(error.getErrorCode()));
+        }
+    }
+
+    private long seek(long position, int whence) throws IOException {
+        if (!seekSupported)
+            return (whence == LibC.SEEK_DATA) ? position : Long.MAX_VALUE;
+
+        try {
+            return LibC.lseek(fd, position, whence);
+        } catch (LastErrorException error) {
+            switch (error.getErrorCode()) {
+                case LibC.ENXIO:
+                    // No more data/holes until the end of file
+                    return Long.MAX_VALUE;
+                case LibC.EINVAL:
+                    // Not supported by the filesystem
+                    seekSupported = false;
+                    return this.seek(position, whence);
+                default:
+                    throw new IOException("Seeking in " + path + " failed: " + LibC.strerror(error.getErrorCode()));
+            }
+        }
+    }
+
+
+    public static class Extent {
+        private final long offset;
+        private final long length;
+        private final boolean hole;
+        private final FileChannel source;
+
+        public Extent(long offset, long length, boolean hole, FileChannel source) {
+            this.offset = offset;
+            this.length = length;
+            this.hole = hole;
+            this.source = source;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public boolean isHole() {
+            return hole;
+        }
+
+        /** Channel to transfer the extent's data from, at the extent's offset */
+        public FileChannel getSource() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.io;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+
+
+/** Native file API, not exposed by FileChannel */
+final class LibC {
+    static final int O_RDONLY = 0;
+    static final int O_WRONLY = 1;
+    static final int SEEK_DATA = 3;
+    static final int SEEK_HOLE = 4;
+    static final int FALLOC_FL_KEEP_SIZE = 0x01;
+    static final int FALLOC_FL_PUNCH_HOLE = 0x02;
+    static final int ENXIO = 6;
+    static final int EINVAL = 22;
+    static final int EOPNOTSUPP = 95;
+
+    static native String strerror(int errnum);
+    static native int open(String path, int flags) throws LastErrorException;
+    static native long lseek(int fd, long offset, int whence) throws LastErrorException;
+    static native int fallocate(int fd, int mode, long offset, long length) throws LastErrorException;
+    static native int close(int fd) throws LastErrorException;
+
+    static {
+        if (!Platform.isLinux())
+            throw new UnsupportedOperationException("The current platform is not supported!");
+
+        Native.register(Platform.C_LIBRARY_NAME);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.io;
+
+import com.sun.jna.LastErrorException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+
+/**
+ * Sparse copy-on-write overlay over a read-only export. Written clusters
+ * are stored in an overlay file at their original offsets, all others
+ * are still read from the base file.
+ */
+public class Overlay implements Closeable {
+    public static final int CLUSTER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final Path path;
+    private final FileChannel channel;
+    private final FileChannel base;
+    private final long size;
+    private final BitSet clusters;
+    private final ByteBuffer buffer;
+    private final int fd;
+    private boolean punchSupported = true;
+
+    /* bookkeeping of the OverlayRegistry */
+    int references;
+    long releasedAt;
+
+    Overlay(String name, Path path, Path base, long size) throws IOException {
+        this.name = name;
+        this.path = path;
+        this.size = size;
+        this.clusters = new BitSet();
+        this.buffer = ByteBuffer.allocate(CLUSTER_SIZE);
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(size);
+        }
+
+        // The base file is opened separately, since the overlay may outlive its first client
+        this.base = FileChannel.open(base, StandardOpenOption.READ);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.fd = LibC.open(path.toString(), LibC.O_WRONLY);
+        } catch (LastErrorException error) {
+            this.base.close();
+            this.channel.close();
+            throw new IOException("Opening " + path + " failed: " + LibC.strerror(error.getErrorCode()));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Split the given range into extents, taking written clusters from the overlay
+     * and everything else from the base file's allocation map.
+     *
+     * @see FileExtents#find(long, long, int)
+     */
+    public synchronized List<FileExtents.Extent> find(FileExtents baseExtents, long offset, long length, int maxCount)
+            throws IOException {
+        final List<FileExtents.Extent> extents = new ArrayList<>();
+        final long end = offset + length;
+        long position = offset;
+        while (position < end && extents.size() < maxCount) {
+            final int cluster = (int) (position / CLUSTER_SIZE);
+            final boolean written = clusters.get(cluster);
+            final int nextCluster = (written) ? clusters.nextClearBit(cluster) : clusters.nextSetBit(cluster);
+            final long next = (nextCluster < 0) ? end : Math.min((long) nextCluster * CLUSTER_SIZE, end);
+            if (written)
+                extents.add(new FileExtents.Extent(position, next - position, false, channel));
+            else extents.addAll(baseExtents.find(position, next - position, maxCount - extents.size()));
+
+            position = next;
+        }
+
+        return extents;
+    }
+
+    /**
+     * Write data at given offset. Partially written clusters
+     * are first filled with their original content.
+     */
+    public synchronized void write(long offset, ByteBuffer data) throws IOException {
+        final long end = offset + data.remaining();
+        final int first = (int) (offset / CLUSTER_SIZE);
+        final int last = (int) ((end - 1) / CLUSTER_SIZE);
+        if (offset % CLUSTER_SIZE != 0)
+            this.copyFromBase(first);
+
+        if (end % CLUSTER_SIZE != 0 && end < size)
+            this.copyFromBase(last);
+
+        long position = offset;
+        while (data.hasRemaining())
+            position += channel.write(data, position);
+
+        clusters.set(first, last + 1);
+    }
+
+    /**
+     * Discard data of all clusters completely covered by the given range.
+     * Discarded clusters read back as zeroes.
+     */
+    public synchronized void trim(long offset, long length) throws IOException {
+        final long end = offset + length;
+        final int first = (int) ((offset + CLUSTER_SIZE - 1) / CLUSTER_SIZE);
+        final int last = (end == size) ? (int) ((end - 1) / CLUSTER_SIZE) : (int) (end / CLUSTER_SIZE) - 1;
+        if (first > last || !punchSupported)
+            return;
+
+        final long start = (long) first * CLUSTER_SIZE;
+        final long count = Math.min((long) (last + 1) * CLUSTER_SIZE, size) - start;
+        try {
+            LibC.fallocate(fd, LibC.FALLOC_FL_PUNCH_HOLE | LibC.FALLOC_FL_KEEP_SIZE, start, count);
+        } catch (LastErrorException error) {
+            if (error.getErrorCode() != LibC.EOPNOTSUPP)
+                throw new IOException("Discarding in " + path + " failed: " + LibC.strerror(error.getErrorCode()));
+
+            // Trimming is only advisory, keep the data
+            punchSupported = false;
+            return;
+        }
+
+        clusters.set(first, last + 1);
+    }
+
+    public void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (FileChannel input = base; FileChannel output = channel) {
+            LibC.close(fd);
+        } catch (LastErrorException error) {
+            throw new IOException("Closing " + path + " failed: " + LibC.strerror(error.getErrorCode()));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void copyFromBase(int cluster) throws IOException {
+        if (clusters.get(cluster))
+            return;
+
+        final long start = (long) cluster * CLUSTER_SIZE;
+        buffer.clear();
+        buffer.limit((int) Math.min(CLUSTER_SIZE, size - start));
+        while (buffer.hasRemaining()) {
+            if (base.read(buffer, start + buffer.position()) < 0)
+                break;
+        }
+
+        buffer.flip();
+        long position = start;
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+
+        clusters.set(cluster);
+    }
+}
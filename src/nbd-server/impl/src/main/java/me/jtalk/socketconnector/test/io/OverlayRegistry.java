@@ -0,0 +1,166 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.io;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+
+/**
+ * Registry of writable overlays, keyed by the export names requested by clients.
+ * Access to an overlay requires a token, computed as HMAC-SHA256 of its name with
+ * a secret shared with the party issuing export names, and only one connection
+ * can use an overlay at a time. Overlays survive reconnects of their clients and
+ * are deleted after being unused for a configured period of time.
+ */
+public class OverlayRegistry {
+    private static final Logger log = Logger.getLogger(OverlayRegistry.class.getName());
+
+    private static final String TOKEN_ALGORITHM = "HmacSHA256";
+
+    private final Path directory;
+    private final long idleTimeout;
+    private final byte[] secret;
+    private final Map<String, Overlay> overlays = new HashMap<>();
+
+    /**
+     * @param directory where overlay files are stored, stale files are removed
+     * @param idleTimeout time in ms, after which released overlays are deleted
+     * @param secret key for the overlays' access tokens, overlays are disabled if empty
+     */
+    public OverlayRegistry(Path directory, long idleTimeout, String secret) throws IOException {
+        this.directory = directory;
+        this.idleTimeout = idleTimeout;
+        this.secret = (secret != null) ? secret.getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+        // Files of a previous run cannot be reused, since
+        // the maps of written clusters are kept in memory
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "NBD: removing stale overlay " + file + " failed", e);
+                }
+            });
+        }
+    }
+
+    /** Whether writable overlays can be used, requires a configured secret */
+    public boolean isEnabled() {
+        return secret.length > 0;
+    }
+
+    /**
+     * Compute the token authorizing access to an overlay
+     *
+     * @param secret the secret shared with the server
+     * @param name the overlay's name, i.e. the export name up to the token
+     * @return the token as hex string
+     */
+    public static String token(String secret, String name) {
+        return toHexString(hmac(secret.getBytes(StandardCharsets.UTF_8), name));
+    }
+
+    /**
+     * Get the overlay for the given export name, or create a new one
+     *
+     * @param name the export name requested by the client, without the token
+     * @param token the token authorizing access to the overlay
+     * @param base the read-only file to put the overlay on
+     * @param size size of the base file
+     */
+    public synchronized Overlay acquire(String name, String token, Path base, long size) throws IOException {
+        if (!this.isAuthorized(name, token))
+            throw new IOException("Access to overlay " + name + " denied");
+
+        Overlay overlay = overlays.get(name);
+        if (overlay == null) {
+            final String filename = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)) + ".overlay";
+            overlay = new Overlay(name, directory.resolve(filename), base, size);
+            overlays.put(name, overlay);
+            log.log(Level.INFO, "NBD: created overlay for " + name);
+        } else if (overlay.references > 0) {
+            // Overlays are bound to a single connection
+            throw new IOException("Overlay " + name + " is already in use");
+        } else if (overlay.getSize() != size) {
+            throw new IOException("Export " + name + " changed its size since its overlay was created");
+        }
+
+        ++overlay.references;
+        return overlay;
+    }
+
+    /** Release an overlay acquired before */
+    public synchronized void release(Overlay overlay) {
+        if (--overlay.references == 0)
+            overlay.releasedAt = System.currentTimeMillis();
+    }
+
+    /** Delete all overlays unused for longer than the idle timeout */
+    public synchronized void expire() {
+        final long deadline = System.currentTimeMillis() - idleTimeout;
+        final Iterator<Overlay> iter = overlays.values().iterator();
+        while (iter.hasNext()) {
+            final Overlay overlay = iter.next();
+            if (overlay.references > 0 || overlay.releasedAt > deadline)
+                continue;
+
+            iter.remove();
+            try {
+                overlay.close();
+                log.log(Level.INFO, "NBD: deleted expired overlay for " + overlay.getName());
+            } catch (IOException e) {
+                log.log(Level.WARNING, "NBD: deleting overlay for " + overlay.getName() + " failed", e);
+            }
+        }
+    }
+
+    private boolean isAuthorized(String name, String token) {
+        if (!this.isEnabled() || token == null)
+            return false;
+
+        final byte[] expected = toHexString(hmac(secret, name)).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, token.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] hmac(byte[] secret, String name) {
+        try {
+            final Mac mac = Mac.getInstance(TOKEN_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, TOKEN_ALGORITHM));
+            return mac.doFinal(name.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(TOKEN_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static String toHexString(byte[] bytes) {
+        final StringBuilder result = new StringBuilder(2 * bytes.length);
+        for (byte value : bytes)
+            result.append(String.format("%02x", value));
+
+        return result.toString();
+    }
+}
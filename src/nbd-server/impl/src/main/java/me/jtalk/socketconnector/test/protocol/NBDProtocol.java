@@ -11,12 +11,100 @@
 package me.jtalk.socketconnector.test.protocol;
 
 public class NBDProtocol {
-    public static final byte[] SERVER_RESPOND_FLAG = new byte[2];
-    public static final byte[] EMPTY_124 = new byte[122];
+    public static final byte[] NBD_ZEROES = new byte[124];
     public static final long CLIENT_MAGIC = 0x49484156454F5054L;
     public static final int CLIENT_MAGIC_RESPONSE = 0x25609513;
     public static final int NBD_REPLY_MAGIC = 0x67446698;
-    public static final byte[] NBD_OK_BYTES = new byte[4];
     public static final int MINIMAL_HANDSHAKE_LENGTH = 16;
 
+    /* ========== Handshake ========== */
+
+    public static final int CLIENT_FLAGS_LENGTH = 4;
+    /* option magic (8) + option (4) + option length (4) */
+    public static final int OPTION_HEADER_LENGTH = 16;
+    public static final int MAX_OPTION_LENGTH = 64 * 1024;
+    public static final int MAX_EXPORT_NAME_LENGTH = 4096;
+    /* separates the exported file's name from the key of its writable overlay */
+    public static final String OVERLAY_SEPARATOR = ";overlay=";
+    /* separates the overlay's key from the token authorizing access to it */
+    public static final String TOKEN_SEPARATOR = ";token=";
+
+    public static final int NBD_FLAG_C_NO_ZEROES = 1 << 1;
+
+    public static final int NBD_OPT_EXPORT_NAME = 1;
+    public static final int NBD_OPT_ABORT = 2;
+    public static final int NBD_OPT_INFO = 6;
+    public static final int NBD_OPT_GO = 7;
+    public static final int NBD_OPT_STRUCTURED_REPLY = 8;
+    public static final int NBD_OPT_LIST_META_CONTEXT = 9;
+    public static final int NBD_OPT_SET_META_CONTEXT = 10;
+
+    public static final long NBD_OPTION_REPLY_MAGIC = 0x3e889045565a9L;
+    /* magic (8) + option (4) + reply type (4) + length (4) */
+    public static final int OPTION_REPLY_HEADER_LENGTH = 20;
+
+    public static final int NBD_REP_ACK = 1;
+    public static final int NBD_REP_INFO = 3;
+    public static final int NBD_REP_META_CONTEXT = 4;
+    public static final int NBD_REP_ERR_UNSUP = 0x80000001;
+    public static final int NBD_REP_ERR_INVALID = 0x80000003;
+    public static final int NBD_REP_ERR_UNKNOWN = 0x80000006;
+
+    public static final short NBD_INFO_EXPORT = 0;
+
+    public static final short NBD_FLAG_HAS_FLAGS = 1 << 0;
+    public static final short NBD_FLAG_READ_ONLY = 1 << 1;
+    public static final short NBD_FLAG_SEND_FLUSH = 1 << 2;
+    public static final short NBD_FLAG_SEND_FUA = 1 << 3;
+    public static final short NBD_FLAG_SEND_TRIM = 1 << 5;
+    public static final short NBD_FLAG_SEND_DF = 1 << 7;
+
+    /* ========== Transmission ========== */
+
+    /* magic (4) + flags (2) + type (2) + handle (8) + offset (8) + length (4) */
+    public static final int REQUEST_HEADER_LENGTH = 28;
+    /* magic (4) + error (4) + handle (8) */
+    public static final int REPLY_HEADER_LENGTH = 16;
+    /* larger writes are a protocol violation, their payload is not buffered */
+    public static final int MAX_WRITE_LENGTH = 32 * 1024 * 1024;
+
+    public static final short NBD_CMD_READ = 0;
+    public static final short NBD_CMD_WRITE = 1;
+    public static final short NBD_CMD_DISC = 2;
+    public static final short NBD_CMD_FLUSH = 3;
+    public static final short NBD_CMD_TRIM = 4;
+    public static final short NBD_CMD_BLOCK_STATUS = 7;
+
+    public static final short NBD_CMD_FLAG_FUA = 1 << 0;
+    public static final short NBD_CMD_FLAG_DF = 1 << 2;
+    public static final short NBD_CMD_FLAG_REQ_ONE = 1 << 3;
+
+    public static final int NBD_OK = 0;
+    public static final int NBD_EPERM = 1;
+    public static final int NBD_EIO = 5;
+    public static final int NBD_EINVAL = 22;
+    public static final int NBD_ENOSPC = 28;
+
+    /* ========== Structured replies ========== */
+
+    public static final int NBD_STRUCTURED_REPLY_MAGIC = 0x668e33ef;
+    /* magic (4) + flags (2) + type (2) + handle (8) + length (4) */
+    public static final int STRUCTURED_REPLY_HEADER_LENGTH = 20;
+
+    public static final short NBD_REPLY_FLAG_DONE = 1 << 0;
+
+    public static final short NBD_REPLY_TYPE_OFFSET_DATA = 1;
+    public static final short NBD_REPLY_TYPE_OFFSET_HOLE = 2;
+    public static final short NBD_REPLY_TYPE_BLOCK_STATUS = 5;
+    public static final short NBD_REPLY_TYPE_ERROR = (short) ((1 << 15) + 1);
+
+    /* ========== Metadata contexts ========== */
+
+    public static final String BASE_ALLOCATION_CONTEXT = "base:allocation";
+    public static final String BASE_NAMESPACE = "base:";
+    public static final int BASE_ALLOCATION_CONTEXT_ID = 1;
+    public static final int MAX_BLOCK_STATUS_EXTENTS = 1024;
+
+    public static final int NBD_STATE_HOLE = 1 << 0;
+    public static final int NBD_STATE_ZERO = 1 << 1;
 }
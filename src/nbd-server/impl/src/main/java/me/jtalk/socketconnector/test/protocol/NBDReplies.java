@@ -0,0 +1,64 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.protocol;
+
+import java.nio.ByteBuffer;
+
+import static me.jtalk.socketconnector.test.protocol.NBDProtocol.*;
+
+
+/** Helpers for encoding of server replies */
+public class NBDReplies {
+
+    /** Create a reply to a handshake option, with payload space left to fill in */
+    public static ByteBuffer option(int option, int type, int length) {
+        final ByteBuffer reply = ByteBuffer.allocate(OPTION_REPLY_HEADER_LENGTH + length);
+        reply.putLong(NBD_OPTION_REPLY_MAGIC);
+        reply.putInt(option);
+        reply.putInt(type);
+        reply.putInt(length);
+        return reply;
+    }
+
+    /** Create a simple reply without payload */
+    public static ByteBuffer simple(int error, long handle) {
+        final ByteBuffer reply = ByteBuffer.allocate(REPLY_HEADER_LENGTH);
+        reply.putInt(NBD_REPLY_MAGIC);
+        reply.putInt(error);
+        reply.putLong(handle);
+        reply.flip();
+        return reply;
+    }
+
+    /**
+     * Create a structured reply chunk, with space for the payload of given length.
+     * Only {@code capacity} bytes of the payload will be allocated, the rest is
+     * expected to be sent separately.
+     */
+    public static ByteBuffer chunk(short flags, short type, long handle, long length, int capacity) {
+        final ByteBuffer reply = ByteBuffer.allocate(STRUCTURED_REPLY_HEADER_LENGTH + capacity);
+        reply.putInt(NBD_STRUCTURED_REPLY_MAGIC);
+        reply.putShort(flags);
+        reply.putShort(type);
+        reply.putLong(handle);
+        reply.putInt((int) length);
+        return reply;
+    }
+
+    /** Create a final structured error chunk */
+    public static ByteBuffer error(int error, long handle) {
+        final ByteBuffer reply = NBDReplies.chunk(NBD_REPLY_FLAG_DONE, NBD_REPLY_TYPE_ERROR, handle, 6, 6);
+        reply.putInt(error);
+        reply.putShort((short) 0);
+        reply.flip();
+        return reply;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test;
+
+import me.jtalk.socketconnector.api.TCPConnection;
+import me.jtalk.socketconnector.api.TCPConnectionFactory;
+import me.jtalk.socketconnector.test.entity.NBDConnection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.Reference;
+import javax.resource.ResourceException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static me.jtalk.socketconnector.test.protocol.NBDProtocol.*;
+
+
+public class ConnectorNegotiationTest {
+    private static final long ID = 1L;
+    private static final long HANDLE = 0x0102030405060708L;
+    private static final String EXPORT_NAME = "disk";
+    private static final long EXPORT_SIZE = 64 * 1024;
+
+    private Connector connector;
+    private RecordingConnection output;
+    private NBDConnection connection;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("nbd-export", ".img");
+        try (RandomAccessFile export = new RandomAccessFile(file.toFile(), "rw")) {
+            export.setLength(EXPORT_SIZE);
+        }
+
+        output = new RecordingConnection();
+        connection = new NBDConnection();
+        connector = new Connector();
+        connector.factory = new RecordingConnectionFactory(output);
+        connector.connectors = Collections.singletonList(name -> (EXPORT_NAME.equals(name)) ? file.toFile() : null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try {
+            connection.closeExport();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void negotiatesStructuredReplies() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_STRUCTURED_REPLY, new byte[0]));
+        final ByteBuffer replies = output.replies();
+        assertOptionReply(replies, NBD_OPT_STRUCTURED_REPLY, NBD_REP_ACK, 0);
+        Assert.assertFalse(replies.hasRemaining());
+        Assert.assertTrue(connection.isStructuredReplies());
+        Assert.assertTrue(connection.isInitialPhase());
+    }
+
+    @Test
+    public void rejectsStructuredRepliesWithPayload() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_STRUCTURED_REPLY, new byte[1]));
+        assertOptionReply(output.replies(), NBD_OPT_STRUCTURED_REPLY, NBD_REP_ERR_INVALID, 0);
+        Assert.assertFalse(connection.isStructuredReplies());
+    }
+
+    @Test
+    public void rejectsMetaContextWithoutStructuredReplies() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_SET_META_CONTEXT, metaContextQuery(BASE_ALLOCATION_CONTEXT)));
+        assertOptionReply(output.replies(), NBD_OPT_SET_META_CONTEXT, NBD_REP_ERR_INVALID, 0);
+        Assert.assertFalse(connection.hasAllocationContext());
+    }
+
+    @Test
+    public void selectsAllocationContext() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_STRUCTURED_REPLY, new byte[0]),
+                option(NBD_OPT_SET_META_CONTEXT, metaContextQuery(BASE_ALLOCATION_CONTEXT)));
+
+        final ByteBuffer replies = output.replies();
+        final byte[] name = BASE_ALLOCATION_CONTEXT.getBytes(StandardCharsets.US_ASCII);
+        assertOptionReply(replies, NBD_OPT_STRUCTURED_REPLY, NBD_REP_ACK, 0);
+        assertOptionReply(replies, NBD_OPT_SET_META_CONTEXT, NBD_REP_META_CONTEXT, Integer.BYTES + name.length);
+        Assert.assertEquals(BASE_ALLOCATION_CONTEXT_ID, replies.getInt());
+        replies.position(replies.position() + name.length);
+        assertOptionReply(replies, NBD_OPT_SET_META_CONTEXT, NBD_REP_ACK, 0);
+        Assert.assertTrue(connection.hasAllocationContext());
+    }
+
+    @Test
+    public void rejectsUnknownOptions() throws Exception {
+        this.receive(clientFlags(), option(42, new byte[0]));
+        assertOptionReply(output.replies(), 42, NBD_REP_ERR_UNSUP, 0);
+    }
+
+    @Test
+    public void rejectsUnknownExports() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_GO, exportName("missing")));
+        assertOptionReply(output.replies(), NBD_OPT_GO, NBD_REP_ERR_UNKNOWN, 0);
+        Assert.assertTrue(connection.isInitialPhase());
+    }
+
+    @Test
+    public void entersTransmissionWithGo() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_GO, exportName(EXPORT_NAME)));
+
+        final ByteBuffer replies = output.replies();
+        assertOptionReply(replies, NBD_OPT_GO, NBD_REP_INFO, Short.BYTES + Long.BYTES + Short.BYTES);
+        Assert.assertEquals(NBD_INFO_EXPORT, replies.getShort());
+        Assert.assertEquals(EXPORT_SIZE, replies.getLong());
+        Assert.assertEquals(NBD_FLAG_HAS_FLAGS | NBD_FLAG_READ_ONLY, replies.getShort());
+        assertOptionReply(replies, NBD_OPT_GO, NBD_REP_ACK, 0);
+        Assert.assertFalse(connection.isInitialPhase());
+    }
+
+    @Test
+    public void answersBlockStatusWithSimpleReplyWithoutStructuredReplies() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_GO, exportName(EXPORT_NAME)),
+                request(NBD_CMD_BLOCK_STATUS, 0, EXPORT_SIZE));
+
+        final ByteBuffer replies = output.replies();
+        replies.position(replies.limit() - REPLY_HEADER_LENGTH);
+        Assert.assertEquals(NBD_REPLY_MAGIC, replies.getInt());
+        Assert.assertEquals(NBD_EINVAL, replies.getInt());
+        Assert.assertEquals(HANDLE, replies.getLong());
+    }
+
+    @Test
+    public void answersBlockStatusInAllocationContext() throws Exception {
+        this.receive(clientFlags(), option(NBD_OPT_STRUCTURED_REPLY, new byte[0]),
+                option(NBD_OPT_SET_META_CONTEXT, metaContextQuery(BASE_ALLOCATION_CONTEXT)),
+                option(NBD_OPT_GO, exportName(EXPORT_NAME)));
+
+        output.clear();
+        this.receive(request(NBD_CMD_BLOCK_STATUS, 0, EXPORT_SIZE));
+
+        // The export is a single hole
+        final ByteBuffer replies = output.replies();
+        Assert.assertEquals(NBD_STRUCTURED_REPLY_MAGIC, replies.getInt());
+        Assert.assertEquals(NBD_REPLY_FLAG_DONE, replies.getShort());
+        Assert.assertEquals(NBD_REPLY_TYPE_BLOCK_STATUS, replies.getShort());
+        Assert.assertEquals(HANDLE, replies.getLong());
+        Assert.assertEquals(3 * Integer.BYTES, replies.getInt());
+        Assert.assertEquals(BASE_ALLOCATION_CONTEXT_ID, replies.getInt());
+        Assert.assertEquals(EXPORT_SIZE, replies.getInt());
+        Assert.assertEquals(NBD_STATE_HOLE | NBD_STATE_ZERO, replies.getInt());
+        Assert.assertFalse(replies.hasRemaining());
+    }
+
+    @Test
+    public void disconnectsOnInvalidMagic() throws Exception {
+        final ByteBuffer invalid = option(NBD_OPT_GO, exportName(EXPORT_NAME));
+        invalid.putLong(0, 0L);
+        this.receive(clientFlags(), invalid);
+        Assert.assertTrue(output.disconnected);
+        Assert.assertFalse(output.replies().hasRemaining());
+    }
+
+    private void receive(ByteBuffer... messages) throws ResourceException, IOException {
+        for (ByteBuffer message : messages) {
+            final byte[] data = new byte[message.remaining()];
+            message.get(data);
+            connection.append(data);
+        }
+
+        connector.processMessageData(ID, connection);
+    }
+
+    private static ByteBuffer clientFlags() {
+        final ByteBuffer flags = ByteBuffer.allocate(CLIENT_FLAGS_LENGTH);
+        flags.putInt(0, NBD_FLAG_C_NO_ZEROES);
+        return flags;
+    }
+
+    private static ByteBuffer option(int option, byte[] data) {
+        final ByteBuffer message = ByteBuffer.allocate(OPTION_HEADER_LENGTH + data.length);
+        message.putLong(CLIENT_MAGIC);
+        message.putInt(option);
+        message.putInt(data.length);
+        message.put(data);
+        message.flip();
+        return message;
+    }
+
+    private static ByteBuffer request(short type, long offset, long length) {
+        final ByteBuffer message = ByteBuffer.allocate(REQUEST_HEADER_LENGTH);
+        message.putInt(CLIENT_MAGIC_RESPONSE);
+        message.putShort((short) 0);
+        message.putShort(type);
+        message.putLong(HANDLE);
+        message.putLong(offset);
+        message.putInt((int) length);
+        message.flip();
+        return message;
+    }
+
+    /** Export name followed by zero info requests, as sent with NBD_OPT_GO */
+    private static byte[] exportName(String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer data = ByteBuffer.allocate(Integer.BYTES + bytes.length + Short.BYTES);
+        data.putInt(bytes.length);
+        data.put(bytes);
+        data.putShort((short) 0);
+        return data.array();
+    }
+
+    /** Query for a single context of the default export */
+    private static byte[] metaContextQuery(String query) {
+        final byte[] bytes = query.getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer data = ByteBuffer.allocate(3 * Integer.BYTES + bytes.length);
+        data.putInt(0);
+        data.putInt(1);
+        data.putInt(bytes.length);
+        data.put(bytes);
+        return data.array();
+    }
+
+    private static void assertOptionReply(ByteBuffer replies, int option, int type, int length) {
+        Assert.assertEquals(NBD_OPTION_REPLY_MAGIC, replies.getLong());
+        Assert.assertEquals(option, replies.getInt());
+        Assert.assertEquals(type, replies.getInt());
+        Assert.assertEquals(length, replies.getInt());
+    }
+
+
+    /** Connection collecting all data sent through it */
+    private static class RecordingConnection implements TCPConnection {
+        private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        private boolean disconnected;
+
+        public ByteBuffer replies() {
+            return ByteBuffer.wrap(sent.toByteArray());
+        }
+
+        public void clear() {
+            sent.reset();
+        }
+
+        @Override
+        public long getId() {
+            return ID;
+        }
+
+        @Override
+        public void send(ByteBuffer message) {
+            final byte[] data = new byte[message.remaining()];
+            message.get(data);
+            sent.write(data, 0, data.length);
+        }
+
+        @Override
+        public void sendFile(ByteBuffer header, FileChannel file, long position, long count) throws ResourceException {
+            if (header != null)
+                this.send(header);
+
+            try {
+                file.transferTo(position, count, Channels.newChannel(sent));
+            } catch (IOException e) {
+                throw new ResourceException("Transfer failed", e);
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to detach
+        }
+    }
+
+    private static class RecordingConnectionFactory implements TCPConnectionFactory {
+        private final transient RecordingConnection connection;
+
+        public RecordingConnectionFactory(RecordingConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public TCPConnection getConnection(long uid, long connectionId) {
+            return connection;
+        }
+
+        @Override
+        public TCPConnection createConnection(long uid, InetSocketAddress target) throws ResourceException {
+            throw new ResourceException("Not supported");
+        }
+
+        @Override
+        public TCPConnection listen(long uid, InetSocketAddress address) throws ResourceException {
+            throw new ResourceException("Not supported");
+        }
+
+        @Override
+        public void setReference(Reference reference) {
+            // Not bound to JNDI
+        }
+
+        @Override
+        public Reference getReference() {
+            return null;
+        }
+    }
+}
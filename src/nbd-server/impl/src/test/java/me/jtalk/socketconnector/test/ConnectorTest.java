@@ -0,0 +1,44 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ConnectorTest {
+    private static final long SIZE = 1024L * 1024L;
+
+    @Test
+    public void acceptsRangesWithinExport() {
+        Assert.assertTrue(Connector.isValidRange(SIZE, 0, 0));
+        Assert.assertTrue(Connector.isValidRange(SIZE, 0, SIZE));
+        Assert.assertTrue(Connector.isValidRange(SIZE, SIZE - 1, 1));
+        Assert.assertTrue(Connector.isValidRange(SIZE, SIZE, 0));
+    }
+
+    @Test
+    public void rejectsRangesBeyondExport() {
+        Assert.assertFalse(Connector.isValidRange(SIZE, 0, SIZE + 1));
+        Assert.assertFalse(Connector.isValidRange(SIZE, SIZE, 1));
+        Assert.assertFalse(Connector.isValidRange(SIZE, SIZE + 1, 0));
+        Assert.assertFalse(Connector.isValidRange(SIZE, -1, 1));
+        Assert.assertFalse(Connector.isValidRange(SIZE, 0, -1));
+    }
+
+    @Test
+    public void rejectsOverflowingRanges() {
+        // offset + length wraps around to a small value
+        Assert.assertFalse(Connector.isValidRange(SIZE, Long.MAX_VALUE, 2));
+        Assert.assertFalse(Connector.isValidRange(SIZE, Long.MAX_VALUE - 10, 0xFFFFFFFFL));
+        Assert.assertFalse(Connector.isValidRange(SIZE, 1, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+
+public class FileExtentsTest {
+    private static final int BLOCK = 64 * 1024;
+    private static final long SIZE = 16 * BLOCK;
+
+    private Path path;
+    private FileChannel channel;
+    private FileExtents extents;
+
+    @Before
+    public void setUp() throws IOException {
+        // Data in the first and the last block, a hole in between
+        path = Files.createTempFile("nbd-extents", ".img");
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(SIZE);
+            file.write(new byte[BLOCK]);
+            file.seek(SIZE - BLOCK);
+            file.write(new byte[BLOCK]);
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        extents = FileExtents.open(path, channel);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (FileChannel input = channel; FileExtents map = extents) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void findsDataAndHoles() throws IOException {
+        final List<FileExtents.Extent> found = extents.find(0, SIZE, Integer.MAX_VALUE);
+        Assert.assertEquals(3, found.size());
+        assertExtent(found.get(0), 0, BLOCK, false);
+        assertExtent(found.get(1), BLOCK, SIZE - 2 * BLOCK, true);
+        assertExtent(found.get(2), SIZE - BLOCK, BLOCK, false);
+        for (FileExtents.Extent extent : found)
+            Assert.assertSame(channel, extent.getSource());
+    }
+
+    @Test
+    public void clipsExtentsToRange() throws IOException {
+        final List<FileExtents.Extent> found = extents.find(BLOCK / 2, 2 * BLOCK, Integer.MAX_VALUE);
+        Assert.assertEquals(2, found.size());
+        assertExtent(found.get(0), BLOCK / 2, BLOCK / 2, false);
+        assertExtent(found.get(1), BLOCK, 3 * BLOCK / 2, true);
+    }
+
+    @Test
+    public void limitsNumberOfExtents() throws IOException {
+        final List<FileExtents.Extent> found = extents.find(0, SIZE, 2);
+        Assert.assertEquals(2, found.size());
+        assertExtent(found.get(1), BLOCK, SIZE - 2 * BLOCK, true);
+    }
+
+    @Test
+    public void findsNothingInEmptyRange() throws IOException {
+        Assert.assertTrue(extents.find(BLOCK, 0, Integer.MAX_VALUE).isEmpty());
+    }
+
+    private static void assertExtent(FileExtents.Extent extent, long offset, long length, boolean hole) {
+        Assert.assertEquals(offset, extent.getOffset());
+        Assert.assertEquals(length, extent.getLength());
+        Assert.assertEquals(hole, extent.isHole());
+    }
+}
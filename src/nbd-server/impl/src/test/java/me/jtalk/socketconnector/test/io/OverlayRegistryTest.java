@@ -0,0 +1,92 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+
+public class OverlayRegistryTest {
+    private static final String SECRET = "secret";
+    private static final long SIZE = 4 * Overlay.CLUSTER_SIZE;
+
+    private Path directory;
+    private Path base;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("nbd-overlays-test");
+        base = Files.createTempFile("nbd-base", ".img");
+        try (RandomAccessFile file = new RandomAccessFile(base.toFile(), "rw")) {
+            file.setLength(SIZE);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(base);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void acquiresOverlayWithValidToken() throws IOException {
+        final OverlayRegistry registry = new OverlayRegistry(directory, 0, SECRET);
+        final String name = "disk;overlay=abc";
+        final Overlay overlay = registry.acquire(name, OverlayRegistry.token(SECRET, name), base, SIZE);
+        Assert.assertEquals(name, overlay.getName());
+        registry.release(overlay);
+        registry.expire();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTokenOfOtherOverlay() throws IOException {
+        final OverlayRegistry registry = new OverlayRegistry(directory, 0, SECRET);
+        registry.acquire("disk;overlay=abc", OverlayRegistry.token(SECRET, "disk;overlay=xyz"), base, SIZE);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOverlaysWithoutSecret() throws IOException {
+        final OverlayRegistry registry = new OverlayRegistry(directory, 0, "");
+        final String name = "disk;overlay=abc";
+        registry.acquire(name, OverlayRegistry.token(SECRET, name), base, SIZE);
+    }
+
+    @Test
+    public void bindsOverlayToOneConnection() throws IOException {
+        final OverlayRegistry registry = new OverlayRegistry(directory, 60 * 1000L, SECRET);
+        final String name = "disk;overlay=abc";
+        final String token = OverlayRegistry.token(SECRET, name);
+        final Overlay overlay = registry.acquire(name, token, base, SIZE);
+        try {
+            registry.acquire(name, token, base, SIZE);
+            Assert.fail("Overlay was acquired twice");
+        } catch (IOException expected) {
+            // Overlay is in use
+        }
+
+        // Reconnects get the same overlay back
+        registry.release(overlay);
+        Assert.assertSame(overlay, registry.acquire(name, token, base, SIZE));
+        registry.release(overlay);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * NBD Server
+ * Oleg Zharkov
+ * Uni Freiburg
+ * 2016
+ * <p>
+ * was built on the top of socketconnector
+ * https://bitbucket.org/__jtalk/socketconnector
+ */
+
+package me.jtalk.socketconnector.test.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static me.jtalk.socketconnector.test.protocol.NBDProtocol.*;
+
+
+public class NBDRepliesTest {
+    private static final long HANDLE = 0x0102030405060708L;
+
+    @Test
+    public void encodesSimpleReply() {
+        final ByteBuffer reply = NBDReplies.simple(5, HANDLE);
+        Assert.assertEquals(REPLY_HEADER_LENGTH, reply.remaining());
+        Assert.assertEquals(NBD_REPLY_MAGIC, reply.getInt());
+        Assert.assertEquals(5, reply.getInt());
+        Assert.assertEquals(HANDLE, reply.getLong());
+    }
+
+    @Test
+    public void encodesOptionReply() {
+        final ByteBuffer reply = NBDReplies.option(7, 3, 4);
+        Assert.assertEquals(OPTION_REPLY_HEADER_LENGTH, reply.position());
+        Assert.assertEquals(4, reply.remaining());
+
+        reply.flip();
+        Assert.assertEquals(NBD_OPTION_REPLY_MAGIC, reply.getLong());
+        Assert.assertEquals(7, reply.getInt());
+        Assert.assertEquals(3, reply.getInt());
+        Assert.assertEquals(4, reply.getInt());
+    }
+
+    @Test
+    public void encodesChunkHeaderWithPartialPayload() {
+        final ByteBuffer reply = NBDReplies.chunk(NBD_REPLY_FLAG_DONE, NBD_REPLY_TYPE_OFFSET_DATA, HANDLE, 8 + 4096, 8);
+        Assert.assertEquals(STRUCTURED_REPLY_HEADER_LENGTH, reply.position());
+        Assert.assertEquals(8, reply.remaining());
+
+        reply.flip();
+        Assert.assertEquals(NBD_STRUCTURED_REPLY_MAGIC, reply.getInt());
+        Assert.assertEquals(NBD_REPLY_FLAG_DONE, reply.getShort());
+        Assert.assertEquals(NBD_REPLY_TYPE_OFFSET_DATA, reply.getShort());
+        Assert.assertEquals(HANDLE, reply.getLong());
+        Assert.assertEquals(8 + 4096, reply.getInt());
+    }
+
+    @Test
+    public void encodesErrorChunk() {
+        final ByteBuffer reply = NBDReplies.error(22, HANDLE);
+        Assert.assertEquals(STRUCTURED_REPLY_HEADER_LENGTH + 6, reply.remaining());
+        Assert.assertEquals(NBD_STRUCTURED_REPLY_MAGIC, reply.getInt());
+        Assert.assertEquals(NBD_REPLY_FLAG_DONE, reply.getShort());
+        Assert.assertEquals(NBD_REPLY_TYPE_ERROR, reply.getShort());
+        Assert.assertEquals(HANDLE, reply.getLong());
+        Assert.assertEquals(6, reply.getInt());
+        Assert.assertEquals(22, reply.getInt());
+        Assert.assertEquals(0, reply.getShort());
+    }
+}
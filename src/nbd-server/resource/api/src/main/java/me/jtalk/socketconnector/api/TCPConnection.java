@@ -18,6 +18,7 @@
 package me.jtalk.socketconnector.api;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import javax.resource.NotSupportedException;
 import javax.resource.ResourceException;
 
@@ -41,6 +42,23 @@ public interface TCPConnection extends AutoCloseable {
 	 */
 	void send(ByteBuffer message) throws NotSupportedException, ResourceException;
 
+	/**
+	 * Sends an optional header followed by a region of a file to underlying
+	 * connection. The region is transferred straight from the file channel
+	 * (sendfile) where the transport supports it. Header and region are
+	 * written back-to-back, so they cannot interleave with data sent concurrently
+	 * through the same socket. The file channel is not closed by this call.
+	 * @param header binary data to send before the file region, may be null.
+	 * @param file channel to transfer the region from.
+	 * @param position start offset of the region within the file.
+	 * @param count number of bytes to transfer.
+	 * @throws ConnectionClosedException if socket with ID associated with this
+	 * connection object is already closed.
+	 * @throws NotSupportedException if called on listening connection
+	 * @throws ResourceException in case of generic error.
+	 */
+	void sendFile(ByteBuffer header, FileChannel file, long position, long count) throws NotSupportedException, ResourceException;
+
 	/**
 	 * Performs disconnection of the socket with ID associated with this connection
 	 * object. This connection will be detached from it's parent ManagedConnection
@@ -19,6 +19,7 @@ package me.jtalk.socketconnector;
 
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -81,6 +82,14 @@ public class ManagedTCPConnectionProxy implements ManagedConnection, NamedIdObje
         }
     }
 
+    public void sendFile(ByteBuffer header, FileChannel file, long position, long count) throws ResourceException {
+        if (listening) {
+            throw new NotSupportedException("Sending data through listening socket");
+        } else {
+            adapter.sendFileTCP(clientId, id, header, file, position, count);
+        }
+    }
+
     @Override
     public TCPConnection getConnection(Subject subject, ConnectionRequestInfo cxRequestInfo) throws ResourceException {
         if (!isRunning.get()) {
@@ -28,6 +28,7 @@ import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -172,6 +173,12 @@ public class SocketResourceAdapter implements ResourceAdapter {
 		manager.send(id, data);
 	}
 
+	public void sendFileTCP(long clientId, long id, ByteBuffer header, FileChannel file, long position, long count) throws ResourceException {
+		log.trace("TCP file region sending requested for client ''{}'', id ''{}''", clientId, id);
+		TCPManager manager = this.getTCPManagerChecked(clientId);
+		manager.sendFile(id, header, file, position, count);
+	}
+
 	public void closeTCPConnection(long clientId, long id) throws ResourceException {
 		log.trace("TCP closing requested for client ''{}'', id ''{}''", clientId, id);
 		TCPManager manager = this.getTCPManagerChecked(clientId);
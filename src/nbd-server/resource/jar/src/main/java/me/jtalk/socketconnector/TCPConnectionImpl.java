@@ -18,6 +18,7 @@ package me.jtalk.socketconnector;
 
 import me.jtalk.socketconnector.api.TCPConnection;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.Optional;
 import javax.resource.ResourceException;
@@ -56,6 +57,17 @@ public class TCPConnectionImpl implements TCPConnection, NamedIdObject {
 		local.send(message);
 	}
 
+	@Override
+	public void sendFile(ByteBuffer header, FileChannel file, long position, long count) throws ResourceException {
+		ManagedTCPConnectionProxy local = this.owner;
+		if (local == null) {
+			lazyTrace(log, "File region will not be sent through {}: the connection is detached" + className);
+			throw new ResourceException("Connection is detached");
+		}
+		lazyTrace(log, "File region will be sent through {}" + className);
+		local.sendFile(header, file, position, count);
+	}
+
 	@Override
 	public void disconnect() throws ResourceException {
 		ManagedTCPConnectionProxy local = this.owner;
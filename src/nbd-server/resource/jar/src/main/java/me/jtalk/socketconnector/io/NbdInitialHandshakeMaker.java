@@ -9,16 +9,17 @@ import io.netty.channel.ChannelHandlerContext;
 public class NbdInitialHandshakeMaker {
     public static final long OPTS_MAGIC = 0x49484156454F5054L;
     public final static String NBD_MAGIC = "NBDMAGIC";
-    public static final int NBD_FLAG_HAS_FLAGS  = (1 << 0);	/* Flags are there */
+    public static final int NBD_FLAG_FIXED_NEWSTYLE = (1 << 0);	/* Option haggling is supported */
+    public static final int NBD_FLAG_NO_ZEROES = (1 << 1);	/* Export info may omit padding */
 
 
     protected static ByteBuf createBuffer(ChannelHandlerContext ctx) {
-        final ByteBuf initialHandshake = ctx.alloc().buffer(22); // (2)
+        final ByteBuf initialHandshake = ctx.alloc().buffer(18);
 
 
         initialHandshake.writeBytes(NBD_MAGIC.getBytes());
         initialHandshake.writeLong(OPTS_MAGIC);
-        initialHandshake.writeInt(NBD_FLAG_HAS_FLAGS);
+        initialHandshake.writeShort(NBD_FLAG_FIXED_NEWSTYLE | NBD_FLAG_NO_ZEROES);
         return initialHandshake;
     }
 }
@@ -21,6 +21,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
 import java.util.logging.Logger;
 
 public class Sender extends ChannelOutboundHandlerAdapter {
@@ -29,8 +30,13 @@ public class Sender extends ChannelOutboundHandlerAdapter {
 
 	@Override
 	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
-		ByteBuf buffer = (ByteBuf)msg;
-		log.finest(String.format("Sending %d bytes to %s", buffer.readableBytes(), ctx.channel().remoteAddress()));
+		if (msg instanceof FileRegion) {
+			FileRegion region = (FileRegion)msg;
+			log.finest(String.format("Sending %d file bytes to %s", region.count(), ctx.channel().remoteAddress()));
+		} else {
+			ByteBuf buffer = (ByteBuf)msg;
+			log.finest(String.format("Sending %d bytes to %s", buffer.readableBytes(), ctx.channel().remoteAddress()));
+		}
 		super.write(ctx, msg, promise);
 	}
 }
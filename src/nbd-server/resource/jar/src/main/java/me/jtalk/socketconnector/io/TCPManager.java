@@ -33,6 +33,7 @@ import java.io.Closeable;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -128,6 +129,37 @@ public class TCPManager implements Closeable {
 		});
 	}
 
+	public void sendFile(long id, ByteBuffer header, FileChannel file, long position, long count) throws ResourceException {
+		ConnectionContext ctx = this.connections.get(id);
+		if (ctx == null) {
+			throw new ConnectionClosedException("Connection is closed");
+		}
+		Channel output = ctx.channel;
+		log.finest(String.format("File region sending to id %d, %d bytes at offset %d", id, count, position));
+		// Header and region are queued in one go, otherwise writes
+		// issued concurrently by other threads could end up between them
+		final Runnable task = () -> {
+			if (header != null) {
+				output.write(Unpooled.wrappedBuffer(header));
+			}
+			output.writeAndFlush(new SharedFileRegion(file, position, count)).addListener(f -> {
+				if (f.isSuccess()) {
+					log.finest(String.format("File region sent to id %d", id));
+				} else {
+					log.log(Level.FINE, "Error while sending file region to id {0}: {1}", new Object[] {id, f.cause()});
+				}
+			});
+		};
+
+		// Writes issued from the event loop itself are not deferred,
+		// so run the task directly there to keep the order of replies
+		if (output.eventLoop().inEventLoop()) {
+			task.run();
+		} else {
+			output.eventLoop().execute(task);
+		}
+	}
+
 	public boolean close(long id) {
 		log.finest(String.format("Connection closing for id %d: requested", id));
 		final ConnectionContext ctx = this.connections.get(id);